@@ -0,0 +1,116 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.io.BytesInputStream;
+import ro.ciprianpascu.sbus.io.BytesOutputStream;
+import ro.ciprianpascu.sbus.msg.SbusMessage;
+import ro.ciprianpascu.sbus.util.SbusUtil;
+
+/**
+ * Benchmark measuring the throughput of encoding and decoding each
+ * request and response type, the way the transport does it: header
+ * and data through the byte streams, then the CRC.
+ *
+ * Run with the GC profiler (the default of the {@code benchmark}
+ * profile) to see the allocation rate per operation.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 2, jvmArgsAppend = "-Xmx256m")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CodecBenchmark {
+
+    @Param({ "ReadStatusChannelsRequest", "ReadTemperatureRequest", "ReadDryChannelsRequest",
+            "ReadNineInOneStatusRequest", "WriteSingleChannelRequest", "ReadRgbwRequest", "WriteRgbwRequest",
+            "RgbwPreviewRequest", "ReadStatusChannelsResponse", "ReadTemperatureResponse", "ReadDryChannelsResponse",
+            "ReadNineInOneStatusResponse", "MotionSensorStatusReport", "WriteSingleChannelResponse",
+            "ReadRgbwResponse", "WriteRgbwResponse", "RgbwPreviewResponse" })
+    public String m_Type;
+
+    private MessageFixtures.Fixture m_Fixture;
+    private SbusMessage m_Message;
+    private final BytesInputStream m_ByteIn = new BytesInputStream(Sbus.MAX_MESSAGE_LENGTH);
+    private final BytesOutputStream m_ByteOut = new BytesOutputStream(Sbus.MAX_MESSAGE_LENGTH);
+
+    @Setup
+    public void setup() throws IOException {
+        m_Fixture = MessageFixtures.get(m_Type);
+        m_Message = decode();
+        if (m_Message == null) {
+            throw new IllegalStateException("Fixture of " + m_Type + " fails the CRC check");
+        }
+    }// setup
+
+    /**
+     * Encodes the message and appends its CRC, as the transport
+     * does before queueing a frame.
+     *
+     * @return the frame.
+     * @throws IOException if the message cannot be written.
+     */
+    @Benchmark
+    public byte[] encode() throws IOException {
+        m_ByteOut.reset();
+        m_Message.writeTo(m_ByteOut);
+        int length = m_ByteOut.size();
+        byte[] crc = SbusUtil.calculateCRC(m_ByteOut.getBuffer(), length);
+        m_ByteOut.write(crc);
+        return m_ByteOut.getBuffer();
+    }// encode
+
+    /**
+     * Checks the CRC of the frame and decodes it into a new message,
+     * as the transport does for every received frame.
+     *
+     * @return the message, null if the CRC is wrong.
+     * @throws IOException if the frame cannot be read.
+     */
+    @Benchmark
+    public SbusMessage decode() throws IOException {
+        byte[] frame = m_Fixture.m_Frame;
+        if (!SbusUtil.checkCRC(frame, frame.length - 2)) {
+            return null;
+        }
+        m_ByteIn.reset(frame);
+        SbusMessage message = m_Fixture.m_Factory.get();
+        message.readFrom(m_ByteIn);
+        return message;
+    }// decode
+
+}// class CodecBenchmark
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ro.ciprianpascu.sbus.util.SbusUtil;
+
+/**
+ * Benchmark measuring the CRC and hex dump helpers over the frame
+ * lengths seen on a bus: an 11 byte read request, a 27 byte
+ * temperature response, and larger configuration frames.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 2, jvmArgsAppend = "-Xmx256m")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CrcBenchmark {
+
+    @Param({ "11", "27", "64", "128" })
+    public int m_Length;
+
+    private byte[] m_Frame;
+
+    @Setup
+    public void setup() {
+        // fixed seed, the same frame in every fork
+        m_Frame = new byte[m_Length];
+        new Random(m_Length).nextBytes(m_Frame);
+        byte[] crc = SbusUtil.calculateCRC(m_Frame, m_Length - 2);
+        m_Frame[m_Length - 2] = crc[0];
+        m_Frame[m_Length - 1] = crc[1];
+    }// setup
+
+    @Benchmark
+    public byte[] calculateCRC() {
+        return SbusUtil.calculateCRC(m_Frame, m_Length - 2);
+    }// calculateCRC
+
+    @Benchmark
+    public boolean checkCRC() {
+        return SbusUtil.checkCRC(m_Frame, m_Length - 2);
+    }// checkCRC
+
+    @Benchmark
+    public String toHex() {
+        return SbusUtil.toHex(m_Frame);
+    }// toHex
+
+}// class CrcBenchmark
@@ -0,0 +1,364 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.benchmark;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import ro.ciprianpascu.sbus.io.SbusUDPTransaction;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.net.UDPMasterConnection;
+import ro.ciprianpascu.sbus.sim.DeviceFarm;
+
+/**
+ * End-to-end benchmark of the request/response path: a master
+ * ({@link UDPMasterConnection} and {@link SbusUDPTransaction}) reading
+ * the channel status of relays simulated by a {@link DeviceFarm}, which
+ * is an {@link ro.ciprianpascu.sbus.net.SbusUDPListener}, over loopback
+ * in the same process.
+ *
+ * Load is open loop: each worker thread owns a share of the devices and
+ * issues its requests on a fixed schedule. Latency is measured from the
+ * time a request was scheduled, not from when it could be sent, so a
+ * stalled path is charged for every request that queued behind it
+ * (no coordinated omission). The service time, measured from the actual
+ * send, is reported next to it. The response cache of the transport is
+ * disabled, so every transaction crosses the socket.
+ *
+ * Usage: <tt>LoopbackBenchmark [name=value ...]</tt> with
+ * <ul>
+ * <li><tt>rate</tt> - requests per second over all workers (default 2000)</li>
+ * <li><tt>concurrency</tt> - worker threads sharing the connection (default 4)</li>
+ * <li><tt>devices</tt> - simulated relays (default 16)</li>
+ * <li><tt>pacing</tt> - send pacing of the master in milliseconds (default 0)</li>
+ * <li><tt>warmup</tt>, <tt>duration</tt> - seconds per run (default 5 and 10)</li>
+ * <li><tt>output</tt> - JSON result file (default target/loopback-result.json)</li>
+ * </ul>
+ * <tt>concurrency</tt>, <tt>devices</tt> and <tt>pacing</tt> take comma
+ * separated lists and every combination is run. The score, the number
+ * to track, is the p99 latency in microseconds of the first combination.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public final class LoopbackBenchmark {
+
+    private static final int TIMEOUT_MILLIS = 1000;
+
+    private static final double[] PERCENTILES = { 0.5, 0.99, 0.999 };
+
+    private final int m_Rate;
+    private final int m_Concurrency;
+    private final int m_Devices;
+    private final int m_Pacing;
+
+    private LoopbackBenchmark(int rate, int concurrency, int devices, int pacing) {
+        m_Rate = rate;
+        m_Concurrency = concurrency;
+        m_Devices = devices;
+        m_Pacing = pacing;
+    }// constructor
+
+    /**
+     * Main entry point, running the configured combinations and
+     * printing one result line for each.
+     *
+     * @param args name=value options, see the class description.
+     * @throws Exception if a run cannot be set up.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("rate", "2000");
+        options.put("concurrency", "4");
+        options.put("devices", "16");
+        options.put("pacing", "0");
+        options.put("warmup", "5");
+        options.put("duration", "10");
+        options.put("output", "target/loopback-result.json");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !options.containsKey(arg.substring(0, eq))) {
+                throw new IllegalArgumentException("Unknown option: " + arg + ", expected one of " + options.keySet());
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int rate = Integer.parseInt(options.get("rate"));
+        int warmup = Integer.parseInt(options.get("warmup"));
+        int duration = Integer.parseInt(options.get("duration"));
+
+        System.out.println(String.format(Locale.ROOT, "%-6s %-5s %-7s %-6s %10s %9s %9s %9s %9s %9s %8s",
+                "conc", "devs", "pacing", "rate", "achieved/s", "p50 us", "p99 us", "p99.9 us", "svc p99", "B/tx",
+                "errors"));
+        List<Result> results = new ArrayList<>();
+        for (int concurrency : parse(options.get("concurrency"))) {
+            for (int devices : parse(options.get("devices"))) {
+                for (int pacing : parse(options.get("pacing"))) {
+                    LoopbackBenchmark benchmark = new LoopbackBenchmark(rate, concurrency,
+                            Math.max(devices, concurrency), pacing);
+                    Result result = benchmark.run(warmup, duration);
+                    System.out.println(result);
+                    results.add(result);
+                }
+            }
+        }
+        Result score = results.get(0);
+        System.out.println("Score (p99 us at concurrency=" + score.m_Concurrency + " devices=" + score.m_Devices
+                + " pacing=" + score.m_Pacing + " rate=" + score.m_Rate + "): " + score.m_Latency[1] / 1000);
+        write(Paths.get(options.get("output")), results);
+    }// main
+
+    /**
+     * Runs the benchmark: a warmup phase whose results are discarded,
+     * then the measured phase.
+     *
+     * @param warmupSeconds the duration of the warmup.
+     * @param durationSeconds the duration of the measurement.
+     * @return the {@link Result}.
+     * @throws Exception if the farm or the connection cannot be set up.
+     */
+    private Result run(int warmupSeconds, int durationSeconds) throws Exception {
+        DeviceFarm farm = new DeviceFarm();
+        farm.setPort(freePort());
+        farm.populate(m_Devices, 0, 0);
+        farm.start();
+        UDPMasterConnection connection = new UDPMasterConnection(farm.getPort());
+        connection.setRemoteAddress(InetAddress.getLoopbackAddress());
+        connection.setLocalPort(freePort());
+        connection.setSendPacingMillis(m_Pacing);
+        connection.setResponseCacheMillis(0);
+        try {
+            connection.connect();
+            connection.setTimeout(TIMEOUT_MILLIS);
+            phase(connection, warmupSeconds);
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                    .getThreadMXBean();
+            long allocated = allocated(threads);
+            Worker[] workers = phase(connection, durationSeconds);
+            allocated = allocated(threads) - allocated;
+            return new Result(this, workers, allocated);
+        } finally {
+            connection.close();
+            farm.stop();
+        }
+    }// run
+
+    private Worker[] phase(UDPMasterConnection connection, int seconds) throws InterruptedException {
+        long intervalNanos = 1000000000L * m_Concurrency / m_Rate;
+        long start = System.nanoTime() + 10000000L;
+        long end = start + seconds * 1000000000L;
+        Worker[] workers = new Worker[m_Concurrency];
+        Thread[] threads = new Thread[m_Concurrency];
+        for (int i = 0; i < m_Concurrency; i++) {
+            // stagger the schedules so that the workers do not fire together
+            workers[i] = new Worker(connection, i, start + i * intervalNanos / m_Concurrency, end, intervalNanos);
+            threads[i] = new Thread(workers[i], "LoopbackBenchmark-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return workers;
+    }// phase
+
+    private static long allocated(com.sun.management.ThreadMXBean threads) {
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }// allocated
+
+    private static int[] parse(String list) {
+        return Arrays.stream(list.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }// parse
+
+    private static int freePort() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }// freePort
+
+    private static void write(Path path, List<Result> results) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path))) {
+            out.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                out.print("  " + results.get(i).toJson());
+                out.println(i < results.size() - 1 ? "," : "");
+            }
+            out.println("]");
+        }
+    }// write
+
+    /**
+     * A thread issuing requests to its devices on a fixed schedule.
+     */
+    private final class Worker implements Runnable {
+
+        private final UDPMasterConnection m_Connection;
+        private final ReadStatusChannelsRequest[] m_Requests;
+        private final long m_Start;
+        private final long m_End;
+        private final long m_Interval;
+        long[] m_Latencies = new long[1024];
+        long[] m_ServiceTimes = new long[1024];
+        int m_Count;
+        int m_Errors;
+        long m_Finished;
+
+        Worker(UDPMasterConnection connection, int index, long start, long end, long interval) {
+            m_Connection = connection;
+            List<ReadStatusChannelsRequest> requests = new ArrayList<>();
+            // the devices of a worker are never read by another, so
+            // transaction ids of concurrent requests do not collide
+            for (int i = index; i < m_Devices; i += m_Concurrency) {
+                ReadStatusChannelsRequest request = new ReadStatusChannelsRequest();
+                request.setSubnetID(1 + i / 254);
+                request.setUnitID(1 + i % 254);
+                requests.add(request);
+            }
+            m_Requests = requests.toArray(new ReadStatusChannelsRequest[0]);
+            m_Start = start;
+            m_End = end;
+            m_Interval = interval;
+        }// constructor
+
+        @Override
+        public void run() {
+            for (long intended = m_Start; intended < m_End; intended += m_Interval) {
+                long now = System.nanoTime();
+                while (now < intended) {
+                    LockSupport.parkNanos(intended - now);
+                    now = System.nanoTime();
+                }
+                SbusUDPTransaction transaction = new SbusUDPTransaction(m_Connection);
+                transaction.setRequest(m_Requests[m_Count % m_Requests.length]);
+                transaction.setRetries(1);
+                try {
+                    transaction.execute();
+                    if (transaction.getResponse() == null) {
+                        m_Errors++;
+                    }
+                } catch (Exception ex) {
+                    m_Errors++;
+                }
+                long done = System.nanoTime();
+                if (m_Count == m_Latencies.length) {
+                    m_Latencies = Arrays.copyOf(m_Latencies, m_Count * 2);
+                    m_ServiceTimes = Arrays.copyOf(m_ServiceTimes, m_Count * 2);
+                }
+                m_Latencies[m_Count] = done - intended;
+                m_ServiceTimes[m_Count] = done - now;
+                m_Count++;
+                m_Finished = done;
+            }
+        }// run
+
+    }// class Worker
+
+    /**
+     * The outcome of one run.
+     */
+    private static final class Result {
+
+        final int m_Rate;
+        final int m_Concurrency;
+        final int m_Devices;
+        final int m_Pacing;
+        final double m_Achieved;
+        final long[] m_Latency = new long[PERCENTILES.length];
+        final long m_ServiceP99;
+        final long m_BytesPerTransaction;
+        final int m_Errors;
+
+        Result(LoopbackBenchmark benchmark, Worker[] workers, long allocated) {
+            m_Rate = benchmark.m_Rate;
+            m_Concurrency = benchmark.m_Concurrency;
+            m_Devices = benchmark.m_Devices;
+            m_Pacing = benchmark.m_Pacing;
+            int count = 0;
+            int errors = 0;
+            long finished = workers[0].m_Start;
+            for (Worker worker : workers) {
+                count += worker.m_Count;
+                errors += worker.m_Errors;
+                finished = Math.max(finished, worker.m_Finished);
+            }
+            long[] latencies = new long[count];
+            long[] serviceTimes = new long[count];
+            int offset = 0;
+            for (Worker worker : workers) {
+                System.arraycopy(worker.m_Latencies, 0, latencies, offset, worker.m_Count);
+                System.arraycopy(worker.m_ServiceTimes, 0, serviceTimes, offset, worker.m_Count);
+                offset += worker.m_Count;
+            }
+            Arrays.sort(latencies);
+            Arrays.sort(serviceTimes);
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                m_Latency[i] = percentile(latencies, PERCENTILES[i]);
+            }
+            m_ServiceP99 = percentile(serviceTimes, 0.99);
+            // over the time the last response took, falling behind the schedule shows
+            long elapsed = Math.max(1, finished - workers[0].m_Start);
+            m_Achieved = (count - errors) * 1e9 / elapsed;
+            m_BytesPerTransaction = count == 0 ? 0 : allocated / count;
+            m_Errors = errors;
+        }// constructor
+
+        private static long percentile(long[] sorted, double fraction) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(fraction * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+        }// percentile
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"concurrency\": %d, \"devices\": %d, \"pacingMillis\": %d, \"rate\": %d, "
+                            + "\"achievedPerSecond\": %.1f, \"p50Micros\": %d, \"p99Micros\": %d, "
+                            + "\"p999Micros\": %d, \"serviceP99Micros\": %d, \"bytesPerTransaction\": %d, "
+                            + "\"errors\": %d}",
+                    m_Concurrency, m_Devices, m_Pacing, m_Rate, m_Achieved, m_Latency[0] / 1000,
+                    m_Latency[1] / 1000, m_Latency[2] / 1000, m_ServiceP99 / 1000, m_BytesPerTransaction, m_Errors);
+        }// toJson
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-6d %-5d %-7d %-6d %10.1f %9d %9d %9d %9d %9d %8d", m_Concurrency,
+                    m_Devices, m_Pacing, m_Rate, m_Achieved, m_Latency[0] / 1000, m_Latency[1] / 1000,
+                    m_Latency[2] / 1000, m_ServiceP99 / 1000, m_BytesPerTransaction, m_Errors);
+        }// toString
+
+    }// class Result
+
+}// class LoopbackBenchmark
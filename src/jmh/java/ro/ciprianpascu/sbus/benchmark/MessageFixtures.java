@@ -0,0 +1,141 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.msg.MotionSensorStatusReport;
+import ro.ciprianpascu.sbus.msg.ReadDryChannelsRequest;
+import ro.ciprianpascu.sbus.msg.ReadDryChannelsResponse;
+import ro.ciprianpascu.sbus.msg.ReadNineInOneStatusRequest;
+import ro.ciprianpascu.sbus.msg.ReadNineInOneStatusResponse;
+import ro.ciprianpascu.sbus.msg.ReadRgbwRequest;
+import ro.ciprianpascu.sbus.msg.ReadRgbwResponse;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.msg.ReadTemperatureRequest;
+import ro.ciprianpascu.sbus.msg.ReadTemperatureResponse;
+import ro.ciprianpascu.sbus.msg.RgbwPreviewRequest;
+import ro.ciprianpascu.sbus.msg.RgbwPreviewResponse;
+import ro.ciprianpascu.sbus.msg.SbusMessage;
+import ro.ciprianpascu.sbus.msg.WriteRgbwRequest;
+import ro.ciprianpascu.sbus.msg.WriteRgbwResponse;
+import ro.ciprianpascu.sbus.msg.WriteSingleChannelRequest;
+import ro.ciprianpascu.sbus.msg.WriteSingleChannelResponse;
+import ro.ciprianpascu.sbus.util.SbusUtil;
+
+/**
+ * Class providing a realistic wire frame for every request and
+ * response type, as captured from relays, sensors and dimmers.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+final class MessageFixtures {
+
+    /** Source of the frames: subnet 1, unit 20, a 12 channel relay */
+    private static final int SOURCE_SUBNET = 1;
+    private static final int SOURCE_UNIT = 20;
+    private static final int DEVICE_TYPE = 0x0258;
+
+    private static final Map<String, Fixture> m_Fixtures = new LinkedHashMap<>();
+
+    static {
+        int ok = Sbus.SUCCESS;
+        add("ReadStatusChannelsRequest", ReadStatusChannelsRequest::new, Sbus.READ_STATUS_CHANNELS_REQUEST);
+        add("ReadTemperatureRequest", ReadTemperatureRequest::new, Sbus.READ_TEMPERATURE_REQUEST, 1);
+        add("ReadDryChannelsRequest", ReadDryChannelsRequest::new, Sbus.READ_DRY_CONNECTOR_REQUEST);
+        add("ReadNineInOneStatusRequest", ReadNineInOneStatusRequest::new, Sbus.READ_NINE_IN_ONE_STATUS_REQUEST);
+        add("WriteSingleChannelRequest", () -> new WriteSingleChannelRequest(true),
+                Sbus.WRITE_SINGLE_CHANNEL_REQUEST, 3, 75, 0, 2);
+        add("ReadRgbwRequest", ReadRgbwRequest::new, Sbus.READ_CUSTOM_COLORS_REQUEST, 1);
+        add("WriteRgbwRequest", WriteRgbwRequest::new, Sbus.WRITE_CUSTOM_COLORS_REQUEST, 1, 255, 128, 64, 0);
+        add("RgbwPreviewRequest", RgbwPreviewRequest::new, Sbus.WRITE_PREVIEW_COLORS_REQUEST, 255, 128, 64, 0, 0,
+                10);
+        add("ReadStatusChannelsResponse", ReadStatusChannelsResponse::new, Sbus.READ_STATUS_CHANNELS_REQUEST + 1,
+                12, 100, 0, 0, 75, 0, 0, 100, 100, 0, 0, 50, 0);
+        add("ReadTemperatureResponse", ReadTemperatureResponse::new, Sbus.READ_TEMPERATURE_REQUEST + 1, 1, 22, 23,
+                21, 5, 19, 20, 24, 22, 0, 0, 0, 1, 0, 0, 0, 0);
+        add("ReadDryChannelsResponse", ReadDryChannelsResponse::new, Sbus.READ_DRY_CONNECTOR_REQUEST + 1, ok, 8, 0,
+                1, 0, 1, 1, 0, 0, 1);
+        add("ReadNineInOneStatusResponse", ReadNineInOneStatusResponse::new,
+                Sbus.READ_NINE_IN_ONE_STATUS_REQUEST + 1, 0, 1, 0, 1, 0x90, 0, 0, 1, 0);
+        add("MotionSensorStatusReport", MotionSensorStatusReport::new, Sbus.MOTION_SENSOR_STATUS_REPORT, 2, 1, 0, 1,
+                0x90, 0, 0, 1, 0);
+        add("WriteSingleChannelResponse", WriteSingleChannelResponse::new, Sbus.WRITE_SINGLE_CHANNEL_REQUEST + 1, 3,
+                ok);
+        add("ReadRgbwResponse", ReadRgbwResponse::new, Sbus.READ_CUSTOM_COLORS_REQUEST + 1, ok, 1, 255, 128, 64, 0);
+        add("WriteRgbwResponse", WriteRgbwResponse::new, Sbus.WRITE_CUSTOM_COLORS_REQUEST + 1, ok);
+        add("RgbwPreviewResponse", RgbwPreviewResponse::new, Sbus.WRITE_PREVIEW_COLORS_REQUEST + 1, ok);
+    }
+
+    private MessageFixtures() {
+    }// constructor
+
+    /**
+     * Returns the fixture of a message type.
+     *
+     * @param type the simple class name of the message.
+     * @return the {@link Fixture}.
+     */
+    static Fixture get(String type) {
+        Fixture fixture = m_Fixtures.get(type);
+        if (fixture == null) {
+            throw new IllegalArgumentException("No fixture for " + type);
+        }
+        return fixture;
+    }// get
+
+    private static void add(String type, Supplier<SbusMessage> factory, int functionCode, int... data) {
+        byte[] frame = new byte[9 + data.length + 2];
+        frame[0] = (byte) (11 + data.length);
+        frame[1] = (byte) SOURCE_SUBNET;
+        frame[2] = (byte) SOURCE_UNIT;
+        frame[3] = (byte) (DEVICE_TYPE >> 8);
+        frame[4] = (byte) DEVICE_TYPE;
+        frame[5] = (byte) (functionCode >> 8);
+        frame[6] = (byte) functionCode;
+        frame[7] = (byte) 0xFF;
+        frame[8] = (byte) 0xFF;
+        for (int i = 0; i < data.length; i++) {
+            frame[9 + i] = (byte) data[i];
+        }
+        byte[] crc = SbusUtil.calculateCRC(frame, frame.length - 2);
+        frame[frame.length - 2] = crc[0];
+        frame[frame.length - 1] = crc[1];
+        m_Fixtures.put(type, new Fixture(factory, frame));
+    }// add
+
+    /**
+     * A message type with the frame of a typical instance.
+     */
+    static final class Fixture {
+
+        final Supplier<SbusMessage> m_Factory;
+        final byte[] m_Frame;
+
+        Fixture(Supplier<SbusMessage> factory, byte[] frame) {
+            m_Factory = factory;
+            m_Frame = frame;
+        }// constructor
+
+    }// class Fixture
+
+}// class MessageFixtures
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.cmd;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.io.BytesInputStream;
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.net.WireCapture;
+import ro.ciprianpascu.sbus.net.WireCaptureReader;
+import ro.ciprianpascu.sbus.util.SbusUtil;
+
+/**
+ * Command line application analyzing a {@link WireCapture} offline.
+ *
+ * The segments of the capture are split between the threads of a
+ * fork/join pool, each decoding its segments with the message codec of
+ * the library into {@link CaptureStatistics}, which are merged in
+ * capture order. A capture of a day of traffic is read in about the
+ * time it takes to decode one segment per thread; smaller segments
+ * spread the work more evenly.
+ *
+ * Usage: <tt>CaptureAnalyzer capture-directory [threads] [retry window ms]</tt>
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class CaptureAnalyzer {
+
+    /** Default time within which a repeated request counts as a retry, in milliseconds */
+    public static final int DEFAULT_RETRY_WINDOW_MILLIS = 2 * Sbus.DEFAULT_TIMEOUT;
+
+    private static final int PREFIX_LENGTH = 16;
+    private static final int MIN_FRAME_LENGTH = 11;
+
+    private final int m_Threads;
+    private int m_RetryWindowMillis = DEFAULT_RETRY_WINDOW_MILLIS;
+
+    /**
+     * Constructs a new {@link CaptureAnalyzer}.
+     *
+     * @param threads the number of threads decoding segments.
+     */
+    public CaptureAnalyzer(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid thread count: " + threads);
+        }
+        m_Threads = threads;
+    }// constructor
+
+    /**
+     * Sets the time within which a request repeating an unanswered one
+     * counts as its retry rather than a new request.
+     *
+     * @param millis the retry window in milliseconds.
+     */
+    public void setRetryWindowMillis(int millis) {
+        m_RetryWindowMillis = millis;
+    }// setRetryWindowMillis
+
+    /**
+     * Returns the time within which a repeated request counts as a retry.
+     *
+     * @return the retry window in milliseconds.
+     */
+    public int getRetryWindowMillis() {
+        return m_RetryWindowMillis;
+    }// getRetryWindowMillis
+
+    /**
+     * Analyzes a capture.
+     *
+     * @param directory the directory of the {@link WireCapture}.
+     * @return the {@link CaptureStatistics} of the whole capture.
+     * @throws IOException if the capture cannot be read.
+     */
+    public CaptureStatistics analyze(Path directory) throws IOException {
+        int segments = WireCaptureReader.getSegmentCount(directory);
+        if (segments == 0) {
+            throw new IOException("No capture in " + directory);
+        }
+        ForkJoinPool pool = new ForkJoinPool(m_Threads);
+        try {
+            CaptureStatistics statistics = pool.invoke(new SpanTask(directory, 0, segments));
+            statistics.finish();
+            return statistics;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }// analyze
+
+    /**
+     * Decodes a range of segments in capture order.
+     *
+     * @param directory the directory of the capture.
+     * @param from the index of the first segment.
+     * @param to the index after the last segment.
+     * @return the {@link CaptureStatistics} of the range.
+     * @throws IOException if a segment cannot be read.
+     */
+    private CaptureStatistics decode(Path directory, int from, int to) throws IOException {
+        CaptureStatistics statistics = new CaptureStatistics(m_RetryWindowMillis);
+        BytesInputStream in = new BytesInputStream(Sbus.MAX_MESSAGE_LENGTH);
+        try (WireCaptureReader reader = new WireCaptureReader(directory, from, to)) {
+            WireCaptureReader.Record record;
+            while ((record = reader.next()) != null) {
+                byte[] datagram = record.getDatagram();
+                long nanos = record.getNanos();
+                int length = datagram.length - PREFIX_LENGTH;
+                if (length < MIN_FRAME_LENGTH) {
+                    statistics.malformed(nanos);
+                    continue;
+                }
+                byte[] frame = new byte[length];
+                System.arraycopy(datagram, PREFIX_LENGTH, frame, 0, length);
+                if (!SbusUtil.checkCRC(frame, length - 2)) {
+                    statistics.crcError(nanos);
+                    continue;
+                }
+                int functionCode = ((frame[5] & 0xFF) << 8) | (frame[6] & 0xFF);
+                if (!record.isReceived()) {
+                    // the requests of the terminal itself, only their header is needed
+                    statistics.sent(nanos, frame[7] & 0xFF, frame[8] & 0xFF, functionCode);
+                    continue;
+                }
+                in.reset(frame);
+                SbusResponse response = SbusResponse.createSbusResponse(functionCode);
+                try {
+                    response.readFrom(in);
+                } catch (IOException | RuntimeException ex) {
+                    statistics.malformed(nanos);
+                    continue;
+                }
+                statistics.received(nanos, response.getSourceSubnetID(), response.getSourceUnitID(), functionCode);
+            }
+        }
+        return statistics;
+    }// decode
+
+    /**
+     * Task splitting a range of segments in halves until
+     * a single segment is left to decode.
+     */
+    private final class SpanTask extends RecursiveTask<CaptureStatistics> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path m_Directory;
+        private final int m_From;
+        private final int m_To;
+
+        SpanTask(Path directory, int from, int to) {
+            m_Directory = directory;
+            m_From = from;
+            m_To = to;
+        }// constructor
+
+        @Override
+        protected CaptureStatistics compute() {
+            if (m_To - m_From == 1) {
+                try {
+                    return decode(m_Directory, m_From, m_To);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            int middle = (m_From + m_To) >>> 1;
+            SpanTask earlier = new SpanTask(m_Directory, m_From, middle);
+            earlier.fork();
+            CaptureStatistics later = new SpanTask(m_Directory, middle, m_To).compute();
+            return earlier.join().merge(later);
+        }// compute
+
+    }// class SpanTask
+
+    /**
+     * Main entry point, printing the statistics of a capture.
+     *
+     * @param args the capture directory, optional thread count and retry window.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: CaptureAnalyzer capture-directory [threads] [retry window ms]");
+            System.exit(1);
+        }
+        try {
+            int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            CaptureAnalyzer analyzer = new CaptureAnalyzer(threads);
+            if (args.length > 2) {
+                analyzer.setRetryWindowMillis(Integer.parseInt(args[2]));
+            }
+            long start = System.nanoTime();
+            CaptureStatistics statistics = analyzer.analyze(Paths.get(args[0]));
+            statistics.print(System.out);
+            System.out.printf("Analyzed in %d ms on %d threads%n", (System.nanoTime() - start) / 1000000L,
+                    threads);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }// main
+
+}// class CaptureAnalyzer
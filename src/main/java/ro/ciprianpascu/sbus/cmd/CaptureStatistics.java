@@ -0,0 +1,496 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.cmd;
+
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ro.ciprianpascu.sbus.util.LatencyHistogram;
+
+/**
+ * Class holding the statistics of a span of a wire capture: frames per
+ * device, the function code mix, request retries and timeouts, round
+ * trips and the spacing of received frames.
+ *
+ * The statistics of consecutive spans are merged with {@link #merge},
+ * earlier span first. A request still open at the end of a span is
+ * matched against the first frame of the same exchange in the next one,
+ * so merging gives the same counts as reading the capture in one go.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class CaptureStatistics {
+
+    private final long m_RetryWindowNanos;
+    private final Map<Integer, Device> m_Devices = new HashMap<>();
+    private final Map<Integer, Long> m_FunctionCodes = new TreeMap<>();
+    private final Map<Long, Exchange> m_Exchanges = new HashMap<>();
+    private final LatencyHistogram m_InterArrival = new LatencyHistogram();
+    private final LatencyHistogram m_RoundTrips = new LatencyHistogram();
+    private long m_Received;
+    private long m_Sent;
+    private long m_Unsolicited;
+    private long m_Malformed;
+    private long m_CrcErrors;
+    private long m_Records;
+    private long m_FirstNanos;
+    private long m_LastNanos;
+    private long m_FirstReceivedNanos;
+    private long m_LastReceivedNanos;
+
+    /**
+     * Constructs a new, empty {@link CaptureStatistics}.
+     *
+     * @param retryWindowMillis the time within which a request repeating an
+     *            unanswered one is counted as its retry.
+     */
+    public CaptureStatistics(int retryWindowMillis) {
+        m_RetryWindowNanos = retryWindowMillis * 1000000L;
+    }// constructor
+
+    /**
+     * Counts a received frame.
+     *
+     * @param nanos the capture time of the frame.
+     * @param subnetID the subnet of the sending device.
+     * @param unitID the unit of the sending device.
+     * @param functionCode the function code of the frame.
+     */
+    void received(long nanos, int subnetID, int unitID, int functionCode) {
+        record(nanos, functionCode);
+        if (m_Received > 0) {
+            m_InterArrival.record(nanos - m_LastReceivedNanos);
+        } else {
+            m_FirstReceivedNanos = nanos;
+        }
+        m_LastReceivedNanos = nanos;
+        m_Received++;
+        Device device = device(subnetID, unitID);
+        device.m_Received++;
+        // a response carries the function code of its request plus one
+        Exchange exchange = m_Exchanges.get(exchangeKey(subnetID, unitID, functionCode - 1));
+        if (exchange == null) {
+            m_Exchanges.put(exchangeKey(subnetID, unitID, functionCode - 1), new Exchange(nanos, false));
+            m_Unsolicited++;
+        } else if (exchange.m_Open) {
+            answer(device, exchange, nanos);
+        } else {
+            m_Unsolicited++;
+        }
+    }// received
+
+    /**
+     * Counts a sent request.
+     *
+     * @param nanos the capture time of the frame.
+     * @param subnetID the subnet of the addressed device.
+     * @param unitID the unit of the addressed device.
+     * @param functionCode the function code of the request.
+     */
+    void sent(long nanos, int subnetID, int unitID, int functionCode) {
+        record(nanos, functionCode);
+        m_Sent++;
+        Device device = device(subnetID, unitID);
+        device.m_Sent++;
+        Long key = exchangeKey(subnetID, unitID, functionCode);
+        Exchange exchange = m_Exchanges.get(key);
+        if (exchange == null) {
+            exchange = new Exchange(nanos, true);
+            m_Exchanges.put(key, exchange);
+        } else if (exchange.m_Open) {
+            repeat(device, exchange, nanos);
+        }
+        exchange.m_Open = true;
+        exchange.m_OpenNanos = nanos;
+    }// sent
+
+    /**
+     * Counts a frame that failed the CRC check.
+     *
+     * @param nanos the capture time of the frame.
+     */
+    void crcError(long nanos) {
+        record(nanos, -1);
+        m_CrcErrors++;
+    }// crcError
+
+    /**
+     * Counts a frame the codec could not decode.
+     *
+     * @param nanos the capture time of the frame.
+     */
+    void malformed(long nanos) {
+        record(nanos, -1);
+        m_Malformed++;
+    }// malformed
+
+    /**
+     * Merges the statistics of the span following this one into this one.
+     *
+     * @param later the {@link CaptureStatistics} of the next span.
+     * @return this {@link CaptureStatistics}.
+     */
+    public CaptureStatistics merge(CaptureStatistics later) {
+        if (later.m_Records == 0) {
+            return this;
+        }
+        if (m_Records == 0) {
+            m_FirstNanos = later.m_FirstNanos;
+        }
+        m_LastNanos = later.m_LastNanos;
+        m_Records += later.m_Records;
+        if (later.m_Received > 0) {
+            if (m_Received > 0) {
+                m_InterArrival.record(later.m_FirstReceivedNanos - m_LastReceivedNanos);
+            } else {
+                m_FirstReceivedNanos = later.m_FirstReceivedNanos;
+            }
+            m_LastReceivedNanos = later.m_LastReceivedNanos;
+        }
+        m_Received += later.m_Received;
+        m_Sent += later.m_Sent;
+        m_Unsolicited += later.m_Unsolicited;
+        m_Malformed += later.m_Malformed;
+        m_CrcErrors += later.m_CrcErrors;
+        m_InterArrival.add(later.m_InterArrival);
+        m_RoundTrips.add(later.m_RoundTrips);
+        for (Map.Entry<Integer, Long> entry : later.m_FunctionCodes.entrySet()) {
+            m_FunctionCodes.merge(entry.getKey(), entry.getValue(), Long::sum);
+        }
+        for (Device device : later.m_Devices.values()) {
+            device(device.m_SubnetID, device.m_UnitID).add(device);
+        }
+        for (Map.Entry<Long, Exchange> entry : later.m_Exchanges.entrySet()) {
+            Exchange next = entry.getValue();
+            Exchange exchange = m_Exchanges.get(entry.getKey());
+            if (exchange == null) {
+                m_Exchanges.put(entry.getKey(), next);
+                continue;
+            }
+            if (exchange.m_Open) {
+                // the later span saw its first frame of the exchange without this request
+                Device device = m_Devices.get((int) (entry.getKey() >>> 16));
+                if (next.m_LeadingSent) {
+                    repeat(device, exchange, next.m_LeadingNanos);
+                } else {
+                    m_Unsolicited--;
+                    answer(device, exchange, next.m_LeadingNanos);
+                }
+            }
+            exchange.m_Open = next.m_Open;
+            exchange.m_OpenNanos = next.m_OpenNanos;
+        }
+        return this;
+    }// merge
+
+    /**
+     * Counts the requests still open at the end of the capture as timed
+     * out. Called once, after the statistics of all spans were merged.
+     */
+    public void finish() {
+        for (Map.Entry<Long, Exchange> entry : m_Exchanges.entrySet()) {
+            if (entry.getValue().m_Open) {
+                m_Devices.get((int) (entry.getKey() >>> 16)).m_Timeouts++;
+                entry.getValue().m_Open = false;
+            }
+        }
+    }// finish
+
+    /**
+     * Returns the number of captured frames.
+     *
+     * @return the frame count, sent and received.
+     */
+    public long getRecordCount() {
+        return m_Records;
+    }// getRecordCount
+
+    /**
+     * Returns the number of received frames decoded.
+     *
+     * @return the received frame count.
+     */
+    public long getFramesReceived() {
+        return m_Received;
+    }// getFramesReceived
+
+    /**
+     * Returns the number of sent requests.
+     *
+     * @return the sent frame count.
+     */
+    public long getFramesSent() {
+        return m_Sent;
+    }// getFramesSent
+
+    /**
+     * Returns the number of received frames answering no request.
+     *
+     * @return the unsolicited frame count.
+     */
+    public long getUnsolicited() {
+        return m_Unsolicited;
+    }// getUnsolicited
+
+    /**
+     * Returns the number of frames the codec could not decode.
+     *
+     * @return the malformed frame count.
+     */
+    public long getMalformed() {
+        return m_Malformed;
+    }// getMalformed
+
+    /**
+     * Returns the number of frames failing the CRC check.
+     *
+     * @return the CRC error count.
+     */
+    public long getCrcErrors() {
+        return m_CrcErrors;
+    }// getCrcErrors
+
+    /**
+     * Returns the time between the first and the last captured frame.
+     *
+     * @return the duration in nanoseconds.
+     */
+    public long getDurationNanos() {
+        return m_LastNanos - m_FirstNanos;
+    }// getDurationNanos
+
+    /**
+     * Returns the number of frames per function code.
+     *
+     * @return the counts by function code, sent and received.
+     */
+    public Map<Integer, Long> getFunctionCodes() {
+        return Collections.unmodifiableMap(m_FunctionCodes);
+    }// getFunctionCodes
+
+    /**
+     * Returns the statistics of a device.
+     *
+     * @param subnetID the subnet of the device.
+     * @param unitID the unit of the device.
+     * @return the {@link Device}, or null if no frame was exchanged with it.
+     */
+    public Device getDevice(int subnetID, int unitID) {
+        return m_Devices.get((subnetID << 8) | unitID);
+    }// getDevice
+
+    /**
+     * Returns the statistics of all devices.
+     *
+     * @return the {@link Device} instances.
+     */
+    public Collection<Device> getDevices() {
+        return Collections.unmodifiableCollection(m_Devices.values());
+    }// getDevices
+
+    /**
+     * Returns the histogram of the time between received frames.
+     *
+     * @return the inter-arrival {@link LatencyHistogram}.
+     */
+    public LatencyHistogram getInterArrival() {
+        return m_InterArrival;
+    }// getInterArrival
+
+    /**
+     * Returns the histogram of the time from a request to its response.
+     *
+     * @return the round trip {@link LatencyHistogram}.
+     */
+    public LatencyHistogram getRoundTrips() {
+        return m_RoundTrips;
+    }// getRoundTrips
+
+    /**
+     * Prints a report of the statistics.
+     *
+     * @param out the stream to print to.
+     */
+    public void print(PrintStream out) {
+        double seconds = Math.max(getDurationNanos(), 1) / 1e9;
+        out.printf("%d frames in %.1f s: %d received, %d sent, %d unsolicited, %d malformed, %d CRC errors%n",
+                m_Records, seconds, m_Received, m_Sent, m_Unsolicited, m_Malformed, m_CrcErrors);
+        out.println("Round trips:   " + m_RoundTrips);
+        out.println("Inter-arrival: " + m_InterArrival);
+        out.println("Function codes:");
+        for (Map.Entry<Integer, Long> entry : m_FunctionCodes.entrySet()) {
+            out.printf("  0x%04X %10d%n", entry.getKey(), entry.getValue());
+        }
+        out.println("Devices:");
+        out.println("  device      rx/s   received       sent   answered    retries   timeouts");
+        Map<Integer, Device> sorted = new TreeMap<>(m_Devices);
+        for (Device device : sorted.values()) {
+            out.printf("  %3d.%-3d %9.2f %10d %10d %10d %10d %10d%n", device.m_SubnetID, device.m_UnitID,
+                    device.m_Received / seconds, device.m_Received, device.m_Sent, device.m_Answered,
+                    device.m_Retries, device.m_Timeouts);
+        }
+    }// print
+
+    private void record(long nanos, int functionCode) {
+        if (m_Records == 0) {
+            m_FirstNanos = nanos;
+        }
+        m_LastNanos = nanos;
+        m_Records++;
+        if (functionCode >= 0) {
+            m_FunctionCodes.merge(functionCode, 1L, Long::sum);
+        }
+    }// record
+
+    private void answer(Device device, Exchange exchange, long nanos) {
+        device.m_Answered++;
+        m_RoundTrips.record(nanos - exchange.m_OpenNanos);
+        exchange.m_Open = false;
+    }// answer
+
+    private void repeat(Device device, Exchange exchange, long nanos) {
+        // the earlier request went unanswered
+        device.m_Timeouts++;
+        if (nanos - exchange.m_OpenNanos <= m_RetryWindowNanos) {
+            device.m_Retries++;
+        }
+    }// repeat
+
+    private Device device(int subnetID, int unitID) {
+        return m_Devices.computeIfAbsent((subnetID << 8) | unitID, key -> new Device(subnetID, unitID));
+    }// device
+
+    private static long exchangeKey(int subnetID, int unitID, int functionCode) {
+        return ((long) ((subnetID << 8) | unitID) << 16) | (functionCode & 0xFFFF);
+    }// exchangeKey
+
+    /**
+     * The state of the requests to one device with one function code.
+     */
+    private static final class Exchange {
+
+        /** The first frame of the exchange in the span, matched when merging */
+        final long m_LeadingNanos;
+        final boolean m_LeadingSent;
+        boolean m_Open;
+        long m_OpenNanos;
+
+        Exchange(long leadingNanos, boolean leadingSent) {
+            m_LeadingNanos = leadingNanos;
+            m_LeadingSent = leadingSent;
+        }// constructor
+
+    }// class Exchange
+
+    /**
+     * The statistics of the frames exchanged with one device.
+     */
+    public static final class Device {
+
+        private final int m_SubnetID;
+        private final int m_UnitID;
+        private long m_Received;
+        private long m_Sent;
+        private long m_Answered;
+        private long m_Retries;
+        private long m_Timeouts;
+
+        Device(int subnetID, int unitID) {
+            m_SubnetID = subnetID;
+            m_UnitID = unitID;
+        }// constructor
+
+        /**
+         * Returns the subnet of the device.
+         *
+         * @return the subnet ID.
+         */
+        public int getSubnetID() {
+            return m_SubnetID;
+        }// getSubnetID
+
+        /**
+         * Returns the unit of the device.
+         *
+         * @return the unit ID.
+         */
+        public int getUnitID() {
+            return m_UnitID;
+        }// getUnitID
+
+        /**
+         * Returns the number of frames received from the device.
+         *
+         * @return the received frame count.
+         */
+        public long getFramesReceived() {
+            return m_Received;
+        }// getFramesReceived
+
+        /**
+         * Returns the number of requests sent to the device.
+         *
+         * @return the sent frame count.
+         */
+        public long getFramesSent() {
+            return m_Sent;
+        }// getFramesSent
+
+        /**
+         * Returns the number of requests the device answered.
+         *
+         * @return the answered request count.
+         */
+        public long getAnswered() {
+            return m_Answered;
+        }// getAnswered
+
+        /**
+         * Returns the number of requests repeating an unanswered one
+         * within the retry window.
+         *
+         * @return the retry count.
+         */
+        public long getRetries() {
+            return m_Retries;
+        }// getRetries
+
+        /**
+         * Returns the number of requests the device left unanswered.
+         *
+         * @return the timeout count.
+         */
+        public long getTimeouts() {
+            return m_Timeouts;
+        }// getTimeouts
+
+        private void add(Device other) {
+            m_Received += other.m_Received;
+            m_Sent += other.m_Sent;
+            m_Answered += other.m_Answered;
+            m_Retries += other.m_Retries;
+            m_Timeouts += other.m_Timeouts;
+        }// add
+
+    }// class Device
+
+}// class CaptureStatistics
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.cmd;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.sim.DeviceFarm;
+
+/**
+ * Command line application running a farm of simulated S-Bus devices.
+ *
+ * Usage: <tt>UDPDeviceFarm [port] [relays] [panels] [sensors] [latency ms] [loss rate]</tt>
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class UDPDeviceFarm {
+
+    /**
+     * Private constructor to prevent instantiation.
+     * This class is designed to be used via its main method.
+     */
+    private UDPDeviceFarm() {
+        // Not meant to be instantiated
+    }
+
+    /**
+     * Main entry point, starting the farm until the process is stopped.
+     *
+     * @param args optional port, relay, panel and sensor counts, latency and loss rate.
+     */
+    public static void main(String[] args) {
+        try {
+            int port = args.length > 0 ? Integer.parseInt(args[0]) : Sbus.DEFAULT_PORT;
+            int relays = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+            int panels = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+            int sensors = args.length > 3 ? Integer.parseInt(args[3]) : 300;
+
+            DeviceFarm farm = new DeviceFarm();
+            farm.setPort(port);
+            farm.populate(relays, panels, sensors);
+            if (args.length > 4) {
+                farm.setLatencyMillis(Integer.parseInt(args[4]));
+            }
+            if (args.length > 5) {
+                farm.setLossRate(Double.parseDouble(args[5]));
+            }
+            farm.setUpdateIntervalMillis(1000);
+            farm.start();
+
+            System.out.println("SBus device farm: " + (relays + panels + sensors) + " devices on port " + port);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.facade;
+
+/**
+ * Immutable address of an SBUS device on the bus, made of its
+ * subnet and unit identifiers. Usable as a map key.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public final class DeviceAddress {
+
+    private final int subnetID;
+    private final int unitID;
+
+    /**
+     * Constructs the address of a device.
+     *
+     * @param subnetID the subnet identifier, 0 to 255
+     * @param unitID the unit identifier, 0 to 255
+     * @throws IllegalArgumentException if an identifier is out of range
+     */
+    public DeviceAddress(int subnetID, int unitID) {
+        if (subnetID < 0 || subnetID > 255 || unitID < 0 || unitID > 255) {
+            throw new IllegalArgumentException("Invalid device address: " + subnetID + "." + unitID);
+        }
+        this.subnetID = subnetID;
+        this.unitID = unitID;
+    }
+
+    /**
+     * Gets the subnet identifier.
+     *
+     * @return the subnet identifier
+     */
+    public int getSubnetID() {
+        return subnetID;
+    }
+
+    /**
+     * Gets the unit identifier.
+     *
+     * @return the unit identifier
+     */
+    public int getUnitID() {
+        return unitID;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof DeviceAddress)) {
+            return false;
+        }
+        DeviceAddress other = (DeviceAddress) obj;
+        return subnetID == other.subnetID && unitID == other.unitID;
+    }
+
+    @Override
+    public int hashCode() {
+        return (subnetID << 8) | unitID;
+    }
+
+    @Override
+    public String toString() {
+        return subnetID + "." + unitID;
+    }
+}
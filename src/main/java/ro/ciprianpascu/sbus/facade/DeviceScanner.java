@@ -0,0 +1,308 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.facade;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ro.ciprianpascu.sbus.SbusIOException;
+import ro.ciprianpascu.sbus.io.SbusTransport;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.msg.SbusRequest;
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.msg.SendPriority;
+import ro.ciprianpascu.sbus.net.SbusMessageListener;
+import ro.ciprianpascu.sbus.net.SubscriptionIndex;
+import ro.ciprianpascu.sbus.net.UDPMasterConnection;
+import ro.ciprianpascu.sbus.net.UDPSlaveTerminal;
+import ro.ciprianpascu.sbus.net.UDPTerminal;
+
+/**
+ * Discovers which subnet/unit addresses are populated by sweeping
+ * address ranges with cheap probe requests.
+ *
+ * Probes are sent at a fixed rate, the pacing budget of the sweep,
+ * without waiting for replies; the replies of all devices are collected
+ * concurrently by a listener until a time window after the last probe
+ * left the send queue has passed. The scanner paces the probes itself
+ * on a nanosecond schedule, so a full sweep of 254 x 254 addresses at
+ * the default {@link #DEFAULT_PROBES_PER_SECOND} takes a little over two
+ * minutes; the probe rate should be what the gateway can take. The send
+ * pacing and response cache of the connection are left as they are, so
+ * transactions running during the sweep keep both; a send pacing of the
+ * connection above the probe interval limits the probe rate. Probes
+ * bypass the response cache. Round trips are timed from the moment a
+ * probe is handed to the socket.
+ *
+ * Devices only answer the function codes they implement, so several
+ * probes can be configured; each further probe is only sent to the
+ * addresses that did not answer the previous ones. The replies are
+ * not awaited by a transaction, so other listeners of the connection
+ * receive them as well.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class DeviceScanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceScanner.class);
+
+    /** Default number of probes sent per second */
+    public static final int DEFAULT_PROBES_PER_SECOND = 500;
+
+    /** Highest number of probes sent per second, one every 10 microseconds */
+    public static final int MAX_PROBES_PER_SECOND = 100000;
+
+    /** Default time in milliseconds to wait for replies after the last probe */
+    public static final int DEFAULT_WINDOW_MILLIS = 2000;
+
+    private final UDPMasterConnection connection;
+    private List<Supplier<? extends SbusRequest>> probes = Arrays.asList(ReadStatusChannelsRequest::new);
+    private int probesPerSecond = DEFAULT_PROBES_PER_SECOND;
+    private int windowMillis = DEFAULT_WINDOW_MILLIS;
+
+    /**
+     * Constructs a scanner sending its probes over the given connection.
+     *
+     * @param connection a connected {@link UDPMasterConnection}
+     */
+    public DeviceScanner(UDPMasterConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Sets the probe requests, in the order they are tried. The default
+     * reads the channel status, which relays and dimmers answer.
+     *
+     * @param probes factories of the probe requests; the address is set by the scanner
+     */
+    public void setProbes(List<Supplier<? extends SbusRequest>> probes) {
+        if (probes == null || probes.isEmpty()) {
+            throw new IllegalArgumentException("At least one probe required");
+        }
+        this.probes = new ArrayList<>(probes);
+    }
+
+    /**
+     * Gets the number of probes sent per second.
+     *
+     * @return the probe rate
+     */
+    public int getProbesPerSecond() {
+        return probesPerSecond;
+    }
+
+    /**
+     * Sets the number of probes sent per second, the pacing budget of the sweep.
+     *
+     * @param probesPerSecond the probe rate, 1 to {@link #MAX_PROBES_PER_SECOND}
+     */
+    public void setProbesPerSecond(int probesPerSecond) {
+        if (probesPerSecond < 1 || probesPerSecond > MAX_PROBES_PER_SECOND) {
+            throw new IllegalArgumentException("Invalid probe rate: " + probesPerSecond);
+        }
+        this.probesPerSecond = probesPerSecond;
+    }
+
+    /**
+     * Gets the time replies are awaited after the last probe.
+     *
+     * @return the window in milliseconds
+     */
+    public int getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Sets the time replies are awaited after the last probe; it should
+     * exceed the slowest round trip expected on the bus.
+     *
+     * @param windowMillis the window in milliseconds
+     */
+    public void setWindowMillis(int windowMillis) {
+        this.windowMillis = Math.max(0, windowMillis);
+    }
+
+    /**
+     * Sweeps all unicast addresses, subnets and units 1 to 254;
+     * 255 is the broadcast address.
+     *
+     * @return the devices found, ordered by address
+     * @throws InterruptedException if the sweep is interrupted
+     */
+    public List<DiscoveredDevice> scan() throws InterruptedException {
+        return scan(1, 254, 1, 254);
+    }
+
+    /**
+     * Sweeps the given address ranges.
+     *
+     * @param firstSubnet the first subnet to probe
+     * @param lastSubnet the last subnet to probe, inclusive
+     * @param firstUnit the first unit to probe in every subnet
+     * @param lastUnit the last unit to probe in every subnet, inclusive
+     * @return the devices found, ordered by address
+     * @throws InterruptedException if the sweep is interrupted
+     */
+    public List<DiscoveredDevice> scan(int firstSubnet, int lastSubnet, int firstUnit, int lastUnit)
+            throws InterruptedException {
+        // validates the ranges
+        new DeviceAddress(firstSubnet, firstUnit);
+        new DeviceAddress(lastSubnet, lastUnit);
+
+        SbusTransport transport = connection.getSbusTransport();
+        UDPTerminal terminal = connection.getTerminal();
+        Map<Integer, DiscoveredDevice> found = new ConcurrentHashMap<>();
+        // time each probe was queued, replaced by the time it was sent, by probe and address
+        AtomicLongArray sent = new AtomicLongArray(probes.size() << 16);
+        int[] functionCodes = new int[probes.size()];
+        AtomicInteger phase = new AtomicInteger();
+        AtomicInteger probesSent = new AtomicInteger();
+        UDPSlaveTerminal.FrameSentListener sentListener = (datagram, nanos) -> {
+            if (datagram.length <= 24) {
+                return;
+            }
+            int p = phase.get();
+            int functionCode = ((datagram[21] & 0xFF) << 8) | (datagram[22] & 0xFF);
+            int index = (p << 16) | ((datagram[23] & 0xFF) << 8) | (datagram[24] & 0xFF);
+            if (functionCode == functionCodes[p] && sent.get(index) != 0) {
+                sent.set(index, nanos);
+                probesSent.incrementAndGet();
+            }
+        };
+        List<SbusMessageListener> listeners = new ArrayList<>();
+        long interval = 1000000000L / probesPerSecond;
+        if (terminal instanceof UDPSlaveTerminal) {
+            ((UDPSlaveTerminal) terminal).addFrameSentListener(sentListener);
+        }
+        try {
+            for (int p = 0; p < probes.size(); p++) {
+                functionCodes[p] = probes.get(p).get().getFunctionCode();
+                int probe = p;
+                SbusMessageListener listener = response -> {
+                    long now = System.nanoTime();
+                    int key = (response.getSourceSubnetID() << 8) | response.getSourceUnitID();
+                    long at = sent.get((probe << 16) | key);
+                    if (at != 0) {
+                        found.putIfAbsent(key, discovered(response, functionCodes[probe], now - at));
+                    }
+                };
+                transport.subscribe(SubscriptionIndex.ANY, SubscriptionIndex.ANY, functionCodes[p] + 1, listener);
+                listeners.add(listener);
+            }
+
+            long next = System.nanoTime();
+            for (int p = 0; p < probes.size(); p++) {
+                phase.set(p);
+                probesSent.set(0);
+                int written = 0;
+                for (int subnet = firstSubnet; subnet <= lastSubnet; subnet++) {
+                    for (int unit = firstUnit; unit <= lastUnit; unit++) {
+                        int key = (subnet << 8) | unit;
+                        if (found.containsKey(key)) {
+                            continue;
+                        }
+                        long now = System.nanoTime();
+                        if (now < next) {
+                            LockSupport.parkNanos(next - now);
+                            if (Thread.interrupted()) {
+                                throw new InterruptedException();
+                            }
+                        }
+                        next += interval;
+                        SbusRequest request = probes.get(p).get();
+                        request.setSubnetID(subnet);
+                        request.setUnitID(unit);
+                        // probes must not hold up interactive traffic
+                        request.setPriority(SendPriority.BACKGROUND);
+                        // probes must be sent, not answered from the cache
+                        request.setBypassResponseCache(true);
+                        sent.set((p << 16) | key, System.nanoTime());
+                        try {
+                            transport.writeMessage(request);
+                            written++;
+                        } catch (SbusIOException e) {
+                            logger.debug("Failed to probe {}.{}: {}", subnet, unit, e.getMessage());
+                        }
+                    }
+                }
+                if (terminal instanceof UDPSlaveTerminal) {
+                    awaitSent(probesSent, written, interval);
+                }
+                // let the replies to this probe arrive before choosing who gets the next
+                Thread.sleep(windowMillis);
+            }
+        } finally {
+            if (terminal instanceof UDPSlaveTerminal) {
+                ((UDPSlaveTerminal) terminal).removeFrameSentListener(sentListener);
+            }
+            for (SbusMessageListener listener : listeners) {
+                transport.removeMessageListener(listener);
+            }
+        }
+
+        List<DiscoveredDevice> devices = new ArrayList<>(found.values());
+        devices.sort(Comparator.comparingInt(
+                (DiscoveredDevice d) -> (d.getAddress().getSubnetID() << 8) | d.getAddress().getUnitID()));
+        logger.debug("Discovered {} devices in subnets {}-{}, units {}-{}", devices.size(), firstSubnet, lastSubnet,
+                firstUnit, lastUnit);
+        return devices;
+    }
+
+    /**
+     * Waits until the probes still queued have left the socket, so
+     * the reply window starts after the last probe was sent. Gives up
+     * when no probe was sent for a whole window, e.g. on send errors.
+     */
+    private void awaitSent(AtomicInteger probesSent, int written, long interval) throws InterruptedException {
+        // the send pacing of the connection may space the probes wider than the scanner
+        long spacing = Math.max(interval, TimeUnit.MILLISECONDS.toNanos(connection.getSendPacingMillis()));
+        long stall = Math.max(TimeUnit.MILLISECONDS.toNanos(windowMillis),
+                spacing + TimeUnit.MILLISECONDS.toNanos(100));
+        int last = probesSent.get();
+        long progress = System.nanoTime();
+        while (last < written) {
+            TimeUnit.NANOSECONDS.sleep(Math.max(spacing, TimeUnit.MILLISECONDS.toNanos(1)));
+            int count = probesSent.get();
+            long now = System.nanoTime();
+            if (count != last) {
+                last = count;
+                progress = now;
+            } else if (now - progress > stall) {
+                logger.debug("{} of {} probes left the send queue", count, written);
+                return;
+            }
+        }
+    }
+
+    private static DiscoveredDevice discovered(SbusResponse response, int functionCode, long nanos) {
+        return new DiscoveredDevice(new DeviceAddress(response.getSourceSubnetID(), response.getSourceUnitID()),
+                response.getSourceDeviceType(), functionCode, nanos / 1000);
+    }
+}
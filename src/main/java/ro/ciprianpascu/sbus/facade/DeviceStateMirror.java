@@ -0,0 +1,435 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.facade;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import ro.ciprianpascu.sbus.msg.MotionSensorStatusReport;
+import ro.ciprianpascu.sbus.msg.ReadDryChannelsResponse;
+import ro.ciprianpascu.sbus.msg.ReadNineInOneStatusResponse;
+import ro.ciprianpascu.sbus.msg.ReadRgbwResponse;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.msg.ReadTemperatureResponse;
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.net.SbusMessageListener;
+import ro.ciprianpascu.sbus.net.SubscriptionIndex;
+import ro.ciprianpascu.sbus.net.UDPMasterConnection;
+import ro.ciprianpascu.sbus.procimg.InputRegister;
+
+/**
+ * Keeps the last known state of every device seen on the bus, so reads
+ * can be served from memory instead of the bus.
+ *
+ * The mirror is a listener fed with the responses read by transactions
+ * and with the unsolicited messages of a connection, see
+ * {@link #attach(UDPMasterConnection)}. State is kept in arrays indexed
+ * directly by the 16-bit device address, subnet in the high byte and
+ * unit in the low byte: scalar values in primitive atomic arrays, channel
+ * levels, temperatures and RGBW colours as arrays replaced as a whole on
+ * every update. Reads are single volatile loads and never lock; a value
+ * read together with its timestamp may be from a newer update.
+ *
+ * Values never reported read as {@link #UNKNOWN}, their timestamp as 0.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class DeviceStateMirror implements SbusMessageListener {
+
+    /** Value returned for state never reported */
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    /**
+     * The kinds of state kept per device, each with its own timestamp.
+     */
+    public enum Field {
+        /** Channel levels of relays and dimmers */
+        CHANNELS,
+        /** Temperature sensor values */
+        TEMPERATURES,
+        /** Dry contact states */
+        DRY_CONTACTS,
+        /** Light level */
+        LUX,
+        /** Motion state */
+        MOTION,
+        /** RGBW colours per loop */
+        RGBW
+    }
+
+    private static final int DEVICES = 0x10000;
+    private static final int FIELDS = Field.values().length;
+
+    private final AtomicReferenceArray<int[]> channels = new AtomicReferenceArray<>(DEVICES);
+    private final AtomicReferenceArray<int[]> temperatures = new AtomicReferenceArray<>(DEVICES);
+    // per loop red, green, blue and white from the high to the low byte, -1 if never reported
+    private final AtomicReferenceArray<long[]> rgbw = new AtomicReferenceArray<>(DEVICES);
+    private final AtomicIntegerArray temperatureUnits = new AtomicIntegerArray(DEVICES);
+    // contact count in the high half, bit n of the low half set if contact n is open
+    private final AtomicIntegerArray dryContacts = new AtomicIntegerArray(DEVICES);
+    private final AtomicIntegerArray lux = new AtomicIntegerArray(DEVICES);
+    private final AtomicIntegerArray motion = new AtomicIntegerArray(DEVICES);
+    private final AtomicLongArray updated = new AtomicLongArray(DEVICES * FIELDS);
+
+    /**
+     * Subscribes this mirror to all responses and unsolicited messages
+     * of a connection.
+     *
+     * @param connection a connected {@link UDPMasterConnection}
+     */
+    public void attach(UDPMasterConnection connection) {
+        connection.subscribe(SubscriptionIndex.ANY, SubscriptionIndex.ANY, SubscriptionIndex.ANY, this);
+        connection.subscribeResponses(SubscriptionIndex.ANY, SubscriptionIndex.ANY, SubscriptionIndex.ANY, this);
+    }
+
+    /**
+     * Stops updating this mirror from a connection; the state is kept.
+     *
+     * @param connection the connection given to {@link #attach(UDPMasterConnection)}
+     */
+    public void detach(UDPMasterConnection connection) {
+        connection.removeMessageListener(this);
+    }
+
+    @Override
+    public void onMessageReceived(SbusResponse response) {
+        update(response);
+    }
+
+    /**
+     * Updates the state of the device that sent a message. Messages
+     * carrying no mirrored state are ignored.
+     *
+     * @param response the received {@link SbusResponse}
+     */
+    public void update(SbusResponse response) {
+        int device = indexOf(response.getSourceSubnetID(), response.getSourceUnitID());
+        long now = System.currentTimeMillis();
+        if (response instanceof ReadStatusChannelsResponse) {
+            InputRegister[] registers = ((ReadStatusChannelsResponse) response).getRegisters();
+            if (registers == null || registers.length == 0) {
+                // the device reported a failure
+                return;
+            }
+            int[] levels = new int[registers.length];
+            for (int i = 0; i < levels.length; i++) {
+                levels[i] = registers[i].toUnsignedShort();
+            }
+            channels.set(device, levels);
+            touch(device, Field.CHANNELS, now);
+        } else if (response instanceof ReadTemperatureResponse) {
+            ReadTemperatureResponse temperature = (ReadTemperatureResponse) response;
+            InputRegister[] registers = temperature.getRegisters();
+            int[] values = new int[registers.length];
+            for (int i = 0; i < values.length; i++) {
+                // magnitude in the high byte, sign in the low byte
+                byte[] bytes = registers[i].toBytes();
+                values[i] = bytes[1] != 0 ? -(bytes[0] & 0xFF) : bytes[0] & 0xFF;
+            }
+            temperatureUnits.set(device, temperature.getTemperatureUnit());
+            temperatures.set(device, values);
+            touch(device, Field.TEMPERATURES, now);
+        } else if (response instanceof ReadDryChannelsResponse) {
+            ReadDryChannelsResponse dry = (ReadDryChannelsResponse) response;
+            if (!dry.getStatusValue() || dry.getRegisters() == null) {
+                return;
+            }
+            InputRegister[] registers = dry.getRegisters();
+            int[] states = new int[registers.length];
+            for (int i = 0; i < states.length; i++) {
+                // configuration in the high byte, state in the low byte
+                states[i] = registers[i].toBytes()[1];
+            }
+            setDryContacts(device, states, now);
+        } else if (response instanceof ReadNineInOneStatusResponse) {
+            ReadNineInOneStatusResponse sensor = (ReadNineInOneStatusResponse) response;
+            if (sensor.getRegisters() == null || sensor.getRegisters().length < 4) {
+                return;
+            }
+            setDryContacts(device, new int[] { sensor.getDryContact1Status(), sensor.getDryContact2Status() }, now);
+            lux.set(device, sensor.getLuxValue());
+            touch(device, Field.LUX, now);
+            motion.set(device, sensor.getMotionStatus());
+            touch(device, Field.MOTION, now);
+        } else if (response instanceof MotionSensorStatusReport) {
+            MotionSensorStatusReport report = (MotionSensorStatusReport) response;
+            int contacts = report.getNumberOfDryContacts();
+            if (report.getRegisters() == null || report.getRegisters().length < contacts * 2 + 4) {
+                return;
+            }
+            int[] states = new int[contacts];
+            for (int i = 0; i < contacts; i++) {
+                states[i] = report.getDryContactStatus(i);
+            }
+            setDryContacts(device, states, now);
+            lux.set(device, report.getLuxValue());
+            touch(device, Field.LUX, now);
+            motion.set(device, report.getMotionStatus());
+            touch(device, Field.MOTION, now);
+        } else if (response instanceof ReadRgbwResponse) {
+            ReadRgbwResponse colour = (ReadRgbwResponse) response;
+            InputRegister[] registers = colour.getRegisters();
+            int loop = colour.getLoopNumber();
+            if (!colour.getStatusValue() || registers == null || registers.length < 4 || loop < 0) {
+                return;
+            }
+            long packed = 0;
+            for (int i = 0; i < 4; i++) {
+                packed = (packed << 8) | (registers[i].toUnsignedShort() & 0xFF);
+            }
+            setRgbw(device, loop, packed);
+            touch(device, Field.RGBW, now);
+        }
+    }
+
+    /**
+     * Gets the level of a channel.
+     *
+     * @param subnetID the subnet of the device
+     * @param unitID the unit of the device
+     * @param channel the channel, starting at 0
+     * @return the level, or {@link #UNKNOWN}
+     */
+    public int getChannelLevel(int subnetID, int unitID, int channel) {
+        return valueAt(channels.get(indexOf(subnetID, unitID)), channel);
+    }
+
+    /**
+     * Gets the levels of all channels of a device.
+     *
+     * @param subnetID the subnet of the device
+     * @param unitID the unit of the device
+     * @return a copy of the levels, or null if never reported
+     */
+    public int[] getChannelLevels(int subnetID, int unitID) {
+        int[] levels = channels.get(indexOf(subnetID, unitID));
+        return levels == null ? null : levels.clone();
+    }
+
+    /**
+     * Gets the value of a temperature sensor, in the unit of
+     * {@link #getTemperatureUnit(int, int)}.
+     *
+     * @param subnetID the subnet of the device
+     * @param unitID the unit of the device
+     * @param sensor the sensor, starting at 0
+     * @return the temperature in whole degrees, or {@link #UNKNOWN}
+     */
+    public int getTemperature(int subnetID, int unitID, int sensor) {
+        return valueAt(temperatures.get(indexOf(subnetID, unitID)), sensor);
+    }
+
+    /**
+     * Gets the unit the temperatures of a device were last reported in.
+     *
+     * @param subnetID the subnet of the device
+     * @param unitID the unit of the device
+     * @return the {@link TemperatureUnit}, or null if never reported or unknown
+     */
+    public TemperatureUnit getTemperatureUnit(int subnetID, int unitID) {
+        int device = indexOf(subnetID, unitID);
+        if (temperatures.get(device) == null) {
+            return null;
+        }
+        int unit = temperatureUnits.get(device);
+        for (TemperatureUnit candidate : TemperatureUnit.values()) {
+            if (candidate.getValue() == unit) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the state of a dry contact.
+     *
+     * @param subnetID the subnet of the device
+     * @param unitID the unit of the device
+     * @param contact the contact, starting at 0
+     * @return 1 if open, 0 if closed, or {@link #UNKNOWN}
+     */
+    public int getDryContact(int subnetID, int unitID, int contact) {
+        int packed = dryContacts.get(indexOf(subnetID, unitID));
+        if (contact < 0 || contact >= (packed >>> 16)) {
+            return UNKNOWN;
+        }
+        return (packed >>> contact) & 1;
+    }
+
+    /**
+     * Gets the number of dry contacts a device reported.
+     *
+     * @param subnetID the subnet of the device
+     * @param unitID the unit of the device
+     * @return the contact count, 0 if never reported
+     */
+    public int getDryContactCount(int subnetID, int unitID) {
+        return dryContacts.get(indexOf(subnetID, unitID)) >>> 16;
+    }
+
+    /**
+     * Gets the light level.
+     *
+     * @param subnetID the subnet of the device
+     * @param unitID the unit of the device
+     * @return the lux value, or {@link #UNKNOWN}
+     */
+    public int getLux(int subnetID, int unitID) {
+        int device = indexOf(subnetID, unitID);
+        return updatedAt(device, Field.LUX) == 0 ? UNKNOWN : lux.get(device);
+    }
+
+    /**
+     * Gets the motion state.
+     *
+     * @param subnetID the subnet of the device
+     * @param unitID the unit of the device
+     * @return 1 if motion was detected, 0 if not, or {@link #UNKNOWN}
+     */
+    public int getMotion(int subnetID, int unitID) {
+        int device = indexOf(subnetID, unitID);
+        return updatedAt(device, Field.MOTION) == 0 ? UNKNOWN : motion.get(device);
+    }
+
+    /**
+     * Gets the colour of an RGBW loop.
+     *
+     * @param subnetID the subnet of the device
+     * @param unitID the unit of the device
+     * @param loop the loop number as reported by the device
+     * @return red, green, blue and white, or null if never reported
+     */
+    public int[] getRgbw(int subnetID, int unitID, int loop) {
+        long[] loops = rgbw.get(indexOf(subnetID, unitID));
+        if (loops == null || loop < 0 || loop >= loops.length || loops[loop] < 0) {
+            return null;
+        }
+        long packed = loops[loop];
+        return new int[] { (int) (packed >>> 24) & 0xFF, (int) (packed >>> 16) & 0xFF, (int) (packed >>> 8) & 0xFF,
+                (int) packed & 0xFF };
+    }
+
+    /**
+     * Gets the time a field of a device was last updated.
+     *
+     * @param subnetID the subnet of the device
+     * @param unitID the unit of the device
+     * @param field the {@link Field}
+     * @return the time in milliseconds since the epoch, 0 if never updated
+     */
+    public long getUpdatedMillis(int subnetID, int unitID, Field field) {
+        return updatedAt(indexOf(subnetID, unitID), field);
+    }
+
+    /**
+     * Tests if any state of a device was reported.
+     *
+     * @param subnetID the subnet of the device
+     * @param unitID the unit of the device
+     * @return true if the device is known
+     */
+    public boolean isKnown(int subnetID, int unitID) {
+        int device = indexOf(subnetID, unitID);
+        for (Field field : Field.values()) {
+            if (updatedAt(device, field) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lists the devices with any reported state, by address. This scans
+     * the whole address space and is meant for inventory, not polling.
+     *
+     * @return the addresses of the known devices
+     */
+    public List<DeviceAddress> getKnownDevices() {
+        List<DeviceAddress> known = new ArrayList<>();
+        for (int device = 0; device < DEVICES; device++) {
+            if (isKnown(device >>> 8, device & 0xFF)) {
+                known.add(new DeviceAddress(device >>> 8, device & 0xFF));
+            }
+        }
+        return known;
+    }
+
+    /**
+     * Forgets the state of all devices.
+     */
+    public void clear() {
+        for (int device = 0; device < DEVICES; device++) {
+            channels.set(device, null);
+            temperatures.set(device, null);
+            rgbw.set(device, null);
+            dryContacts.set(device, 0);
+        }
+        for (int i = 0; i < DEVICES * FIELDS; i++) {
+            updated.set(i, 0);
+        }
+    }
+
+    private void setDryContacts(int device, int[] states, long now) {
+        int count = Math.min(states.length, 16);
+        int packed = count << 16;
+        for (int i = 0; i < count; i++) {
+            if (states[i] != 0) {
+                packed |= 1 << i;
+            }
+        }
+        dryContacts.set(device, packed);
+        touch(device, Field.DRY_CONTACTS, now);
+    }
+
+    private void setRgbw(int device, int loop, long packed) {
+        long[] loops;
+        long[] replaced;
+        do {
+            loops = rgbw.get(device);
+            int length = loops == null ? 0 : loops.length;
+            replaced = new long[Math.max(length, loop + 1)];
+            for (int i = length; i < replaced.length; i++) {
+                replaced[i] = -1;
+            }
+            if (loops != null) {
+                System.arraycopy(loops, 0, replaced, 0, length);
+            }
+            replaced[loop] = packed;
+        } while (!rgbw.compareAndSet(device, loops, replaced));
+    }
+
+    private void touch(int device, Field field, long now) {
+        updated.set(device * FIELDS + field.ordinal(), now);
+    }
+
+    private long updatedAt(int device, Field field) {
+        return updated.get(device * FIELDS + field.ordinal());
+    }
+
+    private static int valueAt(int[] values, int index) {
+        return values == null || index < 0 || index >= values.length ? UNKNOWN : values[index];
+    }
+
+    private static int indexOf(int subnetID, int unitID) {
+        return ((subnetID & 0xFF) << 8) | (unitID & 0xFF);
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.facade;
+
+/**
+ * A device found by a {@link DeviceScanner}: its address, the device
+ * type it reported, the probe it answered and the measured round trip.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public final class DiscoveredDevice {
+
+    private final DeviceAddress address;
+    private final int deviceType;
+    private final int functionCode;
+    private final long roundTripMicros;
+
+    /**
+     * Constructs a discovered device.
+     *
+     * @param address the address of the device
+     * @param deviceType the device type from the response
+     * @param functionCode the function code of the probe it answered
+     * @param roundTripMicros the time from the probe to the response, in microseconds
+     */
+    DiscoveredDevice(DeviceAddress address, int deviceType, int functionCode, long roundTripMicros) {
+        this.address = address;
+        this.deviceType = deviceType;
+        this.functionCode = functionCode;
+        this.roundTripMicros = roundTripMicros;
+    }
+
+    /**
+     * Gets the address of the device.
+     *
+     * @return the device address
+     */
+    public DeviceAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Gets the device type the device reported as source of its response.
+     *
+     * @return the device type
+     */
+    public int getDeviceType() {
+        return deviceType;
+    }
+
+    /**
+     * Gets the function code of the probe the device answered.
+     *
+     * @return the request function code
+     */
+    public int getFunctionCode() {
+        return functionCode;
+    }
+
+    /**
+     * Gets the time from queueing the probe to receiving the response,
+     * including the send pacing of the terminal.
+     *
+     * @return the round trip in microseconds
+     */
+    public long getRoundTripMicros() {
+        return roundTripMicros;
+    }
+
+    @Override
+    public String toString() {
+        return address + " type=0x" + Integer.toHexString(0x10000 | deviceType).substring(1).toUpperCase() + " fc=0x"
+                + Integer.toHexString(0x10000 | functionCode).substring(1).toUpperCase() + " rtt="
+                + roundTripMicros + "us";
+    }
+}
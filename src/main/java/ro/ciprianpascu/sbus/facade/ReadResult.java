@@ -0,0 +1,104 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.facade;
+
+import ro.ciprianpascu.sbus.SbusException;
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+
+/**
+ * Outcome of reading one device in a batch: either the typed response
+ * or the error that prevented it, with the number of requests sent.
+ *
+ * @param <T> the type of the response
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public final class ReadResult<T extends SbusResponse> {
+
+    private final DeviceAddress address;
+    private final T response;
+    private final SbusException error;
+    private final int attempts;
+
+    /**
+     * Constructs a result.
+     *
+     * @param address the device that was read
+     * @param response the response, or null if the read failed
+     * @param error the reason of the failure, or null on success
+     * @param attempts the number of requests sent to the device
+     */
+    ReadResult(DeviceAddress address, T response, SbusException error, int attempts) {
+        this.address = address;
+        this.response = response;
+        this.error = error;
+        this.attempts = attempts;
+    }
+
+    /**
+     * Gets the device that was read.
+     *
+     * @return the device address
+     */
+    public DeviceAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Tests if the device answered.
+     *
+     * @return true if a response was received, false otherwise
+     */
+    public boolean isSuccess() {
+        return response != null;
+    }
+
+    /**
+     * Gets the response of the device.
+     *
+     * @return the response, or null if the read failed
+     */
+    public T getResponse() {
+        return response;
+    }
+
+    /**
+     * Gets the reason the read failed: an {@link ro.ciprianpascu.sbus.SbusIOException}
+     * if the device did not answer in time, an {@link ro.ciprianpascu.sbus.SbusSlaveException}
+     * if it answered with an exception.
+     *
+     * @return the error, or null on success
+     */
+    public SbusException getError() {
+        return error;
+    }
+
+    /**
+     * Gets the number of requests sent to the device.
+     *
+     * @return the attempt count
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    @Override
+    public String toString() {
+        return address + (isSuccess() ? " OK" : " FAILED (" + error.getMessage() + ")") + " after " + attempts
+                + " attempt(s)";
+    }
+}
@@ -1,12 +1,36 @@
 package ro.ciprianpascu.sbus.facade;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
+import ro.ciprianpascu.sbus.Sbus;
 import ro.ciprianpascu.sbus.SbusException;
+import ro.ciprianpascu.sbus.SbusIOException;
+import ro.ciprianpascu.sbus.SbusSlaveException;
+import ro.ciprianpascu.sbus.io.CircuitBreaker;
+import ro.ciprianpascu.sbus.io.RetryPolicy;
+import ro.ciprianpascu.sbus.io.SbusTransport;
 import ro.ciprianpascu.sbus.io.SbusUDPTransaction;
+import ro.ciprianpascu.sbus.msg.ExceptionResponse;
+import ro.ciprianpascu.sbus.msg.ReadNineInOneStatusRequest;
+import ro.ciprianpascu.sbus.msg.ReadNineInOneStatusResponse;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.msg.ReadTemperatureRequest;
+import ro.ciprianpascu.sbus.msg.ReadTemperatureResponse;
 import ro.ciprianpascu.sbus.msg.SbusRequest;
 import ro.ciprianpascu.sbus.msg.SbusResponse;
 import ro.ciprianpascu.sbus.net.SbusMessageListener;
+import ro.ciprianpascu.sbus.net.SubscriptionIndex;
 import ro.ciprianpascu.sbus.net.UDPMasterConnection;
 
 /**
@@ -39,6 +63,22 @@ public class SbusAdapter {
         }
     }
 
+    /**
+     * Initializes a new SBUS adapter on a connection configured by the caller,
+     * for example with a specific local port or send pacing.
+     *
+     * @param connection the connection to use, connected if it is not yet
+     * @throws SbusException If connection initialization fails
+     */
+    public SbusAdapter(UDPMasterConnection connection) throws SbusException {
+        try {
+            this.connection = connection;
+            connection.connect();
+        } catch (Exception e) {
+            throw new SbusException("Error initializing SBUS connection: " + e.getMessage());
+        }
+    }
+
     /**
      * Executes a synchronous SBUS transaction.
      *
@@ -53,6 +93,250 @@ public class SbusAdapter {
         return transaction.getResponse();
     }
 
+    /**
+     * Reads the temperatures of several devices at once.
+     *
+     * @param devices the devices to read
+     * @param unit the unit the temperatures are reported in
+     * @return the result of every device, in the order given
+     * @see #readAll(Collection, Function, Class)
+     */
+    public Map<DeviceAddress, ReadResult<ReadTemperatureResponse>> readTemperatures(
+            Collection<DeviceAddress> devices, TemperatureUnit unit) {
+        return readAll(devices, device -> {
+            ReadTemperatureRequest request = new ReadTemperatureRequest();
+            request.setTemperatureUnit(unit.getValue());
+            return request;
+        }, ReadTemperatureResponse.class);
+    }
+
+    /**
+     * Reads the channel levels of several devices at once.
+     *
+     * @param devices the devices to read
+     * @return the result of every device, in the order given
+     * @see #readAll(Collection, Function, Class)
+     */
+    public Map<DeviceAddress, ReadResult<ReadStatusChannelsResponse>> readChannelStatus(
+            Collection<DeviceAddress> devices) {
+        return readAll(devices, device -> new ReadStatusChannelsRequest(), ReadStatusChannelsResponse.class);
+    }
+
+    /**
+     * Reads the status of several 9-in-1 sensors at once.
+     *
+     * @param devices the devices to read
+     * @return the result of every device, in the order given
+     * @see #readAll(Collection, Function, Class)
+     */
+    public Map<DeviceAddress, ReadResult<ReadNineInOneStatusResponse>> readNineInOne(
+            Collection<DeviceAddress> devices) {
+        return readAll(devices, device -> new ReadNineInOneStatusRequest(), ReadNineInOneStatusResponse.class);
+    }
+
+    /**
+     * Reads several devices at once. The requests of all devices are sent
+     * before any response is awaited, so the batch takes about one timeout
+     * plus the send pacing of each request, rather than a round trip per
+     * device. Responses are handed to the batch as they arrive, see
+     * {@link SbusTransport#expectResponse(String, java.util.function.Consumer)},
+     * so they are not lost to the bounded response cache of the transport
+     * however many devices are read. Devices that do not answer are asked
+     * again, as often as the {@link RetryPolicy} of the function code
+     * allows, after its backoff.
+     * A failing device never fails the batch; its result holds the error.
+     *
+     * The batch should not run concurrently with a transaction reading
+     * the same device with the same function code.
+     *
+     * @param devices the devices to read; duplicates are read once
+     * @param requests creates the request of a device; the address is set by the adapter
+     * @param type the type of the expected responses
+     * @param <T> the type of the expected responses
+     * @return the result of every device, in the order given
+     */
+    public <T extends SbusResponse> Map<DeviceAddress, ReadResult<T>> readAll(Collection<DeviceAddress> devices,
+            Function<DeviceAddress, SbusRequest> requests, Class<T> type) {
+        Map<DeviceAddress, BatchRead> reads = new LinkedHashMap<>();
+        for (DeviceAddress device : devices) {
+            if (!reads.containsKey(device)) {
+                SbusRequest request = requests.apply(device);
+                request.setSubnetID(device.getSubnetID());
+                request.setUnitID(device.getUnitID());
+                reads.put(device, new BatchRead(request));
+            }
+        }
+        SbusTransport transport = connection.getSbusTransport();
+        List<BatchRead> pending = new ArrayList<>(reads.values());
+        for (int round = 1; !pending.isEmpty(); round++) {
+            if (round > 1 && !backoff(pending.get(0).policy, round - 1)) {
+                break;
+            }
+            BlockingQueue<BatchRead> arrived = new LinkedBlockingQueue<>();
+            List<BatchRead> sent = new ArrayList<>();
+            int awaited = 0;
+            for (BatchRead read : pending) {
+                if (read.send(transport, arrived)) {
+                    sent.add(read);
+                    if (read.handled) {
+                        awaited++;
+                    }
+                }
+            }
+            // the last request leaves after the pacing of all the others
+            long deadline = System.nanoTime()
+                    + (connection.getTimeout() + (long) connection.getSendPacingMillis() * sent.size()) * 1000000L;
+            try {
+                for (; awaited > 0; awaited--) {
+                    BatchRead read = arrived.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (read == null) {
+                        break;
+                    }
+                    read.complete(transport, type, read.arrival);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (BatchRead read : sent) {
+                if (!read.handled) {
+                    read.receive(transport, type, Math.max(1, (deadline - System.nanoTime()) / 1000000L));
+                } else if (read.arrival == null) {
+                    read.expire(transport);
+                }
+            }
+            // responses that arrived while the others expired
+            for (BatchRead read; (read = arrived.poll()) != null;) {
+                if (!read.done) {
+                    read.complete(transport, type, read.arrival);
+                }
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            pending.removeIf(read -> read.done);
+        }
+
+        Map<DeviceAddress, ReadResult<T>> results = new LinkedHashMap<>();
+        for (Map.Entry<DeviceAddress, BatchRead> entry : reads.entrySet()) {
+            BatchRead read = entry.getValue();
+            results.put(entry.getKey(),
+                    new ReadResult<>(entry.getKey(), type.cast(read.response), read.error, read.attempts));
+        }
+        return results;
+    }
+
+    private static boolean backoff(RetryPolicy policy, int retry) {
+        long millis = policy.getBackoffMillis(retry, ThreadLocalRandom.current());
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * State of reading one device in a batch.
+     */
+    private static final class BatchRead {
+
+        final SbusRequest request;
+        final String transactionID;
+        final RetryPolicy policy;
+        final int maxAttempts;
+        int attempts;
+        SbusResponse response;
+        SbusException error = new SbusIOException("Not read");
+        boolean done;
+        // true if the transport hands the response of the current attempt to the batch
+        boolean handled;
+        volatile SbusResponse arrival;
+
+        BatchRead(SbusRequest request) {
+            this.request = request;
+            this.transactionID = request.getSubnetID() + "_" + request.getUnitID() + "_" + request.getFunctionCode();
+            this.policy = RetryPolicy.forFunctionCode(request.getFunctionCode());
+            this.maxAttempts = policy.getAttempts(Sbus.DEFAULT_RETRIES);
+        }
+
+        boolean send(SbusTransport transport, BlockingQueue<BatchRead> arrived) {
+            CircuitBreaker breaker = transport.getCircuitBreaker();
+            if (breaker != null && !breaker.allowRequest(request.getSubnetID(), request.getUnitID())) {
+                if (transport.getMetrics() != null) {
+                    transport.getMetrics().circuitRejected();
+                }
+                error = new SbusIOException(
+                        "Circuit open for device " + request.getSubnetID() + "." + request.getUnitID());
+                done = true;
+                return false;
+            }
+            attempts++;
+            if (attempts > 1 && transport.getMetrics() != null) {
+                transport.getMetrics().retry();
+            }
+            // register before writing, a fast reply must not be taken for an unsolicited message
+            arrival = null;
+            handled = transport.expectResponse(transactionID, res -> {
+                arrival = res;
+                arrived.add(this);
+            });
+            try {
+                transport.writeMessage(request);
+                return true;
+            } catch (SbusIOException e) {
+                transport.cancelResponse(transactionID);
+                fail(e);
+                return false;
+            }
+        }
+
+        void receive(SbusTransport transport, Class<? extends SbusResponse> type, long timeoutMillis) {
+            SbusResponse res;
+            try {
+                res = transport.readResponse(transactionID, (int) timeoutMillis);
+            } catch (SbusIOException e) {
+                if (transport.getCircuitBreaker() != null) {
+                    transport.getCircuitBreaker().recordFailure(request.getSubnetID(), request.getUnitID());
+                }
+                fail(e);
+                return;
+            }
+            complete(transport, type, res);
+        }
+
+        void expire(SbusTransport transport) {
+            transport.expireResponse(transactionID);
+            if (transport.getCircuitBreaker() != null) {
+                transport.getCircuitBreaker().recordFailure(request.getSubnetID(), request.getUnitID());
+            }
+            fail(new SbusIOException("No response received for transaction: " + transactionID));
+        }
+
+        void complete(SbusTransport transport, Class<? extends SbusResponse> type, SbusResponse res) {
+            if (transport.getCircuitBreaker() != null) {
+                transport.getCircuitBreaker().recordSuccess(request.getSubnetID(), request.getUnitID());
+            }
+            if (res instanceof ExceptionResponse) {
+                error = new SbusSlaveException(((ExceptionResponse) res).getExceptionCode());
+            } else if (type.isInstance(res)) {
+                res.setAttempts(attempts);
+                response = res;
+                error = null;
+            } else {
+                error = new SbusIOException("Unexpected response: " + res.getClass().getSimpleName());
+            }
+            done = true;
+        }
+
+        private void fail(SbusIOException e) {
+            error = e;
+            done = attempts >= maxAttempts;
+        }
+    }
+
     /**
      * Adds a message listener for unsolicited SBUS messages.
      * The listener will be notified when messages arrive that are not
@@ -84,6 +368,25 @@ public class SbusAdapter {
         connection.removeMessageListener(listener);
     }
 
+    /**
+     * Subscribes a listener to the unsolicited messages sent by the given
+     * device with the given function code, so it is only notified about
+     * the messages it is interested in. Any of the filter values may be
+     * {@link SubscriptionIndex#ANY}.
+     *
+     * @param subnetID the source subnet of the messages
+     * @param unitID the source unit of the messages
+     * @param functionCode the function code of the messages
+     * @param listener the listener to notify
+     * @throws IllegalStateException if the connection is not established
+     */
+    public void subscribe(int subnetID, int unitID, int functionCode, SbusMessageListener listener) {
+        if (connection == null) {
+            throw new IllegalStateException("Connection not established. Cannot subscribe listener.");
+        }
+        connection.subscribe(subnetID, unitID, functionCode, listener);
+    }
+
     /**
      * Closes the UDP connection to the SBUS device.
      * This method should be called when the adapter is no longer needed to free system resources.
@@ -0,0 +1,335 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ro.ciprianpascu.sbus.jfr.CircuitStateEvent;
+
+/**
+ * Class implementing a circuit breaker per device address,
+ * consulted by {@link SbusUDPTransaction} before every attempt.
+ *
+ * A device whose attempts time out a number of times in a row, the
+ * failure threshold, gets its circuit opened: transactions with it
+ * fail at once instead of waiting for every retry, and stop taking
+ * send slots from devices that answer. Once the open time has passed
+ * the circuit is half open and a single attempt is let through as a
+ * probe; a response closes the circuit, a timeout opens it again.
+ *
+ * Fire-and-forget requests are never rejected, they cost no waiting
+ * and a write switching a device back on must not be lost.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /** Default number of attempts in a row without response that open a circuit */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 6;
+
+    /** Default time in milliseconds a circuit stays open before a probe */
+    public static final int DEFAULT_OPEN_MILLIS = 30000;
+
+    /**
+     * Enumeration of the states of a circuit.
+     */
+    public enum State {
+        /** Requests pass, timeouts are counted */
+        CLOSED,
+        /** Requests fail fast */
+        OPEN,
+        /** A single probe is on its way */
+        HALF_OPEN
+    }
+
+    /**
+     * Interface for receiving the state changes of circuits.
+     */
+    public interface Listener {
+        /**
+         * Called when the circuit of a device changes state,
+         * on the thread executing the transaction.
+         *
+         * @param subnetID the subnet of the device.
+         * @param unitID the unit of the device.
+         * @param from the previous {@link State}.
+         * @param to the new {@link State}.
+         */
+        void circuitStateChanged(int subnetID, int unitID, State from, State to);
+    }
+
+    private final Map<Integer, Circuit> m_Circuits = new ConcurrentHashMap<>();
+    private final List<Listener> m_Listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean m_Enabled = true;
+    private volatile int m_FailureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private volatile int m_OpenMillis = DEFAULT_OPEN_MILLIS;
+
+    /**
+     * Tests if an attempt with a device may be made. For a half open
+     * circuit the first caller is granted the probe and must report
+     * its outcome with {@link #recordSuccess} or {@link #recordFailure}.
+     *
+     * @param subnetID the subnet of the device.
+     * @param unitID the unit of the device.
+     * @return true if the attempt may be made, false to fail fast.
+     */
+    public boolean allowRequest(int subnetID, int unitID) {
+        if (!m_Enabled) {
+            return true;
+        }
+        Circuit circuit = m_Circuits.get(keyFor(subnetID, unitID));
+        if (circuit == null) {
+            return true;
+        }
+        State from;
+        synchronized (circuit) {
+            long now = System.currentTimeMillis();
+            from = circuit.m_State;
+            if (from == State.CLOSED) {
+                return true;
+            }
+            // a probe whose outcome was never reported must not block forever either
+            if (now - circuit.m_Since < m_OpenMillis) {
+                return false;
+            }
+            circuit.m_State = State.HALF_OPEN;
+            circuit.m_Since = now;
+        }
+        if (from != State.HALF_OPEN) {
+            fireStateChanged(subnetID, unitID, from, State.HALF_OPEN);
+        }
+        return true;
+    }// allowRequest
+
+    /**
+     * Records a response of a device, closing its circuit.
+     *
+     * @param subnetID the subnet of the device.
+     * @param unitID the unit of the device.
+     */
+    public void recordSuccess(int subnetID, int unitID) {
+        Circuit circuit = m_Circuits.get(keyFor(subnetID, unitID));
+        if (circuit == null) {
+            return;
+        }
+        State from;
+        synchronized (circuit) {
+            from = circuit.m_State;
+            circuit.m_Failures = 0;
+            circuit.m_State = State.CLOSED;
+        }
+        if (from != State.CLOSED) {
+            fireStateChanged(subnetID, unitID, from, State.CLOSED);
+        }
+    }// recordSuccess
+
+    /**
+     * Records an attempt with a device that got no response,
+     * opening its circuit at the failure threshold or when it
+     * was the probe of a half open circuit.
+     *
+     * @param subnetID the subnet of the device.
+     * @param unitID the unit of the device.
+     */
+    public void recordFailure(int subnetID, int unitID) {
+        if (!m_Enabled) {
+            return;
+        }
+        Circuit circuit = m_Circuits.computeIfAbsent(keyFor(subnetID, unitID), k -> new Circuit());
+        State from;
+        synchronized (circuit) {
+            from = circuit.m_State;
+            circuit.m_Failures++;
+            if (from == State.OPEN || (from == State.CLOSED && circuit.m_Failures < m_FailureThreshold)) {
+                return;
+            }
+            circuit.m_State = State.OPEN;
+            circuit.m_Since = System.currentTimeMillis();
+        }
+        fireStateChanged(subnetID, unitID, from, State.OPEN);
+    }// recordFailure
+
+    /**
+     * Returns the state of the circuit of a device.
+     *
+     * @param subnetID the subnet of the device.
+     * @param unitID the unit of the device.
+     * @return the {@link State}.
+     */
+    public State getState(int subnetID, int unitID) {
+        Circuit circuit = m_Circuits.get(keyFor(subnetID, unitID));
+        if (circuit == null) {
+            return State.CLOSED;
+        }
+        synchronized (circuit) {
+            return circuit.m_State;
+        }
+    }// getState
+
+    /**
+     * Returns the devices whose circuit is not closed.
+     *
+     * @return one "subnet.unit STATE" line per device.
+     */
+    public String[] getOpenCircuits() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<Integer, Circuit> entry : m_Circuits.entrySet()) {
+            State state;
+            synchronized (entry.getValue()) {
+                state = entry.getValue().m_State;
+            }
+            if (state != State.CLOSED) {
+                int key = entry.getKey();
+                lines.add((key >>> 8) + "." + (key & 0xFF) + " " + state);
+            }
+        }
+        lines.sort(null);
+        return lines.toArray(new String[0]);
+    }// getOpenCircuits
+
+    /**
+     * Closes all circuits, e.g. after the bus was repaired.
+     */
+    public void reset() {
+        for (Map.Entry<Integer, Circuit> entry : m_Circuits.entrySet()) {
+            int key = entry.getKey();
+            recordSuccess(key >>> 8, key & 0xFF);
+        }
+        m_Circuits.clear();
+    }// reset
+
+    /**
+     * Adds a listener for the state changes of circuits.
+     *
+     * @param listener the {@link Listener}.
+     */
+    public void addListener(Listener listener) {
+        m_Listeners.add(listener);
+    }// addListener
+
+    /**
+     * Removes a listener added with {@link #addListener(Listener)}.
+     *
+     * @param listener the {@link Listener}.
+     */
+    public void removeListener(Listener listener) {
+        m_Listeners.remove(listener);
+    }// removeListener
+
+    /**
+     * Enables or disables this breaker. A disabled breaker lets
+     * every attempt pass and records nothing.
+     *
+     * @param enabled true to enable, false to disable.
+     */
+    public void setEnabled(boolean enabled) {
+        m_Enabled = enabled;
+        if (!enabled) {
+            reset();
+        }
+    }// setEnabled
+
+    /**
+     * Tests if this breaker is enabled.
+     *
+     * @return true if enabled, false otherwise.
+     */
+    public boolean isEnabled() {
+        return m_Enabled;
+    }// isEnabled
+
+    /**
+     * Sets the number of attempts in a row without response
+     * that open the circuit of a device.
+     *
+     * @param threshold the failure threshold, at least 1.
+     */
+    public void setFailureThreshold(int threshold) {
+        m_FailureThreshold = Math.max(1, threshold);
+    }// setFailureThreshold
+
+    /**
+     * Returns the number of attempts in a row without response
+     * that open the circuit of a device.
+     *
+     * @return the failure threshold.
+     */
+    public int getFailureThreshold() {
+        return m_FailureThreshold;
+    }// getFailureThreshold
+
+    /**
+     * Sets the time an open circuit fails fast before a probe is let through.
+     *
+     * @param millis the open time in milliseconds.
+     */
+    public void setOpenMillis(int millis) {
+        m_OpenMillis = Math.max(0, millis);
+    }// setOpenMillis
+
+    /**
+     * Returns the time an open circuit fails fast before a probe is let through.
+     *
+     * @return the open time in milliseconds.
+     */
+    public int getOpenMillis() {
+        return m_OpenMillis;
+    }// getOpenMillis
+
+    private void fireStateChanged(int subnetID, int unitID, State from, State to) {
+        logger.debug("Circuit of {}.{} changed from {} to {}", subnetID, unitID, from, to);
+        CircuitStateEvent event = new CircuitStateEvent();
+        if (event.shouldCommit()) {
+            event.subnetID = subnetID;
+            event.unitID = unitID;
+            event.fromState = from.name();
+            event.toState = to.name();
+            event.commit();
+        }
+        for (Listener listener : m_Listeners) {
+            try {
+                listener.circuitStateChanged(subnetID, unitID, from, to);
+            } catch (RuntimeException ex) {
+                logger.warn("Circuit listener failed: {}", ex.getMessage());
+            }
+        }
+    }// fireStateChanged
+
+    private static int keyFor(int subnetID, int unitID) {
+        return ((subnetID & 0xFF) << 8) | (unitID & 0xFF);
+    }// keyFor
+
+    /**
+     * The circuit of one device, guarded by its own monitor.
+     */
+    private static final class Circuit {
+        State m_State = State.CLOSED;
+        int m_Failures;
+        long m_Since;
+    }// class Circuit
+
+}// class CircuitBreaker
@@ -0,0 +1,229 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.io;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.util.RingBuffer;
+
+/**
+ * Class implementing a pipeline of decoder threads fed by the
+ * thread receiving from the socket.
+ *
+ * Frames are assigned to a worker by the device that sent them, so
+ * the frames of every device are decoded in arrival order while
+ * frames of different devices are decoded in parallel. Each worker
+ * owns its {@link BytesInputStream}, so CRC checks and decoding need
+ * no shared lock. A full worker queue drops its oldest frame, like
+ * the receive queue of the terminal, and counts the drop.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class DecodePipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(DecodePipeline.class);
+
+    /** Default number of frames a worker queue holds */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final AtomicInteger m_Instances = new AtomicInteger();
+
+    private final Worker[] m_Workers;
+    private final LongAdder m_Decoded = new LongAdder();
+    private final LongAdder m_Failed = new LongAdder();
+    private volatile boolean m_Running = true;
+
+    /**
+     * Decodes a single frame on a worker thread.
+     */
+    @FunctionalInterface
+    public interface FrameDecoder {
+
+        /**
+         * Decodes a frame, starting with the S-Bus length byte.
+         *
+         * @param frame the raw frame.
+         * @param in the {@link BytesInputStream} owned by the calling worker.
+         * @throws Exception if the frame cannot be decoded.
+         */
+        void decode(byte[] frame, BytesInputStream in) throws Exception;
+    }
+
+    /**
+     * Constructs and starts a new {@link DecodePipeline}.
+     *
+     * @param decoder the {@link FrameDecoder} the workers call.
+     * @param workers the number of decoder threads.
+     * @param capacity the number of frames each worker queue holds.
+     */
+    public DecodePipeline(FrameDecoder decoder, int workers, int capacity) {
+        if (decoder == null || workers < 1) {
+            throw new IllegalArgumentException("Decoder and at least one worker required");
+        }
+        int instance = m_Instances.incrementAndGet();
+        m_Workers = new Worker[workers];
+        for (int i = 0; i < workers; i++) {
+            m_Workers[i] = new Worker(decoder, capacity);
+            Thread thread = new Thread(m_Workers[i], "SbusDecoder-" + instance + "-" + i);
+            thread.setDaemon(true);
+            m_Workers[i].m_Thread = thread;
+            thread.start();
+        }
+    }// constructor
+
+    /**
+     * Hands a frame to the worker of its source device; never waits.
+     *
+     * @param frame the raw frame, starting with the S-Bus length byte.
+     */
+    public void submit(byte[] frame) {
+        if (!m_Running) {
+            return;
+        }
+        Worker worker = m_Workers[workerFor(frame, m_Workers.length)];
+        try {
+            worker.m_Queue.put(frame);
+        } catch (InterruptedException ex) {
+            // drop policies do not wait
+            Thread.currentThread().interrupt();
+        }
+    }// submit
+
+    /**
+     * Stops the workers, discarding the frames still queued.
+     */
+    public void stop() {
+        m_Running = false;
+        for (Worker worker : m_Workers) {
+            worker.m_Queue.clear();
+            worker.m_Thread.interrupt();
+        }
+    }// stop
+
+    /**
+     * Returns the number of decoder threads.
+     *
+     * @return the worker count.
+     */
+    public int getWorkerCount() {
+        return m_Workers.length;
+    }// getWorkerCount
+
+    /**
+     * Returns the number of frames the decoder handled without
+     * an exception, including frames it discarded.
+     *
+     * @return the decoded count.
+     */
+    public long getDecodedCount() {
+        return m_Decoded.sum();
+    }// getDecodedCount
+
+    /**
+     * Returns the number of frames that failed to decode.
+     *
+     * @return the failed count.
+     */
+    public long getFailedCount() {
+        return m_Failed.sum();
+    }// getFailedCount
+
+    /**
+     * Returns the number of frames dropped because a worker queue was full.
+     *
+     * @return the dropped count.
+     */
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (Worker worker : m_Workers) {
+            dropped += worker.m_Queue.getDroppedCount();
+        }
+        return dropped;
+    }// getDroppedCount
+
+    /**
+     * Returns the number of frames waiting in all worker queues.
+     *
+     * @return the queue depth.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Worker worker : m_Workers) {
+            depth += worker.m_Queue.size();
+        }
+        return depth;
+    }// getQueueDepth
+
+    /**
+     * Returns the worker index for a frame, derived from the
+     * source subnet and unit following the length byte.
+     *
+     * @param frame the raw frame.
+     * @param workers the number of workers.
+     * @return the worker index.
+     */
+    static int workerFor(byte[] frame, int workers) {
+        if (workers == 1 || frame.length < 3) {
+            return 0;
+        }
+        int device = ((frame[1] & 0xFF) << 8) | (frame[2] & 0xFF);
+        return device % workers;
+    }// workerFor
+
+    /**
+     * A decoder thread with its own queue and input stream.
+     */
+    private final class Worker implements Runnable {
+
+        final RingBuffer<byte[]> m_Queue;
+        private final FrameDecoder m_Decoder;
+        private final BytesInputStream m_ByteIn = new BytesInputStream(Sbus.MAX_MESSAGE_LENGTH);
+        Thread m_Thread;
+
+        Worker(FrameDecoder decoder, int capacity) {
+            m_Decoder = decoder;
+            m_Queue = new RingBuffer<>(capacity, RingBuffer.OverflowPolicy.DROP_OLDEST);
+        }// constructor
+
+        @Override
+        public void run() {
+            while (m_Running) {
+                byte[] frame;
+                try {
+                    frame = m_Queue.take();
+                } catch (InterruptedException ex) {
+                    break;
+                }
+                try {
+                    m_Decoder.decode(frame, m_ByteIn);
+                    m_Decoded.increment();
+                } catch (Exception ex) {
+                    m_Failed.increment();
+                    logger.warn("Error decoding received frame: " + ex.getMessage());
+                }
+            }
+        }// run
+
+    }// class Worker
+
+}// class DecodePipeline
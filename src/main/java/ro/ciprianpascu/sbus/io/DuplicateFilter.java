@@ -0,0 +1,152 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.io;
+
+import java.util.Arrays;
+
+/**
+ * Class implementing a small table of the fingerprints of recently
+ * received frames, to recognize the copies a frame arrives in when it
+ * is relayed by more than one gateway or echoed through a bridge.
+ *
+ * A fingerprint is a 64 bit FNV-1a hash of the frame bytes, stored in
+ * a direct mapped table: a frame evicts whatever fingerprint shares its
+ * slot, so the table never grows and a lookup costs one hash. A frame
+ * is a copy if the same fingerprint was recorded within the window.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class DuplicateFilter {
+
+    /** Default time in milliseconds within which an identical frame is a copy */
+    public static final int DEFAULT_WINDOW_MILLIS = 50;
+
+    /** Default number of fingerprints kept */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /** Returned by {@link #check(byte[], long)} for a frame that is not a copy */
+    public static final long NOT_SEEN = Long.MIN_VALUE;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] m_Fingerprints;
+    private final long[] m_Seen;
+    private final int m_Mask;
+    private volatile long m_WindowNanos = DEFAULT_WINDOW_MILLIS * 1000000L;
+
+    /**
+     * Constructs a new {@link DuplicateFilter} with the default capacity.
+     */
+    public DuplicateFilter() {
+        this(DEFAULT_CAPACITY);
+    }// constructor
+
+    /**
+     * Constructs a new {@link DuplicateFilter}.
+     *
+     * @param capacity the number of fingerprints kept, rounded up to a power of two.
+     */
+    public DuplicateFilter(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        m_Fingerprints = new long[size];
+        m_Seen = new long[size];
+        m_Mask = size - 1;
+    }// constructor
+
+    /**
+     * Looks up a frame, recording it unless it is a copy.
+     *
+     * @param frame the frame bytes.
+     * @param nanos the time the frame arrived, from {@link System#nanoTime()}.
+     * @return the arrival time of the earlier copy, or {@link #NOT_SEEN} if the frame was recorded.
+     */
+    public synchronized long check(byte[] frame, long nanos) {
+        long fingerprint = fingerprint(frame);
+        int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & m_Mask;
+        long seen = m_Seen[slot];
+        if (m_Fingerprints[slot] == fingerprint && seen != 0 && nanos - seen <= m_WindowNanos) {
+            return seen;
+        }
+        m_Fingerprints[slot] = fingerprint;
+        // 0 marks an empty slot
+        m_Seen[slot] = nanos == 0 ? 1 : nanos;
+        return NOT_SEEN;
+    }// check
+
+    /**
+     * Records a frame, e.g. a copy that was let through anyway,
+     * so the window of its later copies starts now.
+     *
+     * @param frame the frame bytes.
+     * @param nanos the time the frame arrived, from {@link System#nanoTime()}.
+     */
+    public synchronized void record(byte[] frame, long nanos) {
+        long fingerprint = fingerprint(frame);
+        int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & m_Mask;
+        m_Fingerprints[slot] = fingerprint;
+        m_Seen[slot] = nanos == 0 ? 1 : nanos;
+    }// record
+
+    /**
+     * Forgets all recorded frames.
+     */
+    public synchronized void clear() {
+        Arrays.fill(m_Seen, 0L);
+    }// clear
+
+    /**
+     * Sets the time within which an identical frame is a copy.
+     *
+     * @param millis the window in milliseconds.
+     */
+    public void setWindowMillis(int millis) {
+        m_WindowNanos = Math.max(0, millis) * 1000000L;
+    }// setWindowMillis
+
+    /**
+     * Returns the time within which an identical frame is a copy.
+     *
+     * @return the window in milliseconds.
+     */
+    public int getWindowMillis() {
+        return (int) (m_WindowNanos / 1000000L);
+    }// getWindowMillis
+
+    /**
+     * Returns the number of fingerprints kept.
+     *
+     * @return the capacity.
+     */
+    public int getCapacity() {
+        return m_Fingerprints.length;
+    }// getCapacity
+
+    private static long fingerprint(byte[] frame) {
+        long hash = FNV_OFFSET;
+        for (byte b : frame) {
+            hash ^= b & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }// fingerprint
+
+}// class DuplicateFilter
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.io;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ro.ciprianpascu.sbus.Sbus;
+
+/**
+ * Class describing how a transaction retries a request
+ * that did not get a valid response in time.
+ *
+ * Between attempts the transaction backs off exponentially from
+ * the base delay up to the maximal delay, with full jitter, so
+ * clients that failed together do not retry in lockstep.
+ * Policies are looked up by function code: reads retry, writes
+ * that set an absolute state retry once, and everything else
+ * falls back to {@link #DEFAULT}, which does not retry since an
+ * unknown request may have side effects; register a policy to
+ * let such a request retry.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public final class RetryPolicy {
+
+    /** Never retry */
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0);
+
+    /** Retry as often as the transaction allows, for requests without side effects */
+    public static final RetryPolicy READ = new RetryPolicy(0, 50, 1000);
+
+    /** Retry once, for writes that set an absolute state and can safely be repeated */
+    public static final RetryPolicy IDEMPOTENT_WRITE = new RetryPolicy(2, 100, 1000);
+
+    /** Policy used for function codes without a registered policy */
+    public static final RetryPolicy DEFAULT = NONE;
+
+    private static final Map<Integer, RetryPolicy> m_Policies = new ConcurrentHashMap<>();
+
+    static {
+        register(Sbus.READ_STATUS_CHANNELS_REQUEST, READ);
+        register(Sbus.READ_TEMPERATURE_REQUEST, READ);
+        register(Sbus.READ_DRY_CONNECTOR_REQUEST, READ);
+        register(Sbus.READ_NINE_IN_ONE_STATUS_REQUEST, READ);
+        register(Sbus.READ_CUSTOM_COLORS_REQUEST, READ);
+        register(Sbus.WRITE_SINGLE_CHANNEL_REQUEST, IDEMPOTENT_WRITE);
+        register(Sbus.WRITE_CUSTOM_COLORS_REQUEST, IDEMPOTENT_WRITE);
+        register(Sbus.WRITE_PREVIEW_COLORS_REQUEST, IDEMPOTENT_WRITE);
+        register(Sbus.MOTION_SENSOR_STATUS_REPORT, NONE);
+    }
+
+    private final int m_MaxAttempts;
+    private final long m_BaseBackoffMillis;
+    private final long m_MaxBackoffMillis;
+
+    /**
+     * Constructs a new {@link RetryPolicy}.
+     *
+     * @param maxAttempts the maximal number of attempts including the first one,
+     *            or 0 to use the retries configured on the transaction.
+     * @param baseBackoffMillis the backoff before the first retry in milliseconds.
+     * @param maxBackoffMillis the upper bound of any backoff in milliseconds.
+     */
+    public RetryPolicy(int maxAttempts, long baseBackoffMillis, long maxBackoffMillis) {
+        if (maxAttempts < 0 || baseBackoffMillis < 0 || maxBackoffMillis < baseBackoffMillis) {
+            throw new IllegalArgumentException("Invalid retry policy");
+        }
+        m_MaxAttempts = maxAttempts;
+        m_BaseBackoffMillis = baseBackoffMillis;
+        m_MaxBackoffMillis = maxBackoffMillis;
+    }// constructor
+
+    /**
+     * Returns the maximal number of attempts of this policy.
+     *
+     * @return the attempts, or 0 if the transaction decides.
+     */
+    public int getMaxAttempts() {
+        return m_MaxAttempts;
+    }// getMaxAttempts
+
+    /**
+     * Returns the number of attempts allowed for a transaction
+     * configured with the given number of retries.
+     *
+     * @param retries the retries configured on the transaction.
+     * @return the number of attempts, at least 1.
+     */
+    public int getAttempts(int retries) {
+        int attempts = Math.max(1, retries);
+        return m_MaxAttempts == 0 ? attempts : Math.min(m_MaxAttempts, attempts);
+    }// getAttempts
+
+    /**
+     * Returns the backoff before the first retry.
+     *
+     * @return the base backoff in milliseconds.
+     */
+    public long getBaseBackoffMillis() {
+        return m_BaseBackoffMillis;
+    }// getBaseBackoffMillis
+
+    /**
+     * Returns the upper bound of any backoff.
+     *
+     * @return the maximal backoff in milliseconds.
+     */
+    public long getMaxBackoffMillis() {
+        return m_MaxBackoffMillis;
+    }// getMaxBackoffMillis
+
+    /**
+     * Returns a jittered backoff to wait before the given retry,
+     * drawn uniformly between zero and the exponential bound.
+     *
+     * @param retry the retry number, starting at 1.
+     * @param random the source of jitter.
+     * @return the backoff in milliseconds.
+     */
+    public long getBackoffMillis(int retry, Random random) {
+        if (m_BaseBackoffMillis == 0) {
+            return 0;
+        }
+        int shift = Math.min(Math.max(0, retry - 1), 30);
+        long bound = Math.min(m_MaxBackoffMillis, m_BaseBackoffMillis << shift);
+        return (long) (random.nextDouble() * (bound + 1));
+    }// getBackoffMillis
+
+    /**
+     * Registers the policy used for requests with the given function code.
+     *
+     * @param functionCode the request function code.
+     * @param policy the {@link RetryPolicy}, or null to restore the default.
+     */
+    public static void register(int functionCode, RetryPolicy policy) {
+        if (policy == null) {
+            m_Policies.remove(functionCode);
+        } else {
+            m_Policies.put(functionCode, policy);
+        }
+    }// register
+
+    /**
+     * Returns the policy for requests with the given function code.
+     *
+     * @param functionCode the request function code.
+     * @return the registered {@link RetryPolicy}, or {@link #DEFAULT}.
+     */
+    public static RetryPolicy forFunctionCode(int functionCode) {
+        return m_Policies.getOrDefault(functionCode, DEFAULT);
+    }// forFunctionCode
+
+}// class RetryPolicy
@@ -0,0 +1,204 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.io;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class estimating the round trip time of each device address,
+ * from which {@link SbusUDPTransaction} derives its timeouts.
+ *
+ * The estimator is the one of TCP (RFC 6298): a smoothed round trip
+ * time and its mean deviation, updated with gains of 1/8 and 1/4, give
+ * a timeout of the smoothed time plus four deviations, kept within the
+ * configured bounds; unless set, the upper bound is the terminal
+ * timeout. Every retry of a transaction doubles the timeout of the
+ * previous attempt, up to the upper bound. Round trips of
+ * requests that were sent more than once are ambiguous and must not
+ * be sampled. Devices without samples use the terminal timeout.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class RttEstimator {
+
+    /** Default lower bound of a derived timeout in milliseconds */
+    public static final int DEFAULT_MIN_TIMEOUT_MILLIS = 200;
+
+    private final Map<Integer, Estimate> m_Estimates = new ConcurrentHashMap<>();
+    private volatile boolean m_Enabled = true;
+    private volatile int m_MinTimeout = DEFAULT_MIN_TIMEOUT_MILLIS;
+    // 0 bounds a derived timeout by the terminal timeout
+    private volatile int m_MaxTimeout;
+
+    /**
+     * Adds a round trip time measured for a request sent once.
+     *
+     * @param subnetID the subnet of the device.
+     * @param unitID the unit of the device.
+     * @param nanos the time from sending the request to receiving its response.
+     */
+    public void sample(int subnetID, int unitID, long nanos) {
+        long micros = Math.max(1, nanos / 1000L);
+        Estimate estimate = m_Estimates.computeIfAbsent(keyFor(subnetID, unitID), k -> new Estimate());
+        synchronized (estimate) {
+            if (estimate.m_Samples++ == 0) {
+                estimate.m_Srtt = micros;
+                estimate.m_RttVar = micros / 2;
+            } else {
+                estimate.m_RttVar += (Math.abs(estimate.m_Srtt - micros) - estimate.m_RttVar) / 4;
+                estimate.m_Srtt += (micros - estimate.m_Srtt) / 8;
+            }
+        }
+    }// sample
+
+    /**
+     * Returns the timeout of an attempt with a device.
+     *
+     * @param subnetID the subnet of the device.
+     * @param unitID the unit of the device.
+     * @param attempt the number of the attempt, starting at 1.
+     * @param fallback the terminal timeout in milliseconds, used if the device has no samples
+     *            and as the upper bound unless another one was set.
+     * @return the timeout in milliseconds.
+     */
+    public int getTimeoutMillis(int subnetID, int unitID, int attempt, int fallback) {
+        Estimate estimate = m_Enabled ? m_Estimates.get(keyFor(subnetID, unitID)) : null;
+        if (estimate == null) {
+            return fallback;
+        }
+        long rto;
+        synchronized (estimate) {
+            rto = (estimate.m_Srtt + Math.max(1000, 4 * estimate.m_RttVar) + 999) / 1000;
+        }
+        int max = m_MaxTimeout > 0 ? m_MaxTimeout : fallback;
+        rto = Math.min(max, Math.max(m_MinTimeout, rto));
+        // back off exponentially, a retry of a slow device must not time out early again
+        for (int i = 1; i < attempt && rto < max; i++) {
+            rto = Math.min(max, rto * 2);
+        }
+        return (int) rto;
+    }// getTimeoutMillis
+
+    /**
+     * Returns the smoothed round trip time of a device.
+     *
+     * @param subnetID the subnet of the device.
+     * @param unitID the unit of the device.
+     * @return the smoothed round trip time in microseconds, or -1 without samples.
+     */
+    public long getSmoothedRttMicros(int subnetID, int unitID) {
+        Estimate estimate = m_Estimates.get(keyFor(subnetID, unitID));
+        if (estimate == null) {
+            return -1;
+        }
+        synchronized (estimate) {
+            return estimate.m_Srtt;
+        }
+    }// getSmoothedRttMicros
+
+    /**
+     * Returns the mean deviation of the round trip time of a device.
+     *
+     * @param subnetID the subnet of the device.
+     * @param unitID the unit of the device.
+     * @return the deviation in microseconds, or -1 without samples.
+     */
+    public long getRttVarianceMicros(int subnetID, int unitID) {
+        Estimate estimate = m_Estimates.get(keyFor(subnetID, unitID));
+        if (estimate == null) {
+            return -1;
+        }
+        synchronized (estimate) {
+            return estimate.m_RttVar;
+        }
+    }// getRttVarianceMicros
+
+    /**
+     * Discards all samples.
+     */
+    public void reset() {
+        m_Estimates.clear();
+    }// reset
+
+    /**
+     * Enables or disables derived timeouts. While disabled, samples
+     * are still taken and every attempt uses the terminal timeout.
+     *
+     * @param enabled true to derive timeouts, false otherwise.
+     */
+    public void setEnabled(boolean enabled) {
+        m_Enabled = enabled;
+    }// setEnabled
+
+    /**
+     * Tests if timeouts are derived from the round trip times.
+     *
+     * @return true if enabled, false otherwise.
+     */
+    public boolean isEnabled() {
+        return m_Enabled;
+    }// isEnabled
+
+    /**
+     * Sets the bounds of a derived timeout.
+     *
+     * @param minMillis the lower bound in milliseconds, at least 1.
+     * @param maxMillis the upper bound in milliseconds, at least the lower one,
+     *            or 0 for the terminal timeout.
+     */
+    public void setTimeoutBounds(int minMillis, int maxMillis) {
+        if (minMillis < 1 || (maxMillis != 0 && maxMillis < minMillis)) {
+            throw new IllegalArgumentException("Invalid timeout bounds: " + minMillis + ", " + maxMillis);
+        }
+        m_MinTimeout = minMillis;
+        m_MaxTimeout = maxMillis;
+    }// setTimeoutBounds
+
+    /**
+     * Returns the lower bound of a derived timeout.
+     *
+     * @return the lower bound in milliseconds.
+     */
+    public int getMinTimeoutMillis() {
+        return m_MinTimeout;
+    }// getMinTimeoutMillis
+
+    /**
+     * Returns the upper bound of a derived timeout.
+     *
+     * @return the upper bound in milliseconds, or 0 for the terminal timeout.
+     */
+    public int getMaxTimeoutMillis() {
+        return m_MaxTimeout;
+    }// getMaxTimeoutMillis
+
+    private static int keyFor(int subnetID, int unitID) {
+        return ((subnetID & 0xFF) << 8) | (unitID & 0xFF);
+    }// keyFor
+
+    /**
+     * The estimate of one device, guarded by its own monitor.
+     */
+    private static final class Estimate {
+        long m_Srtt;
+        long m_RttVar;
+        long m_Samples;
+    }// class Estimate
+
+}// class RttEstimator
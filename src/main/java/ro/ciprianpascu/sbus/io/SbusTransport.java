@@ -17,12 +17,16 @@
 package ro.ciprianpascu.sbus.io;
 
 import java.io.IOException;
+import java.util.function.Consumer;
 
 import ro.ciprianpascu.sbus.SbusIOException;
 import ro.ciprianpascu.sbus.msg.SbusMessage;
 import ro.ciprianpascu.sbus.msg.SbusRequest;
 import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.msg.SendPriority;
+import ro.ciprianpascu.sbus.net.FilteredMessageListener;
 import ro.ciprianpascu.sbus.net.SbusMessageListener;
+import ro.ciprianpascu.sbus.util.SbusMetrics;
 
 /**
  * Interface defining the I/O mechanisms for
@@ -53,12 +57,49 @@ public interface SbusTransport {
     public void addMessageListener(SbusMessageListener listener);
 
     /**
-     * Removes a message listener.
+     * Removes a message listener, including all its subscriptions.
      *
      * @param listener the listener to remove
      */
     public void removeMessageListener(SbusMessageListener listener);
 
+    /**
+     * Subscribes a listener to the unsolicited messages sent by the given
+     * device with the given function code. Any of the filter values may
+     * be {@link ro.ciprianpascu.sbus.net.SubscriptionIndex#ANY}.
+     * Transports without their own subscription index add the listener
+     * wrapped in a {@link FilteredMessageListener}, which their
+     * {@link #removeMessageListener(SbusMessageListener)} has to remove
+     * along with the listener.
+     *
+     * @param subnetID the source subnet of the messages.
+     * @param unitID the source unit of the messages.
+     * @param functionCode the function code of the messages.
+     * @param listener the listener to notify
+     */
+    public default void subscribe(int subnetID, int unitID, int functionCode, SbusMessageListener listener) {
+        addMessageListener(new FilteredMessageListener(subnetID, unitID, functionCode, listener));
+    }
+
+    /**
+     * Subscribes a listener to the responses read by transactions, sent
+     * by the given device with the given function code, which is the
+     * function code of the request plus one. Any of the filter values may
+     * be {@link ro.ciprianpascu.sbus.net.SubscriptionIndex#ANY}.
+     * The listener is removed with {@link #removeMessageListener(SbusMessageListener)}.
+     * Transports that do not hand the responses of transactions to
+     * listeners ignore the subscription, so the listener only receives
+     * what it subscribed to with {@link #subscribe(int, int, int, SbusMessageListener)}.
+     *
+     * @param subnetID the source subnet of the responses.
+     * @param unitID the source unit of the responses.
+     * @param functionCode the function code of the responses.
+     * @param listener the listener to notify
+     */
+    public default void subscribeResponses(int subnetID, int unitID, int functionCode,
+            SbusMessageListener listener) {
+    }
+
     /**
      * Writes a {@link SbusMessage} to the
      * output stream of this {@link SbusTransport}.
@@ -71,6 +112,21 @@ public interface SbusTransport {
      */
     public void writeMessage(SbusMessage msg) throws SbusIOException;
 
+    /**
+     * Writes a {@link SbusMessage} with the given priority.
+     * Transports without priority classes fall back to
+     * {@link #writeMessage(SbusMessage)}.
+     *
+     * @param msg a {@link SbusMessage}.
+     * @param priority the {@link SendPriority} of the message.
+     * @throws SbusIOException data cannot be
+     *             written properly to the raw output stream of
+     *             this {@link SbusTransport}.
+     */
+    public default void writeMessage(SbusMessage msg, SendPriority priority) throws SbusIOException {
+        writeMessage(msg);
+    }
+
     /**
      * Reads a {@link SbusRequest} from the
      * input stream of this {@link SbusTransport}.
@@ -96,4 +152,106 @@ public interface SbusTransport {
      */
     public SbusResponse readResponse(String transactionId) throws SbusIOException;
 
+    /**
+     * Reads a {@link SbusResponse} from the
+     * input stream of this {@link SbusTransport},
+     * waiting at most the given time.
+     * Transports without their own timeout handling
+     * fall back to {@link #readResponse(String)}.
+     *
+     * @param transactionId Transaction identifier for the cached response
+     * @param timeoutMillis the maximal time to wait in milliseconds.
+     * @return res the {@link SbusResponse} read from the underlying stream.
+     *
+     * @throws SbusIOException data cannot be
+     *             read properly from the raw input stream of
+     *             this {@link SbusTransport}.
+     */
+    public default SbusResponse readResponse(String transactionId, int timeoutMillis) throws SbusIOException {
+        return readResponse(transactionId);
+    }
+
+    /**
+     * Announces that a response for the given transaction is expected,
+     * before its request is written, so a response arriving before
+     * {@link #readResponse(String, int)} is called is kept for it.
+     *
+     * @param transactionId Transaction identifier for the expected response
+     */
+    public default void expectResponse(String transactionId) {
+    }
+
+    /**
+     * Announces that a response for the given transaction is expected,
+     * before its request is written, and hands the response to the given
+     * handler when it arrives instead of keeping it for
+     * {@link #readResponse(String, int)}. A caller awaiting many responses
+     * thus collects them itself, however many arrive before it gets to
+     * them. A response recent enough to answer the request from the cache
+     * is handed to the handler at once, before this method returns. The
+     * expectation ends when the response arrives, or with
+     * {@link #cancelResponse(String)} or {@link #expireResponse(String)}.
+     * Transports without response handlers announce the response with
+     * {@link #expectResponse(String)} and return false; it is then read
+     * with {@link #readResponse(String, int)}.
+     *
+     * @param transactionId Transaction identifier for the expected response
+     * @param handler called with the response, on the thread decoding it
+     * @return true if the handler receives the response, false if it has to be read
+     */
+    public default boolean expectResponse(String transactionId, Consumer<SbusResponse> handler) {
+        expectResponse(transactionId);
+        return false;
+    }
+
+    /**
+     * Withdraws an expectation announced with {@link #expectResponse(String)}
+     * when the response will not be read, for example because writing
+     * the request failed.
+     *
+     * @param transactionId Transaction identifier for the expected response
+     */
+    public default void cancelResponse(String transactionId) {
+    }
+
+    /**
+     * Withdraws an expectation whose response did not arrive in time,
+     * counting it as a timed out transaction like
+     * {@link #readResponse(String, int)} does.
+     *
+     * @param transactionId Transaction identifier for the expected response
+     */
+    public default void expireResponse(String transactionId) {
+        cancelResponse(transactionId);
+    }
+
+    /**
+     * Returns the metrics of this {@link SbusTransport}.
+     *
+     * @return the {@link SbusMetrics}, or null if the transport keeps none.
+     */
+    public default SbusMetrics getMetrics() {
+        return null;
+    }
+
+    /**
+     * Returns the circuit breaker transactions of this {@link SbusTransport}
+     * consult before every attempt.
+     *
+     * @return the {@link CircuitBreaker}, or null if the transport has none.
+     */
+    public default CircuitBreaker getCircuitBreaker() {
+        return null;
+    }
+
+    /**
+     * Returns the round trip time estimator transactions of this
+     * {@link SbusTransport} derive their timeouts from.
+     *
+     * @return the {@link RttEstimator}, or null if timeouts are fixed.
+     */
+    public default RttEstimator getRttEstimator() {
+        return null;
+    }
+
 }// class SbusTransport
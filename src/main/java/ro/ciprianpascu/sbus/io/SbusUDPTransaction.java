@@ -16,6 +16,8 @@
 
 package ro.ciprianpascu.sbus.io;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,9 +25,11 @@ import ro.ciprianpascu.sbus.Sbus;
 import ro.ciprianpascu.sbus.SbusException;
 import ro.ciprianpascu.sbus.SbusIOException;
 import ro.ciprianpascu.sbus.SbusSlaveException;
+import ro.ciprianpascu.sbus.jfr.TransactionEvent;
 import ro.ciprianpascu.sbus.msg.ExceptionResponse;
 import ro.ciprianpascu.sbus.msg.SbusRequest;
 import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.msg.SendPriority;
 import ro.ciprianpascu.sbus.net.UDPMasterConnection;
 import ro.ciprianpascu.sbus.net.UDPTerminal;
 import ro.ciprianpascu.sbus.util.Mutex;
@@ -50,6 +54,11 @@ public class SbusUDPTransaction implements SbusTransaction {
     private SbusResponse m_Response;
     private boolean m_ValidityCheck = Sbus.DEFAULT_VALIDITYCHECK;
     private int m_Retries = Sbus.DEFAULT_RETRIES;
+    private RetryPolicy m_RetryPolicy;
+    private SendPriority m_Priority;
+    private int m_DeadlineMillis;
+    private int m_Attempts;
+    private boolean m_Rejected;
 
     private Mutex m_TransactionLock = new Mutex();
 
@@ -163,6 +172,95 @@ public class SbusUDPTransaction implements SbusTransaction {
         m_Retries = num;
     }// setRetries
 
+    /**
+     * Sets the retry policy of this transaction, overriding
+     * the policy registered for the function code of the request.
+     *
+     * @param policy the {@link RetryPolicy}, or null to use the registered one.
+     */
+    public void setRetryPolicy(RetryPolicy policy) {
+        m_RetryPolicy = policy;
+    }// setRetryPolicy
+
+    /**
+     * Returns the retry policy set on this transaction.
+     *
+     * @return the {@link RetryPolicy}, or null if the registered one is used.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return m_RetryPolicy;
+    }// getRetryPolicy
+
+    /**
+     * Sets the priority with which the request of this transaction is
+     * queued for sending, overriding the priority of the request.
+     *
+     * @param priority the {@link SendPriority}, or null to use the one of the request.
+     */
+    public void setPriority(SendPriority priority) {
+        m_Priority = priority;
+    }// setPriority
+
+    /**
+     * Returns the priority set on this transaction.
+     *
+     * @return the {@link SendPriority}, or null if the one of the request is used.
+     */
+    public SendPriority getPriority() {
+        return m_Priority;
+    }// getPriority
+
+    /**
+     * Sets the overall time an execution may take, including all
+     * attempts and backoffs. What is left of it is split evenly
+     * across the remaining attempts, each still bounded by the
+     * terminal timeout.
+     *
+     * @param millis the deadline in milliseconds, or 0 for none.
+     */
+    public void setDeadlineMillis(int millis) {
+        m_DeadlineMillis = Math.max(0, millis);
+    }// setDeadlineMillis
+
+    /**
+     * Returns the overall time an execution may take.
+     *
+     * @return the deadline in milliseconds, or 0 for none.
+     */
+    public int getDeadlineMillis() {
+        return m_DeadlineMillis;
+    }// getDeadlineMillis
+
+    /**
+     * Returns the number of attempts the last execution made.
+     *
+     * @return the attempt count.
+     */
+    public int getAttempts() {
+        return m_Attempts;
+    }// getAttempts
+
+    /**
+     * Tests if the last execution failed fast because the
+     * circuit of the device was open.
+     *
+     * @return true if rejected by the {@link CircuitBreaker}, false otherwise.
+     */
+    public boolean isRejected() {
+        return m_Rejected;
+    }// isRejected
+
+    /**
+     * Returns the retry policy the next execution will use.
+     * Fire-and-forget requests are never retried.
+     */
+    private RetryPolicy getEffectiveRetryPolicy() {
+        if (m_Request.isFireAndForget()) {
+            return RetryPolicy.NONE;
+        }
+        return m_RetryPolicy != null ? m_RetryPolicy : RetryPolicy.forFunctionCode(m_Request.getFunctionCode());
+    }// getEffectiveRetryPolicy
+
     @Override
     public void execute() throws SbusIOException, SbusSlaveException, SbusException {
 
@@ -189,39 +287,114 @@ public class SbusUDPTransaction implements SbusTransaction {
                 }
             }
 
-            // 3. Retry transaction m_Retries times, in case of
-            // I/O Exception problems.
-            int m_RetryCounter = 0;
-
-            while (m_RetryCounter < m_Retries) {
+            // 3. Retry transaction as the policy allows, in case of
+            // I/O Exception problems, within the deadline if any.
+            TransactionEvent event = new TransactionEvent();
+            event.begin();
+            RetryPolicy policy = getEffectiveRetryPolicy();
+            int attempts = policy.getAttempts(m_Retries);
+            long deadline = m_DeadlineMillis > 0 ? System.nanoTime() + m_DeadlineMillis * 1000000L : 0;
+            CircuitBreaker breaker = m_Request.isFireAndForget() ? null : m_IO.getCircuitBreaker();
+            int subnetID = m_Request.getSubnetID();
+            int unitID = m_Request.getUnitID();
+            m_Response = null;
+            m_Attempts = 0;
+            m_Rejected = false;
+
+            RttEstimator estimator = m_IO.getRttEstimator();
+            while (m_Attempts < attempts) {
+                int timeout = m_Terminal.getTimeout();
+                if (estimator != null) {
+                    timeout = estimator.getTimeoutMillis(subnetID, unitID, m_Attempts + 1, timeout);
+                }
+                if (deadline != 0) {
+                    long remaining = (deadline - System.nanoTime()) / 1000000L;
+                    if (remaining <= 0) {
+                        logger.debug("Deadline of {} ms expired for transaction: {}", m_DeadlineMillis,
+                                getTransactionID());
+                        break;
+                    }
+                    // split what is left of the deadline across the remaining attempts
+                    timeout = (int) Math.min(timeout, Math.max(1, remaining / (attempts - m_Attempts)));
+                }
+                if (breaker != null && !breaker.allowRequest(subnetID, unitID)) {
+                    logger.debug("Circuit of {}.{} is open, failing transaction: {}", subnetID, unitID,
+                            getTransactionID());
+                    m_Rejected = true;
+                    if (m_IO.getMetrics() != null) {
+                        m_IO.getMetrics().circuitRejected();
+                    }
+                    break;
+                }
+                m_Attempts++;
+                if (m_Attempts > 1 && m_IO.getMetrics() != null) {
+                    m_IO.getMetrics().retry();
+                }
                 try {
                     // 3. write request, and read response,
                     // while holding the lock on the IO object
                     synchronized (m_IO) {
-                        // write request message
-                        m_IO.writeMessage(m_Request);
+                        SendPriority priority = m_Priority != null ? m_Priority : m_Request.getPriority();
                         if (m_Request.isFireAndForget()) {
+                            m_IO.writeMessage(m_Request, priority);
                             break;
                         }
+                        // register before writing, a fast reply must not be
+                        // taken for an unsolicited message
+                        m_IO.expectResponse(getTransactionID());
+                        try {
+                            m_IO.writeMessage(m_Request, priority);
+                        } catch (SbusIOException ex) {
+                            m_IO.cancelResponse(getTransactionID());
+                            throw ex;
+                        }
                         // read response message
-                        m_Response = m_IO.readResponse(getTransactionID());
+                        try {
+                            m_Response = m_IO.readResponse(getTransactionID(), timeout);
+                        } catch (SbusIOException ex) {
+                            if (breaker != null) {
+                                breaker.recordFailure(subnetID, unitID);
+                            }
+                            throw ex;
+                        }
+                        if (breaker != null) {
+                            breaker.recordSuccess(subnetID, unitID);
+                        }
                         if (isCheckingValidity()) {
                             checkValidity();
                         }
+                        m_Response.setAttempts(m_Attempts);
                         break;
                     }
                 } catch (SbusIOException ex) {
                     logger.debug("SbusIOException: " + ex.getMessage());
+                    m_Response = null;
+                }
+                if (m_Attempts < attempts) {
+                    long backoff = policy.getBackoffMillis(m_Attempts, ThreadLocalRandom.current());
+                    if (deadline != 0) {
+                        backoff = Math.min(backoff, Math.max(0, (deadline - System.nanoTime()) / 1000000L));
+                    }
+                    if (backoff > 0) {
+                        try {
+                            Thread.sleep(backoff);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            throw new SbusIOException("Interrupted while backing off before a retry.");
+                        }
+                    }
                 }
-                m_RetryCounter++;
             }
 
+            recordTransaction(event);
+
             // 4. deal with "application level" exceptions
             if (m_Response instanceof ExceptionResponse) {
                 throw new SbusSlaveException(((ExceptionResponse) m_Response).getExceptionCode());
             }
 
         } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
             throw new SbusIOException("Thread acquiring lock was interrupted.");
         } finally {
             m_TransactionLock.release();
@@ -229,6 +402,33 @@ public class SbusUDPTransaction implements SbusTransaction {
 
     }// execute
 
+    /**
+     * Commits the flight recorder event of an executed transaction.
+     *
+     * @param event the {@link TransactionEvent} begun before the first attempt.
+     */
+    private void recordTransaction(TransactionEvent event) {
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.targetSubnetID = m_Request.getSubnetID();
+        event.targetUnitID = m_Request.getUnitID();
+        event.functionCode = m_Request.getFunctionCode();
+        event.attempts = m_Attempts;
+        if (m_Request.isFireAndForget()) {
+            event.outcome = TransactionEvent.FIRE_AND_FORGET;
+        } else if (m_Rejected && m_Response == null) {
+            event.outcome = TransactionEvent.CIRCUIT_OPEN;
+        } else if (m_Response == null) {
+            event.outcome = TransactionEvent.TIMEOUT;
+        } else if (m_Response instanceof ExceptionResponse) {
+            event.outcome = TransactionEvent.EXCEPTION;
+        } else {
+            event.outcome = TransactionEvent.SUCCESS;
+        }
+        event.commit();
+    }// recordTransaction
+
     /**
      * Asserts if this {@link SbusTCPTransaction} is
      * executable.
@@ -19,24 +19,29 @@ package ro.ciprianpascu.sbus.io;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ro.ciprianpascu.sbus.Sbus;
 import ro.ciprianpascu.sbus.SbusIOException;
+import ro.ciprianpascu.sbus.jfr.CrcRejectedEvent;
+import ro.ciprianpascu.sbus.jfr.FrameReceivedEvent;
 import ro.ciprianpascu.sbus.msg.ExceptionResponse;
 import ro.ciprianpascu.sbus.msg.SbusMessage;
 import ro.ciprianpascu.sbus.msg.SbusRequest;
 import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.msg.SendPriority;
 import ro.ciprianpascu.sbus.net.SbusMessageListener;
+import ro.ciprianpascu.sbus.net.SubscriptionIndex;
+import ro.ciprianpascu.sbus.net.NotifyingUDPTerminal;
 import ro.ciprianpascu.sbus.net.UDPSlaveTerminal;
 import ro.ciprianpascu.sbus.net.UDPTerminal;
+import ro.ciprianpascu.sbus.util.SbusMetrics;
 import ro.ciprianpascu.sbus.util.SbusUtil;
 
 /**
@@ -48,19 +53,45 @@ import ro.ciprianpascu.sbus.util.SbusUtil;
  *
  * @version 1.0 (29/04/2002)
  */
-public class SbusUDPTransport implements SbusTransport, UDPSlaveTerminal.MessageArrivalCallback {
+public class SbusUDPTransport implements SbusTransport, NotifyingUDPTerminal.MessageArrivalCallback {
 
     private static final Logger logger = LoggerFactory.getLogger(SbusUDPTransport.class);
 
+    /** Default number of decoder threads; 0 decodes on the receiving thread */
+    public static final int DEFAULT_DECODER_THREADS = 0;
+
+    /** Default age in milliseconds up to which a response answers a repeated request */
+    public static final int DEFAULT_RESPONSE_CACHE_MILLIS = 30000;
+
+    /** Length of a frame without data: header and CRC */
+    private static final int MIN_FRAME_LENGTH = 11;
+
     // instance attributes
     private UDPTerminal m_Terminal;
     private BytesOutputStream m_ByteOut;
     private BytesInputStream m_ByteIn;
     private ExpiringCache<SbusResponse> messages;
+    private volatile DecodePipeline m_Decoders;
+    private volatile int m_ResponseCacheMillis = DEFAULT_RESPONSE_CACHE_MILLIS;
+    private final DuplicateFilter m_Duplicates = new DuplicateFilter();
+    private volatile boolean m_DropDuplicates = true;
 
     // Listener coordination attributes
-    private final Set<String> pendingTransactions = ConcurrentHashMap.newKeySet();
-    private final List<SbusMessageListener> messageListeners = new CopyOnWriteArrayList<>();
+    // pending transaction ids, mapped to the time their request was sent, or written while still queued
+    private final Map<String, Long> pendingTransactions = new ConcurrentHashMap<>();
+    // pending transaction ids whose request waits in the send queue of the terminal
+    private final Set<String> unsentTransactions = ConcurrentHashMap.newKeySet();
+    private final UDPSlaveTerminal.FrameSentListener m_SentListener = this::onFrameSent;
+    private final boolean m_TracksSends;
+    // handlers of pending transactions whose response is not read from the cache
+    private final Map<String, Consumer<SbusResponse>> responseHandlers = new ConcurrentHashMap<>();
+    // transaction ids whose last request timed out, a retry makes their round trip ambiguous
+    private final Set<String> timedOutTransactions = ConcurrentHashMap.newKeySet();
+    private final SubscriptionIndex subscriptions = new SubscriptionIndex();
+    private final SubscriptionIndex responseSubscriptions = new SubscriptionIndex();
+    private final SbusMetrics m_Metrics = new SbusMetrics();
+    private final CircuitBreaker m_CircuitBreaker = new CircuitBreaker();
+    private final RttEstimator m_RttEstimator = new RttEstimator();
 
     /**
      * Constructs a new {@link SbusTransport} instance,
@@ -74,10 +105,17 @@ public class SbusUDPTransport implements SbusTransport, UDPSlaveTerminal.Message
         m_ByteOut = new BytesOutputStream(Sbus.MAX_MESSAGE_LENGTH);
         m_ByteIn = new BytesInputStream(Sbus.MAX_MESSAGE_LENGTH);
         messages = new ExpiringCache<SbusResponse>();
+        m_Metrics.setPendingGauge(pendingTransactions::size);
+        m_Metrics.setOpenCircuitsGauge(m_CircuitBreaker::getOpenCircuits);
 
-        // Set up notification-driven cache population
-        if (terminal instanceof UDPSlaveTerminal) {
-            ((UDPSlaveTerminal) terminal).setMessageArrivalCallback(this);
+        // Set up notification-driven cache population, listeners read requests themselves
+        if (terminal instanceof NotifyingUDPTerminal && !((NotifyingUDPTerminal) terminal).isListenerMode()) {
+            ((NotifyingUDPTerminal) terminal).setMessageArrivalCallback(this);
+        }
+        // time round trips and timeouts from the send rather than from the queue
+        m_TracksSends = terminal instanceof UDPSlaveTerminal && !((UDPSlaveTerminal) terminal).isListenerMode();
+        if (m_TracksSends) {
+            ((UDPSlaveTerminal) terminal).addFrameSentListener(m_SentListener);
         }
     }// constructor
 
@@ -85,102 +123,331 @@ public class SbusUDPTransport implements SbusTransport, UDPSlaveTerminal.Message
     public void close() throws IOException {
         // Clear all coordination data on close
         pendingTransactions.clear();
-        messageListeners.clear();
+        unsentTransactions.clear();
+        responseHandlers.clear();
+        timedOutTransactions.clear();
+        m_Duplicates.clear();
+        subscriptions.clear();
+        responseSubscriptions.clear();
+        setDecoderThreads(0);
 
         // Remove callback
-        if (m_Terminal instanceof UDPSlaveTerminal) {
-            ((UDPSlaveTerminal) m_Terminal).setMessageArrivalCallback(null);
+        if (m_Terminal instanceof NotifyingUDPTerminal) {
+            ((NotifyingUDPTerminal) m_Terminal).setMessageArrivalCallback(null);
+        }
+        if (m_TracksSends) {
+            ((UDPSlaveTerminal) m_Terminal).removeFrameSentListener(m_SentListener);
         }
     }// close
 
+    /**
+     * Sets the number of threads decoding received messages.
+     * With 0, the default, messages are decoded on the thread receiving
+     * from the socket. With more, that thread only hands the raw frames
+     * to a {@link DecodePipeline}, which decodes the messages of different
+     * devices in parallel and those of each device in arrival order.
+     * Should be called before messages arrive.
+     *
+     * @param threads the number of decoder threads, 0 to decode inline.
+     */
+    public synchronized void setDecoderThreads(int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Negative decoder thread count: " + threads);
+        }
+        DecodePipeline old = m_Decoders;
+        if (old != null && old.getWorkerCount() == threads) {
+            return;
+        }
+        m_Decoders = threads == 0 ? null
+                : new DecodePipeline(this::processMessage, threads, DecodePipeline.DEFAULT_QUEUE_CAPACITY);
+        if (old != null) {
+            old.stop();
+        }
+    }// setDecoderThreads
+
+    /**
+     * Returns the number of threads decoding received messages.
+     *
+     * @return the decoder thread count, 0 if decoding inline.
+     */
+    public int getDecoderThreads() {
+        DecodePipeline decoders = m_Decoders;
+        return decoders == null ? 0 : decoders.getWorkerCount();
+    }// getDecoderThreads
+
+    /**
+     * Sets the age up to which a received response answers a repeated
+     * request without sending it. With 0 every request is sent and
+     * waits for a fresh response, as needed to measure the bus or to
+     * poll values that change faster than the default allows.
+     *
+     * @param millis the maximum response age in milliseconds, 0 to disable.
+     */
+    public void setResponseCacheMillis(int millis) {
+        m_ResponseCacheMillis = Math.max(0, Math.min(millis, DEFAULT_RESPONSE_CACHE_MILLIS));
+    }// setResponseCacheMillis
+
+    /**
+     * Returns the age up to which a received response answers a repeated request.
+     *
+     * @return the maximum response age in milliseconds, 0 if disabled.
+     */
+    public int getResponseCacheMillis() {
+        return m_ResponseCacheMillis;
+    }// getResponseCacheMillis
+
+    /**
+     * Sets the time within which a frame identical to one received before
+     * is taken for a copy relayed by another gateway and dropped before
+     * it is decoded. A copy answering a transaction registered after the
+     * first one arrived is still delivered.
+     *
+     * @param millis the window in milliseconds, 0 to deliver every copy.
+     */
+    public void setDuplicateWindowMillis(int millis) {
+        m_Duplicates.setWindowMillis(millis);
+        m_DropDuplicates = millis > 0;
+    }// setDuplicateWindowMillis
+
+    /**
+     * Returns the time within which an identical frame is dropped as a copy.
+     *
+     * @return the window in milliseconds, 0 if copies are delivered.
+     */
+    public int getDuplicateWindowMillis() {
+        return m_DropDuplicates ? m_Duplicates.getWindowMillis() : 0;
+    }// getDuplicateWindowMillis
+
+    /**
+     * Returns the decoder pipeline, for inspecting its counters.
+     *
+     * @return the {@link DecodePipeline}, or null if decoding inline.
+     */
+    public DecodePipeline getDecodePipeline() {
+        return m_Decoders;
+    }// getDecodePipeline
+
     /**
      * Callback method called when a message arrives in the terminal's receive queue.
      * This enables notification-driven cache population for non-blocking operation.
-     * Processes all available messages in the receive queue without blocking.
+     * Processes all available messages in the receive queue without blocking,
+     * or hands them to the decoder threads if there are any.
      * This is called from the message arrival callback.
      */
     @Override
     public void onMessageArrived() {
-        if (!(m_Terminal instanceof UDPSlaveTerminal)) {
+        if (!(m_Terminal instanceof NotifyingUDPTerminal)) {
             return;
         }
 
-        UDPSlaveTerminal slaveTerminal = (UDPSlaveTerminal) m_Terminal;
+        NotifyingUDPTerminal slaveTerminal = (NotifyingUDPTerminal) m_Terminal;
 
         try {
             byte[] messageBytes;
             while ((messageBytes = slaveTerminal.receiveMessageNonBlocking()) != null) {
-                processMessage(messageBytes);
+                if (m_DropDuplicates && isDuplicate(messageBytes)) {
+                    m_Metrics.duplicateDropped();
+                    continue;
+                }
+                DecodePipeline decoders = m_Decoders;
+                if (decoders != null) {
+                    decoders.submit(messageBytes);
+                } else {
+                    synchronized (m_ByteIn) {
+                        processMessage(messageBytes, m_ByteIn);
+                    }
+                }
             }
         } catch (Exception ex) {
             logger.warn("Error processing available messages: " + ex.getMessage());
         }
     }
 
+    /**
+     * Tests if a received frame is a copy of one received within the
+     * duplicate window. Such a copy is still delivered if it may answer
+     * a transaction whose request was written after the first one arrived,
+     * as happens when the same request is repeated at once.
+     *
+     * @param frame the frame without the UDP prefix.
+     * @return true to drop the frame, false to decode it.
+     */
+    private boolean isDuplicate(byte[] frame) {
+        if (frame.length < MIN_FRAME_LENGTH) {
+            // let the decoder count it as malformed
+            return false;
+        }
+        long now = System.nanoTime();
+        long earlier = m_Duplicates.check(frame, now);
+        if (earlier == DuplicateFilter.NOT_SEEN) {
+            return false;
+        }
+        int functionCode = ((frame[5] & 0xFF) << 8) | (frame[6] & 0xFF);
+        String transactionId = (frame[1] & 0xFF) + "_" + (frame[2] & 0xFF) + "_" + (functionCode - 1);
+        Long written = pendingTransactions.get(transactionId);
+        if (written != null && written - earlier > 0) {
+            m_Duplicates.record(frame, now);
+            return false;
+        }
+        return true;
+    }// isDuplicate
+
     /**
      * Processes a single message and routes it appropriately to cache and listeners.
+     * The caller owns the given input stream.
      */
-    private void processMessage(byte[] messageBytes) throws Exception {
-        SbusResponse res = null;
-        synchronized (m_ByteIn) {
-            m_ByteIn.reset(messageBytes);
-
-            // check CRC
-            byte[] data = new byte[m_ByteIn.available()];
-            int dlength = m_ByteIn.read(data);
-            if (!SbusUtil.checkCRC(data, dlength - 2)) {
-                logger.warn("CRC Error in received frame: " + dlength + " bytes: "
-                        + SbusUtil.toHex(m_ByteIn.getBuffer(), 0, dlength));
-                return; // Skip invalid messages
+    private void processMessage(byte[] messageBytes, BytesInputStream in) throws Exception {
+        FrameReceivedEvent event = new FrameReceivedEvent();
+        event.begin();
+        // check CRC
+        int dlength = messageBytes.length;
+        if (dlength < MIN_FRAME_LENGTH) {
+            m_Metrics.malformedFrame();
+            logger.warn("Truncated frame: " + SbusUtil.toHex(messageBytes));
+            return;
+        }
+        if (!SbusUtil.checkCRC(messageBytes, dlength - 2)) {
+            m_Metrics.crcError();
+            recordCrcRejected(messageBytes);
+            logger.warn("CRC Error in received frame: " + dlength + " bytes: "
+                    + SbusUtil.toHex(messageBytes, 0, dlength));
+            return; // Skip invalid messages
+        }
+        int functionCode = ((messageBytes[5] & 0xFF) << 8) | (messageBytes[6] & 0xFF);
+        in.reset(messageBytes);
+        SbusResponse res = SbusResponse.createSbusResponse(functionCode);
+        try {
+            res.readFrom(in);
+        } catch (IOException | RuntimeException ex) {
+            m_Metrics.malformedFrame();
+            logger.warn("Malformed frame: " + SbusUtil.toHex(messageBytes) + ": " + ex.getMessage());
+            return;
+        }
+        m_Metrics.frameReceived();
+        event.end();
+
+        // Cache the response in ExpiringCache
+        String responseTransactionId = extractTransactionId(res);
+        // Route to appropriate handler
+        Long sent = pendingTransactions.get(responseTransactionId);
+        if (sent != null) {
+            long nanos = System.nanoTime() - sent;
+            m_Metrics.roundTrip(res.getSourceSubnetID(), res.getSourceUnitID(), res.getFunctionCode() - 1, nanos);
+            // a reply decoded before its send was reported has no send time to sample
+            boolean unsent = unsentTransactions.remove(responseTransactionId);
+            // Karn's rule: the reply to a repeated request may answer any of its copies
+            if (!timedOutTransactions.remove(responseTransactionId) && !unsent) {
+                m_RttEstimator.sample(res.getSourceSubnetID(), res.getSourceUnitID(), nanos);
             }
-            m_ByteIn.reset();
-
-            int length = m_ByteIn.readUnsignedByte();
-            int subnetID = m_ByteIn.readUnsignedByte();
-            int unitID = m_ByteIn.readUnsignedByte();
-            int deviceType = m_ByteIn.readUnsignedShort();
-            int functionCode = m_ByteIn.readUnsignedShort();
-            m_ByteIn.reset();
-            res = SbusResponse.createSbusResponse(functionCode);
-            res.readFrom(m_ByteIn);
-
-            // Cache the response in ExpiringCache
-            String responseTransactionId = extractTransactionId(res);
-            // Route to appropriate handler
-            if (pendingTransactions.contains(responseTransactionId)) {
-                logger.debug("Routed response to pending (request/response) transaction via expiringCache: "
-                        + responseTransactionId);
-                messages.put(responseTransactionId, res);
-            } else if (!(res instanceof ExceptionResponse)) {
-                // No pending transactions, this is definitely unsolicited
-                logger.debug("Routing unsolicited message to listeners: " + responseTransactionId);
-                notifyListeners(res);
+            logger.debug("Routed response to pending (request/response) transaction via expiringCache: "
+                    + responseTransactionId);
+            messages.put(responseTransactionId, res);
+            Consumer<SbusResponse> handler = responseHandlers.remove(responseTransactionId);
+            if (handler != null) {
+                pendingTransactions.remove(responseTransactionId);
+                handler.accept(res);
             }
+            responseSubscriptions.dispatch(res);
+            event.solicited = true;
+        } else if (!(res instanceof ExceptionResponse)) {
+            // No pending transactions, this is definitely unsolicited
+            logger.debug("Routing unsolicited message to listeners: " + responseTransactionId);
+            m_Metrics.unsolicited();
+            notifyListeners(res);
+        }
+        if (event.shouldCommit()) {
+            event.sourceSubnetID = res.getSourceSubnetID();
+            event.sourceUnitID = res.getSourceUnitID();
+            event.functionCode = functionCode;
+            event.length = dlength;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a flight recorder event for a frame with a wrong CRC.
+     *
+     * @param frame the rejected frame, starting with the length byte
+     */
+    private static void recordCrcRejected(byte[] frame) {
+        CrcRejectedEvent event = new CrcRejectedEvent();
+        if (event.shouldCommit()) {
+            event.length = frame.length;
+            event.sourceSubnetID = frame.length > 1 ? frame[1] & 0xFF : 0;
+            event.sourceUnitID = frame.length > 2 ? frame[2] & 0xFF : 0;
+            event.commit();
         }
     }
 
     /**
-     * Adds a message listener for unsolicited messages.
+     * Adds a message listener for all unsolicited messages.
+     * Unless it already is an {@link ro.ciprianpascu.sbus.net.AsyncMessageListener},
+     * the listener is wrapped in one with its own bounded queue, drained by
+     * the shared listener pool, so it never runs on the thread receiving
+     * from the socket.
      *
      * @param listener the listener to add
      */
     @Override
     public void addMessageListener(SbusMessageListener listener) {
         if (listener != null) {
-            messageListeners.add(listener);
+            subscriptions.subscribe(SubscriptionIndex.ANY, SubscriptionIndex.ANY, SubscriptionIndex.ANY, listener);
         }
     }
 
     /**
-     * Removes a message listener.
+     * Removes a message listener and all its subscriptions,
+     * to unsolicited messages and to responses, discarding messages still queued for it.
      *
      * @param listener the listener to remove
      */
     @Override
     public void removeMessageListener(SbusMessageListener listener) {
-        messageListeners.remove(listener);
+        subscriptions.unsubscribe(listener);
+        responseSubscriptions.unsubscribe(listener);
+    }
+
+    @Override
+    public void subscribe(int subnetID, int unitID, int functionCode, SbusMessageListener listener) {
+        subscriptions.subscribe(subnetID, unitID, functionCode, listener);
+    }
+
+    @Override
+    public void subscribeResponses(int subnetID, int unitID, int functionCode, SbusMessageListener listener) {
+        responseSubscriptions.subscribe(subnetID, unitID, functionCode, listener);
     }
 
+    @Override
+    public SbusMetrics getMetrics() {
+        return m_Metrics;
+    }// getMetrics
+
+    @Override
+    public CircuitBreaker getCircuitBreaker() {
+        return m_CircuitBreaker;
+    }// getCircuitBreaker
+
+    @Override
+    public RttEstimator getRttEstimator() {
+        return m_RttEstimator;
+    }// getRttEstimator
+
+    /**
+     * Records a timeout for the device and function code
+     * of a transaction ID.
+     *
+     * @param transactionId the transaction ID, subnet_unit_functionCode
+     */
+    private void recordTimeout(String transactionId) {
+        timedOutTransactions.add(transactionId);
+        String[] parts = transactionId.split("_");
+        try {
+            m_Metrics.timeout(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        } catch (RuntimeException ex) {
+            m_Metrics.timeout(0, 0, 0);
+        }
+    }// recordTimeout
+
     /**
      * Extracts the transaction ID from a response message.
      *
@@ -201,27 +468,29 @@ public class SbusUDPTransport implements SbusTransport, UDPSlaveTerminal.Message
      * @param response the response to notify about
      */
     private void notifyListeners(SbusResponse response) {
-        for (SbusMessageListener listener : messageListeners) {
-            try {
-                listener.onMessageReceived(response);
-            } catch (Exception e) {
-                logger.warn("Error in message listener", e);
-                try {
-                    listener.onError(e, null);
-                } catch (Exception listenerError) {
-                    logger.error("Error in listener error handler", listenerError);
-                }
-            }
-        }
+        // only enqueues, the listeners run on the workers of their executor
+        subscriptions.dispatch(response);
     }
 
     @Override
     public void writeMessage(SbusMessage msg) throws SbusIOException {
+        writeMessage(msg, msg instanceof SbusRequest ? ((SbusRequest) msg).getPriority()
+                : SendPriority.INTERACTIVE_READ);
+    }// write
+
+    @Override
+    public void writeMessage(SbusMessage msg, SendPriority priority) throws SbusIOException {
         try {
-            SbusResponse cachedMessage = messages
-                    .get("" + msg.getSubnetID() + "_" + msg.getUnitID() + "_" + msg.getFunctionCode());
-            if (cachedMessage != null) { // already have recent information in the cache
-                return;
+            int cacheMillis = m_ResponseCacheMillis;
+            if (cacheMillis > 0 && !(msg instanceof SbusRequest && ((SbusRequest) msg).isBypassResponseCache())) {
+                SbusResponse cachedMessage = messages.get(
+                        "" + msg.getSubnetID() + "_" + msg.getUnitID() + "_" + msg.getFunctionCode(), cacheMillis);
+                m_Metrics.cacheLookup(cachedMessage != null);
+                if (cachedMessage != null) { // already have recent information in the cache
+                    unsentTransactions.remove(
+                            "" + msg.getSubnetID() + "_" + msg.getUnitID() + "_" + msg.getFunctionCode());
+                    return;
+                }
             }
             synchronized (m_ByteOut) {
                 m_ByteOut.reset();
@@ -229,8 +498,9 @@ public class SbusUDPTransport implements SbusTransport, UDPSlaveTerminal.Message
                 byte[] crc = SbusUtil.calculateCRC(m_ByteOut.getBuffer(), m_ByteOut.size());
                 m_ByteOut.writeByte(crc[0]);
                 m_ByteOut.writeByte(crc[1]);
-                m_Terminal.sendMessage(m_ByteOut.toByteArray());
+                m_Terminal.sendMessage(m_ByteOut.toByteArray(), priority);
             }
+            m_Metrics.frameSent();
         } catch (Exception ex) {
             throw new SbusIOException("I/O exception - failed to write.");
         }
@@ -251,6 +521,8 @@ public class SbusUDPTransport implements SbusTransport, UDPSlaveTerminal.Message
                     return null;
                 }
                 if (!SbusUtil.checkCRC(data, dlength - 2)) {
+                    m_Metrics.crcError();
+                    recordCrcRejected(data);
                     throw new IOException("CRC Error in received frame: " + dlength + " bytes: "
                             + SbusUtil.toHex(m_ByteIn.getBuffer(), 0, dlength));
                 }
@@ -266,6 +538,7 @@ public class SbusUDPTransport implements SbusTransport, UDPSlaveTerminal.Message
                 req = SbusRequest.createSbusRequest(functionCode);
                 req.readFrom(m_ByteIn);
             }
+            m_Metrics.frameReceived();
             return req;
         } catch (InterruptedIOException ioex) {
             throw new SbusIOException("Socket timed out. " + ioex.getMessage());
@@ -274,20 +547,70 @@ public class SbusUDPTransport implements SbusTransport, UDPSlaveTerminal.Message
         }
     }// readRequest
 
+    @Override
+    public void expectResponse(String transactionId) {
+        // a response too old to answer the request must not be taken for its reply
+        messages.removeOlderThan(transactionId, m_ResponseCacheMillis);
+        if (m_TracksSends) {
+            unsentTransactions.add(transactionId);
+        }
+        pendingTransactions.put(transactionId, System.nanoTime());
+    }// expectResponse
+
+    @Override
+    public boolean expectResponse(String transactionId, Consumer<SbusResponse> handler) {
+        int cacheMillis = m_ResponseCacheMillis;
+        SbusResponse cached = cacheMillis > 0 ? messages.get(transactionId, cacheMillis) : null;
+        if (cached != null) {
+            // writeMessage answers the request from the cache and sends nothing
+            handler.accept(cached);
+            return true;
+        }
+        expectResponse(transactionId);
+        responseHandlers.put(transactionId, handler);
+        return true;
+    }// expectResponse
+
+    @Override
+    public void cancelResponse(String transactionId) {
+        responseHandlers.remove(transactionId);
+        unsentTransactions.remove(transactionId);
+        pendingTransactions.remove(transactionId);
+    }// cancelResponse
+
+    @Override
+    public void expireResponse(String transactionId) {
+        responseHandlers.remove(transactionId);
+        unsentTransactions.remove(transactionId);
+        if (pendingTransactions.remove(transactionId) != null) {
+            recordTimeout(transactionId);
+        }
+    }// expireResponse
+
     @Override
     public SbusResponse readResponse(String transactionId) throws SbusIOException {
+        return readResponse(transactionId, m_Terminal.getTimeout());
+    }// readResponse
+
+    @Override
+    public SbusResponse readResponse(String transactionId, int timeoutMillis) throws SbusIOException {
         // Register that we're waiting for this transaction
-        pendingTransactions.add(transactionId);
+        pendingTransactions.putIfAbsent(transactionId, System.nanoTime());
 
         try {
             // Block on cache with timeout - this will wait for notification-driven population
-            SbusResponse res = messages.getWithTimeout(transactionId, m_Terminal.getTimeout());
+            SbusResponse res = messages.getWithTimeout(transactionId, timeoutMillis);
+            // the timeout runs from the send, a request queued behind others is waited for
+            for (long left; res == null && (left = remainingMillis(transactionId, timeoutMillis)) > 0;) {
+                res = messages.getWithTimeout(transactionId, left);
+            }
             if (res != null) {
                 logger.debug("Found response after waiting for transaction: " + transactionId);
                 return res;
             }
 
             // Timeout occurred
+            recordTimeout(transactionId);
             throw new SbusIOException("No response received for transaction: " + transactionId);
         } catch (SbusIOException mioex) {
             throw mioex;
@@ -296,11 +619,50 @@ public class SbusUDPTransport implements SbusTransport, UDPSlaveTerminal.Message
             throw new SbusIOException("I/O exception - failed to read. " + ex.getMessage());
         } finally {
             // Always clean up pending transaction
+            unsentTransactions.remove(transactionId);
             pendingTransactions.remove(transactionId);
         }
 
     }
 
+    /**
+     * Returns how much longer the response of a transaction is awaited:
+     * all of the timeout while its request is queued, the rest of it once sent.
+     *
+     * @param transactionId the transaction ID
+     * @param timeoutMillis the timeout of the attempt in milliseconds
+     * @return the time left in milliseconds, 0 or less once expired
+     */
+    private long remainingMillis(String transactionId, int timeoutMillis) {
+        if (unsentTransactions.contains(transactionId)) {
+            return m_Terminal.isActive() ? timeoutMillis : 0;
+        }
+        Long sent = pendingTransactions.get(transactionId);
+        if (sent == null) {
+            return 0;
+        }
+        return (sent + timeoutMillis * 1000000L - System.nanoTime()) / 1000000L;
+    }// remainingMillis
+
+    /**
+     * Moves the start of a pending transaction to the time its request
+     * left the send queue of the terminal.
+     *
+     * @param datagram the sent datagram, including the UDP prefix
+     * @param nanos the {@link System#nanoTime()} of the send
+     */
+    private void onFrameSent(byte[] datagram, long nanos) {
+        if (datagram.length <= 24 || unsentTransactions.isEmpty()) {
+            return;
+        }
+        // after the prefix: length, source subnet and unit, device type, function code, target
+        int functionCode = ((datagram[21] & 0xFF) << 8) | (datagram[22] & 0xFF);
+        String transactionId = (datagram[23] & 0xFF) + "_" + (datagram[24] & 0xFF) + "_" + functionCode;
+        if (unsentTransactions.remove(transactionId)) {
+            pendingTransactions.computeIfPresent(transactionId, (id, written) -> nanos);
+        }
+    }// onFrameSent
+
     /**
      * This class was taken from java.io internal package
      */
@@ -397,6 +759,35 @@ public class SbusUDPTransport implements SbusTransport, UDPSlaveTerminal.Message
             return null; // Timeout occurred
         }
 
+        /**
+         * Gets a value from the cache if it is younger than the given age.
+         *
+         * @param key the key to look for
+         * @param maxAgeMillis the maximum age in milliseconds
+         * @return the value, or null if absent or older
+         */
+        synchronized T get(String key, long maxAgeMillis) {
+            T val = get(key);
+            Entry entry = map.get(key);
+            if (val == null || System.currentTimeMillis() - entry.timestamp() >= maxAgeMillis) {
+                return null;
+            }
+            return val;
+        }
+
+        /**
+         * Removes a value from the cache if it is not younger than the given age.
+         *
+         * @param key the key of the value
+         * @param maxAgeMillis the age in milliseconds from which the value is removed
+         */
+        synchronized void removeOlderThan(String key, long maxAgeMillis) {
+            Entry entry = map.get(key);
+            if (entry != null && System.currentTimeMillis() - entry.timestamp() >= maxAgeMillis) {
+                map.remove(key);
+            }
+        }
+
         synchronized void put(String key, T val) {
             if (++queryCount >= queryOverflow) {
                 cleanup();
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Event recorded when the circuit breaker of a device changes state.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+@Name("ro.ciprianpascu.sbus.CircuitState")
+@Label("S-Bus Circuit State")
+@Category({ "S-Bus", "Transactions" })
+@Description("A device circuit opened, half opened or closed")
+@StackTrace(false)
+public class CircuitStateEvent extends Event {
+
+    @Label("Subnet")
+    public int subnetID;
+
+    @Label("Unit")
+    public int unitID;
+
+    @Label("From State")
+    public String fromState;
+
+    @Label("To State")
+    public String toState;
+
+}// class CircuitStateEvent
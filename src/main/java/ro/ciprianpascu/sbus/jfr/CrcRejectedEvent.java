@@ -0,0 +1,49 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Event recorded when a received frame fails its CRC check.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+@Name("ro.ciprianpascu.sbus.CrcRejected")
+@Label("S-Bus CRC Rejected")
+@Category({ "S-Bus", "Frames" })
+@Description("A received frame discarded for a wrong CRC")
+@StackTrace(false)
+public class CrcRejectedEvent extends Event {
+
+    @Label("Source Subnet")
+    public int sourceSubnetID;
+
+    @Label("Source Unit")
+    public int sourceUnitID;
+
+    @Label("Length")
+    @Description("Length of the frame in bytes")
+    public int length;
+
+}// class CrcRejectedEvent
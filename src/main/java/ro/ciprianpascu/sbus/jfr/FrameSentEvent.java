@@ -0,0 +1,68 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Event recorded when a terminal writes a frame to its socket.
+ * The duration covers the socket write.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+@Name("ro.ciprianpascu.sbus.FrameSent")
+@Label("S-Bus Frame Sent")
+@Category({ "S-Bus", "Frames" })
+@Description("A frame written to the socket")
+@StackTrace(false)
+public class FrameSentEvent extends Event {
+
+    @Label("Target Subnet")
+    public int targetSubnetID;
+
+    @Label("Target Unit")
+    public int targetUnitID;
+
+    @Label("Function Code")
+    public int functionCode;
+
+    @Label("Priority")
+    @Description("Send priority class of the frame")
+    public String priority;
+
+    @Label("Length")
+    @Description("Length of the datagram in bytes")
+    public int length;
+
+    @Label("Queue Wait")
+    @Description("Time the frame waited in the send queue, pacing included")
+    @Timespan(Timespan.NANOSECONDS)
+    public long queueWait;
+
+    @Label("Pacing Delay")
+    @Description("Pause the sender took before taking the frame")
+    @Timespan(Timespan.NANOSECONDS)
+    public long pacingDelay;
+
+}// class FrameSentEvent
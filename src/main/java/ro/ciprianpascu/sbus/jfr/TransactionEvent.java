@@ -0,0 +1,68 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Event recorded when a transaction completes, successfully or not.
+ * The duration covers all attempts and backoffs.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+@Name("ro.ciprianpascu.sbus.Transaction")
+@Label("S-Bus Transaction")
+@Category({ "S-Bus", "Transactions" })
+@Description("A request and its response, with retries")
+public class TransactionEvent extends Event {
+
+    /** Outcome of a transaction answered by the device */
+    public static final String SUCCESS = "SUCCESS";
+
+    /** Outcome of a transaction answered with an exception response */
+    public static final String EXCEPTION = "EXCEPTION";
+
+    /** Outcome of a transaction that got no response from any attempt */
+    public static final String TIMEOUT = "TIMEOUT";
+
+    /** Outcome of a transaction failed fast because the circuit of the device was open */
+    public static final String CIRCUIT_OPEN = "CIRCUIT_OPEN";
+
+    /** Outcome of a request that expects no response */
+    public static final String FIRE_AND_FORGET = "FIRE_AND_FORGET";
+
+    @Label("Target Subnet")
+    public int targetSubnetID;
+
+    @Label("Target Unit")
+    public int targetUnitID;
+
+    @Label("Function Code")
+    public int functionCode;
+
+    @Label("Attempts")
+    public int attempts;
+
+    @Label("Outcome")
+    public String outcome;
+
+}// class TransactionEvent
@@ -65,6 +65,19 @@ public final class MotionSensorStatusReport extends SbusResponse {
         setDataLength(m_ByteCount + 1);
     }// constructor
 
+    /**
+     * Constructs a new {@link MotionSensorStatusReport}
+     * instance for a device with the given number of dry contacts.
+     * Writer focus
+     *
+     * @param numDryContacts the number of dry contacts (9-in-1 has 2).
+     * @param registers the InputRegister[] holding sensor status data (8 bytes).
+     */
+    public MotionSensorStatusReport(int numDryContacts, InputRegister[] registers) {
+        this(registers);
+        m_numDryContacts = numDryContacts;
+    }// constructor
+
     /**
      * Returns the number of bytes that have been read.
      *
@@ -141,7 +141,7 @@ public final class ReadStatusChannelsResponse extends SbusResponse {
 
     @Override
     public void writeData(DataOutput dout) throws IOException {
-        dout.writeByte(m_ByteCount + 1);
+        dout.writeByte(m_ByteCount);
         for (int k = 0; k < getByteCount(); k++) {
             dout.write(m_Registers[k].getValue());
         }
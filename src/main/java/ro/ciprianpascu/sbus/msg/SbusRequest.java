@@ -30,6 +30,9 @@ import ro.ciprianpascu.sbus.procimg.ProcessImageImplementation;
  */
 public abstract class SbusRequest extends SbusMessageImpl {
 
+    private SendPriority m_Priority;
+    private boolean m_BypassResponseCache;
+
     /**
      * Constructs a new SbusRequest instance.
      * Initializes the request with default values inherited from SbusMessageImpl.
@@ -100,6 +103,51 @@ public abstract class SbusRequest extends SbusMessageImpl {
         return request;
     }
 
+    /**
+     * Returns the priority with which this request is queued for sending.
+     * Unless set, fire-and-forget writes are {@link SendPriority#INTERACTIVE_WRITE}
+     * and all other requests {@link SendPriority#INTERACTIVE_READ}.
+     *
+     * @return the {@link SendPriority} of this request.
+     */
+    public SendPriority getPriority() {
+        if (m_Priority != null) {
+            return m_Priority;
+        }
+        return isFireAndForget() ? SendPriority.INTERACTIVE_WRITE : SendPriority.INTERACTIVE_READ;
+    }
+
+    /**
+     * Sets the priority with which this request is queued for sending,
+     * for example {@link SendPriority#BACKGROUND} for periodic polls.
+     *
+     * @param priority the {@link SendPriority}, or null for the default.
+     */
+    public void setPriority(SendPriority priority) {
+        m_Priority = priority;
+    }
+
+    /**
+     * Tests if this request is sent even while the transport holds a
+     * recent response to it in its response cache.
+     *
+     * @return true if the response cache is bypassed, false otherwise.
+     */
+    public boolean isBypassResponseCache() {
+        return m_BypassResponseCache;
+    }
+
+    /**
+     * Makes this request be sent even while the transport holds a recent
+     * response to it, for example for probes that must reach the device,
+     * without changing the response cache of the transport.
+     *
+     * @param bypass true to bypass the response cache, false to use it.
+     */
+    public void setBypassResponseCache(boolean bypass) {
+        m_BypassResponseCache = bypass;
+    }
+
     /**
      * Checks if this request is a fire-and-forget type request that doesn't require a response.
      * This includes write operations like WRITE_MULTIPLE_REGISTERS, WRITE_SINGLE_CHANNEL_REQUEST,
@@ -42,6 +42,28 @@ public abstract class SbusResponse extends SbusMessageImpl {
         super();
     }
 
+    private int m_Attempts;
+
+    /**
+     * Returns the number of attempts the transaction needed
+     * to obtain this response.
+     *
+     * @return the attempt count, or 0 if not obtained by a transaction.
+     */
+    public int getAttempts() {
+        return m_Attempts;
+    }// getAttempts
+
+    /**
+     * Sets the number of attempts the transaction needed
+     * to obtain this response.
+     *
+     * @param attempts the attempt count.
+     */
+    public void setAttempts(int attempts) {
+        m_Attempts = attempts;
+    }// setAttempts
+
     /**
      * Utility method to set the raw data of the message.
      * Should not be used except under rare circumstances.
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.msg;
+
+/**
+ * Enumeration of the classes in which frames wait to be sent,
+ * from the highest to the lowest priority.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public enum SendPriority {
+
+    /** Writes a user is waiting for, e.g. switching a light; the default of writes */
+    INTERACTIVE_WRITE,
+
+    /** Reads a user is waiting for; the default of all other frames */
+    INTERACTIVE_READ,
+
+    /** Polling and discovery nobody is waiting for */
+    BACKGROUND;
+
+}// enum SendPriority
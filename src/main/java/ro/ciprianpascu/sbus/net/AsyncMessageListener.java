@@ -0,0 +1,336 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.net;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ro.ciprianpascu.sbus.jfr.ListenerDispatchEvent;
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.util.ManagedExecutor;
+import ro.ciprianpascu.sbus.util.RingBuffer;
+
+/**
+ * Class implementing a {@link SbusMessageListener} that hands
+ * messages to another listener asynchronously, so the thread
+ * receiving from the socket never waits on application code.
+ *
+ * Messages are spread over a number of lanes by the device that sent
+ * them. Each lane has its own bounded queue and is drained by at most
+ * one task at a time, which keeps the messages of every device in
+ * arrival order. When a lane is full the overflow policy drops the
+ * oldest or the newest message; drops are counted, never waited for.
+ *
+ * Unless given an executor, the lanes of all listeners are drained by
+ * one bounded pool shared by the whole library, see
+ * {@link #getSharedExecutor()}, so subscribing per device does not cost
+ * a thread per subscription. A listener that blocks for long holds a
+ * shared worker while it does; such a listener should be created with
+ * {@link #withDedicatedExecutor} instead.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class AsyncMessageListener implements SbusMessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncMessageListener.class);
+
+    /** Default number of messages a lane holds */
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    /** Maximal number of messages a lane delivers before yielding its worker */
+    private static final int BATCH_SIZE = 64;
+
+    /** Number of lanes that may wait for a worker of the shared executor */
+    private static final int SHARED_QUEUE_CAPACITY = 4096;
+
+    private static final AtomicInteger m_Instances = new AtomicInteger();
+    private static volatile ManagedExecutor m_Shared;
+
+    private final SbusMessageListener m_Listener;
+    private final Lane[] m_Lanes;
+    private final Executor m_Executor;
+    private final ManagedExecutor m_OwnExecutor;
+    private final LongAdder m_Delivered = new LongAdder();
+    private final LongAdder m_Rejected = new LongAdder();
+    private volatile boolean m_Closed;
+
+    /**
+     * Constructs a new {@link AsyncMessageListener} with a single lane
+     * of the default capacity, dropping the oldest message on overflow,
+     * running on the shared executor.
+     *
+     * @param listener the {@link SbusMessageListener} to deliver to.
+     */
+    public AsyncMessageListener(SbusMessageListener listener) {
+        this(listener, 1, DEFAULT_QUEUE_CAPACITY, RingBuffer.OverflowPolicy.DROP_OLDEST, null);
+    }// constructor
+
+    /**
+     * Constructs a new {@link AsyncMessageListener}.
+     *
+     * @param listener the {@link SbusMessageListener} to deliver to.
+     * @param lanes the number of lanes; more than one requires a thread-safe listener.
+     * @param capacity the number of messages each lane holds.
+     * @param policy {@link RingBuffer.OverflowPolicy#DROP_OLDEST} or
+     *            {@link RingBuffer.OverflowPolicy#DROP_NEWEST}.
+     * @param executor the executor draining the lanes, or null for
+     *            the shared one.
+     */
+    public AsyncMessageListener(SbusMessageListener listener, int lanes, int capacity,
+            RingBuffer.OverflowPolicy policy, Executor executor) {
+        this(listener, lanes, capacity, policy, executor, false);
+    }// constructor
+
+    private AsyncMessageListener(SbusMessageListener listener, int lanes, int capacity,
+            RingBuffer.OverflowPolicy policy, Executor executor, boolean dedicated) {
+        if (listener == null || lanes < 1) {
+            throw new IllegalArgumentException("Listener and at least one lane required");
+        }
+        if (policy == RingBuffer.OverflowPolicy.BLOCK) {
+            throw new IllegalArgumentException("Dispatch must never block the receiving thread");
+        }
+        m_Listener = listener;
+        m_Lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            m_Lanes[i] = new Lane(new RingBuffer<SbusResponse>(capacity, policy));
+        }
+        if (dedicated) {
+            m_OwnExecutor = new ManagedExecutor("SbusListener-" + m_Instances.incrementAndGet(), lanes, lanes,
+                    ManagedExecutor.SaturationPolicy.ABORT);
+            m_Executor = m_OwnExecutor;
+        } else {
+            m_OwnExecutor = null;
+            m_Executor = executor != null ? executor : getSharedExecutor();
+        }
+    }// constructor
+
+    /**
+     * Creates a new {@link AsyncMessageListener} drained by an executor
+     * of its own, with a worker per lane, which is shut down on
+     * {@link #close()}. Meant for listeners that may block for long.
+     *
+     * @param listener the {@link SbusMessageListener} to deliver to.
+     * @param lanes the number of lanes; more than one requires a thread-safe listener.
+     * @param capacity the number of messages each lane holds.
+     * @param policy {@link RingBuffer.OverflowPolicy#DROP_OLDEST} or
+     *            {@link RingBuffer.OverflowPolicy#DROP_NEWEST}.
+     * @return the {@link AsyncMessageListener}.
+     */
+    public static AsyncMessageListener withDedicatedExecutor(SbusMessageListener listener, int lanes, int capacity,
+            RingBuffer.OverflowPolicy policy) {
+        return new AsyncMessageListener(listener, lanes, capacity, policy, null, true);
+    }// withDedicatedExecutor
+
+    /**
+     * Returns the pool draining the lanes of all listeners created
+     * without an executor, with one worker per available processor and
+     * at least two, created on first use. A lane the pool cannot queue
+     * is counted as rejected and drained again with its next message;
+     * the receiving thread never waits for it.
+     *
+     * @return the shared {@link ManagedExecutor}.
+     */
+    public static ManagedExecutor getSharedExecutor() {
+        ManagedExecutor shared = m_Shared;
+        if (shared == null || shared.isShutdown()) {
+            synchronized (AsyncMessageListener.class) {
+                shared = m_Shared;
+                if (shared == null || shared.isShutdown()) {
+                    shared = new ManagedExecutor("SbusListener",
+                            Math.max(2, Runtime.getRuntime().availableProcessors()), SHARED_QUEUE_CAPACITY,
+                            ManagedExecutor.SaturationPolicy.ABORT);
+                    m_Shared = shared;
+                }
+            }
+        }
+        return shared;
+    }// getSharedExecutor
+
+    /**
+     * Returns the listener messages are delivered to.
+     *
+     * @return the wrapped {@link SbusMessageListener}.
+     */
+    public SbusMessageListener getListener() {
+        return m_Listener;
+    }// getListener
+
+    @Override
+    public void onMessageReceived(SbusResponse response) {
+        if (m_Closed) {
+            return;
+        }
+        int device = (response.getSourceSubnetID() << 8) | response.getSourceUnitID();
+        Lane lane = m_Lanes[(device & 0x7FFFFFFF) % m_Lanes.length];
+        if (lane.m_Queue.offer(response) || enqueueOnOverflow(lane, response)) {
+            lane.schedule();
+        }
+    }// onMessageReceived
+
+    @Override
+    public void onError(Exception error, byte[] rawMessage) {
+        m_Listener.onError(error, rawMessage);
+    }// onError
+
+    /**
+     * Stops delivering messages and discards those still queued.
+     * A dedicated executor is shut down as well, a shared one is not.
+     */
+    public void close() {
+        m_Closed = true;
+        for (Lane lane : m_Lanes) {
+            lane.m_Queue.clear();
+        }
+        if (m_OwnExecutor != null) {
+            try {
+                m_OwnExecutor.shutdown(100);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }// close
+
+    /**
+     * Returns the number of messages handed to the listener.
+     *
+     * @return the delivered count.
+     */
+    public long getDeliveredCount() {
+        return m_Delivered.sum();
+    }// getDeliveredCount
+
+    /**
+     * Returns the number of messages dropped because a lane was full.
+     *
+     * @return the overflow count.
+     */
+    public long getOverflowCount() {
+        long dropped = 0;
+        for (Lane lane : m_Lanes) {
+            dropped += lane.m_Queue.getDroppedCount();
+        }
+        return dropped;
+    }// getOverflowCount
+
+    /**
+     * Returns the number of times the executor refused to drain a lane.
+     * The lane is drained again with the next message.
+     *
+     * @return the rejected count.
+     */
+    public long getRejectedCount() {
+        return m_Rejected.sum();
+    }// getRejectedCount
+
+    /**
+     * Returns the number of messages waiting in all lanes.
+     *
+     * @return the queue depth.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Lane lane : m_Lanes) {
+            depth += lane.m_Queue.size();
+        }
+        return depth;
+    }// getQueueDepth
+
+    /**
+     * Applies the drop policy of a full lane; never waits.
+     */
+    private static boolean enqueueOnOverflow(Lane lane, SbusResponse response) {
+        try {
+            return lane.m_Queue.put(response);
+        } catch (InterruptedException ex) {
+            // drop policies do not wait
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }// enqueueOnOverflow
+
+    /**
+     * A queue of messages delivered in order by at most one task at a time.
+     */
+    private final class Lane implements Runnable {
+
+        final RingBuffer<SbusResponse> m_Queue;
+        private final AtomicBoolean m_Scheduled = new AtomicBoolean();
+
+        Lane(RingBuffer<SbusResponse> queue) {
+            m_Queue = queue;
+        }// constructor
+
+        void schedule() {
+            if (!m_Closed && m_Scheduled.compareAndSet(false, true)) {
+                try {
+                    m_Executor.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    m_Scheduled.set(false);
+                    m_Rejected.increment();
+                }
+            }
+        }// schedule
+
+        @Override
+        public void run() {
+            int delivered = 0;
+            SbusResponse response;
+            while (delivered < BATCH_SIZE && !m_Closed && (response = m_Queue.poll()) != null) {
+                deliver(response);
+                delivered++;
+            }
+            m_Scheduled.set(false);
+            // messages may have arrived after the last poll, or the batch ended
+            if (!m_Queue.isEmpty()) {
+                schedule();
+            }
+        }// run
+
+        private void deliver(SbusResponse response) {
+            ListenerDispatchEvent event = new ListenerDispatchEvent();
+            event.begin();
+            try {
+                m_Listener.onMessageReceived(response);
+                m_Delivered.increment();
+            } catch (Exception e) {
+                event.failed = true;
+                logger.warn("Error in message listener", e);
+                try {
+                    m_Listener.onError(e, null);
+                } catch (Exception listenerError) {
+                    logger.error("Error in listener error handler", listenerError);
+                }
+            }
+            if (event.shouldCommit()) {
+                event.listener = m_Listener.getClass().getName();
+                event.sourceSubnetID = response.getSourceSubnetID();
+                event.sourceUnitID = response.getSourceUnitID();
+                event.functionCode = response.getFunctionCode();
+                event.commit();
+            }
+        }// deliver
+
+    }// class Lane
+
+}// class AsyncMessageListener
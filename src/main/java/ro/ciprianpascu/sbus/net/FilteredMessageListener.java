@@ -0,0 +1,91 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.net;
+
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+
+/**
+ * Class implementing a {@link SbusMessageListener} that passes on
+ * only the messages matching a source subnet, source unit and
+ * function code, each of which may be {@link SubscriptionIndex#ANY}.
+ *
+ * Transports without a subscription index of their own subscribe
+ * listeners through this filter; removing a listener has to remove
+ * the filters whose {@link #getListener()} is that listener.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class FilteredMessageListener implements SbusMessageListener {
+
+    private final int m_SubnetID;
+    private final int m_UnitID;
+    private final int m_FunctionCode;
+    private final SbusMessageListener m_Listener;
+
+    /**
+     * Constructs a new {@link FilteredMessageListener}.
+     *
+     * @param subnetID the source subnet, or {@link SubscriptionIndex#ANY}.
+     * @param unitID the source unit, or {@link SubscriptionIndex#ANY}.
+     * @param functionCode the function code of the message, or {@link SubscriptionIndex#ANY}.
+     * @param listener the {@link SbusMessageListener} to notify.
+     */
+    public FilteredMessageListener(int subnetID, int unitID, int functionCode, SbusMessageListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener required");
+        }
+        m_SubnetID = subnetID;
+        m_UnitID = unitID;
+        m_FunctionCode = functionCode;
+        m_Listener = listener;
+    }// constructor
+
+    /**
+     * Tests if a message matches the filter of this listener.
+     *
+     * @param response the received {@link SbusResponse}.
+     * @return true if the message matches, false otherwise.
+     */
+    public boolean matches(SbusResponse response) {
+        return (m_SubnetID == SubscriptionIndex.ANY || m_SubnetID == response.getSourceSubnetID())
+                && (m_UnitID == SubscriptionIndex.ANY || m_UnitID == response.getSourceUnitID())
+                && (m_FunctionCode == SubscriptionIndex.ANY || m_FunctionCode == response.getFunctionCode());
+    }// matches
+
+    /**
+     * Returns the listener notified of matching messages.
+     *
+     * @return the wrapped {@link SbusMessageListener}.
+     */
+    public SbusMessageListener getListener() {
+        return m_Listener;
+    }// getListener
+
+    @Override
+    public void onMessageReceived(SbusResponse response) {
+        if (matches(response)) {
+            m_Listener.onMessageReceived(response);
+        }
+    }// onMessageReceived
+
+    @Override
+    public void onError(Exception error, byte[] rawMessage) {
+        m_Listener.onError(error, rawMessage);
+    }// onError
+
+}// class FilteredMessageListener
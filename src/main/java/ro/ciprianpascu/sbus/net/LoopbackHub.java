@@ -0,0 +1,111 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.net;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Class implementing an in-memory S-Bus segment connecting
+ * {@link LoopbackTerminal} instances without sockets.
+ *
+ * Like a broadcast on the bus, every datagram a terminal sends is
+ * delivered to all other active terminals of the hub, after the
+ * configured latency. Many hubs can run side by side in one process,
+ * so tests and benchmarks of the full transport and transaction stack
+ * neither need the S-Bus port nor interfere with each other.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class LoopbackHub {
+
+    private final List<LoopbackTerminal> m_Terminals = new CopyOnWriteArrayList<>();
+    private volatile long m_LatencyNanos;
+
+    /**
+     * Creates a terminal attached to this hub.
+     *
+     * @param localAddress the address the terminal puts in the prefix of the datagrams it sends.
+     * @param withResponse true for a terminal in listener mode, reading requests,
+     *            false for a master notifying its transport of responses.
+     * @return the new, inactive {@link LoopbackTerminal}.
+     */
+    public LoopbackTerminal createTerminal(InetAddress localAddress, boolean withResponse) {
+        LoopbackTerminal terminal = new LoopbackTerminal(this, localAddress, withResponse);
+        m_Terminals.add(terminal);
+        return terminal;
+    }// createTerminal
+
+    /**
+     * Detaches a terminal from this hub, deactivating it.
+     *
+     * @param terminal the {@link LoopbackTerminal} to remove.
+     */
+    public void removeTerminal(LoopbackTerminal terminal) {
+        if (m_Terminals.remove(terminal)) {
+            terminal.deactivate();
+        }
+    }// removeTerminal
+
+    /**
+     * Returns the number of terminals attached to this hub.
+     *
+     * @return the terminal count.
+     */
+    public int getTerminalCount() {
+        return m_Terminals.size();
+    }// getTerminalCount
+
+    /**
+     * Sets the time a datagram takes from the sending to the receiving terminals.
+     *
+     * @param micros the latency in microseconds, 0 to deliver at once.
+     */
+    public void setLatencyMicros(long micros) {
+        if (micros < 0) {
+            throw new IllegalArgumentException("Invalid latency: " + micros);
+        }
+        m_LatencyNanos = micros * 1000L;
+    }// setLatencyMicros
+
+    /**
+     * Returns the time a datagram takes from the sending to the receiving terminals.
+     *
+     * @return the latency in microseconds.
+     */
+    public long getLatencyMicros() {
+        return m_LatencyNanos / 1000L;
+    }// getLatencyMicros
+
+    /**
+     * Delivers a datagram to all active terminals but its sender.
+     *
+     * @param sender the sending {@link LoopbackTerminal}.
+     * @param datagram the datagram, including the UDP prefix.
+     */
+    void send(LoopbackTerminal sender, byte[] datagram) {
+        long due = System.nanoTime() + m_LatencyNanos;
+        for (LoopbackTerminal terminal : m_Terminals) {
+            if (terminal != sender && terminal.isActive()) {
+                terminal.deliver(datagram, due);
+            }
+        }
+    }// send
+
+}// class LoopbackHub
@@ -0,0 +1,272 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.net;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.SbusIOException;
+import ro.ciprianpascu.sbus.io.SbusTransport;
+import ro.ciprianpascu.sbus.io.SbusUDPTransport;
+import ro.ciprianpascu.sbus.util.RingBuffer;
+
+/**
+ * Class implementing a {@link UDPTerminal} attached to a {@link LoopbackHub}
+ * instead of a socket.
+ *
+ * Sent datagrams get the same prefix as on the network and are handed to
+ * the other terminals of the hub; received ones pass through the lock-free
+ * {@link RingBuffer} queues of the terminal, held until the latency of the
+ * hub has passed, and are then handed to its {@link SbusUDPTransport} as a
+ * {@link UDPSlaveTerminal} does. Transactions, listeners and simulated
+ * devices thus run unchanged, at memory speed.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class LoopbackTerminal implements NotifyingUDPTerminal {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoopbackTerminal.class);
+
+    /** Default time to wait for the receiver thread when deactivating, in milliseconds */
+    public static final int DEFAULT_DEACTIVATION_WAIT_MILLIS = 100;
+
+    private static final byte[] SMART_CLOUD = { 'S', 'M', 'A', 'R', 'T', 'C', 'L', 'O', 'U', 'D', (byte) 0xAA,
+            (byte) 0xAA };
+
+    private final LoopbackHub m_Hub;
+    private final InetAddress m_LocalAddress;
+    private final boolean m_ListenerMode;
+    private final RingBuffer<InFlight> m_InFlight = new RingBuffer<>(
+            UDPSlaveTerminal.DEFAULT_RECEIVE_QUEUE_CAPACITY, RingBuffer.OverflowPolicy.DROP_OLDEST);
+    private final RingBuffer<byte[]> m_ReceiveQueue = new RingBuffer<>(
+            UDPSlaveTerminal.DEFAULT_RECEIVE_QUEUE_CAPACITY, RingBuffer.OverflowPolicy.DROP_OLDEST);
+    private final LongAdder m_PacketsSent = new LongAdder();
+    private final LongAdder m_PacketsReceived = new LongAdder();
+    private volatile MessageArrivalCallback m_MessageCallback;
+    private volatile SbusTransport m_SbusTransport;
+    private volatile boolean m_Active;
+    private volatile int m_Timeout = Sbus.DEFAULT_TIMEOUT;
+    private Thread m_Receiver;
+
+    /**
+     * Constructs a new {@link LoopbackTerminal}, see {@link LoopbackHub#createTerminal}.
+     *
+     * @param hub the {@link LoopbackHub} the terminal is attached to.
+     * @param localAddress the address put in the prefix of sent datagrams.
+     * @param withResponse true for listener mode, false for master mode.
+     */
+    LoopbackTerminal(LoopbackHub hub, InetAddress localAddress, boolean withResponse) {
+        m_Hub = hub;
+        m_LocalAddress = localAddress;
+        m_ListenerMode = withResponse;
+    }// constructor
+
+    @Override
+    public InetAddress getLocalAddress() {
+        return m_LocalAddress;
+    }// getLocalAddress
+
+    /**
+     * Returns the port of the terminal; all terminals
+     * of a hub share the default S-Bus port.
+     *
+     * @return {@link Sbus#DEFAULT_PORT}.
+     */
+    @Override
+    public int getLocalPort() {
+        return Sbus.DEFAULT_PORT;
+    }// getLocalPort
+
+    @Override
+    public boolean isActive() {
+        return m_Active;
+    }// isActive
+
+    @Override
+    public boolean isListenerMode() {
+        return m_ListenerMode;
+    }// isListenerMode
+
+    @Override
+    public synchronized void activate() throws Exception {
+        if (m_Active) {
+            return;
+        }
+        m_InFlight.clear();
+        m_ReceiveQueue.clear();
+        m_SbusTransport = new SbusUDPTransport(this);
+        m_Receiver = new Thread(this::receive, "LoopbackReceiver");
+        m_Receiver.setDaemon(true);
+        m_Active = true;
+        m_Receiver.start();
+        logger.debug("LoopbackTerminal {} activated", m_LocalAddress);
+    }// activate
+
+    @Override
+    public synchronized void deactivate() {
+        if (!m_Active) {
+            return;
+        }
+        m_Active = false;
+        m_Receiver.interrupt();
+        try {
+            m_Receiver.join(DEFAULT_DEACTIVATION_WAIT_MILLIS);
+            m_SbusTransport.close();
+        } catch (Exception ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+        m_SbusTransport = null;
+        m_Receiver = null;
+    }// deactivate
+
+    @Override
+    public SbusTransport getSbusTransport() {
+        return m_SbusTransport;
+    }// getSbusTransport
+
+    @Override
+    public void setMessageArrivalCallback(MessageArrivalCallback callback) {
+        m_MessageCallback = callback;
+    }// setMessageArrivalCallback
+
+    @Override
+    public void sendMessage(byte[] msg) throws Exception {
+        if (!m_Active) {
+            throw new SbusIOException("Terminal not active");
+        }
+        byte[] localIp = m_LocalAddress.getAddress();
+        byte[] fullMessage = new byte[msg.length + 16];
+        System.arraycopy(localIp, 0, fullMessage, 0, localIp.length);
+        System.arraycopy(SMART_CLOUD, 0, fullMessage, 4, SMART_CLOUD.length);
+        System.arraycopy(msg, 0, fullMessage, 16, msg.length);
+        m_PacketsSent.increment();
+        m_Hub.send(this, fullMessage);
+    }// sendMessage
+
+    @Override
+    public byte[] receiveMessage() throws Exception {
+        byte[] message = m_ListenerMode ? m_ReceiveQueue.take() : m_ReceiveQueue.poll(m_Timeout);
+        if (message == null) {
+            throw new SbusIOException("No message response arrived in due time", true);
+        }
+        return stripPrefix(message);
+    }// receiveMessage
+
+    @Override
+    public byte[] receiveMessageNonBlocking() throws Exception {
+        byte[] message = m_ReceiveQueue.poll();
+        return message == null ? null : stripPrefix(message);
+    }// receiveMessageNonBlocking
+
+    @Override
+    public boolean hasMessage() {
+        return !m_ReceiveQueue.isEmpty();
+    }// hasMessage
+
+    @Override
+    public int getTimeout() {
+        return m_Timeout;
+    }// getTimeout
+
+    @Override
+    public void setTimeout(int timeout) {
+        m_Timeout = timeout;
+    }// setTimeout
+
+    /**
+     * Returns the number of datagrams sent.
+     *
+     * @return the sent datagram count.
+     */
+    public long getPacketsSent() {
+        return m_PacketsSent.sum();
+    }// getPacketsSent
+
+    /**
+     * Returns the number of datagrams received.
+     *
+     * @return the received datagram count.
+     */
+    public long getPacketsReceived() {
+        return m_PacketsReceived.sum();
+    }// getPacketsReceived
+
+    /**
+     * Queues a datagram sent by another terminal of the hub.
+     *
+     * @param datagram the datagram, including the UDP prefix.
+     * @param due the {@link System#nanoTime()} at which it arrives.
+     */
+    void deliver(byte[] datagram, long due) {
+        m_InFlight.offer(new InFlight(datagram, due));
+    }// deliver
+
+    private void receive() {
+        try {
+            while (m_Active) {
+                InFlight frame = m_InFlight.take();
+                // the latency is the same for all datagrams, so they fall due in order
+                for (long wait = frame.m_Due - System.nanoTime(); wait > 0; wait = frame.m_Due - System.nanoTime()) {
+                    LockSupport.parkNanos(wait);
+                    if (Thread.interrupted()) {
+                        return;
+                    }
+                }
+                m_PacketsReceived.increment();
+                if (!m_ReceiveQueue.put(frame.m_Datagram)) {
+                    continue;
+                }
+                MessageArrivalCallback callback = m_MessageCallback;
+                if (callback != null) {
+                    callback.onMessageArrived();
+                }
+            }
+        } catch (InterruptedException ex) {
+            // deactivated
+        }
+    }// receive
+
+    private static byte[] stripPrefix(byte[] message) throws SbusIOException {
+        if (message.length < 16 || !Arrays.equals(message, 4, 16, SMART_CLOUD, 0, SMART_CLOUD.length)) {
+            throw new SbusIOException("Message not for me", true);
+        }
+        return Arrays.copyOfRange(message, 16, message.length);
+    }// stripPrefix
+
+    /**
+     * A datagram on its way from the hub to this terminal.
+     */
+    private static final class InFlight {
+
+        final byte[] m_Datagram;
+        final long m_Due;
+
+        InFlight(byte[] datagram, long due) {
+            m_Datagram = datagram;
+            m_Due = due;
+        }// constructor
+
+    }// class InFlight
+
+}// class LoopbackTerminal
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.net;
+
+/**
+ * Interface defining a {@link UDPTerminal} that notifies its transport
+ * of arriving messages, so responses are decoded as they arrive instead
+ * of being read by the transaction waiting for them.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public interface NotifyingUDPTerminal extends UDPTerminal {
+
+    /**
+     * Interface for receiving notifications when messages arrive in the receive queue.
+     */
+    public interface MessageArrivalCallback {
+        /**
+         * Called when a new message arrives in the receive queue.
+         * This is called from the thread receiving messages.
+         */
+        void onMessageArrived();
+    }
+
+    /**
+     * Sets a callback to be notified when messages arrive in the receive queue.
+     *
+     * @param callback the callback to set, or null to disable notifications
+     */
+    public void setMessageArrivalCallback(MessageArrivalCallback callback);
+
+    /**
+     * Receives a message without waiting for one.
+     *
+     * @return the message without the UDP prefix, or null if no message is available
+     * @throws Exception if the message is not an S-Bus message
+     */
+    public byte[] receiveMessageNonBlocking() throws Exception;
+
+    /**
+     * Tests if this terminal serves requests, reading them itself,
+     * rather than sending requests and being notified of responses.
+     *
+     * @return true if in listener mode, false in master mode
+     */
+    public boolean isListenerMode();
+}
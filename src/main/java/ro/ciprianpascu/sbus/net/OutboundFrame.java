@@ -0,0 +1,205 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.net;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.msg.SendPriority;
+
+/**
+ * Class implementing a frame waiting in the send queue of a
+ * terminal, together with its priority and the time it was queued.
+ *
+ * Writes of a channel level or an RGBW colour carry a coalescing key
+ * naming the function code, target device and channel or loop they
+ * write. While such a frame waits in the queue a newer write with the
+ * same key may {@link #replace(byte[])} its bytes, taking over its place
+ * in the queue; once the sender {@link #claim() claimed} the frame, it
+ * can no longer be replaced. A newer write queued in a higher class
+ * {@link #cancel() cancels} the frame instead, the sender skips it.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public final class OutboundFrame {
+
+    /** Coalescing key of frames that are never coalesced */
+    public static final long NO_KEY = -1;
+
+    /** Offset of the function code in a datagram, after the IP and signature prefix */
+    private static final int FUNCTION_CODE_OFFSET = 21;
+
+    private byte[] m_Frame;
+    private boolean m_Claimed;
+    private boolean m_Cancelled;
+    private int m_Replaced;
+    private final long m_CoalescingKey;
+    private final SendPriority m_Priority;
+    private final long m_EnqueuedNanos;
+
+    /**
+     * Constructs a new {@link OutboundFrame} queued now
+     * with {@link SendPriority#INTERACTIVE_READ}.
+     *
+     * @param frame the complete datagram, with IP and signature prefix.
+     */
+    public OutboundFrame(byte[] frame) {
+        this(frame, SendPriority.INTERACTIVE_READ);
+    }// constructor
+
+    /**
+     * Constructs a new {@link OutboundFrame} queued now.
+     *
+     * @param frame the complete datagram, with IP and signature prefix.
+     * @param priority the {@link SendPriority} of the frame.
+     */
+    public OutboundFrame(byte[] frame, SendPriority priority) {
+        m_Frame = frame;
+        m_Priority = priority == null ? SendPriority.INTERACTIVE_READ : priority;
+        m_CoalescingKey = coalescingKey(frame);
+        m_EnqueuedNanos = System.nanoTime();
+    }// constructor
+
+    /**
+     * Returns the datagram to send.
+     *
+     * @return the frame bytes.
+     */
+    public synchronized byte[] getFrame() {
+        return m_Frame;
+    }// getFrame
+
+    /**
+     * Replaces the datagram of this frame by a newer write
+     * with the same coalescing key, unless it was claimed or cancelled.
+     *
+     * @param frame the complete datagram of the newer write.
+     * @return true if replaced, false if the frame is being sent already or was cancelled.
+     */
+    public synchronized boolean replace(byte[] frame) {
+        if (m_Claimed || m_Cancelled) {
+            return false;
+        }
+        m_Frame = frame;
+        m_Replaced++;
+        return true;
+    }// replace
+
+    /**
+     * Cancels this frame, superseded by a newer write with the same
+     * coalescing key queued in another class, unless it was claimed.
+     *
+     * @return true if cancelled, false if the frame is being sent already.
+     */
+    public synchronized boolean cancel() {
+        if (m_Claimed) {
+            return false;
+        }
+        m_Cancelled = true;
+        return true;
+    }// cancel
+
+    /**
+     * Claims this frame for sending; it can no longer be replaced.
+     *
+     * @return the datagram to send, or null if the frame was cancelled.
+     */
+    public synchronized byte[] claim() {
+        if (m_Cancelled) {
+            return null;
+        }
+        m_Claimed = true;
+        return m_Frame;
+    }// claim
+
+    /**
+     * Tests if this frame was cancelled by a newer write.
+     *
+     * @return true if cancelled, false otherwise.
+     */
+    public synchronized boolean isCancelled() {
+        return m_Cancelled;
+    }// isCancelled
+
+    /**
+     * Returns the number of newer writes that replaced the datagram.
+     *
+     * @return the replacement count.
+     */
+    public synchronized int getReplacedCount() {
+        return m_Replaced;
+    }// getReplacedCount
+
+    /**
+     * Returns the coalescing key of this frame.
+     *
+     * @return the key, or {@link #NO_KEY} if never coalesced.
+     */
+    public long getCoalescingKey() {
+        return m_CoalescingKey;
+    }// getCoalescingKey
+
+    /**
+     * Returns the priority of this frame.
+     *
+     * @return the {@link SendPriority}.
+     */
+    public SendPriority getPriority() {
+        return m_Priority;
+    }// getPriority
+
+    /**
+     * Returns the time the frame was queued.
+     *
+     * @return the {@link System#nanoTime()} at construction.
+     */
+    public long getEnqueuedNanos() {
+        return m_EnqueuedNanos;
+    }// getEnqueuedNanos
+
+    /**
+     * Returns the coalescing key of a datagram: the function code,
+     * target subnet, target unit and written channel or loop of channel
+     * level and RGBW colour writes. A newer write with the same key
+     * makes an older one obsolete.
+     *
+     * @param frame the complete datagram, with IP and signature prefix.
+     * @return the key, or {@link #NO_KEY} for all other frames.
+     */
+    public static long coalescingKey(byte[] frame) {
+        if (frame == null || frame.length <= FUNCTION_CODE_OFFSET + 4) {
+            return NO_KEY;
+        }
+        int functionCode = ((frame[FUNCTION_CODE_OFFSET] & 0xFF) << 8) | (frame[FUNCTION_CODE_OFFSET + 1] & 0xFF);
+        int channel;
+        switch (functionCode) {
+            case Sbus.WRITE_SINGLE_CHANNEL_REQUEST:
+            case Sbus.WRITE_CUSTOM_COLORS_REQUEST:
+                // channel respectively loop number, the first data byte
+                channel = frame[FUNCTION_CODE_OFFSET + 4] & 0xFF;
+                break;
+            case Sbus.WRITE_PREVIEW_COLORS_REQUEST:
+                // previews the colour of the whole device
+                channel = 0;
+                break;
+            default:
+                return NO_KEY;
+        }
+        return ((long) functionCode << 24) | ((frame[FUNCTION_CODE_OFFSET + 2] & 0xFF) << 16)
+                | ((frame[FUNCTION_CODE_OFFSET + 3] & 0xFF) << 8) | channel;
+    }// coalescingKey
+
+}// class OutboundFrame
@@ -0,0 +1,254 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.net;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ro.ciprianpascu.sbus.msg.SendPriority;
+import ro.ciprianpascu.sbus.util.RingBuffer;
+
+/**
+ * Class implementing the send queue of a terminal, with a
+ * {@link RingBuffer} per {@link SendPriority}.
+ *
+ * Frames are taken from the highest priority class holding any, so an
+ * interactive write overtakes queued background polls. To keep lower
+ * classes from starving, a class that was passed over a number of times
+ * in a row while holding frames, the starvation limit, is served next;
+ * under sustained load every class thus gets at least one frame out of
+ * the limit plus one. Frames of one class keep their order.
+ *
+ * Any number of threads may put; frames are meant to be taken by the
+ * single sender thread of the terminal.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class PrioritySendQueue {
+
+    /** Default number of times a class may be passed over before it is served */
+    public static final int DEFAULT_STARVATION_LIMIT = 8;
+
+    private static final SendPriority[] PRIORITIES = SendPriority.values();
+
+    private final RingBuffer<OutboundFrame>[] m_Queues;
+    private final int[] m_PassedOver = new int[PRIORITIES.length];
+    private final AtomicInteger m_HighWatermark = new AtomicInteger();
+    private volatile int m_StarvationLimit = DEFAULT_STARVATION_LIMIT;
+
+    /** Monitor the sender waits on while all classes are empty */
+    private final Object m_NotEmpty = new Object();
+    private volatile int m_WaitingForTake = 0;
+
+    /**
+     * Constructs a new {@link PrioritySendQueue} whose classes
+     * block senders when full.
+     *
+     * @param capacity the number of frames each class holds.
+     */
+    public PrioritySendQueue(int capacity) {
+        this(capacity, RingBuffer.OverflowPolicy.BLOCK);
+    }// constructor
+
+    /**
+     * Constructs a new {@link PrioritySendQueue}.
+     *
+     * @param capacity the number of frames each class holds.
+     * @param policy the {@link RingBuffer.OverflowPolicy} of a full class.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PrioritySendQueue(int capacity, RingBuffer.OverflowPolicy policy) {
+        m_Queues = new RingBuffer[PRIORITIES.length];
+        for (int i = 0; i < m_Queues.length; i++) {
+            m_Queues[i] = new RingBuffer<>(capacity, policy);
+        }
+    }// constructor
+
+    /**
+     * Queues a frame in the class of its priority, applying the
+     * overflow policy if that class is full.
+     *
+     * @param frame the {@link OutboundFrame}.
+     * @return true if queued, false if dropped.
+     * @throws InterruptedException if interrupted while waiting for space.
+     */
+    public boolean put(OutboundFrame frame) throws InterruptedException {
+        if (!m_Queues[frame.getPriority().ordinal()].put(frame)) {
+            return false;
+        }
+        int size = size();
+        int high = m_HighWatermark.get();
+        while (size > high && !m_HighWatermark.compareAndSet(high, size)) {
+            high = m_HighWatermark.get();
+        }
+        if (m_WaitingForTake > 0) {
+            synchronized (m_NotEmpty) {
+                m_NotEmpty.notifyAll();
+            }
+        }
+        return true;
+    }// put
+
+    /**
+     * Takes the next frame to send, waiting while there is none.
+     *
+     * @return the {@link OutboundFrame}.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public OutboundFrame take() throws InterruptedException {
+        for (;;) {
+            OutboundFrame frame = poll();
+            if (frame != null) {
+                return frame;
+            }
+            synchronized (m_NotEmpty) {
+                m_WaitingForTake++;
+                try {
+                    while (isEmpty()) {
+                        m_NotEmpty.wait();
+                    }
+                } finally {
+                    m_WaitingForTake--;
+                }
+            }
+        }
+    }// take
+
+    /**
+     * Takes the next frame to send, if there is any.
+     *
+     * @return the {@link OutboundFrame}, or null if all classes are empty.
+     */
+    public OutboundFrame poll() {
+        synchronized (m_PassedOver) {
+            int highest = -1;
+            for (int i = 0; i < m_Queues.length; i++) {
+                if (!m_Queues[i].isEmpty()) {
+                    highest = i;
+                    break;
+                }
+            }
+            if (highest < 0) {
+                return null;
+            }
+            // the lowest class passed over too often goes first
+            int chosen = highest;
+            int limit = m_StarvationLimit;
+            for (int i = m_Queues.length - 1; i > highest; i--) {
+                if (m_PassedOver[i] >= limit && !m_Queues[i].isEmpty()) {
+                    chosen = i;
+                    break;
+                }
+            }
+            for (int i = chosen + 1; i < m_Queues.length; i++) {
+                if (!m_Queues[i].isEmpty()) {
+                    m_PassedOver[i]++;
+                }
+            }
+            m_PassedOver[chosen] = 0;
+            return m_Queues[chosen].poll();
+        }
+    }// poll
+
+    /**
+     * Discards all queued frames.
+     */
+    public void clear() {
+        for (RingBuffer<OutboundFrame> queue : m_Queues) {
+            queue.clear();
+        }
+    }// clear
+
+    /**
+     * Tests if no frame is queued.
+     *
+     * @return true if all classes are empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        for (RingBuffer<OutboundFrame> queue : m_Queues) {
+            if (!queue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }// isEmpty
+
+    /**
+     * Returns the number of queued frames.
+     *
+     * @return the number of frames in all classes.
+     */
+    public int size() {
+        int size = 0;
+        for (RingBuffer<OutboundFrame> queue : m_Queues) {
+            size += queue.size();
+        }
+        return size;
+    }// size
+
+    /**
+     * Returns the queue of a class, for inspecting its counters.
+     *
+     * @param priority the {@link SendPriority} of the class.
+     * @return the {@link RingBuffer} of the class.
+     */
+    public RingBuffer<OutboundFrame> getQueue(SendPriority priority) {
+        return m_Queues[priority.ordinal()];
+    }// getQueue
+
+    /**
+     * Returns the highest number of frames ever queued at once.
+     *
+     * @return the high watermark over all classes.
+     */
+    public int getHighWatermark() {
+        return m_HighWatermark.get();
+    }// getHighWatermark
+
+    /**
+     * Returns the number of frames dropped because their class was full.
+     *
+     * @return the drop count over all classes.
+     */
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (RingBuffer<OutboundFrame> queue : m_Queues) {
+            dropped += queue.getDroppedCount();
+        }
+        return dropped;
+    }// getDroppedCount
+
+    /**
+     * Sets how many times in a row a class holding frames may be
+     * passed over for a higher one before it is served.
+     *
+     * @param limit the starvation limit, at least 1.
+     */
+    public void setStarvationLimit(int limit) {
+        m_StarvationLimit = Math.max(1, limit);
+    }// setStarvationLimit
+
+    /**
+     * Returns how many times in a row a class may be passed over.
+     *
+     * @return the starvation limit.
+     */
+    public int getStarvationLimit() {
+        return m_StarvationLimit;
+    }// getStarvationLimit
+
+}// class PrioritySendQueue
@@ -0,0 +1,290 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.net;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ro.ciprianpascu.sbus.Sbus;
+
+/**
+ * Class implementing a bounded, expiring table that remembers
+ * where replies to incoming requests have to be sent to.
+ *
+ * Entries are keyed by the requester (source subnet and unit) and the
+ * transaction (target subnet, unit and function code) found in the
+ * S-Bus header of the frame, so concurrent requests coming from the
+ * same IP address do not overwrite each other. Requesters at different
+ * socket addresses sharing the same subnet and unit, as masters left on
+ * their default source address do, are queued under the same key and
+ * answered in the order their requests arrived. Only the socket address
+ * of the requester is retained, never the frame itself.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class ReplyRouteTable {
+
+    /** Default maximum number of routes kept in the table */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** Default time in milliseconds after which an unanswered route expires */
+    public static final long DEFAULT_TTL_MILLIS = 10000;
+
+    /** Offset of the S-Bus header within a frame, after the IP and SMARTCLOUD signature */
+    static final int HEADER_OFFSET = 16;
+
+    /** Minimal frame length needed to extract a route key */
+    static final int MIN_FRAME_LENGTH = HEADER_OFFSET + 9;
+
+    private final Map<Long, ArrayDeque<Route>> m_Routes = new HashMap<>();
+    private final LinkedHashSet<Route> m_Order = new LinkedHashSet<>();
+    private final int m_Capacity;
+    private final long m_TtlNanos;
+    private final AtomicLong m_Expired = new AtomicLong();
+    private final AtomicLong m_Evicted = new AtomicLong();
+
+    /**
+     * Constructs a new {@link ReplyRouteTable} with default
+     * capacity and time to live.
+     */
+    public ReplyRouteTable() {
+        this(DEFAULT_CAPACITY, DEFAULT_TTL_MILLIS);
+    }// constructor
+
+    /**
+     * Constructs a new {@link ReplyRouteTable}.
+     *
+     * @param capacity the maximum number of routes kept.
+     * @param ttlMillis the time in milliseconds after which a route expires.
+     */
+    public ReplyRouteTable(int capacity, long ttlMillis) {
+        if (capacity <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("Capacity and time to live must be positive");
+        }
+        m_Capacity = capacity;
+        m_TtlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }// constructor
+
+    /**
+     * Remembers the source address of the given request frame.
+     *
+     * @param frame the full received frame, including the IP and signature prefix.
+     * @param source the socket address the frame was received from.
+     * @return true if the route was recorded, false if the frame is too short.
+     */
+    public synchronized boolean put(byte[] frame, InetSocketAddress source) {
+        if (frame == null || frame.length < MIN_FRAME_LENGTH || source == null) {
+            return false;
+        }
+        long now = System.nanoTime();
+        long key = keyFor(frame, false, functionCodeOf(frame));
+        ArrayDeque<Route> routes = m_Routes.computeIfAbsent(key, k -> new ArrayDeque<>(2));
+        for (Iterator<Route> it = routes.iterator(); it.hasNext();) {
+            Route route = it.next();
+            if (route.m_Address.equals(source)) {
+                // a retry of the same requester replaces its pending route
+                it.remove();
+                m_Order.remove(route);
+            }
+        }
+        if (m_Order.size() >= m_Capacity) {
+            purge(now);
+            if (m_Order.size() >= m_Capacity) {
+                unlink(m_Order.iterator().next());
+                m_Evicted.incrementAndGet();
+            }
+        }
+        Route route = new Route(key, source, now);
+        routes.addLast(route);
+        m_Order.add(route);
+        return true;
+    }// put
+
+    /**
+     * Removes and returns the source address of the request
+     * the given reply frame answers.
+     * The reply may carry the request function code itself, the
+     * request function code plus one or the exception offset, and
+     * may either address the requester as its target or echo the
+     * addressing of the request.
+     *
+     * @param frame the full reply frame, including the IP and signature prefix.
+     * @return the address to send the reply to, or null if unknown or expired.
+     */
+    public synchronized InetSocketAddress remove(byte[] frame) {
+        if (frame == null || frame.length < MIN_FRAME_LENGTH) {
+            return null;
+        }
+        int fc = functionCodeOf(frame);
+        long now = System.nanoTime();
+        InetSocketAddress address = remove(frame, true, fc, now);
+        if (address == null) {
+            address = remove(frame, false, fc, now);
+        }
+        return address;
+    }// remove
+
+    private InetSocketAddress remove(byte[] frame, boolean reply, int fc, long now) {
+        InetSocketAddress address = take(keyFor(frame, reply, fc - 1), now);
+        if (address == null) {
+            address = take(keyFor(frame, reply, fc), now);
+        }
+        if (address == null && fc >= Sbus.EXCEPTION_OFFSET) {
+            address = take(keyFor(frame, reply, fc - Sbus.EXCEPTION_OFFSET), now);
+        }
+        return address;
+    }// remove
+
+    /**
+     * Removes all routes that have expired.
+     */
+    public synchronized void purge() {
+        purge(System.nanoTime());
+    }// purge
+
+    /**
+     * Removes all routes.
+     */
+    public synchronized void clear() {
+        m_Routes.clear();
+        m_Order.clear();
+    }// clear
+
+    /**
+     * Returns the number of routes currently held.
+     *
+     * @return the number of routes.
+     */
+    public synchronized int size() {
+        return m_Order.size();
+    }// size
+
+    /**
+     * Returns the maximum number of routes held.
+     *
+     * @return the capacity.
+     */
+    public int getCapacity() {
+        return m_Capacity;
+    }// getCapacity
+
+    /**
+     * Returns the number of routes that expired without a reply.
+     *
+     * @return the expired route count.
+     */
+    public long getExpiredCount() {
+        return m_Expired.get();
+    }// getExpiredCount
+
+    /**
+     * Returns the number of routes evicted because the table was full.
+     *
+     * @return the evicted route count.
+     */
+    public long getEvictedCount() {
+        return m_Evicted.get();
+    }// getEvictedCount
+
+    private InetSocketAddress take(long key, long now) {
+        ArrayDeque<Route> routes = m_Routes.get(key);
+        if (routes == null) {
+            return null;
+        }
+        // expired routes of the key must not hide a newer one behind them
+        while (!routes.isEmpty()) {
+            Route route = routes.peekFirst();
+            unlink(route);
+            if (now - route.m_Created < m_TtlNanos) {
+                return route.m_Address;
+            }
+            m_Expired.incrementAndGet();
+        }
+        return null;
+    }// take
+
+    /**
+     * Removes expired routes. Routes are held in arrival order,
+     * so only the expired head of the order has to be visited.
+     */
+    private void purge(long now) {
+        for (Iterator<Route> it = m_Order.iterator(); it.hasNext();) {
+            Route route = it.next();
+            if (now - route.m_Created < m_TtlNanos) {
+                break;
+            }
+            it.remove();
+            removeFromKey(route);
+            m_Expired.incrementAndGet();
+        }
+    }// purge
+
+    private void unlink(Route route) {
+        m_Order.remove(route);
+        removeFromKey(route);
+    }// unlink
+
+    private void removeFromKey(Route route) {
+        ArrayDeque<Route> routes = m_Routes.get(route.m_Key);
+        routes.remove(route);
+        if (routes.isEmpty()) {
+            m_Routes.remove(route.m_Key);
+        }
+    }// removeFromKey
+
+    private static int functionCodeOf(byte[] frame) {
+        return ((frame[HEADER_OFFSET + 5] & 0xFF) << 8) | (frame[HEADER_OFFSET + 6] & 0xFF);
+    }// functionCodeOf
+
+    /**
+     * Packs requester subnet/unit, target subnet/unit and the
+     * function code into a single key. For a reply the requester
+     * is the target of the frame and the device its source.
+     */
+    private static long keyFor(byte[] frame, boolean reply, int functionCode) {
+        int requester = reply ? HEADER_OFFSET + 7 : HEADER_OFFSET + 1;
+        int device = reply ? HEADER_OFFSET + 1 : HEADER_OFFSET + 7;
+        long key = frame[requester] & 0xFF;
+        key = (key << 8) | (frame[requester + 1] & 0xFF);
+        key = (key << 8) | (frame[device] & 0xFF);
+        key = (key << 8) | (frame[device + 1] & 0xFF);
+        return (key << 16) | (functionCode & 0xFFFF);
+    }// keyFor
+
+    /**
+     * Holds the key, the address of a requester and the time the request arrived.
+     */
+    private static final class Route {
+        final long m_Key;
+        final InetSocketAddress m_Address;
+        final long m_Created;
+
+        Route(long key, InetSocketAddress address, long created) {
+            m_Key = key;
+            m_Address = address;
+            m_Created = created;
+        }
+    }// Route
+
+}// class ReplyRouteTable
@@ -0,0 +1,299 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.net;
+
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.util.ManagedExecutor;
+import ro.ciprianpascu.sbus.util.RingBuffer;
+
+/**
+ * Class implementing a {@link Flow.Publisher} of the messages
+ * handed to it as a {@link SbusMessageListener}.
+ *
+ * Subscribe the publisher to a transport with the filters of interest,
+ * for unsolicited messages and, with
+ * {@link ro.ciprianpascu.sbus.io.SbusTransport#subscribeResponses(int, int, int, SbusMessageListener)},
+ * for the responses of transactions; or use
+ * {@link UDPMasterConnection#publish(int, int, int)} which does both.
+ *
+ * Every subscriber has its own bounded buffer and receives messages
+ * only as far as it requested them with {@link Flow.Subscription#request(long)}.
+ * When a buffer is full the overflow policy drops the oldest or the
+ * newest message, or, with {@link RingBuffer.OverflowPolicy#BLOCK},
+ * holds up the listener worker of the transport until the subscriber
+ * catches up, so its own bounded queue applies its drop policy.
+ * The thread receiving from the socket never waits on a subscriber.
+ * Signals to a subscriber are serialized and run on the executor.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class SbusMessagePublisher implements Flow.Publisher<SbusResponse>, SbusMessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(SbusMessagePublisher.class);
+
+    /** Default number of messages buffered per subscriber */
+    public static final int DEFAULT_BUFFER_CAPACITY = Flow.defaultBufferSize();
+
+    /** Maximal number of messages a subscriber receives before yielding its worker */
+    private static final int BATCH_SIZE = 64;
+
+    private final int m_Capacity;
+    private final RingBuffer.OverflowPolicy m_Policy;
+    private final Executor m_Executor;
+    private final CopyOnWriteArrayList<Delivery> m_Subscriptions = new CopyOnWriteArrayList<>();
+    private final LongAdder m_Published = new LongAdder();
+    private final LongAdder m_RetiredDrops = new LongAdder();
+    private volatile boolean m_Closed;
+
+    /**
+     * Constructs a new {@link SbusMessagePublisher} buffering
+     * {@link #DEFAULT_BUFFER_CAPACITY} messages per subscriber,
+     * dropping the oldest on overflow, on the shared executor.
+     */
+    public SbusMessagePublisher() {
+        this(DEFAULT_BUFFER_CAPACITY, RingBuffer.OverflowPolicy.DROP_OLDEST, null);
+    }// constructor
+
+    /**
+     * Constructs a new {@link SbusMessagePublisher}.
+     *
+     * @param capacity the number of messages buffered per subscriber.
+     * @param policy the {@link RingBuffer.OverflowPolicy} of a full buffer.
+     * @param executor the executor signalling the subscribers, or null
+     *            for {@link ManagedExecutor#getShared()}.
+     */
+    public SbusMessagePublisher(int capacity, RingBuffer.OverflowPolicy policy, Executor executor) {
+        if (capacity < 1 || policy == null) {
+            throw new IllegalArgumentException("Positive capacity and overflow policy required");
+        }
+        m_Capacity = capacity;
+        m_Policy = policy;
+        m_Executor = executor == null ? ManagedExecutor.getShared() : executor;
+    }// constructor
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super SbusResponse> subscriber) {
+        Objects.requireNonNull(subscriber, "Subscriber required");
+        Delivery delivery = new Delivery(subscriber);
+        if (m_Closed) {
+            delivery.m_Completed = true;
+        } else {
+            m_Subscriptions.add(delivery);
+            if (m_Closed) {
+                // closed meanwhile, complete it like the others
+                delivery.m_Completed = true;
+            }
+        }
+        delivery.schedule();
+    }// subscribe
+
+    @Override
+    public void onMessageReceived(SbusResponse response) {
+        if (m_Closed) {
+            return;
+        }
+        m_Published.increment();
+        for (Delivery delivery : m_Subscriptions) {
+            delivery.offer(response);
+        }
+    }// onMessageReceived
+
+    /**
+     * Stops publishing and completes every subscriber once it has
+     * received the messages already buffered for it. Remove the
+     * publisher from the transport first, it does not do so itself.
+     */
+    public void close() {
+        m_Closed = true;
+        for (Delivery delivery : m_Subscriptions) {
+            delivery.m_Completed = true;
+            delivery.schedule();
+        }
+    }// close
+
+    /**
+     * Tests if this publisher was closed.
+     *
+     * @return true if closed, false otherwise.
+     */
+    public boolean isClosed() {
+        return m_Closed;
+    }// isClosed
+
+    /**
+     * Returns the number of current subscribers.
+     *
+     * @return the subscriber count.
+     */
+    public int getSubscriberCount() {
+        return m_Subscriptions.size();
+    }// getSubscriberCount
+
+    /**
+     * Returns the number of messages handed to this publisher.
+     *
+     * @return the published count.
+     */
+    public long getPublishedCount() {
+        return m_Published.sum();
+    }// getPublishedCount
+
+    /**
+     * Returns the number of messages dropped because the buffer
+     * of a subscriber was full.
+     *
+     * @return the dropped count over all subscribers.
+     */
+    public long getDroppedCount() {
+        long dropped = m_RetiredDrops.sum();
+        for (Delivery delivery : m_Subscriptions) {
+            dropped += delivery.m_Queue.getDroppedCount();
+        }
+        return dropped;
+    }// getDroppedCount
+
+    /**
+     * The buffer, demand and signals of one subscriber, drained
+     * by at most one task at a time.
+     */
+    private final class Delivery implements Flow.Subscription, Runnable {
+
+        final RingBuffer<SbusResponse> m_Queue = new RingBuffer<>(m_Capacity, m_Policy);
+        private final Flow.Subscriber<? super SbusResponse> m_Subscriber;
+        private final AtomicLong m_Demand = new AtomicLong();
+        private final AtomicBoolean m_Scheduled = new AtomicBoolean();
+        private boolean m_Started;
+        private volatile boolean m_Cancelled;
+        private volatile boolean m_Completed;
+        private volatile Throwable m_Error;
+
+        Delivery(Flow.Subscriber<? super SbusResponse> subscriber) {
+            m_Subscriber = subscriber;
+        }// constructor
+
+        void offer(SbusResponse response) {
+            if (m_Cancelled) {
+                return;
+            }
+            try {
+                if (m_Queue.offer(response) || m_Queue.put(response)) {
+                    schedule();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }// offer
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                // rule 3.9 of the reactive streams specification
+                m_Error = new IllegalArgumentException("Non-positive request: " + n);
+            } else {
+                m_Demand.getAndAccumulate(n, (demand, more) -> demand + more < 0 ? Long.MAX_VALUE : demand + more);
+            }
+            schedule();
+        }// request
+
+        @Override
+        public void cancel() {
+            if (!m_Cancelled) {
+                m_Cancelled = true;
+                retire();
+            }
+        }// cancel
+
+        void schedule() {
+            if (!m_Cancelled && m_Scheduled.compareAndSet(false, true)) {
+                try {
+                    m_Executor.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    // drained again with the next signal
+                    m_Scheduled.set(false);
+                    logger.warn("Executor rejected delivery to {}", m_Subscriber);
+                }
+            }
+        }// schedule
+
+        @Override
+        public void run() {
+            try {
+                drain();
+            } catch (RuntimeException ex) {
+                // the subscriber broke rule 2.13, stop delivering to it
+                logger.warn("Error in subscriber, cancelling its subscription", ex);
+                cancel();
+            }
+            m_Scheduled.set(false);
+            // signals may have arrived after the last check, or the batch ended
+            boolean pending = !m_Queue.isEmpty();
+            if (!m_Cancelled && (m_Error != null || (m_Completed && !pending) || (pending && m_Demand.get() > 0))) {
+                schedule();
+            }
+        }// run
+
+        private void drain() {
+            if (!m_Started) {
+                m_Started = true;
+                m_Subscriber.onSubscribe(this);
+            }
+            int delivered = 0;
+            SbusResponse response;
+            while (delivered < BATCH_SIZE && !m_Cancelled && m_Error == null && m_Demand.get() > 0
+                    && (response = m_Queue.poll()) != null) {
+                if (m_Demand.get() != Long.MAX_VALUE) {
+                    m_Demand.decrementAndGet();
+                }
+                m_Subscriber.onNext(response);
+                delivered++;
+            }
+            if (m_Cancelled) {
+                return;
+            }
+            Throwable error = m_Error;
+            if (error != null) {
+                cancel();
+                m_Subscriber.onError(error);
+            } else if (m_Completed && m_Queue.isEmpty()) {
+                cancel();
+                m_Subscriber.onComplete();
+            }
+        }// drain
+
+        private void retire() {
+            m_Subscriptions.remove(this);
+            m_RetiredDrops.add(m_Queue.getDroppedCount());
+            // also releases a producer waiting for space
+            m_Queue.clear();
+        }// retire
+
+    }// class Delivery
+
+}// class SbusMessagePublisher
@@ -17,6 +17,7 @@
 package ro.ciprianpascu.sbus.net;
 
 import java.net.InetAddress;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,6 +28,7 @@ import ro.ciprianpascu.sbus.io.SbusTransport;
 import ro.ciprianpascu.sbus.msg.SbusRequest;
 import ro.ciprianpascu.sbus.msg.SbusResponse;
 import ro.ciprianpascu.sbus.procimg.ProcessImageImplementation;
+import ro.ciprianpascu.sbus.util.ManagedExecutor;
 
 /**
  * Class implementing a UDP Listener for the SBus protocol.
@@ -39,10 +41,13 @@ import ro.ciprianpascu.sbus.procimg.ProcessImageImplementation;
  */
 public class SbusUDPListener {
     private static final Logger logger = LoggerFactory.getLogger(SbusUDPListener.class);
+    // port of a terminal binding whatever port the system chooses
+    private static final int EPHEMERAL_PORT = 0;
 
     private UDPSlaveTerminal m_Terminal;
     private SbusUDPHandler m_Handler;
     private Thread m_HandlerThread;
+    private volatile ManagedExecutor m_Executor;
     private int m_Port = Sbus.DEFAULT_PORT;
     private boolean m_Listening;
     private InetAddress m_Interface;
@@ -85,11 +90,15 @@ public class SbusUDPListener {
     }
 
     /**
-     * Returns the port number this listener is listening to.
+     * Returns the port number this listener is listening to. A listener
+     * set to an ephemeral port returns the one it bound once started.
      *
      * @return the port number
      */
     public int getPort() {
+        if (m_Port == EPHEMERAL_PORT && m_Terminal != null) {
+            return m_Terminal.getLocalPort();
+        }
         return m_Port;
     }
     
@@ -113,6 +122,28 @@ public class SbusUDPListener {
         m_Port = ((port > 0) ? port : Sbus.DEFAULT_PORT);
     }
 
+    /**
+     * Makes this listener bind an ephemeral port chosen by the system
+     * each time it starts, for example for tests running side by side.
+     * {@link #getPort()} returns the bound port once started.
+     */
+    public void setEphemeralPort() {
+        m_Port = EPHEMERAL_PORT;
+    }
+
+    /**
+     * Sets the executor the requests read by this listener are handled
+     * on, for example {@link ManagedExecutor#getShared()}, so a slow
+     * request does not hold back the next one. Requests are read on the
+     * dedicated handler thread either way; with an executor they may be
+     * answered out of order. Takes effect with the next request read.
+     *
+     * @param executor the {@link ManagedExecutor}, or null to handle requests on the handler thread.
+     */
+    public void setExecutor(ManagedExecutor executor) {
+        m_Executor = executor;
+    }
+
     /**
      * Starts this listener, initializing the UDP terminal and handler thread.
      */
@@ -138,6 +169,9 @@ public class SbusUDPListener {
     public void stop() {
         m_Terminal.deactivate();
         m_Handler.stop();
+        if (m_HandlerThread != null) {
+            m_HandlerThread.interrupt();
+        }
         m_Listening = false;
     }
 
@@ -150,6 +184,39 @@ public class SbusUDPListener {
         return m_Listening;
     }
 
+    /**
+     * Handles a single request read by the listener, answering it
+     * from the process image. Called from the handler thread, or from
+     * the executor if one is set; subclasses may override it to route
+     * requests differently.
+     *
+     * @param request the {@link SbusRequest} that was read.
+     * @param transport the {@link SbusTransport} to answer on.
+     * @throws SbusIOException if the response cannot be written.
+     */
+    protected void handleRequest(SbusRequest request, SbusTransport transport) throws SbusIOException {
+        SbusResponse response = null;
+
+        if (m_ProcessImage == null) {
+            response = request.createExceptionResponse(Sbus.ILLEGAL_FUNCTION_EXCEPTION);
+        } else {
+            response = request.createResponse(m_ProcessImage);
+        }
+        logger.debug("Request: {}", request.getHexMessage());
+        logger.debug("Response: {}", response.getHexMessage());
+
+        transport.writeMessage(response);
+    }
+
+    /**
+     * Returns the terminal this listener runs on.
+     *
+     * @return the {@link UDPSlaveTerminal}, or null if not started.
+     */
+    protected UDPSlaveTerminal getTerminal() {
+        return m_Terminal;
+    }
+
     /**
      * Handler class for processing UDP messages.
      */
@@ -176,25 +243,32 @@ public class SbusUDPListener {
                         continue;
                     }
                     logger.trace("Request: {}", request.getHexMessage());
-                    SbusResponse response = null;
-
-                    if (m_ProcessImage == null) {
-                        response = request.createExceptionResponse(Sbus.ILLEGAL_FUNCTION_EXCEPTION);
+                    ManagedExecutor executor = m_Executor;
+                    if (executor != null) {
+                        executor.execute(() -> handle(request));
                     } else {
-                        response = request.createResponse(m_ProcessImage);
+                        handleRequest(request, m_Transport);
                     }
-                    logger.debug("Request: {}", request.getHexMessage());
-                    logger.debug("Response: {}", response.getHexMessage());
-
-                    m_Transport.writeMessage(response);
+                } catch (RejectedExecutionException ex) {
+                    logger.warn("Request dropped, executor saturated: {}", ex.getMessage());
                 } catch (SbusIOException ex) {
-                    if (!ex.isEOF()) {
+                    if (m_Continue && !ex.isEOF()) {
                         logger.error("Error processing request", ex);
                     }
                 } 
             } while (m_Continue);
         }
 
+        private void handle(SbusRequest request) {
+            try {
+                handleRequest(request, m_Transport);
+            } catch (SbusIOException ex) {
+                if (m_Continue && !ex.isEOF()) {
+                    logger.error("Error processing request", ex);
+                }
+            }
+        }
+
         /**
          * Stops the handler's processing loop.
          */
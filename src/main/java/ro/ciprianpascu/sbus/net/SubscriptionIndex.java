@@ -0,0 +1,216 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.net;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+
+/**
+ * Class implementing an index of message listener subscriptions,
+ * filtered by source subnet, source unit and function code, each of
+ * which may be {@link #ANY}.
+ *
+ * Subscriptions are kept in a hash table keyed by their filter, so
+ * dispatching a message probes at most eight keys, one per combination
+ * of exact and wildcard fields, and only touches matching subscribers,
+ * however many subscriptions exist.
+ * Every listener is wrapped in a single {@link AsyncMessageListener},
+ * shared by all of its subscriptions, and receives a message once even
+ * if several of its filters match.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class SubscriptionIndex {
+
+    /** Wildcard matching any subnet, unit or function code */
+    public static final int ANY = -1;
+
+    private static final AsyncMessageListener[] NONE = new AsyncMessageListener[0];
+
+    private final Map<Long, AsyncMessageListener[]> m_Index = new ConcurrentHashMap<>();
+    private final Map<SbusMessageListener, AsyncMessageListener> m_Listeners = new IdentityHashMap<>();
+    private final Map<SbusMessageListener, List<Long>> m_Filters = new IdentityHashMap<>();
+    private final List<AsyncMessageListener> m_Owned = new ArrayList<>();
+
+    /**
+     * Subscribes a listener to the messages matching the given filter.
+     * Listeners that are not an {@link AsyncMessageListener} are wrapped
+     * in one on the shared executor, which is closed when the listener
+     * is unsubscribed.
+     *
+     * @param subnetID the source subnet, 0-255, or {@link #ANY}.
+     * @param unitID the source unit, 0-255, or {@link #ANY}.
+     * @param functionCode the function code of the message, or {@link #ANY}.
+     * @param listener the {@link SbusMessageListener} to notify.
+     */
+    public synchronized void subscribe(int subnetID, int unitID, int functionCode, SbusMessageListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener required");
+        }
+        long key = keyFor(check(subnetID, 0xFF), check(unitID, 0xFF), check(functionCode, 0xFFFF));
+        List<Long> filters = m_Filters.computeIfAbsent(listener, l -> new ArrayList<>());
+        if (filters.contains(key)) {
+            return;
+        }
+        AsyncMessageListener async = m_Listeners.get(listener);
+        if (async == null) {
+            if (listener instanceof AsyncMessageListener) {
+                async = (AsyncMessageListener) listener;
+            } else {
+                async = new AsyncMessageListener(listener);
+                m_Owned.add(async);
+            }
+            m_Listeners.put(listener, async);
+        }
+        filters.add(key);
+        AsyncMessageListener[] bucket = m_Index.getOrDefault(key, NONE);
+        AsyncMessageListener[] grown = new AsyncMessageListener[bucket.length + 1];
+        System.arraycopy(bucket, 0, grown, 0, bucket.length);
+        grown[bucket.length] = async;
+        m_Index.put(key, grown);
+    }// subscribe
+
+    /**
+     * Removes all subscriptions of a listener, discarding the
+     * messages still queued for it.
+     *
+     * @param listener the {@link SbusMessageListener} to remove.
+     * @return true if the listener was subscribed, false otherwise.
+     */
+    public synchronized boolean unsubscribe(SbusMessageListener listener) {
+        List<Long> filters = m_Filters.remove(listener);
+        AsyncMessageListener async = m_Listeners.remove(listener);
+        if (filters == null || async == null) {
+            return false;
+        }
+        for (Long key : filters) {
+            AsyncMessageListener[] bucket = m_Index.get(key);
+            List<AsyncMessageListener> kept = new ArrayList<>(bucket.length);
+            for (AsyncMessageListener entry : bucket) {
+                if (entry != async) {
+                    kept.add(entry);
+                }
+            }
+            if (kept.isEmpty()) {
+                m_Index.remove(key);
+            } else {
+                m_Index.put(key, kept.toArray(NONE));
+            }
+        }
+        if (m_Owned.remove(async)) {
+            async.close();
+        }
+        return true;
+    }// unsubscribe
+
+    /**
+     * Hands a message to every listener with a matching subscription.
+     * Only enqueues; the listeners run on the workers of their executor.
+     *
+     * @param response the unsolicited {@link SbusResponse}.
+     */
+    public void dispatch(SbusResponse response) {
+        if (m_Index.isEmpty()) {
+            return;
+        }
+        int subnet = response.getSourceSubnetID();
+        int unit = response.getSourceUnitID();
+        int fc = response.getFunctionCode();
+        AsyncMessageListener[] first = null;
+        List<AsyncMessageListener[]> more = null;
+        for (int mask = 0; mask < 8; mask++) {
+            AsyncMessageListener[] bucket = m_Index.get(keyFor((mask & 1) == 0 ? subnet : ANY,
+                    (mask & 2) == 0 ? unit : ANY, (mask & 4) == 0 ? fc : ANY));
+            if (bucket == null) {
+                continue;
+            }
+            if (first == null) {
+                first = bucket;
+            } else {
+                if (more == null) {
+                    more = new ArrayList<>(4);
+                }
+                more.add(bucket);
+            }
+        }
+        if (first == null) {
+            return;
+        }
+        if (more == null) {
+            for (AsyncMessageListener listener : first) {
+                listener.onMessageReceived(response);
+            }
+            return;
+        }
+        // several filters matched, notify each listener once
+        Map<AsyncMessageListener, Boolean> notified = new IdentityHashMap<>();
+        more.add(0, first);
+        for (AsyncMessageListener[] bucket : more) {
+            for (AsyncMessageListener listener : bucket) {
+                if (notified.put(listener, Boolean.TRUE) == null) {
+                    listener.onMessageReceived(response);
+                }
+            }
+        }
+    }// dispatch
+
+    /**
+     * Returns the number of subscriptions.
+     *
+     * @return the subscription count.
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (List<Long> filters : m_Filters.values()) {
+            size += filters.size();
+        }
+        return size;
+    }// size
+
+    /**
+     * Removes all subscriptions and shuts down the wrappers created for them.
+     */
+    public synchronized void clear() {
+        m_Index.clear();
+        m_Filters.clear();
+        m_Listeners.clear();
+        for (AsyncMessageListener async : m_Owned) {
+            async.close();
+        }
+        m_Owned.clear();
+    }// clear
+
+    private static int check(int value, int max) {
+        if (value != ANY && (value < 0 || value > max)) {
+            throw new IllegalArgumentException("Filter value out of range: " + value);
+        }
+        return value;
+    }// check
+
+    private static long keyFor(int subnetID, int unitID, int functionCode) {
+        long key = subnetID == ANY ? 0x100 : subnetID;
+        key = (key << 9) | (unitID == ANY ? 0x100 : unitID);
+        return (key << 17) | (functionCode == ANY ? 0x10000 : functionCode);
+    }// keyFor
+
+}// class SubscriptionIndex
@@ -28,6 +28,7 @@ import org.slf4j.LoggerFactory;
 
 import ro.ciprianpascu.sbus.Sbus;
 import ro.ciprianpascu.sbus.io.SbusTransport;
+import ro.ciprianpascu.sbus.io.SbusUDPTransport;
 
 /**
  * Class implementing a UDP Master Connection for the SBus protocol.
@@ -60,6 +61,18 @@ public class UDPMasterConnection implements SbusSlaveConnection {
     /** Remote port for the slave device */
     private int m_Port = Sbus.DEFAULT_PORT;
 
+    /** Number of threads decoding received messages */
+    private int m_DecoderThreads = SbusUDPTransport.DEFAULT_DECODER_THREADS;
+
+    /** Local port the terminal binds to */
+    private int m_LocalPort = LOCAL_PORT;
+
+    /** Pause in milliseconds before each sent frame */
+    private int m_SendPacingMillis = UDPSlaveTerminal.DEFAULT_SEND_PACING_MILLIS;
+
+    /** Age in milliseconds up to which a response answers a repeated request */
+    private int m_ResponseCacheMillis = SbusUDPTransport.DEFAULT_RESPONSE_CACHE_MILLIS;
+
     /**
      * Constructs a new UDPMasterConnection with default settings.
      */
@@ -87,13 +100,16 @@ public class UDPMasterConnection implements SbusSlaveConnection {
         if (!m_Connected) {
             InetAddress localAddress = getLocalIP();
             m_Terminal = new UDPMasterTerminal(localAddress);
-            m_Terminal.setLocalPort(LOCAL_PORT);
+            m_Terminal.setLocalPort(m_LocalPort);
+            m_Terminal.setSendPacingMillis(m_SendPacingMillis);
             m_Terminal.setRemoteAddress(
                     m_RemoteAddress == null ? InetAddress.getByAddress(getTargetIP(localAddress.getAddress()))
                             : m_RemoteAddress);
             m_Terminal.setRemotePort(m_Port);
             m_Terminal.activate();
             m_Terminal.setTimeout(m_Timeout);
+            applyDecoderThreads();
+            applyResponseCacheMillis();
             m_Connected = true;
         }
         return m_Connected;
@@ -137,7 +153,7 @@ public class UDPMasterConnection implements SbusSlaveConnection {
     }
 
     /**
-     * Removes a message listener.
+     * Removes a message listener, including all its subscriptions.
      *
      * @param listener the listener to remove
      */
@@ -146,6 +162,55 @@ public class UDPMasterConnection implements SbusSlaveConnection {
         transport.removeMessageListener(listener);
     }
 
+    /**
+     * Subscribes a listener to the unsolicited messages sent by the given
+     * device with the given function code. Any of the filter values may
+     * be {@link SubscriptionIndex#ANY}.
+     *
+     * @param subnetID the source subnet of the messages.
+     * @param unitID the source unit of the messages.
+     * @param functionCode the function code of the messages.
+     * @param listener the listener to notify
+     */
+    public void subscribe(int subnetID, int unitID, int functionCode, SbusMessageListener listener) {
+        SbusTransport transport = getSbusTransport();
+        transport.subscribe(subnetID, unitID, functionCode, listener);
+    }
+
+    /**
+     * Subscribes a listener to the responses read by transactions, sent
+     * by the given device with the given response function code. Any of
+     * the filter values may be {@link SubscriptionIndex#ANY}.
+     *
+     * @param subnetID the source subnet of the responses.
+     * @param unitID the source unit of the responses.
+     * @param functionCode the function code of the responses.
+     * @param listener the listener to notify
+     */
+    public void subscribeResponses(int subnetID, int unitID, int functionCode, SbusMessageListener listener) {
+        SbusTransport transport = getSbusTransport();
+        transport.subscribeResponses(subnetID, unitID, functionCode, listener);
+    }
+
+    /**
+     * Returns a new {@link SbusMessagePublisher} of the unsolicited messages
+     * and the responses read by transactions, sent by the given device with
+     * the given function code. Any of the filter values may be
+     * {@link SubscriptionIndex#ANY}. To end the stream, remove the publisher
+     * with {@link #removeMessageListener(SbusMessageListener)} and close it.
+     *
+     * @param subnetID the source subnet of the messages.
+     * @param unitID the source unit of the messages.
+     * @param functionCode the function code of the messages.
+     * @return the subscribed {@link SbusMessagePublisher}.
+     */
+    public SbusMessagePublisher publish(int subnetID, int unitID, int functionCode) {
+        SbusMessagePublisher publisher = new SbusMessagePublisher();
+        subscribe(subnetID, unitID, functionCode, publisher);
+        subscribeResponses(subnetID, unitID, functionCode, publisher);
+        return publisher;
+    }
+
     /**
      * Returns the terminal used for handling UDP communication.
      *
@@ -174,6 +239,109 @@ public class UDPMasterConnection implements SbusSlaveConnection {
         m_Terminal.setTimeout(timeout);
     }
 
+    /**
+     * Returns the number of threads decoding received messages.
+     *
+     * @return the decoder thread count, 0 if decoding on the receiving thread.
+     */
+    public int getDecoderThreads() {
+        return m_DecoderThreads;
+    }
+
+    /**
+     * Sets the number of threads decoding received messages.
+     * Busy buses with many devices benefit from decoding on several cores;
+     * the messages of each device are still handled in arrival order.
+     *
+     * @param threads the decoder thread count, 0 to decode on the receiving thread.
+     */
+    public void setDecoderThreads(int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Negative decoder thread count: " + threads);
+        }
+        m_DecoderThreads = threads;
+        if (m_Connected) {
+            applyDecoderThreads();
+        }
+    }
+
+    private void applyDecoderThreads() {
+        SbusTransport transport = m_Terminal.getSbusTransport();
+        if (transport instanceof SbusUDPTransport) {
+            ((SbusUDPTransport) transport).setDecoderThreads(m_DecoderThreads);
+        }
+    }
+
+    /**
+     * Returns the pause in milliseconds taken before each sent frame.
+     *
+     * @return the send pacing in milliseconds
+     */
+    public int getSendPacingMillis() {
+        return m_SendPacingMillis;
+    }
+
+    /**
+     * Sets the pause in milliseconds taken before each sent frame.
+     * The default protects slow gateways; local or simulated slaves can use 0.
+     *
+     * @param millis the send pacing in milliseconds
+     */
+    public void setSendPacingMillis(int millis) {
+        m_SendPacingMillis = Math.max(0, millis);
+        if (m_Connected) {
+            m_Terminal.setSendPacingMillis(m_SendPacingMillis);
+        }
+    }
+
+    /**
+     * Returns the age up to which a received response answers a repeated request.
+     *
+     * @return the maximum response age in milliseconds, 0 if disabled
+     */
+    public int getResponseCacheMillis() {
+        return m_ResponseCacheMillis;
+    }
+
+    /**
+     * Sets the age up to which a received response answers a repeated
+     * request without sending it; 0 sends every request.
+     *
+     * @param millis the maximum response age in milliseconds
+     */
+    public void setResponseCacheMillis(int millis) {
+        m_ResponseCacheMillis = Math.max(0, millis);
+        if (m_Connected) {
+            applyResponseCacheMillis();
+        }
+    }
+
+    private void applyResponseCacheMillis() {
+        SbusTransport transport = m_Terminal.getSbusTransport();
+        if (transport instanceof SbusUDPTransport) {
+            ((SbusUDPTransport) transport).setResponseCacheMillis(m_ResponseCacheMillis);
+        }
+    }
+
+    /**
+     * Returns the local port the connection binds to.
+     *
+     * @return the local port number
+     */
+    public int getLocalPort() {
+        return m_Connected ? m_Terminal.getLocalPort() : m_LocalPort;
+    }
+
+    /**
+     * Sets the local port the connection binds to when it connects.
+     * The default is DEFAULT_PORT, as gateways usually reply to it.
+     *
+     * @param port the local port number
+     */
+    public void setLocalPort(int port) {
+        m_LocalPort = port;
+    }
+
     /**
      * Returns the destination port used for communication.
      *
@@ -23,8 +23,16 @@ import java.net.StandardProtocolFamily;
 import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.nio.file.Path;
 import java.util.Arrays;
-import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,7 +42,10 @@ import ro.ciprianpascu.sbus.SbusIOException;
 import ro.ciprianpascu.sbus.io.SbusTransport;
 import ro.ciprianpascu.sbus.io.SbusUDPTransport;
 import ro.ciprianpascu.sbus.io.SbusUDPTransportFactory;
-import ro.ciprianpascu.sbus.util.LinkedQueue;
+import ro.ciprianpascu.sbus.jfr.FrameSentEvent;
+import ro.ciprianpascu.sbus.msg.SendPriority;
+import ro.ciprianpascu.sbus.util.RingBuffer;
+import ro.ciprianpascu.sbus.util.SbusMetrics;
 import ro.ciprianpascu.sbus.util.SbusUtil;
 
 /**
@@ -46,7 +57,7 @@ import ro.ciprianpascu.sbus.util.SbusUtil;
  * @author Ciprian Pascu
  * @version %I% (%G%)
  */
-public class UDPSlaveTerminal implements UDPTerminal {
+public class UDPSlaveTerminal implements NotifyingUDPTerminal {
 
     /**
      * Implementation of SbusUDPTransportFactory for creating UDP transports.
@@ -73,6 +84,15 @@ public class UDPSlaveTerminal implements UDPTerminal {
     /** Default wait time in milliseconds when deactivating the terminal */
     public static final int DEFAULT_DEACTIVATION_WAIT_MILLIS = 100;
 
+    /** Default number of frames each class of the send queue holds; further senders block */
+    public static final int DEFAULT_SEND_QUEUE_CAPACITY = 256;
+
+    /** Default number of frames the receive queue holds; the oldest are dropped beyond */
+    public static final int DEFAULT_RECEIVE_QUEUE_CAPACITY = 1024;
+
+    /** Default pause in milliseconds before each sent frame, protecting slow gateways */
+    public static final int DEFAULT_SEND_PACING_MILLIS = 200;
+
     /** The UDP channel for communication */
     private DatagramChannel m_Channel;
 
@@ -97,11 +117,11 @@ public class UDPSlaveTerminal implements UDPTerminal {
     /** Transport layer for SBus protocol */
     protected SbusTransport m_SbusTransport;
 
-    /** Queue for outgoing messages */
-    private LinkedQueue m_SendQueue;
+    /** Queue for outgoing messages, by priority */
+    private PrioritySendQueue m_SendQueue;
 
     /** Queue for incoming messages */
-    protected LinkedQueue m_ReceiveQueue;
+    protected RingBuffer<byte[]> m_ReceiveQueue;
 
     /** Handler for sending packets */
     private PacketSender m_PacketSender;
@@ -118,8 +138,8 @@ public class UDPSlaveTerminal implements UDPTerminal {
     /** Flag indicating if the terminal is in listener mode */
     private boolean m_listenerMode;
 
-    /** Table for tracking requests */
-    protected Hashtable m_Requests;
+    /** Table routing replies back to the requester */
+    protected ReplyRouteTable m_Requests;
 
     /** Signature for SMARTCLOUD protocol */
     byte[] smartCloud = new byte[] { 'S', 'M', 'A', 'R', 'T', 'C', 'L', 'O', 'U', 'D', (byte) 0xAA, (byte) 0xAA };
@@ -131,17 +151,76 @@ public class UDPSlaveTerminal implements UDPTerminal {
     private int m_DeactivationWaitMillis = 100;
 
     /** Callback for message arrival notifications */
-    private MessageArrivalCallback m_MessageCallback;
+    private NotifyingUDPTerminal.MessageArrivalCallback m_MessageCallback;
+
+    /** Pause in milliseconds before each sent frame */
+    private volatile int m_SendPacingMillis = DEFAULT_SEND_PACING_MILLIS;
+
+    /** Channel and colour writes waiting in the send queue, by coalescing key */
+    private final Map<Long, OutboundFrame> m_QueuedWrites = new ConcurrentHashMap<>();
+
+    /** Flag indicating if newer writes replace queued ones */
+    private volatile boolean m_WriteCoalescing = true;
+
+    /** Log of the sent and received datagrams, or null if not capturing */
+    private volatile WireCapture m_Capture;
+
+    /** Listeners notified of every datagram leaving the socket */
+    private final List<FrameSentListener> m_FrameSentListeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder m_WritesCoalesced = new LongAdder();
+    private final LongAdder m_PacketsSent = new LongAdder();
+    private final LongAdder m_PacketsReceived = new LongAdder();
+    private final LongAdder m_PacketsUnrouted = new LongAdder();
+
+    private static final AtomicInteger m_Instances = new AtomicInteger();
+
+    /** Names under which the terminal and transport MBeans are registered */
+    private ObjectName m_TerminalMBean;
+    private ObjectName m_TransportMBean;
 
     /**
      * Interface for receiving notifications when messages arrive in the receive queue.
+     *
+     * @deprecated use {@link NotifyingUDPTerminal.MessageArrivalCallback}, which
+     *             every {@link NotifyingUDPTerminal} accepts.
+     */
+    @Deprecated
+    public interface MessageArrivalCallback extends NotifyingUDPTerminal.MessageArrivalCallback {
+    }
+
+    /**
+     * Interface for receiving notifications when a datagram has been
+     * handed to the socket, after it left the send queue.
      */
-    public interface MessageArrivalCallback {
+    public interface FrameSentListener {
         /**
-         * Called when a new message arrives in the receive queue.
-         * This is called from the PacketReceiver thread.
+         * Called from the PacketSender thread right after a datagram was sent.
+         *
+         * @param datagram the sent datagram, including the IP and signature prefix
+         * @param nanos the {@link System#nanoTime()} of the send
          */
-        void onMessageArrived();
+        void onFrameSent(byte[] datagram, long nanos);
+    }
+
+    /**
+     * Adds a listener notified of every datagram this terminal sends.
+     *
+     * @param listener the {@link FrameSentListener} to add
+     */
+    public void addFrameSentListener(FrameSentListener listener) {
+        if (listener != null) {
+            m_FrameSentListeners.add(listener);
+        }
+    }
+
+    /**
+     * Removes a listener added with {@link #addFrameSentListener(FrameSentListener)}.
+     *
+     * @param listener the {@link FrameSentListener} to remove
+     */
+    public void removeFrameSentListener(FrameSentListener listener) {
+        m_FrameSentListeners.remove(listener);
     }
 
     /**
@@ -150,7 +229,8 @@ public class UDPSlaveTerminal implements UDPTerminal {
      *
      * @param callback the callback to set, or null to disable notifications
      */
-    public void setMessageArrivalCallback(MessageArrivalCallback callback) {
+    @Override
+    public void setMessageArrivalCallback(NotifyingUDPTerminal.MessageArrivalCallback callback) {
         m_MessageCallback = callback;
     }
 
@@ -193,9 +273,9 @@ public class UDPSlaveTerminal implements UDPTerminal {
         m_LocalAddress = localaddress;
         m_TransportFactory = transportFactory;
         m_DeactivationWaitMillis = deactivationWaitMillis;
-        m_SendQueue = new LinkedQueue();
-        m_ReceiveQueue = new LinkedQueue();
-        m_Requests = new Hashtable(342);
+        m_SendQueue = new PrioritySendQueue(DEFAULT_SEND_QUEUE_CAPACITY);
+        m_ReceiveQueue = new RingBuffer<>(DEFAULT_RECEIVE_QUEUE_CAPACITY, RingBuffer.OverflowPolicy.DROP_OLDEST);
+        m_Requests = new ReplyRouteTable();
         m_listenerMode = withResponse;
     }
 
@@ -210,7 +290,8 @@ public class UDPSlaveTerminal implements UDPTerminal {
     }
 
     /**
-     * Sets the local port for this terminal.
+     * Sets the local port for this terminal. With 0 the terminal
+     * binds an ephemeral port when activated and reports it from then on.
      *
      * @param port the port number to set
      */
@@ -237,6 +318,237 @@ public class UDPSlaveTerminal implements UDPTerminal {
         m_RemoteAddress = adr;
     }
 
+    /**
+     * Returns the table used to route replies back to requesters
+     * when this terminal runs in listener mode.
+     *
+     * @return the {@link ReplyRouteTable} of this terminal.
+     */
+    public ReplyRouteTable getReplyRoutes() {
+        return m_Requests;
+    }
+
+    /**
+     * Replaces the table used to route replies back to requesters,
+     * for example to configure a different capacity or time to live.
+     * Should be called before the terminal is activated.
+     *
+     * @param routes the {@link ReplyRouteTable} to use.
+     */
+    public void setReplyRoutes(ReplyRouteTable routes) {
+        m_Requests = routes;
+    }
+
+    /**
+     * Returns the queue of frames waiting to be sent, for inspecting
+     * its occupancy and drop counters or tuning its starvation limit.
+     *
+     * @return the send {@link PrioritySendQueue}.
+     */
+    public PrioritySendQueue getSendQueue() {
+        return m_SendQueue;
+    }
+
+    /**
+     * Replaces the queue of frames waiting to be sent, for example
+     * to configure a different capacity or overflow policy.
+     * Should be called before the terminal is activated.
+     *
+     * @param queue the {@link PrioritySendQueue} to use.
+     */
+    public void setSendQueue(PrioritySendQueue queue) {
+        m_SendQueue = queue;
+        m_QueuedWrites.clear();
+    }
+
+    /**
+     * Tests if a newer channel level or RGBW colour write replaces an
+     * older write to the same device and channel or loop that is still
+     * waiting in the send queue.
+     *
+     * @return true if writes are coalesced, the default.
+     */
+    public boolean isWriteCoalescing() {
+        return m_WriteCoalescing;
+    }
+
+    /**
+     * Sets whether a newer channel level or RGBW colour write replaces an
+     * older write to the same device and channel or loop that is still
+     * waiting in the send queue. The newer write then takes the place of
+     * the older one, so with paced sending only the latest value of a
+     * dragged slider is sent, and sent early.
+     *
+     * @param coalescing true to coalesce writes, false to send each of them.
+     */
+    public void setWriteCoalescing(boolean coalescing) {
+        m_WriteCoalescing = coalescing;
+    }
+
+    /**
+     * Returns the number of writes that replaced an older queued write.
+     *
+     * @return the coalesced write count.
+     */
+    public long getWritesCoalesced() {
+        return m_WritesCoalesced.sum();
+    }
+
+    /**
+     * Starts capturing every datagram this terminal sends and receives
+     * to an empty or missing directory, replacing a running capture.
+     * The capture can be replayed with a {@link WireReplay}.
+     *
+     * @param directory the directory of the segment files.
+     * @return the {@link WireCapture}.
+     * @throws IOException if the directory is not empty or the capture cannot be created.
+     */
+    public WireCapture startCapture(Path directory) throws IOException {
+        return startCapture(directory, false);
+    }
+
+    /**
+     * Starts capturing every datagram this terminal sends and receives
+     * to a directory of segment files, replacing a running capture.
+     *
+     * @param directory the directory of the segment files.
+     * @param overwrite true to delete the segments of an earlier capture in the
+     *            directory, false to refuse a directory that is not empty.
+     * @return the {@link WireCapture}.
+     * @throws IOException if the directory is refused or the capture cannot be created.
+     */
+    public WireCapture startCapture(Path directory, boolean overwrite) throws IOException {
+        WireCapture capture = new WireCapture(directory, WireCapture.DEFAULT_SEGMENT_SIZE, overwrite);
+        WireCapture old = m_Capture;
+        m_Capture = capture;
+        if (old != null) {
+            old.close();
+        }
+        return capture;
+    }
+
+    /**
+     * Stops capturing and closes the capture.
+     *
+     * @return the stopped {@link WireCapture}, or null if none was running.
+     */
+    public WireCapture stopCapture() {
+        WireCapture capture = m_Capture;
+        m_Capture = null;
+        if (capture != null) {
+            try {
+                capture.close();
+            } catch (IOException ex) {
+                logger.warn("Failed to close capture: {}", ex.getMessage());
+            }
+        }
+        return capture;
+    }
+
+    /**
+     * Returns the running capture.
+     *
+     * @return the {@link WireCapture}, or null if not capturing.
+     */
+    public WireCapture getCapture() {
+        return m_Capture;
+    }
+
+    private void capture(byte direction, byte[] datagram) {
+        WireCapture capture = m_Capture;
+        if (capture == null) {
+            return;
+        }
+        try {
+            capture.append(direction, datagram);
+        } catch (IOException | RuntimeException ex) {
+            // a capture must never stop communication
+            logger.warn("Capture failed, stopping it: {}", ex.getMessage());
+            if (m_Capture == capture) {
+                stopCapture();
+            }
+        }
+    }
+
+    /**
+     * Returns the queue of received frames, for inspecting
+     * its occupancy and drop counters.
+     *
+     * @return the receive {@link RingBuffer}.
+     */
+    public RingBuffer<byte[]> getReceiveQueue() {
+        return m_ReceiveQueue;
+    }
+
+    /**
+     * Replaces the queue of received frames, for example
+     * to configure a different capacity or overflow policy.
+     * Should be called before the terminal is activated.
+     *
+     * @param queue the {@link RingBuffer} to use.
+     */
+    public void setReceiveQueue(RingBuffer<byte[]> queue) {
+        m_ReceiveQueue = queue;
+    }
+
+    /**
+     * Tests if this terminal runs in listener (slave) mode, answering
+     * requests, rather than in master mode.
+     *
+     * @return true if in listener mode, false otherwise.
+     */
+    @Override
+    public boolean isListenerMode() {
+        return m_listenerMode;
+    }
+
+    /**
+     * Returns the pause in milliseconds the sender takes before each frame.
+     *
+     * @return the send pacing in milliseconds.
+     */
+    public int getSendPacingMillis() {
+        return m_SendPacingMillis;
+    }
+
+    /**
+     * Sets the pause in milliseconds the sender takes before each frame.
+     * The default of {@link #DEFAULT_SEND_PACING_MILLIS} protects slow gateways;
+     * simulated or local peers can use 0.
+     *
+     * @param millis the send pacing in milliseconds.
+     */
+    public void setSendPacingMillis(int millis) {
+        m_SendPacingMillis = Math.max(0, millis);
+    }
+
+    /**
+     * Returns the number of datagrams sent.
+     *
+     * @return the sent packet count.
+     */
+    public long getPacketsSent() {
+        return m_PacketsSent.sum();
+    }
+
+    /**
+     * Returns the number of datagrams received from other hosts.
+     *
+     * @return the received packet count.
+     */
+    public long getPacketsReceived() {
+        return m_PacketsReceived.sum();
+    }
+
+    /**
+     * Returns the number of frames a listener dropped for lack of a reply route.
+     *
+     * @return the unrouted packet count.
+     */
+    public long getPacketsUnrouted() {
+        return m_PacketsUnrouted.sum();
+    }
+
     @Override
     public boolean isActive() {
         return m_Active;
@@ -250,6 +562,10 @@ public class UDPSlaveTerminal implements UDPTerminal {
                 m_Channel = DatagramChannel.open(StandardProtocolFamily.INET);
                 m_Channel.configureBlocking(true);
                 m_Channel.bind(new InetSocketAddress(m_LocalPort));
+                if (m_LocalPort == 0) {
+                    // an ephemeral port was asked for, keep the one bound
+                    m_LocalPort = m_Channel.socket().getLocalPort();
+                }
                 // m_LocalAddress = new InetSocketAddress(m_LocalPort).getAddress();
             }
             if (logger.isDebugEnabled()) {
@@ -272,6 +588,7 @@ public class UDPSlaveTerminal implements UDPTerminal {
             logger.debug("UDPSlaveTerminal::sender started()");
             m_SbusTransport = m_TransportFactory.create(this);
             logger.debug("UDPSlaveTerminal::transport created");
+            registerMBeans();
             m_Active = true;
         }
         logger.info("UDPSlaveTerminal::activated");
@@ -288,6 +605,12 @@ public class UDPSlaveTerminal implements UDPTerminal {
                 m_Sender.join(m_DeactivationWaitMillis);
                 m_Sender.interrupt();
                 m_Channel.close();
+                m_Requests.clear();
+                stopCapture();
+                unregisterMBeans();
+                if (m_SbusTransport != null) {
+                    m_SbusTransport.close();
+                }
                 m_SbusTransport = null;
                 m_Active = false;
             }
@@ -296,6 +619,23 @@ public class UDPSlaveTerminal implements UDPTerminal {
         }
     }
 
+    private void registerMBeans() {
+        String name = (m_listenerMode ? "listener-" : "master-") + m_Channel.socket().getLocalPort() + "-"
+                + m_Instances.incrementAndGet();
+        m_TerminalMBean = SbusMetrics.register(new UDPTerminalMetrics(this), "Terminal", name);
+        SbusMetrics metrics = m_SbusTransport.getMetrics();
+        if (metrics != null) {
+            m_TransportMBean = SbusMetrics.register(metrics, "Transport", name);
+        }
+    }
+
+    private void unregisterMBeans() {
+        SbusMetrics.unregister(m_TerminalMBean);
+        SbusMetrics.unregister(m_TransportMBean);
+        m_TerminalMBean = null;
+        m_TransportMBean = null;
+    }
+
     @Override
     public SbusTransport getSbusTransport() {
         return m_SbusTransport;
@@ -332,6 +672,19 @@ public class UDPSlaveTerminal implements UDPTerminal {
 
     @Override
     public void sendMessage(byte[] msg) throws Exception {
+        sendMessage(msg, SendPriority.INTERACTIVE_READ);
+    }
+
+    /**
+     * Queues a message in the class of its priority; higher classes
+     * are sent first, see {@link PrioritySendQueue}.
+     *
+     * @param msg the message to send, starting with the S-Bus length byte
+     * @param priority the {@link SendPriority} of the message
+     * @throws Exception if interrupted while the class is full
+     */
+    @Override
+    public void sendMessage(byte[] msg, SendPriority priority) throws Exception {
         byte[] localIp = m_LocalAddress.getAddress();
         byte[] fullMessage = new byte[msg.length + 16];
 
@@ -341,12 +694,29 @@ public class UDPSlaveTerminal implements UDPTerminal {
         if (logger.isDebugEnabled() || Sbus.debug) {
             logger.info("Sent     " + SbusUtil.toHex(fullMessage));
         }
-        m_SendQueue.put(fullMessage);
+        OutboundFrame frame = new OutboundFrame(fullMessage, priority);
+        long key = frame.getCoalescingKey();
+        if (key != OutboundFrame.NO_KEY && m_WriteCoalescing) {
+            OutboundFrame queued = m_QueuedWrites.get(key);
+            if (queued != null) {
+                if (queued.getPriority().compareTo(frame.getPriority()) <= 0) {
+                    if (queued.replace(fullMessage)) {
+                        m_WritesCoalesced.increment();
+                        return;
+                    }
+                } else if (queued.cancel()) {
+                    // queued in a lower class, it would be sent after this one with an older value
+                    m_WritesCoalesced.increment();
+                }
+            }
+            m_QueuedWrites.put(key, frame);
+        }
+        m_SendQueue.put(frame);
     }
 
     @Override
     public byte[] receiveMessage() throws Exception {
-        byte[] message = (byte[]) (m_listenerMode ? m_ReceiveQueue.take() : m_ReceiveQueue.poll(m_Timeout));
+        byte[] message = m_listenerMode ? m_ReceiveQueue.take() : m_ReceiveQueue.poll(m_Timeout);
         if (message == null) {
             throw new SbusIOException("No message response arrived in due time", true);
         }
@@ -369,8 +739,9 @@ public class UDPSlaveTerminal implements UDPTerminal {
      * @return the message bytes, or null if no message is available
      * @throws Exception if there's an error processing the message
      */
+    @Override
     public byte[] receiveMessageNonBlocking() throws Exception {
-        byte[] message = (byte[]) m_ReceiveQueue.poll(0); // Non-blocking poll with 0 timeout
+        byte[] message = m_ReceiveQueue.poll(); // Non-blocking poll
         if (message == null) {
             return null; // No message available
         }
@@ -405,18 +776,61 @@ public class UDPSlaveTerminal implements UDPTerminal {
         public void run() {
             do {
                 try {
-                    Thread.sleep(200); // slow gateway
-                    byte[] message = (byte[]) m_SendQueue.take();
-                    ByteBuffer buffer = ByteBuffer.allocate(1024);
-                    buffer.put(message);
-                    buffer.flip();
+                    int pacing = m_SendPacingMillis;
+                    long paced = System.nanoTime();
+                    if (pacing > 0) {
+                        Thread.sleep(pacing); // slow gateway
+                    }
+                    paced = System.nanoTime() - paced;
+                    OutboundFrame frame;
+                    byte[] message;
+                    do {
+                        // cancelled writes are skipped without a pacing slot
+                        frame = m_SendQueue.take();
+                        message = frame.claim();
+                    } while (message == null);
+                    long waited = System.nanoTime() - frame.getEnqueuedNanos();
+                    if (frame.getCoalescingKey() != OutboundFrame.NO_KEY) {
+                        m_QueuedWrites.remove(frame.getCoalescingKey(), frame);
+                    }
+                    FrameSentEvent event = new FrameSentEvent();
+                    event.begin();
+                    ByteBuffer buffer = ByteBuffer.wrap(message);
                     int bytesSent = 0;
                     if (m_listenerMode) {
-                        InetSocketAddress sourceAddress = (InetSocketAddress) ((Object[]) m_Requests
-                                .remove(SbusUtil.registersToInt(message)))[0];
+                        InetSocketAddress sourceAddress = m_Requests.remove(message);
+                        if (sourceAddress == null && m_RemoteAddress != null) {
+                            // unsolicited frame, e.g. a status report
+                            sourceAddress = new InetSocketAddress(m_RemoteAddress, m_RemotePort);
+                        }
+                        if (sourceAddress == null) {
+                            m_PacketsUnrouted.increment();
+                            logger.debug("No reply route for message, dropping {}", SbusUtil.toHex(message));
+                            continue;
+                        }
                         bytesSent = m_Channel.send(buffer, sourceAddress);
                     } else {
-                        bytesSent = m_Channel.send(buffer, new InetSocketAddress(m_RemoteAddress, m_LocalPort));
+                        bytesSent = m_Channel.send(buffer, new InetSocketAddress(m_RemoteAddress, m_RemotePort));
+                    }
+                    m_PacketsSent.increment();
+                    capture(WireCapture.SENT, message);
+                    if (!m_FrameSentListeners.isEmpty()) {
+                        long sentNanos = System.nanoTime();
+                        for (FrameSentListener listener : m_FrameSentListeners) {
+                            listener.onFrameSent(message, sentNanos);
+                        }
+                    }
+                    if (event.shouldCommit()) {
+                        event.queueWait = waited;
+                        event.pacingDelay = paced;
+                        event.priority = frame.getPriority().name();
+                        event.length = message.length;
+                        if (message.length > 24) {
+                            event.functionCode = ((message[21] & 0xFF) << 8) | (message[22] & 0xFF);
+                            event.targetSubnetID = message[23] & 0xFF;
+                            event.targetUnitID = message[24] & 0xFF;
+                        }
+                        event.commit();
                     }
                     logger.trace("Sent package from queue with length " + bytesSent);
                 } catch (Exception ex) {
@@ -451,15 +865,19 @@ public class UDPSlaveTerminal implements UDPTerminal {
                     if (isSelfAddress(sourceAddress)) {
                         continue;
                     }
+                    m_PacketsReceived.increment();
                     buffer.flip();
                     byte[] fullMessage = new byte[buffer.remaining()];
                     buffer.get(fullMessage);
+                    capture(WireCapture.RECEIVED, fullMessage);
                     // System.out.println(SbusUtil.toHex(fullMessage));
-                    Integer tid = new Integer(SbusUtil.registersToInt(fullMessage));
                     if (m_listenerMode) {
-                        m_Requests.put(tid, new Object[] { sourceAddress, fullMessage });
+                        m_Requests.put(fullMessage, sourceAddress);
+                    }
+                    if (!m_ReceiveQueue.put(fullMessage)) {
+                        logger.debug("Receive queue full, dropping {}", SbusUtil.toHex(fullMessage));
+                        continue;
                     }
-                    m_ReceiveQueue.put(fullMessage);
                     logger.trace("Received package placed in queue");
 
                     // Notify callback for notification-driven cache population
@@ -19,6 +19,7 @@ package ro.ciprianpascu.sbus.net;
 import java.net.InetAddress;
 
 import ro.ciprianpascu.sbus.io.SbusTransport;
+import ro.ciprianpascu.sbus.msg.SendPriority;
 
 /**
  * Interface defining a UDP Terminal for the SBus protocol.
@@ -79,6 +80,18 @@ public interface UDPTerminal {
      */
     public void sendMessage(byte[] msg) throws Exception;
 
+    /**
+     * Sends a message with a priority. Terminals without
+     * priority classes send it like any other message.
+     *
+     * @param msg the message to send
+     * @param priority the {@link SendPriority} of the message
+     * @throws Exception if sending fails
+     */
+    public default void sendMessage(byte[] msg, SendPriority priority) throws Exception {
+        sendMessage(msg);
+    }
+
     /**
      * Receives a message through this terminal.
      * This method will block until a message is received or a timeout occurs.
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.net;
+
+/**
+ * Class implementing the {@link UDPTerminalMetricsMBean} of a
+ * {@link UDPSlaveTerminal}, reading its gauges on demand.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class UDPTerminalMetrics implements UDPTerminalMetricsMBean {
+
+    private final UDPSlaveTerminal m_Terminal;
+
+    UDPTerminalMetrics(UDPSlaveTerminal terminal) {
+        m_Terminal = terminal;
+    }// constructor
+
+    @Override
+    public boolean isActive() {
+        return m_Terminal.isActive();
+    }// isActive
+
+    @Override
+    public boolean isListenerMode() {
+        return m_Terminal.isListenerMode();
+    }// isListenerMode
+
+    @Override
+    public int getLocalPort() {
+        return m_Terminal.getLocalPort();
+    }// getLocalPort
+
+    @Override
+    public int getSendQueueDepth() {
+        return m_Terminal.getSendQueue().size();
+    }// getSendQueueDepth
+
+    @Override
+    public int getSendQueueHighWatermark() {
+        return m_Terminal.getSendQueue().getHighWatermark();
+    }// getSendQueueHighWatermark
+
+    @Override
+    public long getSendQueueDropped() {
+        return m_Terminal.getSendQueue().getDroppedCount();
+    }// getSendQueueDropped
+
+    @Override
+    public long getWritesCoalesced() {
+        return m_Terminal.getWritesCoalesced();
+    }// getWritesCoalesced
+
+    @Override
+    public int getReceiveQueueDepth() {
+        return m_Terminal.getReceiveQueue().size();
+    }// getReceiveQueueDepth
+
+    @Override
+    public int getReceiveQueueHighWatermark() {
+        return m_Terminal.getReceiveQueue().getHighWatermark();
+    }// getReceiveQueueHighWatermark
+
+    @Override
+    public long getReceiveQueueDropped() {
+        return m_Terminal.getReceiveQueue().getDroppedCount();
+    }// getReceiveQueueDropped
+
+    @Override
+    public long getPacketsSent() {
+        return m_Terminal.getPacketsSent();
+    }// getPacketsSent
+
+    @Override
+    public long getPacketsReceived() {
+        return m_Terminal.getPacketsReceived();
+    }// getPacketsReceived
+
+    @Override
+    public long getPacketsUnrouted() {
+        return m_Terminal.getPacketsUnrouted();
+    }// getPacketsUnrouted
+
+}// class UDPTerminalMetrics
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.net;
+
+/**
+ * Management interface of the state of a UDP terminal:
+ * its queues and packet counters.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public interface UDPTerminalMetricsMBean {
+
+    /**
+     * Tests if the terminal is active.
+     *
+     * @return true if active, false otherwise.
+     */
+    public boolean isActive();
+
+    /**
+     * Tests if the terminal answers requests rather than sending them.
+     *
+     * @return true if in listener mode, false otherwise.
+     */
+    public boolean isListenerMode();
+
+    /**
+     * Returns the local port of the terminal.
+     *
+     * @return the local port.
+     */
+    public int getLocalPort();
+
+    /**
+     * Returns the number of frames waiting to be sent.
+     *
+     * @return the send queue depth.
+     */
+    public int getSendQueueDepth();
+
+    /**
+     * Returns the highest number of frames ever waiting to be sent.
+     *
+     * @return the send queue high watermark.
+     */
+    public int getSendQueueHighWatermark();
+
+    /**
+     * Returns the number of frames the send queue dropped.
+     *
+     * @return the send queue drop count.
+     */
+    public long getSendQueueDropped();
+
+    /**
+     * Returns the number of writes that replaced an older queued write.
+     *
+     * @return the coalesced write count.
+     */
+    public long getWritesCoalesced();
+
+    /**
+     * Returns the number of received frames waiting to be processed.
+     *
+     * @return the receive queue depth.
+     */
+    public int getReceiveQueueDepth();
+
+    /**
+     * Returns the highest number of received frames ever waiting.
+     *
+     * @return the receive queue high watermark.
+     */
+    public int getReceiveQueueHighWatermark();
+
+    /**
+     * Returns the number of received frames the receive queue dropped.
+     *
+     * @return the receive queue drop count.
+     */
+    public long getReceiveQueueDropped();
+
+    /**
+     * Returns the number of datagrams sent.
+     *
+     * @return the sent packet count.
+     */
+    public long getPacketsSent();
+
+    /**
+     * Returns the number of datagrams received.
+     *
+     * @return the received packet count.
+     */
+    public long getPacketsReceived();
+
+    /**
+     * Returns the number of frames dropped for lack of a reply route.
+     *
+     * @return the unrouted packet count.
+     */
+    public long getPacketsUnrouted();
+
+}// interface UDPTerminalMetricsMBean
@@ -0,0 +1,252 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class implementing a log of the raw datagrams a terminal sends and
+ * receives, written to a directory of memory-mapped segment files.
+ *
+ * Each segment starts with a header of {@value #HEADER_SIZE} bytes and
+ * holds records of a two byte length, a direction byte, the time in
+ * nanoseconds since the capture started and the datagram itself. The
+ * length is written last, so a record is complete once it is non-zero
+ * and the first zero length ends the segment. When a record does not
+ * fit, the next segment is mapped. Appending copies the datagram into
+ * the mapping and makes no system call, cheap enough for the sender and
+ * receiver threads of a terminal. A capture is read back with a
+ * {@link WireCaptureReader}.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class WireCapture implements Closeable {
+
+    /** Direction of a datagram received by the terminal */
+    public static final byte RECEIVED = 0;
+
+    /** Direction of a datagram sent by the terminal */
+    public static final byte SENT = 1;
+
+    /** Default size of a segment file in bytes */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 << 20;
+
+    /** Size of the header of a segment file in bytes */
+    public static final int HEADER_SIZE = 32;
+
+    /** Size of the header of a record in bytes */
+    public static final int RECORD_HEADER_SIZE = 11;
+
+    static final int MAGIC = 0x53425743; // SBWC
+    static final short VERSION = 1;
+    static final int INDEX_OFFSET = 8;
+    static final int START_OFFSET = 12;
+    static final String SEGMENT_SUFFIX = ".sbwire";
+
+    private static final int MIN_SEGMENT_SIZE = 4096;
+
+    private final Path m_Directory;
+    private final int m_SegmentSize;
+    private final long m_StartMillis = System.currentTimeMillis();
+    private final long m_StartNanos = System.nanoTime();
+    private FileChannel m_Channel;
+    private MappedByteBuffer m_Segment;
+    private int m_SegmentIndex = -1;
+    private long m_Records;
+    private long m_Bytes;
+    private boolean m_Closed;
+
+    /**
+     * Constructs a new {@link WireCapture} with segments of the default size
+     * in an empty or missing directory.
+     *
+     * @param directory the directory of the segment files, created if missing.
+     * @throws DirectoryNotEmptyException if the directory is not empty.
+     * @throws IOException if the first segment cannot be created.
+     */
+    public WireCapture(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }// constructor
+
+    /**
+     * Constructs a new {@link WireCapture} in an empty or missing directory.
+     *
+     * @param directory the directory of the segment files, created if missing.
+     * @param segmentSize the size of a segment file in bytes.
+     * @throws DirectoryNotEmptyException if the directory is not empty.
+     * @throws IOException if the first segment cannot be created.
+     */
+    public WireCapture(Path directory, int segmentSize) throws IOException {
+        this(directory, segmentSize, false);
+    }// constructor
+
+    /**
+     * Constructs a new {@link WireCapture}.
+     *
+     * @param directory the directory of the segment files, created if missing.
+     * @param segmentSize the size of a segment file in bytes.
+     * @param overwrite true to delete the segments of an earlier capture in the
+     *            directory, false to refuse a directory that is not empty.
+     * @throws DirectoryNotEmptyException if the directory is not empty and
+     *             overwrite is false.
+     * @throws IOException if the first segment cannot be created.
+     */
+    public WireCapture(Path directory, int segmentSize, boolean overwrite) throws IOException {
+        if (segmentSize < MIN_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Segment size must be at least " + MIN_SEGMENT_SIZE);
+        }
+        m_Directory = directory;
+        m_SegmentSize = segmentSize;
+        Files.createDirectories(directory);
+        if (overwrite) {
+            try (DirectoryStream<Path> old = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+                for (Path file : old) {
+                    Files.delete(file);
+                }
+            }
+        } else {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                if (files.iterator().hasNext()) {
+                    throw new DirectoryNotEmptyException(directory.toString());
+                }
+            }
+        }
+        nextSegment();
+    }// constructor
+
+    /**
+     * Appends a datagram.
+     *
+     * @param direction {@link #RECEIVED} or {@link #SENT}.
+     * @param datagram the datagram bytes, at most 65535.
+     * @throws IOException if the capture is closed or the next segment cannot be created.
+     */
+    public synchronized void append(byte direction, byte[] datagram) throws IOException {
+        if (m_Closed) {
+            throw new IOException("Capture closed");
+        }
+        int length = datagram.length;
+        if (length == 0 || length > 0xFFFF || HEADER_SIZE + RECORD_HEADER_SIZE + length > m_SegmentSize) {
+            throw new IllegalArgumentException("Cannot capture a datagram of " + length + " bytes");
+        }
+        long nanos = System.nanoTime() - m_StartNanos;
+        if (m_Segment.remaining() < RECORD_HEADER_SIZE + length) {
+            nextSegment();
+        }
+        int position = m_Segment.position();
+        m_Segment.position(position + 2);
+        m_Segment.put(direction);
+        m_Segment.putLong(nanos);
+        m_Segment.put(datagram);
+        // the length commits the record
+        m_Segment.putShort(position, (short) length);
+        m_Records++;
+        m_Bytes += length;
+    }// append
+
+    /**
+     * Returns the number of datagrams appended.
+     *
+     * @return the record count.
+     */
+    public synchronized long getRecordCount() {
+        return m_Records;
+    }// getRecordCount
+
+    /**
+     * Returns the number of datagram bytes appended.
+     *
+     * @return the byte count, without record headers.
+     */
+    public synchronized long getByteCount() {
+        return m_Bytes;
+    }// getByteCount
+
+    /**
+     * Returns the number of segment files written.
+     *
+     * @return the segment count.
+     */
+    public synchronized int getSegmentCount() {
+        return m_SegmentIndex + 1;
+    }// getSegmentCount
+
+    /**
+     * Returns the directory of the segment files.
+     *
+     * @return the directory {@link Path}.
+     */
+    public Path getDirectory() {
+        return m_Directory;
+    }// getDirectory
+
+    /**
+     * Writes the current segment to disk.
+     */
+    public synchronized void flush() {
+        if (!m_Closed) {
+            m_Segment.force();
+        }
+    }// flush
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (m_Closed) {
+            return;
+        }
+        m_Closed = true;
+        m_Segment.force();
+        m_Channel.close();
+    }// close
+
+    /**
+     * Returns the name of a segment file.
+     *
+     * @param index the index of the segment.
+     * @return the file name.
+     */
+    static String segmentName(int index) {
+        return String.format("segment-%06d%s", index, SEGMENT_SUFFIX);
+    }// segmentName
+
+    private void nextSegment() throws IOException {
+        if (m_Channel != null) {
+            m_Segment.force();
+            m_Channel.close();
+        }
+        m_SegmentIndex++;
+        Path file = m_Directory.resolve(segmentName(m_SegmentIndex));
+        m_Channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        m_Segment = m_Channel.map(FileChannel.MapMode.READ_WRITE, 0, m_SegmentSize);
+        m_Segment.putInt(0, MAGIC);
+        m_Segment.putShort(4, VERSION);
+        m_Segment.putInt(INDEX_OFFSET, m_SegmentIndex);
+        m_Segment.putLong(START_OFFSET, m_StartMillis);
+        m_Segment.position(HEADER_SIZE);
+    }// nextSegment
+
+}// class WireCapture
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class reading the datagrams of a {@link WireCapture}
+ * back in the order they were captured.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class WireCaptureReader implements Closeable {
+
+    private final List<Path> m_Segments;
+    private final int m_First;
+    private int m_Next;
+    private long m_StartMillis;
+    private MappedByteBuffer m_Segment;
+
+    /**
+     * Constructs a new {@link WireCaptureReader}.
+     *
+     * @param directory the directory of the segment files.
+     * @throws IOException if the directory holds no capture.
+     */
+    public WireCaptureReader(Path directory) throws IOException {
+        this(directory, 0, Integer.MAX_VALUE);
+    }// constructor
+
+    /**
+     * Constructs a new {@link WireCaptureReader} reading a range of the
+     * segments, so that separate threads can read a capture in parallel.
+     * Records never span segments, so each range holds whole records.
+     *
+     * @param directory the directory of the segment files.
+     * @param from the index of the first segment to read.
+     * @param to the index after the last segment to read, at most the segment count.
+     * @throws IOException if the directory holds no capture or the range is empty.
+     */
+    public WireCaptureReader(Path directory, int from, int to) throws IOException {
+        List<Path> segments = listSegments(directory);
+        if (segments.isEmpty()) {
+            throw new IOException("No capture in " + directory);
+        }
+        if (from < 0 || from >= Math.min(to, segments.size())) {
+            throw new IOException("No segments " + from + " to " + to + " in " + directory);
+        }
+        m_Segments = segments.subList(from, Math.min(to, segments.size()));
+        m_First = from;
+        if (!nextSegment()) {
+            throw new IOException("No capture in " + directory);
+        }
+    }// constructor
+
+    /**
+     * Returns the number of segment files of a capture.
+     *
+     * @param directory the directory of the segment files.
+     * @return the segment count, 0 if the directory holds no capture.
+     * @throws IOException if the directory cannot be read.
+     */
+    public static int getSegmentCount(Path directory) throws IOException {
+        return listSegments(directory).size();
+    }// getSegmentCount
+
+    /**
+     * Returns the time the capture started.
+     *
+     * @return the start in milliseconds since the epoch.
+     */
+    public long getStartMillis() {
+        return m_StartMillis;
+    }// getStartMillis
+
+    /**
+     * Reads the next datagram.
+     *
+     * @return the {@link Record}, or null at the end of the capture.
+     * @throws IOException if a segment cannot be read.
+     */
+    public Record next() throws IOException {
+        while (m_Segment != null) {
+            if (m_Segment.remaining() >= WireCapture.RECORD_HEADER_SIZE) {
+                int length = m_Segment.getShort() & 0xFFFF;
+                if (length > 0 && m_Segment.remaining() >= length + WireCapture.RECORD_HEADER_SIZE - 2) {
+                    byte direction = m_Segment.get();
+                    long nanos = m_Segment.getLong();
+                    byte[] datagram = new byte[length];
+                    m_Segment.get(datagram);
+                    return new Record(direction, nanos, datagram);
+                }
+            }
+            if (!nextSegment()) {
+                m_Segment = null;
+            }
+        }
+        return null;
+    }// next
+
+    @Override
+    public void close() {
+        m_Segment = null;
+        m_Next = m_Segments.size();
+    }// close
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + WireCapture.SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        // the names are zero padded, so they sort in segment order
+        Collections.sort(segments);
+        return segments;
+    }// listSegments
+
+    private boolean nextSegment() throws IOException {
+        if (m_Next >= m_Segments.size()) {
+            return false;
+        }
+        Path file = m_Segments.get(m_Next);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (segment.capacity() < WireCapture.HEADER_SIZE || segment.getInt(0) != WireCapture.MAGIC
+                    || segment.getShort(4) != WireCapture.VERSION
+                    || segment.getInt(WireCapture.INDEX_OFFSET) != m_First + m_Next) {
+                throw new IOException("Not a segment of this capture: " + file);
+            }
+            if (m_Next == 0) {
+                m_StartMillis = segment.getLong(WireCapture.START_OFFSET);
+            } else if (segment.getLong(WireCapture.START_OFFSET) != m_StartMillis) {
+                throw new IOException("Segment of another capture: " + file);
+            }
+            segment.position(WireCapture.HEADER_SIZE);
+            m_Segment = segment;
+        }
+        m_Next++;
+        return true;
+    }// nextSegment
+
+    /**
+     * A captured datagram.
+     */
+    public static final class Record {
+
+        private final byte m_Direction;
+        private final long m_Nanos;
+        private final byte[] m_Datagram;
+
+        Record(byte direction, long nanos, byte[] datagram) {
+            m_Direction = direction;
+            m_Nanos = nanos;
+            m_Datagram = datagram;
+        }// constructor
+
+        /**
+         * Returns the direction of the datagram.
+         *
+         * @return {@link WireCapture#RECEIVED} or {@link WireCapture#SENT}.
+         */
+        public byte getDirection() {
+            return m_Direction;
+        }// getDirection
+
+        /**
+         * Tests if the terminal received the datagram.
+         *
+         * @return true if received, false if sent.
+         */
+        public boolean isReceived() {
+            return m_Direction == WireCapture.RECEIVED;
+        }// isReceived
+
+        /**
+         * Returns the time the datagram was captured.
+         *
+         * @return the time in nanoseconds since the capture started.
+         */
+        public long getNanos() {
+            return m_Nanos;
+        }// getNanos
+
+        /**
+         * Returns the datagram, including the UDP prefix.
+         *
+         * @return the datagram bytes.
+         */
+        public byte[] getDatagram() {
+            return m_Datagram;
+        }// getDatagram
+
+    }// class Record
+
+}// class WireCaptureReader
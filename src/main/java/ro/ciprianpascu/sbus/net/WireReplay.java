@@ -0,0 +1,152 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.net;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
+
+import ro.ciprianpascu.sbus.io.SbusUDPTransport;
+
+/**
+ * Class feeding the datagrams received in a {@link WireCapture} back
+ * through the {@link SbusUDPTransport} of a terminal, as if they had
+ * arrived from the bus again: they are decoded, cached and handed to
+ * the listeners and subscribers of the transport.
+ *
+ * The replay runs at the speed the datagrams were captured, scaled by
+ * a factor, or as fast as the transport takes them, to reproduce
+ * production traffic offline or to measure decode and listener
+ * throughput under a real workload. Datagrams the terminal sent are
+ * skipped, the replay never writes to the bus. Replayed faster than
+ * captured, repeated replies may fall within the duplicate window of
+ * the transport; disable it to measure every frame.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class WireReplay {
+
+    /** Speed replaying datagrams as fast as possible */
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+
+    /** Speed replaying datagrams with their captured spacing */
+    public static final double ORIGINAL_SPEED = 1;
+
+    private final UDPSlaveTerminal m_Terminal;
+    private volatile double m_Speed = AS_FAST_AS_POSSIBLE;
+    private long m_Replayed;
+    private long m_ElapsedNanos;
+
+    /**
+     * Constructs a new {@link WireReplay}.
+     *
+     * @param terminal the active {@link UDPSlaveTerminal} whose transport decodes the datagrams.
+     */
+    public WireReplay(UDPSlaveTerminal terminal) {
+        m_Terminal = terminal;
+    }// constructor
+
+    /**
+     * Sets the speed of the replay, relative to the capture.
+     *
+     * @param speed {@link #ORIGINAL_SPEED}, another positive factor, or {@link #AS_FAST_AS_POSSIBLE}.
+     */
+    public void setSpeed(double speed) {
+        if (speed < 0 || Double.isNaN(speed)) {
+            throw new IllegalArgumentException("Invalid replay speed: " + speed);
+        }
+        m_Speed = speed;
+    }// setSpeed
+
+    /**
+     * Returns the speed of the replay.
+     *
+     * @return the speed factor, {@link #AS_FAST_AS_POSSIBLE} for no pacing.
+     */
+    public double getSpeed() {
+        return m_Speed;
+    }// getSpeed
+
+    /**
+     * Replays the received datagrams of a capture, returning
+     * once the transport has taken the last one.
+     *
+     * @param directory the directory of the {@link WireCapture}.
+     * @return the number of datagrams replayed.
+     * @throws IOException if the capture cannot be read or the terminal is not active.
+     * @throws InterruptedException if interrupted while waiting for the next datagram.
+     */
+    public long replay(Path directory) throws IOException, InterruptedException {
+        if (!(m_Terminal.getSbusTransport() instanceof SbusUDPTransport)) {
+            throw new IOException("Terminal not active");
+        }
+        SbusUDPTransport transport = (SbusUDPTransport) m_Terminal.getSbusTransport();
+        double speed = m_Speed;
+        long replayed = 0;
+        long start = System.nanoTime();
+        long first = -1;
+        try (WireCaptureReader reader = new WireCaptureReader(directory)) {
+            WireCaptureReader.Record record;
+            while ((record = reader.next()) != null) {
+                if (!record.isReceived()) {
+                    continue;
+                }
+                if (first < 0) {
+                    first = record.getNanos();
+                }
+                if (speed > 0) {
+                    long due = start + (long) ((record.getNanos() - first) / speed);
+                    for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                        if (Thread.interrupted()) {
+                            throw new InterruptedException();
+                        }
+                    }
+                }
+                // the receive queue drops the oldest frame when full, drain it after every put
+                m_Terminal.getReceiveQueue().put(record.getDatagram());
+                transport.onMessageArrived();
+                replayed++;
+            }
+        }
+        synchronized (this) {
+            m_Replayed += replayed;
+            m_ElapsedNanos += System.nanoTime() - start;
+        }
+        return replayed;
+    }// replay
+
+    /**
+     * Returns the number of datagrams replayed by all replays.
+     *
+     * @return the replayed count.
+     */
+    public synchronized long getReplayedCount() {
+        return m_Replayed;
+    }// getReplayedCount
+
+    /**
+     * Returns the time all replays took.
+     *
+     * @return the elapsed time in nanoseconds.
+     */
+    public synchronized long getElapsedNanos() {
+        return m_ElapsedNanos;
+    }// getElapsedNanos
+
+}// class WireReplay
@@ -0,0 +1,338 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.procimg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class implementing a {@link ProcessImageFactory} whose digital
+ * points and registers live in a memory-mapped file.
+ *
+ * Every element created by this factory claims the next slot of the
+ * file and reads and writes its state directly in the mapping, so
+ * writes persist without an explicit save and other local processes
+ * mapping the same file see them without copying.
+ * When an existing file is opened, elements created in the same order
+ * with the same type keep their stored state and the initial values
+ * passed to the factory are ignored; {@link #loadProcessImage()}
+ * rebuilds a complete process image from the file alone.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class MappedProcessImageFactory implements ProcessImageFactory, Closeable {
+
+    /** Default number of slots of a new file */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int MAGIC = 0x53425049; // SBPI
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 4;
+
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+
+    private static final byte TYPE_DIGITAL_IN = 1;
+    private static final byte TYPE_DIGITAL_OUT = 2;
+    private static final byte TYPE_INPUT_REGISTER = 3;
+    private static final byte TYPE_REGISTER = 4;
+
+    private final FileChannel m_Channel;
+    private final MappedByteBuffer m_Buffer;
+    private final int m_Capacity;
+    private final boolean m_Restored;
+    private int m_Next;
+
+    /**
+     * Constructs a new {@link MappedProcessImageFactory} with
+     * the default capacity.
+     *
+     * @param file the file holding the process image, created if missing.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public MappedProcessImageFactory(Path file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }// constructor
+
+    /**
+     * Constructs a new {@link MappedProcessImageFactory}.
+     * An existing file keeps its state and is grown if it holds
+     * less than the given number of slots.
+     *
+     * @param file the file holding the process image, created if missing.
+     * @param capacity the number of digital points and registers the file can hold.
+     * @throws IOException if the file cannot be opened, mapped or is not a process image.
+     */
+    public MappedProcessImageFactory(Path file, int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        m_Channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            int stored = 0;
+            boolean restored = false;
+            if (m_Channel.size() >= HEADER_SIZE) {
+                MappedByteBuffer header = m_Channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                if (header.getInt(0) != MAGIC || header.getShort(4) != VERSION) {
+                    throw new IOException("Not a process image file: " + file);
+                }
+                stored = header.getInt(CAPACITY_OFFSET);
+                restored = true;
+            }
+            m_Capacity = Math.max(capacity, stored);
+            m_Buffer = m_Channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) m_Capacity * SLOT_SIZE);
+            if (!restored) {
+                m_Buffer.putInt(0, MAGIC);
+                m_Buffer.putShort(4, VERSION);
+                m_Buffer.putInt(COUNT_OFFSET, 0);
+            }
+            m_Buffer.putInt(CAPACITY_OFFSET, m_Capacity);
+            m_Restored = restored;
+        } catch (IOException | RuntimeException ex) {
+            m_Channel.close();
+            throw ex;
+        }
+    }// constructor
+
+    /**
+     * Tests if this factory was opened on an existing process image file.
+     *
+     * @return true if state was restored from the file, false if it was created.
+     */
+    public boolean isRestored() {
+        return m_Restored;
+    }// isRestored
+
+    /**
+     * Returns the number of slots the file can hold.
+     *
+     * @return the capacity.
+     */
+    public int getCapacity() {
+        return m_Capacity;
+    }// getCapacity
+
+    /**
+     * Returns the number of slots in use in the file.
+     *
+     * @return the slot count.
+     */
+    public int getSlotCount() {
+        return m_Buffer.getInt(COUNT_OFFSET);
+    }// getSlotCount
+
+    /**
+     * Rebuilds a process image from all slots stored in the file,
+     * in the order they were created. The elements of the returned
+     * image are backed by the file. Subsequent create calls on this
+     * factory append new slots after the restored ones.
+     *
+     * @return a {@link SimpleProcessImage} backed by the file.
+     */
+    public synchronized SimpleProcessImage loadProcessImage() {
+        SimpleProcessImage image = new SimpleProcessImage();
+        int count = getSlotCount();
+        for (int slot = 0; slot < count; slot++) {
+            int offset = offsetOf(slot);
+            switch (m_Buffer.get(offset)) {
+                case TYPE_DIGITAL_IN:
+                    image.addDigitalIn(new MappedDigital(offset));
+                    break;
+                case TYPE_DIGITAL_OUT:
+                    image.addDigitalOut(new MappedDigital(offset));
+                    break;
+                case TYPE_INPUT_REGISTER:
+                    image.addInputRegister(new MappedRegister(offset));
+                    break;
+                case TYPE_REGISTER:
+                    image.addRegister(new MappedRegister(offset));
+                    break;
+                default:
+                    break;
+            }
+        }
+        m_Next = Math.max(m_Next, count);
+        return image;
+    }// loadProcessImage
+
+    /**
+     * Forces all changes of the mapping to the storage device.
+     */
+    public void flush() {
+        m_Buffer.force();
+    }// flush
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        m_Channel.close();
+    }// close
+
+    @Override
+    public ProcessImageImplementation createProcessImageImplementation() {
+        return new SimpleProcessImage();
+    }// createProcessImageImplementation
+
+    @Override
+    public DigitalIn createDigitalIn() {
+        return createDigitalIn(false);
+    }// createDigitalIn
+
+    @Override
+    public DigitalIn createDigitalIn(boolean state) {
+        return new MappedDigital(allocate(TYPE_DIGITAL_IN, (byte) 0, (byte) (state ? 1 : 0)));
+    }// createDigitalIn
+
+    @Override
+    public DigitalOut createDigitalOut() {
+        return createDigitalOut(false);
+    }// createDigitalOut
+
+    @Override
+    public DigitalOut createDigitalOut(boolean b) {
+        return new MappedDigital(allocate(TYPE_DIGITAL_OUT, (byte) 0, (byte) (b ? 1 : 0)));
+    }// createDigitalOut
+
+    @Override
+    public InputRegister createInputRegister() {
+        return createInputRegister((byte) 0, (byte) 0);
+    }// createInputRegister
+
+    @Override
+    public InputRegister createInputRegister(byte b1, byte b2) {
+        return new MappedRegister(allocate(TYPE_INPUT_REGISTER, b1, b2));
+    }// createInputRegister
+
+    @Override
+    public Register createRegister() {
+        return createRegister((byte) 0, (byte) 0);
+    }// createRegister
+
+    @Override
+    public Register createRegister(byte b1, byte b2) {
+        return new MappedRegister(allocate(TYPE_REGISTER, b1, b2));
+    }// createRegister
+
+    /**
+     * Claims the next slot for an element of the given type.
+     * A stored slot of the same type keeps its value, anything
+     * else is overwritten with the initial value.
+     */
+    private synchronized int allocate(byte type, byte b1, byte b2) {
+        if (m_Next >= m_Capacity) {
+            throw new IllegalStateException("Process image file full, capacity " + m_Capacity);
+        }
+        int slot = m_Next++;
+        int offset = offsetOf(slot);
+        int count = getSlotCount();
+        if (slot >= count || m_Buffer.get(offset) != type) {
+            m_Buffer.put(offset + 2, b1);
+            m_Buffer.put(offset + 3, b2);
+            m_Buffer.put(offset, type);
+            if (slot >= count) {
+                m_Buffer.putInt(COUNT_OFFSET, slot + 1);
+            }
+        }
+        return offset;
+    }// allocate
+
+    private static int offsetOf(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }// offsetOf
+
+    /**
+     * Digital input or output whose state is the low byte of its slot.
+     */
+    private final class MappedDigital implements DigitalIn, DigitalOut {
+
+        private final int m_Offset;
+
+        MappedDigital(int offset) {
+            m_Offset = offset;
+        }// constructor
+
+        @Override
+        public boolean isSet() {
+            return m_Buffer.get(m_Offset + 3) != 0;
+        }// isSet
+
+        @Override
+        public void set(boolean b) {
+            m_Buffer.put(m_Offset + 3, (byte) (b ? 1 : 0));
+        }// set
+
+    }// class MappedDigital
+
+    /**
+     * Register whose 16-bit value is held in its slot, high byte first.
+     */
+    private final class MappedRegister implements Register {
+
+        private final int m_Offset;
+
+        MappedRegister(int offset) {
+            m_Offset = offset;
+        }// constructor
+
+        @Override
+        public int getValue() {
+            return toUnsignedShort();
+        }// getValue
+
+        @Override
+        public int toUnsignedShort() {
+            return m_Buffer.getShort(m_Offset + 2) & 0xFFFF;
+        }// toUnsignedShort
+
+        @Override
+        public short toShort() {
+            return m_Buffer.getShort(m_Offset + 2);
+        }// toShort
+
+        @Override
+        public byte[] toBytes() {
+            return new byte[] { m_Buffer.get(m_Offset + 2), m_Buffer.get(m_Offset + 3) };
+        }// toBytes
+
+        @Override
+        public void setValue(int v) {
+            setValue((short) v);
+        }// setValue
+
+        @Override
+        public void setValue(short s) {
+            m_Buffer.putShort(m_Offset + 2, s);
+        }// setValue
+
+        @Override
+        public void setValue(byte[] bytes) {
+            if (bytes.length < 2) {
+                throw new IllegalArgumentException();
+            }
+            setValue((short) (((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF)));
+        }// setValue
+
+    }// class MappedRegister
+
+}// class MappedProcessImageFactory
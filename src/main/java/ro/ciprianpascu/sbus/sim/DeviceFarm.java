@@ -0,0 +1,406 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.sim;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.SbusIOException;
+import ro.ciprianpascu.sbus.io.SbusTransport;
+import ro.ciprianpascu.sbus.msg.SbusMessage;
+import ro.ciprianpascu.sbus.msg.SbusRequest;
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.net.SbusUDPListener;
+import ro.ciprianpascu.sbus.net.UDPSlaveTerminal;
+
+/**
+ * Class implementing an in-process farm of simulated S-Bus devices,
+ * served by a single {@link SbusUDPListener}.
+ *
+ * Requests are dispatched by target subnet and unit to the
+ * {@link VirtualDevice} registered at that address; requests for
+ * unknown addresses are ignored, as on a real bus. The farm can
+ * delay replies by a configurable latency and jitter, drop a fraction
+ * of them, let device values drift over time and emit bursts of
+ * unsolicited motion sensor status reports.
+ *
+ * The farm identifies itself with its own address (by default
+ * {@link #DEFAULT_IDENTITY}) so that a master on the same host, which
+ * sends from 127.0.0.1, is not mistaken for the farm itself.
+ * Devices should be added before the farm is started.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class DeviceFarm extends SbusUDPListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceFarm.class);
+
+    /** Default address the farm identifies itself with */
+    public static final String DEFAULT_IDENTITY = "127.0.0.2";
+
+    private final AtomicReferenceArray<VirtualDevice> m_Index = new AtomicReferenceArray<>(0x10000);
+    private final List<VirtualDevice> m_Devices = new CopyOnWriteArrayList<>();
+    private final AtomicLong m_RequestCount = new AtomicLong();
+    private final AtomicLong m_ResponseCount = new AtomicLong();
+    private final AtomicLong m_LostCount = new AtomicLong();
+    private final AtomicLong m_UnknownCount = new AtomicLong();
+    private final AtomicLong m_ReportCount = new AtomicLong();
+
+    private Random m_Random = new Random();
+    private ScheduledExecutorService m_Scheduler;
+    private int m_LatencyMillis;
+    private int m_LatencyJitterMillis;
+    private double m_LossRate;
+    private int m_SendPacingMillis;
+    private int m_UpdateIntervalMillis;
+    private int m_MotionBurstIntervalMillis;
+    private int m_MotionBurstSize = 1;
+    private InetAddress m_ReportAddress;
+    private int m_ReportPort = Sbus.DEFAULT_PORT;
+
+    /**
+     * Constructs a new {@link DeviceFarm} identified by
+     * {@link #DEFAULT_IDENTITY}.
+     *
+     * @throws UnknownHostException if the identity cannot be resolved.
+     */
+    public DeviceFarm() throws UnknownHostException {
+        this(InetAddress.getByName(DEFAULT_IDENTITY));
+    }// constructor
+
+    /**
+     * Constructs a new {@link DeviceFarm} with the given identity.
+     *
+     * @param identity the address written into the frames sent by the farm.
+     */
+    public DeviceFarm(InetAddress identity) {
+        super(identity);
+    }// constructor
+
+    /**
+     * Registers a device, replacing any device at the same address.
+     *
+     * @param device the {@link VirtualDevice} to add.
+     * @param <T> the type of the device.
+     * @return the added device.
+     */
+    public <T extends VirtualDevice> T addDevice(T device) {
+        VirtualDevice previous = m_Index.getAndSet(indexOf(device.getSubnetID(), device.getUnitID()), device);
+        if (previous != null) {
+            m_Devices.remove(previous);
+        }
+        m_Devices.add(device);
+        return device;
+    }// addDevice
+
+    /**
+     * Adds the given numbers of relays, temperature panels and 9-in-1
+     * sensors, at consecutive addresses starting from subnet 1, unit 1.
+     * Units 0 and 255 are skipped.
+     *
+     * @param relays the number of {@link VirtualRelay}s.
+     * @param panels the number of {@link VirtualTemperaturePanel}s.
+     * @param sensors the number of {@link VirtualNineInOneSensor}s.
+     */
+    public void populate(int relays, int panels, int sensors) {
+        int total = relays + panels + sensors;
+        if (total > 254 * 255) {
+            throw new IllegalArgumentException("Too many devices: " + total);
+        }
+        for (int i = 0; i < total; i++) {
+            int subnet = 1 + i / 254;
+            int unit = 1 + i % 254;
+            if (i < relays) {
+                addDevice(new VirtualRelay(subnet, unit));
+            } else if (i < relays + panels) {
+                addDevice(new VirtualTemperaturePanel(subnet, unit));
+            } else {
+                addDevice(new VirtualNineInOneSensor(subnet, unit));
+            }
+        }
+    }// populate
+
+    /**
+     * Returns the device at the given address.
+     *
+     * @param subnetID the subnet identifier.
+     * @param unitID the unit identifier.
+     * @return the {@link VirtualDevice}, or null if none.
+     */
+    public VirtualDevice getDevice(int subnetID, int unitID) {
+        return m_Index.get(indexOf(subnetID, unitID));
+    }// getDevice
+
+    /**
+     * Returns all registered devices.
+     *
+     * @return a snapshot of the devices.
+     */
+    public List<VirtualDevice> getDevices() {
+        return new ArrayList<>(m_Devices);
+    }// getDevices
+
+    /**
+     * Sets the fixed delay before each reply is sent.
+     *
+     * @param millis the latency in milliseconds.
+     */
+    public void setLatencyMillis(int millis) {
+        m_LatencyMillis = Math.max(0, millis);
+    }// setLatencyMillis
+
+    /**
+     * Sets the maximum random delay added to the latency of each reply.
+     *
+     * @param millis the jitter in milliseconds.
+     */
+    public void setLatencyJitterMillis(int millis) {
+        m_LatencyJitterMillis = Math.max(0, millis);
+    }// setLatencyJitterMillis
+
+    /**
+     * Sets the fraction of requests that are silently dropped.
+     *
+     * @param rate the loss rate, between 0 and 1.
+     */
+    public void setLossRate(double rate) {
+        m_LossRate = Math.max(0, Math.min(1, rate));
+    }// setLossRate
+
+    /**
+     * Sets the pause the farm's terminal takes before each sent frame.
+     * Defaults to 0; use {@link UDPSlaveTerminal#DEFAULT_SEND_PACING_MILLIS}
+     * to behave like a slow gateway.
+     *
+     * @param millis the send pacing in milliseconds.
+     */
+    public void setSendPacingMillis(int millis) {
+        m_SendPacingMillis = Math.max(0, millis);
+        if (getTerminal() != null) {
+            getTerminal().setSendPacingMillis(m_SendPacingMillis);
+        }
+    }// setSendPacingMillis
+
+    /**
+     * Sets the interval at which device values are updated.
+     *
+     * @param millis the interval in milliseconds, 0 to keep values static.
+     */
+    public void setUpdateIntervalMillis(int millis) {
+        m_UpdateIntervalMillis = Math.max(0, millis);
+    }// setUpdateIntervalMillis
+
+    /**
+     * Configures bursts of unsolicited motion sensor status reports.
+     * Reports are sent to the address set with {@link #setReportAddress}.
+     *
+     * @param intervalMillis the interval between bursts, 0 to disable.
+     * @param size the number of sensors reporting in each burst.
+     */
+    public void setMotionBursts(int intervalMillis, int size) {
+        m_MotionBurstIntervalMillis = Math.max(0, intervalMillis);
+        m_MotionBurstSize = Math.max(1, size);
+    }// setMotionBursts
+
+    /**
+     * Sets where unsolicited status reports are sent to.
+     *
+     * @param address the destination address, e.g. a broadcast address.
+     * @param port the destination port.
+     */
+    public void setReportAddress(InetAddress address, int port) {
+        m_ReportAddress = address;
+        m_ReportPort = port;
+    }// setReportAddress
+
+    /**
+     * Seeds the random source used for loss, jitter and value dynamics,
+     * making runs reproducible.
+     *
+     * @param seed the seed.
+     */
+    public void setSeed(long seed) {
+        m_Random = new Random(seed);
+    }// setSeed
+
+    /**
+     * Returns the number of requests received for any address.
+     *
+     * @return the request count.
+     */
+    public long getRequestCount() {
+        return m_RequestCount.get();
+    }// getRequestCount
+
+    /**
+     * Returns the number of replies sent.
+     *
+     * @return the response count.
+     */
+    public long getResponseCount() {
+        return m_ResponseCount.get();
+    }// getResponseCount
+
+    /**
+     * Returns the number of requests dropped by simulated loss.
+     *
+     * @return the lost count.
+     */
+    public long getLostCount() {
+        return m_LostCount.get();
+    }// getLostCount
+
+    /**
+     * Returns the number of requests for addresses with no device.
+     *
+     * @return the unknown address count.
+     */
+    public long getUnknownCount() {
+        return m_UnknownCount.get();
+    }// getUnknownCount
+
+    /**
+     * Returns the number of unsolicited status reports sent.
+     *
+     * @return the report count.
+     */
+    public long getReportCount() {
+        return m_ReportCount.get();
+    }// getReportCount
+
+    @Override
+    public void start() {
+        super.start();
+        UDPSlaveTerminal terminal = getTerminal();
+        terminal.setSendPacingMillis(m_SendPacingMillis);
+        if (m_ReportAddress != null) {
+            terminal.setRemoteAddress(m_ReportAddress);
+            terminal.setRemotePort(m_ReportPort);
+        }
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(2, r -> {
+            Thread t = new Thread(r, "DeviceFarm");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        m_Scheduler = scheduler;
+        if (m_UpdateIntervalMillis > 0) {
+            m_Scheduler.scheduleAtFixedRate(this::updateDevices, m_UpdateIntervalMillis, m_UpdateIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        if (m_MotionBurstIntervalMillis > 0) {
+            m_Scheduler.scheduleAtFixedRate(this::sendMotionBurst, m_MotionBurstIntervalMillis,
+                    m_MotionBurstIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        logger.info("DeviceFarm started with {} devices on port {}", m_Devices.size(), getPort());
+    }// start
+
+    @Override
+    public void stop() {
+        if (m_Scheduler != null) {
+            m_Scheduler.shutdownNow();
+            m_Scheduler = null;
+        }
+        super.stop();
+    }// stop
+
+    @Override
+    protected void handleRequest(SbusRequest request, SbusTransport transport) throws SbusIOException {
+        m_RequestCount.incrementAndGet();
+        VirtualDevice device = m_Index.get(indexOf(request.getSubnetID(), request.getUnitID()));
+        if (device == null) {
+            m_UnknownCount.incrementAndGet();
+            return;
+        }
+        if (m_LossRate > 0 && m_Random.nextDouble() < m_LossRate) {
+            m_LostCount.incrementAndGet();
+            return;
+        }
+        SbusResponse response = device.createResponse(request);
+        if (response == null) {
+            return;
+        }
+        int delay = m_LatencyMillis + (m_LatencyJitterMillis > 0 ? m_Random.nextInt(m_LatencyJitterMillis + 1) : 0);
+        ScheduledExecutorService scheduler = m_Scheduler;
+        if (delay <= 0 || scheduler == null) {
+            send(transport, response);
+        } else {
+            scheduler.schedule(() -> send(transport, response), delay, TimeUnit.MILLISECONDS);
+        }
+    }// handleRequest
+
+    private void send(SbusTransport transport, SbusMessage message) {
+        if (write(transport, message)) {
+            m_ResponseCount.incrementAndGet();
+        }
+    }// send
+
+    private boolean write(SbusTransport transport, SbusMessage message) {
+        try {
+            transport.writeMessage(message);
+            return true;
+        } catch (SbusIOException ex) {
+            logger.debug("Failed to send simulated message: {}", ex.getMessage());
+            return false;
+        }
+    }// write
+
+    private void updateDevices() {
+        for (VirtualDevice device : m_Devices) {
+            device.update(m_Random);
+        }
+    }// updateDevices
+
+    private void sendMotionBurst() {
+        List<VirtualNineInOneSensor> sensors = new ArrayList<>();
+        for (VirtualDevice device : m_Devices) {
+            if (device instanceof VirtualNineInOneSensor) {
+                sensors.add((VirtualNineInOneSensor) device);
+            }
+        }
+        UDPSlaveTerminal terminal = getTerminal();
+        if (sensors.isEmpty() || terminal == null || terminal.getSbusTransport() == null) {
+            return;
+        }
+        for (int i = 0; i < m_MotionBurstSize; i++) {
+            VirtualNineInOneSensor sensor = sensors.get(m_Random.nextInt(sensors.size()));
+            sensor.setMotion(!sensor.isMotion());
+            if (write(terminal.getSbusTransport(), sensor.createStatusReport())) {
+                m_ReportCount.incrementAndGet();
+            }
+        }
+    }// sendMotionBurst
+
+    private static int indexOf(int subnetID, int unitID) {
+        return ((subnetID & 0xFF) << 8) | (unitID & 0xFF);
+    }// indexOf
+
+}// class DeviceFarm
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.sim;
+
+import java.util.Random;
+
+import ro.ciprianpascu.sbus.msg.SbusRequest;
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.procimg.ProcessImageImplementation;
+import ro.ciprianpascu.sbus.procimg.SimpleProcessImage;
+
+/**
+ * Abstract class implementing a simulated S-Bus device.
+ * Each device keeps its state in its own {@link SimpleProcessImage}
+ * and answers requests addressed to its subnet and unit the way a
+ * real device does: the reply carries the device as source and the
+ * requester as target.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public abstract class VirtualDevice {
+
+    private final int m_SubnetID;
+    private final int m_UnitID;
+    private final int m_DeviceType;
+
+    /** The process image holding the state of this device */
+    protected final SimpleProcessImage m_ProcessImage = new SimpleProcessImage();
+
+    /**
+     * Constructs a new {@link VirtualDevice}.
+     *
+     * @param subnetID the subnet identifier of the device.
+     * @param unitID the unit identifier of the device.
+     * @param deviceType the device type reported in replies.
+     */
+    protected VirtualDevice(int subnetID, int unitID, int deviceType) {
+        m_SubnetID = subnetID & 0xFF;
+        m_UnitID = unitID & 0xFF;
+        m_DeviceType = deviceType & 0xFFFF;
+    }// constructor
+
+    /**
+     * Returns the subnet identifier of this device.
+     *
+     * @return the subnet identifier.
+     */
+    public int getSubnetID() {
+        return m_SubnetID;
+    }// getSubnetID
+
+    /**
+     * Returns the unit identifier of this device.
+     *
+     * @return the unit identifier.
+     */
+    public int getUnitID() {
+        return m_UnitID;
+    }// getUnitID
+
+    /**
+     * Returns the device type reported in replies.
+     *
+     * @return the device type.
+     */
+    public int getDeviceType() {
+        return m_DeviceType;
+    }// getDeviceType
+
+    /**
+     * Returns the process image holding the state of this device.
+     *
+     * @return the {@link ProcessImageImplementation}.
+     */
+    public ProcessImageImplementation getProcessImage() {
+        return m_ProcessImage;
+    }// getProcessImage
+
+    /**
+     * Creates the reply to the given request.
+     *
+     * @param request the {@link SbusRequest} addressed to this device.
+     * @return the {@link SbusResponse}, or null if the device does
+     *         not answer this function code.
+     */
+    public abstract SbusResponse createResponse(SbusRequest request);
+
+    /**
+     * Advances the simulated values of this device by one step.
+     * The default implementation does nothing.
+     *
+     * @param random the source of randomness to use.
+     */
+    public void update(Random random) {
+        // static device
+    }// update
+
+    /**
+     * Fills in the header of a reply: this device becomes the
+     * source and the requester becomes the target.
+     *
+     * @param response the reply to address.
+     * @param request the request being answered.
+     * @param <T> the type of the reply.
+     * @return the given reply.
+     */
+    protected <T extends SbusResponse> T address(T response, SbusRequest request) {
+        response.setSourceSubnetID(m_SubnetID);
+        response.setSourceUnitID(m_UnitID);
+        response.setSourceDeviceType(m_DeviceType);
+        response.setSubnetID(request.getSourceSubnetID());
+        response.setUnitID(request.getSourceUnitID());
+        return response;
+    }// address
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " " + m_SubnetID + "_" + m_UnitID;
+    }
+
+}// class VirtualDevice
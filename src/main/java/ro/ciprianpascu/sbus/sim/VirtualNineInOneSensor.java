@@ -0,0 +1,181 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.sim;
+
+import java.util.Random;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.msg.MotionSensorStatusReport;
+import ro.ciprianpascu.sbus.msg.ReadNineInOneStatusResponse;
+import ro.ciprianpascu.sbus.msg.SbusRequest;
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.procimg.ByteRegister;
+import ro.ciprianpascu.sbus.procimg.InputRegister;
+
+/**
+ * Class implementing a simulated 9-in-1 sensor.
+ * The process image holds eight byte registers laid out as in the
+ * {@link MotionSensorStatusReport}: dry contact types, dry contact
+ * states, motion, a reserved byte and the 16-bit lux value.
+ * The sensor answers <i>read 9-in-1 status</i> and can emit
+ * unsolicited status reports broadcast to all devices.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class VirtualNineInOneSensor extends VirtualDevice {
+
+    /** Device type reported by simulated 9-in-1 sensors */
+    public static final int DEVICE_TYPE = 0x0134;
+
+    /** Number of dry contacts of a 9-in-1 sensor */
+    public static final int DRY_CONTACTS = 2;
+
+    /** Highest simulated lux value */
+    public static final int MAX_LUX = 2000;
+
+    private static final int STATUS_OFFSET = DRY_CONTACTS;
+    private static final int MOTION_OFFSET = DRY_CONTACTS * 2;
+    private static final int LUX_OFFSET = MOTION_OFFSET + 2;
+
+    /**
+     * Constructs a new {@link VirtualNineInOneSensor}
+     * with open contacts, no motion and 300 lux.
+     *
+     * @param subnetID the subnet identifier of the device.
+     * @param unitID the unit identifier of the device.
+     */
+    public VirtualNineInOneSensor(int subnetID, int unitID) {
+        super(subnetID, unitID, DEVICE_TYPE);
+        for (int i = 0; i < 8; i++) {
+            m_ProcessImage.addInputRegister(new ByteRegister((byte) 0));
+        }
+        setLux(300);
+    }// constructor
+
+    /**
+     * Returns the motion state.
+     *
+     * @return true if motion is detected.
+     */
+    public boolean isMotion() {
+        return m_ProcessImage.getInputRegister(MOTION_OFFSET).getValue() != 0;
+    }// isMotion
+
+    /**
+     * Sets the motion state.
+     *
+     * @param motion true if motion is detected.
+     */
+    public void setMotion(boolean motion) {
+        set(MOTION_OFFSET, motion ? 1 : 0);
+    }// setMotion
+
+    /**
+     * Returns the measured lux value.
+     *
+     * @return the lux value.
+     */
+    public int getLux() {
+        return (get(LUX_OFFSET) << 8) | get(LUX_OFFSET + 1);
+    }// getLux
+
+    /**
+     * Sets the measured lux value.
+     *
+     * @param lux the lux value, 0-65535.
+     */
+    public void setLux(int lux) {
+        set(LUX_OFFSET, lux >> 8);
+        set(LUX_OFFSET + 1, lux);
+    }// setLux
+
+    /**
+     * Returns the state of a dry contact.
+     *
+     * @param contact the contact index, 0 or 1.
+     * @return 1 if open, 0 if closed.
+     */
+    public int getDryContactStatus(int contact) {
+        return get(STATUS_OFFSET + contact);
+    }// getDryContactStatus
+
+    /**
+     * Sets the state of a dry contact.
+     *
+     * @param contact the contact index, 0 or 1.
+     * @param status 1 if open, 0 if closed.
+     */
+    public void setDryContactStatus(int contact, int status) {
+        set(STATUS_OFFSET + contact, status);
+    }// setDryContactStatus
+
+    /**
+     * Creates an unsolicited status report of the current state,
+     * broadcast to all subnets and units.
+     *
+     * @return the {@link MotionSensorStatusReport}.
+     */
+    public MotionSensorStatusReport createStatusReport() {
+        InputRegister[] registers = new InputRegister[8];
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = new ByteRegister((byte) get(i));
+        }
+        MotionSensorStatusReport report = new MotionSensorStatusReport(DRY_CONTACTS, registers);
+        report.setSourceSubnetID(getSubnetID());
+        report.setSourceUnitID(getUnitID());
+        report.setSourceDeviceType(getDeviceType());
+        report.setSubnetID(0xFF);
+        report.setUnitID(0xFF);
+        return report;
+    }// createStatusReport
+
+    @Override
+    public SbusResponse createResponse(SbusRequest request) {
+        if (request.getFunctionCode() != Sbus.READ_NINE_IN_ONE_STATUS_REQUEST) {
+            return null;
+        }
+        // dry contact 1, dry contact 2, lux, motion
+        InputRegister[] registers = new InputRegister[8];
+        registers[0] = new ByteRegister((byte) getDryContactStatus(0));
+        registers[1] = new ByteRegister((byte) getDryContactStatus(1));
+        registers[2] = new ByteRegister((byte) Math.min(255, getLux()));
+        registers[3] = new ByteRegister((byte) (isMotion() ? 1 : 0));
+        for (int i = 4; i < registers.length; i++) {
+            registers[i] = new ByteRegister((byte) 0);
+        }
+        return address(new ReadNineInOneStatusResponse(registers), request);
+    }// createResponse
+
+    @Override
+    public void update(Random random) {
+        int lux = getLux() + random.nextInt(41) - 20;
+        setLux(Math.max(0, Math.min(MAX_LUX, lux)));
+        if (random.nextInt(20) == 0) {
+            setMotion(!isMotion());
+        }
+    }// update
+
+    private int get(int ref) {
+        return m_ProcessImage.getInputRegister(ref).getValue() & 0xFF;
+    }// get
+
+    private void set(int ref, int value) {
+        ((ByteRegister) m_ProcessImage.getInputRegister(ref)).setValue(value & 0xFF);
+    }// set
+
+}// class VirtualNineInOneSensor
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.sim;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.msg.SbusRequest;
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.msg.WriteSingleChannelRequest;
+import ro.ciprianpascu.sbus.msg.WriteSingleChannelResponse;
+import ro.ciprianpascu.sbus.procimg.ByteRegister;
+
+/**
+ * Class implementing a simulated relay or dimmer module.
+ * Channel levels are kept as one byte register per channel and
+ * can be read with <i>read status channels</i> and changed with
+ * <i>write single channel</i>. Channels are numbered from 1.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class VirtualRelay extends VirtualDevice {
+
+    /** Device type reported by simulated relays */
+    public static final int DEVICE_TYPE = 0x0258;
+
+    /** Default number of channels of a simulated relay */
+    public static final int DEFAULT_CHANNELS = 12;
+
+    /**
+     * Constructs a new {@link VirtualRelay} with the default number of channels.
+     *
+     * @param subnetID the subnet identifier of the device.
+     * @param unitID the unit identifier of the device.
+     */
+    public VirtualRelay(int subnetID, int unitID) {
+        this(subnetID, unitID, DEFAULT_CHANNELS);
+    }// constructor
+
+    /**
+     * Constructs a new {@link VirtualRelay}.
+     *
+     * @param subnetID the subnet identifier of the device.
+     * @param unitID the unit identifier of the device.
+     * @param channels the number of channels.
+     */
+    public VirtualRelay(int subnetID, int unitID, int channels) {
+        super(subnetID, unitID, DEVICE_TYPE);
+        for (int i = 0; i < channels; i++) {
+            m_ProcessImage.addRegister(new ByteRegister((byte) 0));
+        }
+    }// constructor
+
+    /**
+     * Returns the number of channels of this relay.
+     *
+     * @return the channel count.
+     */
+    public int getChannelCount() {
+        return m_ProcessImage.getRegisterCount();
+    }// getChannelCount
+
+    /**
+     * Returns the level of the given channel.
+     *
+     * @param channel the channel number, starting at 1.
+     * @return the level 0-100.
+     */
+    public int getChannelLevel(int channel) {
+        return m_ProcessImage.getRegister(channel - 1).getValue() & 0xFF;
+    }// getChannelLevel
+
+    /**
+     * Sets the level of the given channel.
+     *
+     * @param channel the channel number, starting at 1.
+     * @param level the level 0-100.
+     */
+    public void setChannelLevel(int channel, int level) {
+        m_ProcessImage.getRegister(channel - 1).setValue(level);
+    }// setChannelLevel
+
+    @Override
+    public SbusResponse createResponse(SbusRequest request) {
+        switch (request.getFunctionCode()) {
+            case Sbus.READ_STATUS_CHANNELS_REQUEST:
+                return address(new ReadStatusChannelsResponse(
+                        m_ProcessImage.getRegisterRange(0, getChannelCount())), request);
+            case Sbus.WRITE_SINGLE_CHANNEL_REQUEST:
+                WriteSingleChannelRequest write = (WriteSingleChannelRequest) request;
+                int channel = write.getChannelNo() & 0xFF;
+                boolean success = channel >= 1 && channel <= getChannelCount();
+                if (success) {
+                    setChannelLevel(channel, write.getRegisterValue(0) & 0xFF);
+                }
+                return address(new WriteSingleChannelResponse(channel, success), request);
+            default:
+                return null;
+        }
+    }// createResponse
+
+}// class VirtualRelay
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.sim;
+
+import java.util.Random;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.msg.ReadTemperatureRequest;
+import ro.ciprianpascu.sbus.msg.ReadTemperatureResponse;
+import ro.ciprianpascu.sbus.msg.SbusRequest;
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.procimg.InputRegister;
+import ro.ciprianpascu.sbus.procimg.WordRegister;
+
+/**
+ * Class implementing a simulated temperature panel.
+ * The panel exposes eight temperature sensors as input registers,
+ * holding whole degrees Celsius, and answers <i>read temperature</i>
+ * in the requested unit. On every update each sensor drifts by at
+ * most one degree within {@link #MIN_CELSIUS} and {@link #MAX_CELSIUS}.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class VirtualTemperaturePanel extends VirtualDevice {
+
+    /** Device type reported by simulated temperature panels */
+    public static final int DEVICE_TYPE = 0x0095;
+
+    /** Number of sensors reported by a temperature panel */
+    public static final int SENSORS = 8;
+
+    /** Lowest simulated temperature in degrees Celsius */
+    public static final int MIN_CELSIUS = 15;
+
+    /** Highest simulated temperature in degrees Celsius */
+    public static final int MAX_CELSIUS = 30;
+
+    /**
+     * Constructs a new {@link VirtualTemperaturePanel}, all sensors at 21 degrees Celsius.
+     *
+     * @param subnetID the subnet identifier of the device.
+     * @param unitID the unit identifier of the device.
+     */
+    public VirtualTemperaturePanel(int subnetID, int unitID) {
+        super(subnetID, unitID, DEVICE_TYPE);
+        for (int i = 0; i < SENSORS; i++) {
+            m_ProcessImage.addInputRegister(new WordRegister((short) 21));
+        }
+    }// constructor
+
+    /**
+     * Returns the temperature of the given sensor.
+     *
+     * @param sensor the sensor index, 0-7.
+     * @return the temperature in degrees Celsius.
+     */
+    public int getCelsius(int sensor) {
+        return m_ProcessImage.getInputRegister(sensor).getValue();
+    }// getCelsius
+
+    /**
+     * Sets the temperature of the given sensor.
+     *
+     * @param sensor the sensor index, 0-7.
+     * @param celsius the temperature in degrees Celsius.
+     */
+    public void setCelsius(int sensor, int celsius) {
+        ((WordRegister) m_ProcessImage.getInputRegister(sensor)).setValue(celsius);
+    }// setCelsius
+
+    @Override
+    public SbusResponse createResponse(SbusRequest request) {
+        if (request.getFunctionCode() != Sbus.READ_TEMPERATURE_REQUEST) {
+            return null;
+        }
+        int unit = ((ReadTemperatureRequest) request).getTemperatureUnit();
+        InputRegister[] registers = new InputRegister[SENSORS];
+        for (int i = 0; i < SENSORS; i++) {
+            int value = getCelsius(i);
+            if (unit == 0) {
+                value = value * 9 / 5 + 32;
+            }
+            // value byte low, sign byte high
+            int sign = value < 0 ? 1 : 0;
+            registers[i] = new WordRegister((short) ((sign << 8) | (Math.abs(value) & 0xFF)));
+        }
+        ReadTemperatureResponse response = new ReadTemperatureResponse(registers);
+        response.setTemperatureUnit(unit);
+        return address(response, request);
+    }// createResponse
+
+    @Override
+    public void update(Random random) {
+        for (int i = 0; i < SENSORS; i++) {
+            int value = getCelsius(i) + random.nextInt(3) - 1;
+            setCelsius(i, Math.max(MIN_CELSIUS, Math.min(MAX_CELSIUS, value)));
+        }
+    }// update
+
+}// class VirtualTemperaturePanel
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class implementing a lock-free latency histogram with fixed,
+ * power of two buckets in microseconds.
+ *
+ * Bucket <i>i</i> counts latencies below 2<sup>i</sup> microseconds
+ * and at least half that, the last bucket everything longer.
+ * Recording is a few atomic increments, so it can be done on every
+ * round trip; percentiles are approximated by the upper bound of
+ * the bucket they fall in.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class LatencyHistogram {
+
+    /** Number of buckets, the last one covers 2<sup>24</sup> us (about 16 s) and above */
+    public static final int BUCKETS = 25;
+
+    private final AtomicLongArray m_Buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder m_Count = new LongAdder();
+    private final LongAdder m_Sum = new LongAdder();
+    private final AtomicLong m_Max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000L);
+        m_Buckets.incrementAndGet(bucketFor(micros));
+        m_Count.increment();
+        m_Sum.add(micros);
+        long max = m_Max.get();
+        while (micros > max && !m_Max.compareAndSet(max, micros)) {
+            max = m_Max.get();
+        }
+    }// record
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return the count.
+     */
+    public long getCount() {
+        return m_Count.sum();
+    }// getCount
+
+    /**
+     * Returns the mean of the recorded latencies.
+     *
+     * @return the mean in microseconds, 0 if none were recorded.
+     */
+    public long getMeanMicros() {
+        long count = m_Count.sum();
+        return count == 0 ? 0 : m_Sum.sum() / count;
+    }// getMeanMicros
+
+    /**
+     * Returns the longest recorded latency.
+     *
+     * @return the maximum in microseconds.
+     */
+    public long getMaxMicros() {
+        return m_Max.get();
+    }// getMaxMicros
+
+    /**
+     * Returns the approximate latency below which the given
+     * fraction of the recorded latencies fall.
+     *
+     * @param fraction the fraction, between 0 and 1.
+     * @return the upper bound of the bucket in microseconds, never
+     *         more than the maximum; 0 if none were recorded.
+     */
+    public long getPercentileMicros(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = m_Buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.max(0, Math.min(1, fraction)) * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(1L << i, m_Max.get());
+            }
+        }
+        return m_Max.get();
+    }// getPercentileMicros
+
+    /**
+     * Returns the count of a bucket.
+     *
+     * @param bucket the bucket index, 0 to {@link #BUCKETS} - 1.
+     * @return the number of latencies recorded in the bucket.
+     */
+    public long getBucketCount(int bucket) {
+        return m_Buckets.get(bucket);
+    }// getBucketCount
+
+    /**
+     * Adds the latencies recorded by another histogram to this one,
+     * as when merging histograms filled by separate threads.
+     *
+     * @param other the {@link LatencyHistogram} to add.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            m_Buckets.addAndGet(i, other.m_Buckets.get(i));
+        }
+        m_Count.add(other.m_Count.sum());
+        m_Sum.add(other.m_Sum.sum());
+        long micros = other.m_Max.get();
+        long max = m_Max.get();
+        while (micros > max && !m_Max.compareAndSet(max, micros)) {
+            max = m_Max.get();
+        }
+    }// add
+
+    /**
+     * Clears all recorded latencies.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            m_Buckets.set(i, 0);
+        }
+        m_Count.reset();
+        m_Sum.reset();
+        m_Max.set(0);
+    }// reset
+
+    /**
+     * Returns the bucket of a latency.
+     *
+     * @param micros the latency in microseconds.
+     * @return the bucket index.
+     */
+    static int bucketFor(long micros) {
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }// bucketFor
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + " mean=" + getMeanMicros() + "us p50=" + getPercentileMicros(0.5)
+                + "us p99=" + getPercentileMicros(0.99) + "us max=" + getMaxMicros() + "us";
+    }// toString
+
+}// class LatencyHistogram
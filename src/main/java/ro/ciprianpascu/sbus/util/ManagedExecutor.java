@@ -0,0 +1,366 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class implementing a bounded, observable execution service
+ * that listeners, pollers and slave handlers can share.
+ *
+ * Tasks wait in a bounded queue; once it is full the
+ * {@link SaturationPolicy} decides what happens to further tasks.
+ * Worker threads are named after the pool and are daemons, so a
+ * forgotten pool never keeps the virtual machine alive, and
+ * {@link #shutdown(long)} stops the pool gracefully within a deadline.
+ * Failing tasks are logged and counted instead of killing workers.
+ *
+ * The pool keeps gauges for active workers, queue depth, completed,
+ * failed and rejected tasks, and the latency of tasks from
+ * submission to completion.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class ManagedExecutor implements Executor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ManagedExecutor.class);
+
+    /** Default number of tasks that may wait for a worker */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * Defines what happens to a task submitted while the queue is full.
+     */
+    public enum SaturationPolicy {
+        /** Reject the task with a {@link RejectedExecutionException} */
+        ABORT,
+        /** Run the task in the submitting thread, slowing the producer down */
+        CALLER_RUNS,
+        /** Silently discard the task */
+        DISCARD,
+        /** Discard the oldest waiting task and queue this one */
+        DISCARD_OLDEST,
+        /** Wait until the queue has room */
+        BLOCK
+    }
+
+    private static volatile ManagedExecutor m_Shared;
+
+    private final String m_Name;
+    private final SaturationPolicy m_Policy;
+    private final ThreadPoolExecutor m_Executor;
+
+    private final LongAdder m_Completed = new LongAdder();
+    private final LongAdder m_Failed = new LongAdder();
+    private final LongAdder m_Rejected = new LongAdder();
+    private final LongAdder m_LatencyNanos = new LongAdder();
+    private final LongAccumulator m_MaxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructs a new {@link ManagedExecutor} with the default queue
+     * capacity, blocking submitters while the queue is full.
+     *
+     * @param name the name of the pool, used for its threads.
+     * @param threads the number of worker threads.
+     */
+    public ManagedExecutor(String name, int threads) {
+        this(name, threads, DEFAULT_QUEUE_CAPACITY, SaturationPolicy.BLOCK);
+    }// constructor
+
+    /**
+     * Constructs a new {@link ManagedExecutor}.
+     *
+     * @param name the name of the pool, used for its threads.
+     * @param threads the number of worker threads.
+     * @param queueCapacity the number of tasks that may wait for a worker.
+     * @param policy the {@link SaturationPolicy} applied while the queue is full.
+     */
+    public ManagedExecutor(String name, int threads, int queueCapacity, SaturationPolicy policy) {
+        if (threads < 1 || queueCapacity < 1 || policy == null) {
+            throw new IllegalArgumentException("Invalid executor configuration");
+        }
+        m_Name = name;
+        m_Policy = policy;
+        AtomicInteger counter = new AtomicInteger();
+        m_Executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), r -> {
+                    Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new Saturation());
+    }// constructor
+
+    /**
+     * Returns a pool shared by the whole library, with one worker per
+     * available processor and at least two, created on first use.
+     *
+     * @return the shared {@link ManagedExecutor}.
+     */
+    public static ManagedExecutor getShared() {
+        ManagedExecutor shared = m_Shared;
+        if (shared == null || shared.isShutdown()) {
+            synchronized (ManagedExecutor.class) {
+                shared = m_Shared;
+                if (shared == null || shared.isShutdown()) {
+                    shared = new ManagedExecutor("sbus",
+                            Math.max(2, Runtime.getRuntime().availableProcessors()));
+                    m_Shared = shared;
+                }
+            }
+        }
+        return shared;
+    }// getShared
+
+    @Override
+    public void execute(Runnable task) {
+        m_Executor.execute(new TimedTask(task));
+    }// execute
+
+    /**
+     * Submits a task, returning a {@link Future} that can be used
+     * to wait for or to cancel it; cancelling interrupts the worker.
+     * Failures are logged and counted, not reported through the future.
+     *
+     * @param task the {@link Runnable} to run.
+     * @return the {@link Future} of the task.
+     */
+    public Future<?> submit(Runnable task) {
+        return m_Executor.submit(new TimedTask(task));
+    }// submit
+
+    /**
+     * Stops accepting tasks and waits at most the given time for queued
+     * and running tasks to finish; whatever is still running then is
+     * interrupted.
+     *
+     * @param timeoutMillis the deadline in milliseconds.
+     * @return true if all tasks finished in time, false otherwise.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean shutdown(long timeoutMillis) throws InterruptedException {
+        m_Executor.shutdown();
+        if (m_Executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            return true;
+        }
+        int dropped = m_Executor.shutdownNow().size();
+        logger.warn("Executor {} did not terminate within {} ms, interrupted workers and dropped {} tasks",
+                m_Name, timeoutMillis, dropped);
+        return false;
+    }// shutdown
+
+    /**
+     * Tests if this pool has been shut down.
+     *
+     * @return true if shut down, false otherwise.
+     */
+    public boolean isShutdown() {
+        return m_Executor.isShutdown();
+    }// isShutdown
+
+    /**
+     * Returns the name of this pool.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return m_Name;
+    }// getName
+
+    /**
+     * Returns the saturation policy of this pool.
+     *
+     * @return the {@link SaturationPolicy}.
+     */
+    public SaturationPolicy getSaturationPolicy() {
+        return m_Policy;
+    }// getSaturationPolicy
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return the pool size.
+     */
+    public int getPoolSize() {
+        return m_Executor.getCorePoolSize();
+    }// getPoolSize
+
+    /**
+     * Returns the number of workers currently running a task.
+     *
+     * @return the active worker count.
+     */
+    public int getActiveCount() {
+        return m_Executor.getActiveCount();
+    }// getActiveCount
+
+    /**
+     * Returns the number of tasks waiting for a worker.
+     *
+     * @return the queue depth.
+     */
+    public int getQueueDepth() {
+        return m_Executor.getQueue().size();
+    }// getQueueDepth
+
+    /**
+     * Returns the number of tasks that ran to completion.
+     *
+     * @return the completed count.
+     */
+    public long getCompletedCount() {
+        return m_Completed.sum();
+    }// getCompletedCount
+
+    /**
+     * Returns the number of tasks that ended with an exception.
+     *
+     * @return the failed count.
+     */
+    public long getFailedCount() {
+        return m_Failed.sum();
+    }// getFailedCount
+
+    /**
+     * Returns the number of tasks rejected or discarded while the pool was saturated.
+     *
+     * @return the rejected count.
+     */
+    public long getRejectedCount() {
+        return m_Rejected.sum();
+    }// getRejectedCount
+
+    /**
+     * Returns the mean time from submission to completion of the
+     * tasks that completed or failed.
+     *
+     * @return the mean latency in microseconds.
+     */
+    public long getMeanLatencyMicros() {
+        long count = m_Completed.sum() + m_Failed.sum();
+        return count == 0 ? 0 : m_LatencyNanos.sum() / count / 1000L;
+    }// getMeanLatencyMicros
+
+    /**
+     * Returns the longest time from submission to completion of any task.
+     *
+     * @return the maximal latency in microseconds.
+     */
+    public long getMaxLatencyMicros() {
+        return m_MaxLatencyNanos.get() / 1000L;
+    }// getMaxLatencyMicros
+
+    @Override
+    public String toString() {
+        return m_Name + "[workers=" + getPoolSize() + ", active=" + getActiveCount() + ", queued="
+                + getQueueDepth() + ", completed=" + getCompletedCount() + ", failed=" + getFailedCount()
+                + ", rejected=" + getRejectedCount() + "]";
+    }// toString
+
+    /**
+     * Wraps a task to measure its latency and to account for its outcome.
+     */
+    private final class TimedTask implements Runnable {
+
+        private final Runnable m_Task;
+        private final long m_Submitted = System.nanoTime();
+
+        TimedTask(Runnable task) {
+            if (task == null) {
+                throw new NullPointerException();
+            }
+            m_Task = task;
+        }// constructor
+
+        @Override
+        public void run() {
+            try {
+                m_Task.run();
+                m_Completed.increment();
+            } catch (RuntimeException | Error ex) {
+                m_Failed.increment();
+                logger.error("Task failed in executor {}", m_Name, ex);
+            } finally {
+                long latency = System.nanoTime() - m_Submitted;
+                m_LatencyNanos.add(latency);
+                m_MaxLatencyNanos.accumulate(latency);
+            }
+        }// run
+
+    }// class TimedTask
+
+    /**
+     * Applies the {@link SaturationPolicy} to tasks the pool cannot accept.
+     */
+    private final class Saturation implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                m_Rejected.increment();
+                throw new RejectedExecutionException("Executor " + m_Name + " is shut down");
+            }
+            switch (m_Policy) {
+                case CALLER_RUNS:
+                    task.run();
+                    break;
+                case DISCARD:
+                    m_Rejected.increment();
+                    break;
+                case DISCARD_OLDEST:
+                    if (executor.getQueue().poll() != null) {
+                        m_Rejected.increment();
+                    }
+                    executor.execute(task);
+                    break;
+                case BLOCK:
+                    try {
+                        BlockingQueue<Runnable> queue = executor.getQueue();
+                        while (!queue.offer(task, 100, TimeUnit.MILLISECONDS)) {
+                            if (executor.isShutdown()) {
+                                m_Rejected.increment();
+                                throw new RejectedExecutionException("Executor " + m_Name + " is shut down");
+                            }
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        m_Rejected.increment();
+                        throw new RejectedExecutionException("Interrupted while waiting for executor " + m_Name);
+                    }
+                    break;
+                default:
+                    m_Rejected.increment();
+                    throw new RejectedExecutionException("Executor " + m_Name + " is saturated");
+            }
+        }// rejectedExecution
+
+    }// class Saturation
+
+}// class ManagedExecutor
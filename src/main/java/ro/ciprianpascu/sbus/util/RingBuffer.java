@@ -0,0 +1,350 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, preallocated FIFO ring buffer.
+ *
+ * Producers and consumers claim slots with a compare-and-set on the
+ * tail respectively head position, each slot carrying a sequence number
+ * that tells whether it is free or filled (after D. Vyukov's bounded
+ * queue). Any number of producers may put concurrently; several
+ * consumers are tolerated as well. Threads only synchronize on a
+ * monitor when they have to wait for an element or for free space.
+ *
+ * What happens when the buffer is full is decided by the
+ * {@link OverflowPolicy}; dropped elements are counted.
+ *
+ * @param <E> the type of the elements.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class RingBuffer<E> {
+
+    /**
+     * Defines what {@link RingBuffer#put(Object)} does when the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /** Discard the oldest buffered element to make room */
+        DROP_OLDEST,
+        /** Discard the element being put */
+        DROP_NEWEST,
+        /** Wait until a consumer frees a slot */
+        BLOCK
+    }
+
+    private final Object[] m_Elements;
+    private final AtomicLongArray m_Sequences;
+    private final int m_Mask;
+    private final OverflowPolicy m_Policy;
+
+    private final AtomicLong m_Head = new AtomicLong();
+    private final AtomicLong m_Tail = new AtomicLong();
+    private final AtomicLong m_Dropped = new AtomicLong();
+    private final AtomicInteger m_HighWatermark = new AtomicInteger();
+
+    /** Monitor consumers wait on while the buffer is empty */
+    private final Object m_NotEmpty = new Object();
+    private volatile int m_WaitingForTake = 0;
+
+    /** Monitor producers wait on while the buffer is full */
+    private final Object m_NotFull = new Object();
+    private volatile int m_WaitingForPut = 0;
+
+    /**
+     * Constructs a new {@link RingBuffer}.
+     *
+     * @param capacity the minimal number of elements; rounded up to a power of two.
+     * @param policy the {@link OverflowPolicy} applied by {@link #put(Object)}.
+     */
+    public RingBuffer(int capacity, OverflowPolicy policy) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Overflow policy required");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        m_Elements = new Object[size];
+        m_Sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            m_Sequences.set(i, i);
+        }
+        m_Mask = size - 1;
+        m_Policy = policy;
+    }// constructor
+
+    /**
+     * Puts an element, applying the overflow policy if the buffer is full.
+     *
+     * @param x the element to put.
+     * @return true if the element was buffered, false if it was dropped.
+     * @throws InterruptedException if interrupted while waiting for space.
+     * @throws IllegalArgumentException if the element is null.
+     */
+    public boolean put(E x) throws InterruptedException {
+        if (x == null) {
+            throw new IllegalArgumentException();
+        }
+        if (offer(x)) {
+            return true;
+        }
+        switch (m_Policy) {
+            case DROP_NEWEST:
+                m_Dropped.incrementAndGet();
+                return false;
+            case DROP_OLDEST:
+                do {
+                    if (poll() != null) {
+                        m_Dropped.incrementAndGet();
+                    }
+                } while (!offer(x));
+                return true;
+            default:
+                while (!offer(x)) {
+                    synchronized (m_NotFull) {
+                        m_WaitingForPut++;
+                        try {
+                            if (!hasSpace()) {
+                                m_NotFull.wait();
+                            }
+                        } finally {
+                            m_WaitingForPut--;
+                        }
+                    }
+                }
+                return true;
+        }
+    }// put
+
+    /**
+     * Puts an element if there is space, without applying the overflow policy.
+     *
+     * @param x the element to put.
+     * @return true if the element was buffered, false if the buffer is full.
+     * @throws IllegalArgumentException if the element is null.
+     */
+    public boolean offer(E x) {
+        if (x == null) {
+            throw new IllegalArgumentException();
+        }
+        long pos = m_Tail.get();
+        int index;
+        while (true) {
+            index = (int) pos & m_Mask;
+            long dif = m_Sequences.get(index) - pos;
+            if (dif == 0) {
+                if (m_Tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = m_Tail.get();
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = m_Tail.get();
+            }
+        }
+        m_Elements[index] = x;
+        m_Sequences.set(index, pos + 1);
+
+        int size = size();
+        if (size > m_HighWatermark.get()) {
+            m_HighWatermark.accumulateAndGet(size, Math::max);
+        }
+        if (m_WaitingForTake > 0) {
+            synchronized (m_NotEmpty) {
+                m_NotEmpty.notify();
+            }
+        }
+        return true;
+    }// offer
+
+    /**
+     * Removes and returns the oldest element, without waiting.
+     *
+     * @return the element, or null if the buffer is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long pos = m_Head.get();
+        int index;
+        while (true) {
+            index = (int) pos & m_Mask;
+            long dif = m_Sequences.get(index) - (pos + 1);
+            if (dif == 0) {
+                if (m_Head.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = m_Head.get();
+            } else if (dif < 0) {
+                return null;
+            } else {
+                pos = m_Head.get();
+            }
+        }
+        E x = (E) m_Elements[index];
+        m_Elements[index] = null;
+        m_Sequences.set(index, pos + m_Mask + 1);
+
+        if (m_WaitingForPut > 0) {
+            synchronized (m_NotFull) {
+                m_NotFull.notify();
+            }
+        }
+        return x;
+    }// poll
+
+    /**
+     * Removes and returns the oldest element, waiting at most
+     * the given time for one to arrive.
+     *
+     * @param msecs the maximal time to wait in milliseconds; 0 or less does not wait.
+     * @return the element, or null if none arrived in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public E poll(long msecs) throws InterruptedException {
+        E x = poll();
+        if (x != null || msecs <= 0) {
+            return x;
+        }
+        long deadline = System.nanoTime() + msecs * 1000000L;
+        while ((x = poll()) == null) {
+            long waitMillis = (deadline - System.nanoTime() + 999999L) / 1000000L;
+            if (waitMillis <= 0) {
+                return null;
+            }
+            awaitElement(waitMillis);
+        }
+        return x;
+    }// poll
+
+    /**
+     * Removes and returns the oldest element, waiting until one arrives.
+     *
+     * @return the element.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public E take() throws InterruptedException {
+        E x;
+        while ((x = poll()) == null) {
+            awaitElement(0);
+        }
+        return x;
+    }// take
+
+    /**
+     * Waits until an element may be available. The monitor is only held
+     * to re-check and wait, never while signalling the other side, so
+     * blocked producers and consumers cannot deadlock each other.
+     */
+    private void awaitElement(long msecs) throws InterruptedException {
+        synchronized (m_NotEmpty) {
+            m_WaitingForTake++;
+            try {
+                if (!hasElement()) {
+                    m_NotEmpty.wait(msecs);
+                }
+            } finally {
+                m_WaitingForTake--;
+            }
+        }
+    }// awaitElement
+
+    private boolean hasElement() {
+        long pos = m_Head.get();
+        return m_Sequences.get((int) pos & m_Mask) == pos + 1;
+    }// hasElement
+
+    private boolean hasSpace() {
+        long pos = m_Tail.get();
+        return m_Sequences.get((int) pos & m_Mask) == pos;
+    }// hasSpace
+
+    /**
+     * Removes all buffered elements.
+     */
+    public void clear() {
+        while (poll() != null) {
+            // discard
+        }
+    }// clear
+
+    /**
+     * Tests if the buffer is empty.
+     *
+     * @return true if empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }// isEmpty
+
+    /**
+     * Returns the number of buffered elements.
+     * Under concurrent access the value is a snapshot.
+     *
+     * @return the occupancy.
+     */
+    public int size() {
+        long size = m_Tail.get() - m_Head.get();
+        return (int) Math.max(0, Math.min(size, m_Elements.length));
+    }// size
+
+    /**
+     * Returns the number of elements the buffer can hold.
+     *
+     * @return the capacity.
+     */
+    public int getCapacity() {
+        return m_Elements.length;
+    }// getCapacity
+
+    /**
+     * Returns the overflow policy of this buffer.
+     *
+     * @return the {@link OverflowPolicy}.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return m_Policy;
+    }// getOverflowPolicy
+
+    /**
+     * Returns the highest occupancy observed since construction.
+     *
+     * @return the high watermark.
+     */
+    public int getHighWatermark() {
+        return m_HighWatermark.get();
+    }// getHighWatermark
+
+    /**
+     * Returns the number of elements dropped by the overflow policy.
+     *
+     * @return the drop count.
+     */
+    public long getDroppedCount() {
+        return m_Dropped.get();
+    }// getDroppedCount
+
+}// class RingBuffer
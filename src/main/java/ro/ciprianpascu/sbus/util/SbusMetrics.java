@@ -0,0 +1,394 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class implementing the metrics of a transport: striped counters
+ * of frames, errors, retries and cache use, and round trip time
+ * histograms per device and function code.
+ *
+ * All recording methods are lock-free and cheap enough to be called
+ * for every frame. The metrics can be published as a standard MBean
+ * with {@link #register(Object, String, String)}.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public class SbusMetrics implements SbusMetricsMBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(SbusMetrics.class);
+
+    /** JMX domain of the j2sbus MBeans */
+    public static final String JMX_DOMAIN = "ro.ciprianpascu.sbus";
+
+    private final LongAdder m_FramesReceived = new LongAdder();
+    private final LongAdder m_FramesSent = new LongAdder();
+    private final LongAdder m_CrcErrors = new LongAdder();
+    private final LongAdder m_MalformedFrames = new LongAdder();
+    private final LongAdder m_Duplicates = new LongAdder();
+    private final LongAdder m_Responses = new LongAdder();
+    private final LongAdder m_Unsolicited = new LongAdder();
+    private final LongAdder m_Timeouts = new LongAdder();
+    private final LongAdder m_Retries = new LongAdder();
+    private final LongAdder m_CacheHits = new LongAdder();
+    private final LongAdder m_CacheMisses = new LongAdder();
+    private final LongAdder m_CircuitRejections = new LongAdder();
+    private final LatencyHistogram m_RoundTrip = new LatencyHistogram();
+    private final Map<Integer, DeviceMetrics> m_Devices = new ConcurrentHashMap<>();
+    private volatile IntSupplier m_Pending = () -> 0;
+    private volatile Supplier<String[]> m_OpenCircuits = () -> new String[0];
+
+    /**
+     * Records a decoded frame.
+     */
+    public void frameReceived() {
+        m_FramesReceived.increment();
+    }// frameReceived
+
+    /**
+     * Records a written frame.
+     */
+    public void frameSent() {
+        m_FramesSent.increment();
+    }// frameSent
+
+    /**
+     * Records a frame with a wrong CRC.
+     */
+    public void crcError() {
+        m_CrcErrors.increment();
+    }// crcError
+
+    /**
+     * Records a truncated or undecodable frame.
+     */
+    public void malformedFrame() {
+        m_MalformedFrames.increment();
+    }// malformedFrame
+
+    /**
+     * Records a received frame dropped as a copy of an earlier one.
+     */
+    public void duplicateDropped() {
+        m_Duplicates.increment();
+    }// duplicateDropped
+
+    /**
+     * Records a message handed to the listeners.
+     */
+    public void unsolicited() {
+        m_Unsolicited.increment();
+    }// unsolicited
+
+    /**
+     * Records a repeated transaction attempt.
+     */
+    public void retry() {
+        m_Retries.increment();
+    }// retry
+
+    /**
+     * Records a lookup in the response cache.
+     *
+     * @param hit true if the cache had the response.
+     */
+    public void cacheLookup(boolean hit) {
+        (hit ? m_CacheHits : m_CacheMisses).increment();
+    }// cacheLookup
+
+    /**
+     * Records an attempt failed fast because the circuit of its device was open.
+     */
+    public void circuitRejected() {
+        m_CircuitRejections.increment();
+    }// circuitRejected
+
+    /**
+     * Records the round trip of a transaction.
+     *
+     * @param subnetID the subnet of the device.
+     * @param unitID the unit of the device.
+     * @param functionCode the function code of the request.
+     * @param nanos the time from writing the request to receiving the response.
+     */
+    public void roundTrip(int subnetID, int unitID, int functionCode, long nanos) {
+        m_Responses.increment();
+        m_RoundTrip.record(nanos);
+        device(subnetID, unitID, functionCode).m_Latency.record(nanos);
+    }// roundTrip
+
+    /**
+     * Records a transaction that received no response in time.
+     *
+     * @param subnetID the subnet of the device.
+     * @param unitID the unit of the device.
+     * @param functionCode the function code of the request.
+     */
+    public void timeout(int subnetID, int unitID, int functionCode) {
+        m_Timeouts.increment();
+        device(subnetID, unitID, functionCode).m_Timeouts.increment();
+    }// timeout
+
+    /**
+     * Sets the source of the pending transaction gauge.
+     *
+     * @param pending supplies the number of transactions waiting for a response.
+     */
+    public void setPendingGauge(IntSupplier pending) {
+        m_Pending = pending == null ? () -> 0 : pending;
+    }// setPendingGauge
+
+    /**
+     * Sets the source of the open circuit gauge.
+     *
+     * @param openCircuits supplies one line per device whose circuit is not closed.
+     */
+    public void setOpenCircuitsGauge(Supplier<String[]> openCircuits) {
+        m_OpenCircuits = openCircuits == null ? () -> new String[0] : openCircuits;
+    }// setOpenCircuitsGauge
+
+    /**
+     * Returns the round trip histogram of a device and function code.
+     *
+     * @param subnetID the subnet of the device.
+     * @param unitID the unit of the device.
+     * @param functionCode the function code of the request.
+     * @return the {@link LatencyHistogram}, or null if nothing was recorded.
+     */
+    public LatencyHistogram getLatency(int subnetID, int unitID, int functionCode) {
+        DeviceMetrics device = m_Devices.get(keyFor(subnetID, unitID, functionCode));
+        return device == null ? null : device.m_Latency;
+    }// getLatency
+
+    /**
+     * Returns the number of timeouts of a device and function code.
+     *
+     * @param subnetID the subnet of the device.
+     * @param unitID the unit of the device.
+     * @param functionCode the function code of the request.
+     * @return the timeout count.
+     */
+    public long getTimeouts(int subnetID, int unitID, int functionCode) {
+        DeviceMetrics device = m_Devices.get(keyFor(subnetID, unitID, functionCode));
+        return device == null ? 0 : device.m_Timeouts.sum();
+    }// getTimeouts
+
+    /**
+     * Returns the round trip histogram over all devices.
+     *
+     * @return the {@link LatencyHistogram}.
+     */
+    public LatencyHistogram getRoundTrip() {
+        return m_RoundTrip;
+    }// getRoundTrip
+
+    @Override
+    public long getFramesReceived() {
+        return m_FramesReceived.sum();
+    }// getFramesReceived
+
+    @Override
+    public long getFramesSent() {
+        return m_FramesSent.sum();
+    }// getFramesSent
+
+    @Override
+    public long getCrcErrors() {
+        return m_CrcErrors.sum();
+    }// getCrcErrors
+
+    @Override
+    public long getMalformedFrames() {
+        return m_MalformedFrames.sum();
+    }// getMalformedFrames
+
+    @Override
+    public long getDuplicatesDropped() {
+        return m_Duplicates.sum();
+    }// getDuplicatesDropped
+
+    @Override
+    public long getResponses() {
+        return m_Responses.sum();
+    }// getResponses
+
+    @Override
+    public long getUnsolicitedMessages() {
+        return m_Unsolicited.sum();
+    }// getUnsolicitedMessages
+
+    @Override
+    public long getTimeouts() {
+        return m_Timeouts.sum();
+    }// getTimeouts
+
+    @Override
+    public long getRetries() {
+        return m_Retries.sum();
+    }// getRetries
+
+    @Override
+    public long getCacheHits() {
+        return m_CacheHits.sum();
+    }// getCacheHits
+
+    @Override
+    public long getCacheMisses() {
+        return m_CacheMisses.sum();
+    }// getCacheMisses
+
+    @Override
+    public int getPendingTransactions() {
+        return m_Pending.getAsInt();
+    }// getPendingTransactions
+
+    @Override
+    public long getCircuitRejections() {
+        return m_CircuitRejections.sum();
+    }// getCircuitRejections
+
+    @Override
+    public int getOpenCircuits() {
+        return m_OpenCircuits.get().length;
+    }// getOpenCircuits
+
+    @Override
+    public String[] getOpenCircuitDevices() {
+        return m_OpenCircuits.get();
+    }// getOpenCircuitDevices
+
+    @Override
+    public long getRoundTripMeanMicros() {
+        return m_RoundTrip.getMeanMicros();
+    }// getRoundTripMeanMicros
+
+    @Override
+    public long getRoundTripP99Micros() {
+        return m_RoundTrip.getPercentileMicros(0.99);
+    }// getRoundTripP99Micros
+
+    @Override
+    public String[] getDeviceLatencies() {
+        List<Map.Entry<Integer, DeviceMetrics>> entries = new ArrayList<>(m_Devices.entrySet());
+        entries.sort(Comparator.comparingLong(
+                (Map.Entry<Integer, DeviceMetrics> e) -> e.getValue().m_Latency.getPercentileMicros(0.99))
+                .thenComparingLong(e -> e.getValue().m_Timeouts.sum()).reversed());
+        String[] lines = new String[entries.size()];
+        for (int i = 0; i < lines.length; i++) {
+            int key = entries.get(i).getKey();
+            DeviceMetrics device = entries.get(i).getValue();
+            lines[i] = (key >>> 24) + "." + ((key >>> 16) & 0xFF) + " fc=0x"
+                    + Integer.toHexString(0x10000 | (key & 0xFFFF)).substring(1).toUpperCase() + " "
+                    + device.m_Latency + " timeouts=" + device.m_Timeouts.sum();
+        }
+        return lines;
+    }// getDeviceLatencies
+
+    @Override
+    public void reset() {
+        m_FramesReceived.reset();
+        m_FramesSent.reset();
+        m_CrcErrors.reset();
+        m_MalformedFrames.reset();
+        m_Duplicates.reset();
+        m_Responses.reset();
+        m_Unsolicited.reset();
+        m_Timeouts.reset();
+        m_Retries.reset();
+        m_CacheHits.reset();
+        m_CacheMisses.reset();
+        m_CircuitRejections.reset();
+        m_RoundTrip.reset();
+        m_Devices.clear();
+    }// reset
+
+    /**
+     * Registers a standard MBean with the platform MBean server.
+     * Failures are logged, monitoring must never stop communication.
+     *
+     * @param mbean the MBean.
+     * @param type the type key of the object name.
+     * @param name the name key of the object name.
+     * @return the {@link ObjectName} registered, or null on failure.
+     */
+    public static ObjectName register(Object mbean, String type, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mbean, objectName);
+            return objectName;
+        } catch (Exception ex) {
+            logger.debug("Could not register MBean {}: {}", name, ex.getMessage());
+            return null;
+        }
+    }// register
+
+    /**
+     * Unregisters an MBean registered with {@link #register(Object, String, String)}.
+     *
+     * @param objectName the {@link ObjectName}, may be null.
+     */
+    public static void unregister(ObjectName objectName) {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (Exception ex) {
+            logger.debug("Could not unregister MBean {}: {}", objectName, ex.getMessage());
+        }
+    }// unregister
+
+    private DeviceMetrics device(int subnetID, int unitID, int functionCode) {
+        return m_Devices.computeIfAbsent(keyFor(subnetID, unitID, functionCode), k -> new DeviceMetrics());
+    }// device
+
+    private static int keyFor(int subnetID, int unitID, int functionCode) {
+        return ((subnetID & 0xFF) << 24) | ((unitID & 0xFF) << 16) | (functionCode & 0xFFFF);
+    }// keyFor
+
+    /**
+     * The metrics of one device and function code.
+     */
+    private static final class DeviceMetrics {
+        final LatencyHistogram m_Latency = new LatencyHistogram();
+        final LongAdder m_Timeouts = new LongAdder();
+    }// class DeviceMetrics
+
+}// class SbusMetrics
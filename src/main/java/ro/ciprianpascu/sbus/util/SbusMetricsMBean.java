@@ -0,0 +1,162 @@
+/**
+ * Copyright 2002-2010 jamod development team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package ro.ciprianpascu.sbus.util;
+
+/**
+ * Management interface of the metrics of a transport.
+ *
+ * @author Ciprian Pascu
+ * @version %I% (%G%)
+ */
+public interface SbusMetricsMBean {
+
+    /**
+     * Returns the number of frames decoded.
+     *
+     * @return the received frame count.
+     */
+    public long getFramesReceived();
+
+    /**
+     * Returns the number of frames written.
+     *
+     * @return the sent frame count.
+     */
+    public long getFramesSent();
+
+    /**
+     * Returns the number of received frames with a wrong CRC.
+     *
+     * @return the CRC error count.
+     */
+    public long getCrcErrors();
+
+    /**
+     * Returns the number of received frames that were truncated
+     * or could not be decoded.
+     *
+     * @return the malformed frame count.
+     */
+    public long getMalformedFrames();
+
+    /**
+     * Returns the number of received frames dropped as copies of
+     * a frame relayed by another gateway.
+     *
+     * @return the duplicate frame count.
+     */
+    public long getDuplicatesDropped();
+
+    /**
+     * Returns the number of responses matched to a transaction.
+     *
+     * @return the response count.
+     */
+    public long getResponses();
+
+    /**
+     * Returns the number of messages handed to the listeners.
+     *
+     * @return the unsolicited message count.
+     */
+    public long getUnsolicitedMessages();
+
+    /**
+     * Returns the number of transactions that received no response in time.
+     *
+     * @return the timeout count.
+     */
+    public long getTimeouts();
+
+    /**
+     * Returns the number of repeated transaction attempts.
+     *
+     * @return the retry count.
+     */
+    public long getRetries();
+
+    /**
+     * Returns the number of requests answered from the response cache.
+     *
+     * @return the cache hit count.
+     */
+    public long getCacheHits();
+
+    /**
+     * Returns the number of requests not found in the response cache.
+     *
+     * @return the cache miss count.
+     */
+    public long getCacheMisses();
+
+    /**
+     * Returns the number of transactions waiting for a response.
+     *
+     * @return the pending transaction count.
+     */
+    public int getPendingTransactions();
+
+    /**
+     * Returns the number of attempts failed fast because
+     * the circuit of their device was open.
+     *
+     * @return the circuit rejection count.
+     */
+    public long getCircuitRejections();
+
+    /**
+     * Returns the number of devices whose circuit is open or half open.
+     *
+     * @return the open circuit count.
+     */
+    public int getOpenCircuits();
+
+    /**
+     * Returns one line per device whose circuit is open or half open.
+     *
+     * @return the open circuit lines.
+     */
+    public String[] getOpenCircuitDevices();
+
+    /**
+     * Returns the mean round trip time over all devices.
+     *
+     * @return the mean in microseconds.
+     */
+    public long getRoundTripMeanMicros();
+
+    /**
+     * Returns the 99th percentile of the round trip time over all devices.
+     *
+     * @return the percentile in microseconds.
+     */
+    public long getRoundTripP99Micros();
+
+    /**
+     * Returns one line per device and function code with its round trip
+     * times and timeouts, the slowest first.
+     *
+     * @return the device latency lines.
+     */
+    public String[] getDeviceLatencies();
+
+    /**
+     * Clears all counters and histograms.
+     */
+    public void reset();
+
+}// interface SbusMetricsMBean
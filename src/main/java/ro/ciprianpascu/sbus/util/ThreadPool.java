@@ -23,11 +23,14 @@ package ro.ciprianpascu.sbus.util;
  * @author Ciprian Pascu
 
  * @version %I% (%G%)
+ * @deprecated use {@link ManagedExecutor}, which is bounded, observable
+ *             and can be shut down; this class now delegates to it.
  */
+@Deprecated
 public class ThreadPool {
 
     // instance attributes and associations
-    private LinkedQueue m_TaskPool;
+    private ManagedExecutor m_Executor;
     private int m_Size = 1;
 
     /**
@@ -37,8 +40,7 @@ public class ThreadPool {
      */
     public ThreadPool(int size) {
         m_Size = size;
-        m_TaskPool = new LinkedQueue();
-        initPool();
+        m_Executor = new ManagedExecutor("ThreadPool", m_Size);
     }// constructor
 
     /**
@@ -47,53 +49,17 @@ public class ThreadPool {
      *
      * @param task the {@link Runnable} to be executed.
      */
-    public synchronized void execute(Runnable task) {
-        try {
-            m_TaskPool.put(task);
-        } catch (InterruptedException ex) {
-            // FIXME: Handle!?
-        }
+    public void execute(Runnable task) {
+        m_Executor.execute(task);
     }// execute
 
     /**
-     * Initializes the pool, populating it with
-     * n started threads.
-     */
-    protected void initPool() {
-        for (int i = m_Size; --i >= 0;) {
-            new PoolThread().start();
-        }
-    }// initPool
-
-    /**
-     * Inner class implementing a thread that can be
-     * run in a {@link ThreadPool}.
+     * Returns the executor running the tasks of this pool.
      *
-     * @author Dieter Wimberger
- * @author Ciprian Pascu
-
-     * @version %I% (%G%)
+     * @return the {@link ManagedExecutor}.
      */
-    private class PoolThread extends Thread {
-
-        /**
-         * Runs the {@link PoolThread}.
-* 
-         * This method will infinitely loop, picking
-         * up available tasks from the {@link LinkedQueue}.
-         */
-        @Override
-        public void run() {
-            // Running PoolThread
-            do {
-                try {
-                    ((Runnable) m_TaskPool.take()).run();
-                } catch (Exception ex) {
-                    // FIXME: Handle somehow!?
-                    ex.printStackTrace();
-                }
-            } while (true);
-        }
-    }// PoolThread
+    public ManagedExecutor getExecutor() {
+        return m_Executor;
+    }// getExecutor
 
 }// ThreadPool
@@ -0,0 +1,109 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.net.AsyncMessageListener;
+import ro.ciprianpascu.sbus.net.SbusMessageListener;
+import ro.ciprianpascu.sbus.util.RingBuffer;
+
+public class AsyncMessageListenerTest {
+
+    private static SbusResponse message(int unit, int sequence) {
+        ReadStatusChannelsResponse response = new ReadStatusChannelsResponse();
+        response.setSourceSubnetID(1);
+        response.setSourceUnitID(unit);
+        response.setSubnetID(sequence);
+        return response;
+    }
+
+    @Test
+    public void testSlowListenerDoesNotBlockAndKeepsDeviceOrder() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        SbusMessageListener slow = response -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(response.getSourceUnitID() + ":" + response.getSubnetID());
+        };
+        AsyncMessageListener async = new AsyncMessageListener(slow, 2, 4, RingBuffer.OverflowPolicy.DROP_NEWEST,
+                null);
+
+        long start = System.nanoTime();
+        for (int sequence = 0; sequence < 10; sequence++) {
+            async.onMessageReceived(message(10, sequence));
+            async.onMessageReceived(message(11, sequence));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(async.getOverflowCount() > 0);
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (async.getDeliveredCount() + async.getOverflowCount() < 20 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(20, async.getDeliveredCount() + async.getOverflowCount());
+        for (int unit = 10; unit <= 11; unit++) {
+            int last = -1;
+            for (String entry : new ArrayList<>(received)) {
+                String[] parts = entry.split(":");
+                if (Integer.parseInt(parts[0]) == unit) {
+                    int sequence = Integer.parseInt(parts[1]);
+                    assertTrue(sequence > last);
+                    last = sequence;
+                }
+            }
+        }
+        async.close();
+    }
+
+    @Test
+    public void testListenersShareOneBoundedPool() throws Exception {
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final CountDownLatch delivered = new CountDownLatch(300);
+        List<AsyncMessageListener> listeners = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            listeners.add(new AsyncMessageListener(response -> {
+                threads.add(Thread.currentThread().getName());
+                delivered.countDown();
+            }));
+        }
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onMessageReceived(message(i % 250 + 1, 0));
+        }
+        assertTrue(delivered.await(2, TimeUnit.SECONDS));
+        // one thread per listener before, now the workers of the shared pool
+        assertTrue(threads.toString(), threads.size() <= AsyncMessageListener.getSharedExecutor().getPoolSize());
+        for (AsyncMessageListener listener : listeners) {
+            listener.close();
+        }
+        assertFalse(AsyncMessageListener.getSharedExecutor().isShutdown());
+
+        AsyncMessageListener dedicated = AsyncMessageListener.withDedicatedExecutor(response -> {
+            threads.add(Thread.currentThread().getName());
+        }, 1, 4, RingBuffer.OverflowPolicy.DROP_OLDEST);
+        dedicated.onMessageReceived(message(1, 0));
+        long deadline = System.currentTimeMillis() + 2000;
+        while (dedicated.getDeliveredCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, dedicated.getDeliveredCount());
+        dedicated.close();
+    }
+}
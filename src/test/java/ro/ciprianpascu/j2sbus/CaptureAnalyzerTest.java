@@ -0,0 +1,123 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.cmd.CaptureAnalyzer;
+import ro.ciprianpascu.sbus.cmd.CaptureStatistics;
+import ro.ciprianpascu.sbus.io.BytesOutputStream;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.msg.SbusMessage;
+import ro.ciprianpascu.sbus.net.WireCapture;
+import ro.ciprianpascu.sbus.util.SbusUtil;
+
+public class CaptureAnalyzerTest {
+
+    private static final int EXCHANGES = 600;
+    private static final int DEVICES = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] datagram(SbusMessage message) throws Exception {
+        BytesOutputStream out = new BytesOutputStream(256);
+        message.writeTo(out);
+        byte[] crc = SbusUtil.calculateCRC(out.getBuffer(), out.size());
+        out.writeByte(crc[0]);
+        out.writeByte(crc[1]);
+        byte[] body = out.toByteArray();
+        byte[] full = new byte[16 + body.length];
+        byte[] prefix = { 127, 0, 0, 1, 'S', 'M', 'A', 'R', 'T', 'C', 'L', 'O', 'U', 'D', (byte) 0xAA,
+                (byte) 0xAA };
+        System.arraycopy(prefix, 0, full, 0, prefix.length);
+        System.arraycopy(body, 0, full, prefix.length, body.length);
+        return full;
+    }
+
+    /** Polls five devices, every seventh request going unanswered, with a status report every tenth */
+    private static void capture(Path directory, int segmentSize) throws Exception {
+        try (WireCapture capture = new WireCapture(directory, segmentSize)) {
+            for (int i = 0; i < EXCHANGES; i++) {
+                ReadStatusChannelsRequest request = new ReadStatusChannelsRequest();
+                request.setSourceSubnetID(1);
+                request.setSourceUnitID(254);
+                request.setSubnetID(1);
+                request.setUnitID(1 + i % DEVICES);
+                capture.append(WireCapture.SENT, datagram(request));
+                if (i % 7 != 0) {
+                    ReadStatusChannelsResponse response = new ReadStatusChannelsResponse();
+                    response.setSourceSubnetID(1);
+                    response.setSourceUnitID(1 + i % DEVICES);
+                    capture.append(WireCapture.RECEIVED, datagram(response));
+                }
+                if (i % 10 == 0) {
+                    ReadStatusChannelsResponse report = new ReadStatusChannelsResponse();
+                    report.setSourceSubnetID(2);
+                    report.setSourceUnitID(50);
+                    capture.append(WireCapture.RECEIVED, datagram(report));
+                }
+            }
+            byte[] corrupt = datagram(new ReadStatusChannelsResponse());
+            corrupt[corrupt.length - 1] ^= 0x55;
+            capture.append(WireCapture.RECEIVED, corrupt);
+        }
+    }
+
+    @Test
+    public void testParallelMatchesSequential() throws Exception {
+        Path split = folder.newFolder("split").toPath();
+        Path whole = folder.newFolder("whole").toPath();
+        capture(split, 4096);
+        capture(whole, 1 << 20);
+
+        CaptureAnalyzer analyzer = new CaptureAnalyzer(4);
+        analyzer.setRetryWindowMillis(60000);
+        CaptureStatistics parallel = analyzer.analyze(split);
+        CaptureStatistics sequential = analyzer.analyze(whole);
+
+        int unanswered = 0;
+        int retried = 0;
+        for (int i = 0; i < EXCHANGES; i++) {
+            if (i % 7 == 0) {
+                unanswered++;
+                if (i + DEVICES < EXCHANGES) {
+                    retried++;
+                }
+            }
+        }
+        int reports = (EXCHANGES + 9) / 10;
+        for (CaptureStatistics statistics : new CaptureStatistics[] { parallel, sequential }) {
+            assertEquals(EXCHANGES, statistics.getFramesSent());
+            assertEquals(EXCHANGES - unanswered + reports, statistics.getFramesReceived());
+            assertEquals(reports, statistics.getUnsolicited());
+            assertEquals(1, statistics.getCrcErrors());
+            assertEquals(EXCHANGES - unanswered, statistics.getRoundTrips().getCount());
+            assertEquals(EXCHANGES - unanswered + reports - 1, statistics.getInterArrival().getCount());
+            assertEquals(Long.valueOf(EXCHANGES),
+                    statistics.getFunctionCodes().get(Sbus.READ_STATUS_CHANNELS_REQUEST));
+            long answered = 0;
+            long timeouts = 0;
+            long retries = 0;
+            for (int unit = 1; unit <= DEVICES; unit++) {
+                CaptureStatistics.Device device = statistics.getDevice(1, unit);
+                assertEquals(EXCHANGES / DEVICES, device.getFramesSent());
+                answered += device.getAnswered();
+                timeouts += device.getTimeouts();
+                retries += device.getRetries();
+            }
+            assertEquals(EXCHANGES - unanswered, answered);
+            assertEquals(unanswered, timeouts);
+            assertEquals(retried, retries);
+            assertEquals(reports, statistics.getDevice(2, 50).getFramesReceived());
+        }
+        assertTrue(parallel.getRecordCount() == sequential.getRecordCount());
+    }
+}
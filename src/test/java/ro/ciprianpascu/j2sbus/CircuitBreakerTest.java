@@ -0,0 +1,102 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.io.CircuitBreaker;
+import ro.ciprianpascu.sbus.io.SbusUDPTransaction;
+import ro.ciprianpascu.sbus.io.SbusUDPTransport;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.net.UDPMasterConnection;
+import ro.ciprianpascu.sbus.sim.DeviceFarm;
+import ro.ciprianpascu.sbus.sim.VirtualRelay;
+
+public class CircuitBreakerTest {
+
+    @Rule
+    public DeviceFarmRule farmRule = new DeviceFarmRule();
+
+    @Test
+    public void testStateTransitions() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker();
+        breaker.setFailureThreshold(2);
+        breaker.setOpenMillis(100);
+        List<String> changes = new CopyOnWriteArrayList<>();
+        breaker.addListener((subnet, unit, from, to) -> changes.add(subnet + "." + unit + " " + from + ">" + to));
+
+        breaker.recordFailure(1, 20);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(1, 20));
+        breaker.recordFailure(1, 20);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(1, 20));
+        assertFalse(breaker.allowRequest(1, 20));
+        assertTrue(breaker.allowRequest(1, 21));
+        assertEquals(1, breaker.getOpenCircuits().length);
+
+        // one probe after the open time, a timeout opens the circuit again
+        Thread.sleep(150);
+        assertTrue(breaker.allowRequest(1, 20));
+        assertFalse(breaker.allowRequest(1, 20));
+        breaker.recordFailure(1, 20);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(1, 20));
+
+        Thread.sleep(150);
+        assertTrue(breaker.allowRequest(1, 20));
+        breaker.recordSuccess(1, 20);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(1, 20));
+        assertEquals(0, breaker.getOpenCircuits().length);
+        assertEquals("[1.20 CLOSED>OPEN, 1.20 OPEN>HALF_OPEN, 1.20 HALF_OPEN>OPEN, 1.20 OPEN>HALF_OPEN, "
+                + "1.20 HALF_OPEN>CLOSED]", changes.toString());
+    }
+
+    @Test
+    public void testDeadDeviceFailsFast() throws Exception {
+        DeviceFarm farm = farmRule.getFarm();
+        farm.addDevice(new VirtualRelay(1, 10, 4));
+        UDPMasterConnection connection = farmRule.createConnection();
+        connection.connect();
+        connection.setTimeout(100);
+        SbusUDPTransport transport = (SbusUDPTransport) connection.getSbusTransport();
+        transport.setResponseCacheMillis(0);
+        transport.getCircuitBreaker().setFailureThreshold(3);
+        transport.getCircuitBreaker().setOpenMillis(60000);
+
+        ReadStatusChannelsRequest dead = new ReadStatusChannelsRequest();
+        dead.setSubnetID(1);
+        dead.setUnitID(99);
+        SbusUDPTransaction transaction = new SbusUDPTransaction(connection);
+        transaction.setRequest(dead);
+        transaction.setRetries(3);
+        transaction.execute();
+        assertNull(transaction.getResponse());
+        assertEquals(3, transaction.getAttempts());
+        assertEquals(CircuitBreaker.State.OPEN, transport.getCircuitBreaker().getState(1, 99));
+
+        long requests = farm.getRequestCount();
+        long start = System.nanoTime();
+        transaction.execute();
+        assertTrue((System.nanoTime() - start) / 1000000L < 100);
+        assertTrue(transaction.isRejected());
+        assertEquals(0, transaction.getAttempts());
+        assertEquals(requests, farm.getRequestCount());
+        assertEquals(1, transport.getMetrics().getOpenCircuits());
+        assertEquals(1, transport.getMetrics().getCircuitRejections());
+
+        // a live device is not affected
+        ReadStatusChannelsRequest live = new ReadStatusChannelsRequest();
+        live.setSubnetID(1);
+        live.setUnitID(10);
+        transaction.setRequest(live);
+        transaction.execute();
+        assertNotNull(transaction.getResponse());
+        assertFalse(transaction.isRejected());
+    }
+}
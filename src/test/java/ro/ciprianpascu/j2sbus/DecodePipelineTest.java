@@ -0,0 +1,105 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.io.BytesOutputStream;
+import ro.ciprianpascu.sbus.io.DecodePipeline;
+import ro.ciprianpascu.sbus.io.SbusUDPTransport;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.net.AsyncMessageListener;
+import ro.ciprianpascu.sbus.net.UDPSlaveTerminal;
+import ro.ciprianpascu.sbus.util.RingBuffer;
+import ro.ciprianpascu.sbus.util.SbusUtil;
+
+public class DecodePipelineTest {
+
+    private static final byte[] PREFIX = { 127, 0, 0, 9, 'S', 'M', 'A', 'R', 'T', 'C', 'L', 'O', 'U', 'D',
+            (byte) 0xAA, (byte) 0xAA };
+
+    private static byte[] frame(int unit, int sequence) throws Exception {
+        ReadStatusChannelsResponse response = new ReadStatusChannelsResponse();
+        response.setSourceSubnetID(1);
+        response.setSourceUnitID(unit);
+        response.setSubnetID(sequence);
+        response.setUnitID(0xFF);
+        BytesOutputStream out = new BytesOutputStream(256);
+        response.writeTo(out);
+        byte[] crc = SbusUtil.calculateCRC(out.getBuffer(), out.size());
+        out.writeByte(crc[0]);
+        out.writeByte(crc[1]);
+        byte[] body = out.toByteArray();
+        byte[] full = new byte[PREFIX.length + body.length];
+        System.arraycopy(PREFIX, 0, full, 0, PREFIX.length);
+        System.arraycopy(body, 0, full, PREFIX.length, body.length);
+        return full;
+    }
+
+    @Test
+    public void testParallelDecodeKeepsDeviceOrder() throws Exception {
+        UDPSlaveTerminal terminal = new UDPSlaveTerminal(InetAddress.getLoopbackAddress(), false);
+        SbusUDPTransport transport = new SbusUDPTransport(terminal);
+        transport.setDecoderThreads(4);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        transport.addMessageListener(new AsyncMessageListener(response -> {
+            received.add(response.getSourceUnitID() + ":" + response.getSubnetID());
+        }, 1, 1024, RingBuffer.OverflowPolicy.DROP_NEWEST, Runnable::run) {
+            @Override
+            public void onMessageReceived(SbusResponse response) {
+                threads.add(Thread.currentThread().getName());
+                super.onMessageReceived(response);
+            }
+        });
+
+        byte[] corrupt = frame(1, 0);
+        corrupt[corrupt.length - 1] ^= 0x55;
+        terminal.getReceiveQueue().put(corrupt);
+        for (int sequence = 0; sequence < 50; sequence++) {
+            for (int unit = 1; unit <= 8; unit++) {
+                terminal.getReceiveQueue().put(frame(unit, sequence));
+            }
+            transport.onMessageArrived();
+        }
+
+        DecodePipeline decoders = transport.getDecodePipeline();
+        long deadline = System.currentTimeMillis() + 2000;
+        while ((received.size() < 400 || decoders.getDecodedCount() < 401) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(400, received.size());
+        assertEquals(401, decoders.getDecodedCount());
+        assertEquals(0, decoders.getDroppedCount());
+        assertTrue(threads.size() > 1);
+        for (String name : threads) {
+            assertTrue(name.startsWith("SbusDecoder-"));
+        }
+        for (int unit = 1; unit <= 8; unit++) {
+            int last = -1;
+            for (String entry : new ArrayList<>(received)) {
+                String[] parts = entry.split(":");
+                if (Integer.parseInt(parts[0]) == unit) {
+                    int sequence = Integer.parseInt(parts[1]);
+                    assertEquals(last + 1, sequence);
+                    last = sequence;
+                }
+            }
+            assertEquals(49, last);
+        }
+
+        transport.close();
+        assertEquals(0, transport.getDecoderThreads());
+        assertNull(transport.getDecodePipeline());
+    }
+}
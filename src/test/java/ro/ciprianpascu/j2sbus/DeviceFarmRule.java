@@ -0,0 +1,82 @@
+package ro.ciprianpascu.j2sbus;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.rules.ExternalResource;
+
+import ro.ciprianpascu.sbus.net.UDPMasterConnection;
+import ro.ciprianpascu.sbus.net.UDPSlaveTerminal;
+import ro.ciprianpascu.sbus.sim.DeviceFarm;
+
+/**
+ * A {@link DeviceFarm} on an ephemeral loopback port and the masters talking to it,
+ * all bound by the sockets themselves and released after each test.
+ */
+public class DeviceFarmRule extends ExternalResource {
+
+    private DeviceFarm farm;
+    private final List<UDPSlaveTerminal> masters = new ArrayList<>();
+    private final List<UDPMasterConnection> connections = new ArrayList<>();
+
+    @Override
+    protected void before() throws Exception {
+        farm = new DeviceFarm();
+        farm.setEphemeralPort();
+    }
+
+    @Override
+    protected void after() {
+        for (UDPSlaveTerminal master : masters) {
+            master.deactivate();
+        }
+        for (UDPMasterConnection connection : connections) {
+            connection.close();
+        }
+        if (farm.isListening()) {
+            farm.stop();
+        }
+    }
+
+    /** The farm, not started until {@link #start()} or the first master needs its port */
+    public DeviceFarm getFarm() {
+        return farm;
+    }
+
+    /** Starts the farm with the devices added so far */
+    public DeviceFarm start() {
+        if (!farm.isListening()) {
+            farm.start();
+        }
+        return farm;
+    }
+
+    /** An activated master terminal sending to the farm without pacing */
+    public UDPSlaveTerminal createMaster(String identity) throws Exception {
+        return createMaster(identity, 0);
+    }
+
+    /** An activated master terminal sending to the farm, paced from its first frame on */
+    public UDPSlaveTerminal createMaster(String identity, int sendPacingMillis) throws Exception {
+        UDPSlaveTerminal master = new UDPSlaveTerminal(InetAddress.getByName(identity), false);
+        master.setLocalPort(0);
+        master.setRemoteAddress(InetAddress.getLoopbackAddress());
+        master.setRemotePort(start().getPort());
+        master.setSendPacingMillis(sendPacingMillis);
+        master.setTimeout(1000);
+        master.activate();
+        masters.add(master);
+        return master;
+    }
+
+    /** A master connection to the farm without pacing, left to the test to connect */
+    public UDPMasterConnection createConnection() {
+        UDPMasterConnection connection = new UDPMasterConnection(start().getPort());
+        connection.setRemoteAddress(InetAddress.getLoopbackAddress());
+        connection.setLocalPort(0);
+        connection.setSendPacingMillis(0);
+        connections.add(connection);
+        return connection;
+    }
+}
@@ -0,0 +1,200 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.SbusIOException;
+import ro.ciprianpascu.sbus.io.RetryPolicy;
+import ro.ciprianpascu.sbus.io.SbusUDPTransaction;
+import ro.ciprianpascu.sbus.io.SbusUDPTransport;
+import ro.ciprianpascu.sbus.msg.ReadNineInOneStatusRequest;
+import ro.ciprianpascu.sbus.msg.ReadNineInOneStatusResponse;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.msg.ReadTemperatureRequest;
+import ro.ciprianpascu.sbus.msg.ReadTemperatureResponse;
+import ro.ciprianpascu.sbus.net.UDPSlaveTerminal;
+import ro.ciprianpascu.sbus.sim.DeviceFarm;
+import ro.ciprianpascu.sbus.sim.VirtualNineInOneSensor;
+import ro.ciprianpascu.sbus.sim.VirtualRelay;
+import ro.ciprianpascu.sbus.sim.VirtualTemperaturePanel;
+import ro.ciprianpascu.sbus.util.ManagedExecutor;
+
+public class DeviceFarmTest {
+
+    @Rule
+    public DeviceFarmRule farmRule = new DeviceFarmRule();
+
+    private DeviceFarm farm;
+    private UDPSlaveTerminal master;
+
+    @Before
+    public void setUp() throws Exception {
+        farm = farmRule.getFarm();
+        farm.addDevice(new VirtualRelay(1, 10, 4)).setChannelLevel(2, 75);
+        farm.addDevice(new VirtualTemperaturePanel(1, 20)).setCelsius(0, 23);
+        farm.addDevice(new VirtualNineInOneSensor(1, 30)).setMotion(true);
+        master = farmRule.createMaster("127.0.0.3");
+    }
+
+    @Test
+    public void testReadsFromVirtualDevices() throws Exception {
+        ReadStatusChannelsRequest status = new ReadStatusChannelsRequest();
+        status.setSubnetID(1);
+        status.setUnitID(10);
+        SbusUDPTransaction trans = new SbusUDPTransaction(master);
+        trans.setRequest(status);
+        trans.execute();
+        ReadStatusChannelsResponse channels = (ReadStatusChannelsResponse) trans.getResponse();
+        assertEquals(4, channels.getByteCount());
+        assertEquals(75, channels.getRegisterValue(1));
+
+        ReadTemperatureRequest temp = new ReadTemperatureRequest();
+        temp.setSubnetID(1);
+        temp.setUnitID(20);
+        temp.setTemperatureUnit(1);
+        trans = new SbusUDPTransaction(master);
+        trans.setRequest(temp);
+        trans.execute();
+        ReadTemperatureResponse temperature = (ReadTemperatureResponse) trans.getResponse();
+        assertEquals(23, temperature.getRegister(0).toBytes()[0]);
+
+        ReadNineInOneStatusRequest nine = new ReadNineInOneStatusRequest();
+        nine.setSubnetID(1);
+        nine.setUnitID(30);
+        trans = new SbusUDPTransaction(master);
+        trans.setRequest(nine);
+        trans.execute();
+        assertEquals(1, ((ReadNineInOneStatusResponse) trans.getResponse()).getMotionStatus());
+
+        // the farm counts a response once its terminal accepted it
+        long deadline = System.currentTimeMillis() + 1000;
+        while (farm.getResponseCount() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(farm.getResponseCount() >= 3);
+        assertEquals(1, trans.getResponse().getAttempts());
+    }
+
+    @Test
+    public void testDeadlineBoundsRetries() throws Exception {
+        farm.setLossRate(1.0);
+        ReadStatusChannelsRequest status = new ReadStatusChannelsRequest();
+        status.setSubnetID(1);
+        status.setUnitID(10);
+        SbusUDPTransaction trans = new SbusUDPTransaction(master);
+        trans.setRequest(status);
+        trans.setRetries(10);
+        trans.setRetryPolicy(new RetryPolicy(0, 20, 100));
+        trans.setDeadlineMillis(400);
+
+        long start = System.nanoTime();
+        trans.execute();
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+
+        assertNull(trans.getResponse());
+        assertTrue("took " + elapsed + " ms", elapsed < 1000);
+        assertTrue(trans.getAttempts() > 1);
+        assertTrue(farm.getLostCount() >= trans.getAttempts() - 1);
+    }
+
+    @Test
+    public void testOnlyKnownReadsRetryByDefault() {
+        assertSame(RetryPolicy.READ, RetryPolicy.forFunctionCode(Sbus.READ_STATUS_CHANNELS_REQUEST));
+        assertSame(RetryPolicy.IDEMPOTENT_WRITE, RetryPolicy.forFunctionCode(Sbus.WRITE_SINGLE_CHANNEL_REQUEST));
+        // an unknown request may have side effects
+        assertSame(RetryPolicy.NONE, RetryPolicy.forFunctionCode(0x1234));
+    }
+
+    @Test
+    public void testInterruptDuringBackoffIsKept() throws Exception {
+        farm.setLossRate(1.0);
+        master.setTimeout(50);
+        ReadStatusChannelsRequest status = new ReadStatusChannelsRequest();
+        status.setSubnetID(1);
+        status.setUnitID(10);
+        SbusUDPTransaction trans = new SbusUDPTransaction(master);
+        trans.setRequest(status);
+        trans.setRetries(10);
+        trans.setRetryPolicy(new RetryPolicy(0, 5000, 5000));
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread worker = new Thread(() -> {
+            try {
+                trans.execute();
+            } catch (Exception ex) {
+                failure.set(ex);
+            }
+            interrupted.set(Thread.currentThread().isInterrupted());
+        });
+        worker.start();
+        Thread.sleep(400);
+        worker.interrupt();
+        worker.join(2000);
+
+        assertFalse(worker.isAlive());
+        assertTrue(String.valueOf(failure.get()), failure.get() instanceof SbusIOException);
+        assertTrue(interrupted.get());
+    }
+
+    @Test
+    public void testResponseCacheCanBeDisabled() throws Exception {
+        ReadStatusChannelsRequest status = new ReadStatusChannelsRequest();
+        status.setSubnetID(1);
+        status.setUnitID(10);
+        for (int i = 0; i < 2; i++) {
+            SbusUDPTransaction trans = new SbusUDPTransaction(master);
+            trans.setRequest(status);
+            trans.execute();
+        }
+        // the repeated read was answered from the cache
+        assertEquals(1, farm.getRequestCount());
+
+        ((SbusUDPTransport) master.getSbusTransport()).setResponseCacheMillis(0);
+        VirtualRelay relay = (VirtualRelay) farm.getDevice(1, 10);
+        relay.setChannelLevel(2, 30);
+        SbusUDPTransaction trans = new SbusUDPTransaction(master);
+        trans.setRequest(status);
+        trans.execute();
+        assertEquals(2, farm.getRequestCount());
+        assertEquals(30, ((ReadStatusChannelsResponse) trans.getResponse()).getRegisterValue(1));
+    }
+
+    @Test
+    public void testRequestsAreHandledOnTheExecutor() throws Exception {
+        ManagedExecutor executor = new ManagedExecutor("farm", 1);
+        try {
+            farm.setExecutor(executor);
+            ((SbusUDPTransport) master.getSbusTransport()).setResponseCacheMillis(0);
+            for (int i = 0; i < 3; i++) {
+                ReadStatusChannelsRequest status = new ReadStatusChannelsRequest();
+                status.setSubnetID(1);
+                status.setUnitID(10);
+                SbusUDPTransaction trans = new SbusUDPTransaction(master);
+                trans.setRequest(status);
+                trans.execute();
+                assertEquals(75, ((ReadStatusChannelsResponse) trans.getResponse()).getRegisterValue(1));
+            }
+            // the read loop keeps its own thread, the single worker is free again
+            long deadline = System.currentTimeMillis() + 1000;
+            while (executor.getCompletedCount() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(3, executor.getCompletedCount());
+            assertEquals(0, executor.getActiveCount());
+        } finally {
+            executor.shutdown(1000);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.facade.DeviceAddress;
+import ro.ciprianpascu.sbus.facade.DeviceScanner;
+import ro.ciprianpascu.sbus.facade.DiscoveredDevice;
+import ro.ciprianpascu.sbus.io.DuplicateFilter;
+import ro.ciprianpascu.sbus.io.SbusUDPTransaction;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.msg.ReadTemperatureRequest;
+import ro.ciprianpascu.sbus.net.UDPMasterConnection;
+import ro.ciprianpascu.sbus.sim.DeviceFarm;
+import ro.ciprianpascu.sbus.sim.VirtualRelay;
+import ro.ciprianpascu.sbus.sim.VirtualTemperaturePanel;
+
+public class DeviceScannerTest {
+
+    @Rule
+    public DeviceFarmRule farmRule = new DeviceFarmRule();
+
+    @Test
+    public void testScanFindsDevices() throws Exception {
+        DeviceFarm farm = farmRule.getFarm();
+        farm.setLatencyMillis(20);
+        farm.addDevice(new VirtualRelay(1, 3));
+        farm.addDevice(new VirtualRelay(1, 40));
+        farm.addDevice(new VirtualRelay(2, 7));
+        farm.addDevice(new VirtualTemperaturePanel(2, 8));
+        // outside the swept range
+        farm.addDevice(new VirtualRelay(3, 1));
+        UDPMasterConnection connection = farmRule.createConnection();
+        // slower than the probe rate, it limits the sweep to 1000 probes per second
+        connection.setSendPacingMillis(1);
+        connection.connect();
+        DeviceScanner scanner = new DeviceScanner(connection);
+        scanner.setProbes(Arrays.asList(ReadStatusChannelsRequest::new, () -> {
+            ReadTemperatureRequest request = new ReadTemperatureRequest();
+            request.setTemperatureUnit(1);
+            return request;
+        }));
+        scanner.setProbesPerSecond(5000);
+        // wide enough for the first requests handled by a fresh farm
+        scanner.setWindowMillis(1000);
+
+        long start = System.nanoTime();
+        List<DiscoveredDevice> devices = scanner.scan(1, 2, 1, 64);
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+
+        assertEquals(devices.toString(), 4, devices.size());
+        assertEquals(new DeviceAddress(1, 3), devices.get(0).getAddress());
+        assertEquals(new DeviceAddress(1, 40), devices.get(1).getAddress());
+        assertEquals(new DeviceAddress(2, 7), devices.get(2).getAddress());
+        assertEquals(VirtualRelay.DEVICE_TYPE, devices.get(2).getDeviceType());
+        assertEquals(Sbus.READ_STATUS_CHANNELS_REQUEST, devices.get(2).getFunctionCode());
+        assertTrue(devices.get(2).getRoundTripMicros() >= 20000);
+        DiscoveredDevice panel = devices.get(3);
+        assertEquals(new DeviceAddress(2, 8), panel.getAddress());
+        assertEquals(VirtualTemperaturePanel.DEVICE_TYPE, panel.getDeviceType());
+        assertEquals(Sbus.READ_TEMPERATURE_REQUEST, panel.getFunctionCode());
+
+        // the second probe only went to the 125 silent addresses
+        assertEquals(128 + 125, farm.getRequestCount());
+        assertTrue("took " + elapsed + " ms", elapsed < 4000);
+        assertEquals(30000, connection.getResponseCacheMillis());
+        assertEquals(1, connection.getSendPacingMillis());
+    }
+
+    @Test
+    public void testScanLeavesTheConnectionCacheToTransactions() throws Exception {
+        DeviceFarm farm = farmRule.getFarm();
+        farm.addDevice(new VirtualRelay(1, 3)).setChannelLevel(1, 40);
+        UDPMasterConnection connection = farmRule.createConnection();
+        connection.connect();
+        ReadStatusChannelsRequest status = new ReadStatusChannelsRequest();
+        status.setSubnetID(1);
+        status.setUnitID(3);
+        SbusUDPTransaction trans = new SbusUDPTransaction(connection);
+        trans.setRequest(status);
+        trans.execute();
+        assertEquals(1, farm.getRequestCount());
+        // the reply to the probe must not be dropped as a copy of this one
+        Thread.sleep(2 * DuplicateFilter.DEFAULT_WINDOW_MILLIS);
+
+        DeviceScanner scanner = new DeviceScanner(connection);
+        scanner.setProbesPerSecond(300);
+        scanner.setWindowMillis(300);
+        AtomicReference<List<DiscoveredDevice>> found = new AtomicReference<>();
+        Thread sweep = new Thread(() -> {
+            try {
+                found.set(scanner.scan(1, 1, 1, 30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        long start = System.nanoTime();
+        sweep.start();
+        Thread.sleep(30);
+        // a read during the sweep is still answered from the cache
+        trans = new SbusUDPTransaction(connection);
+        trans.setRequest(status);
+        trans.execute();
+        assertEquals(40, ((ReadStatusChannelsResponse) trans.getResponse()).getRegisterValue(0));
+        sweep.join(5000);
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+
+        // the probe to 1.3 bypassed the cache, the read did not
+        assertEquals(1, found.get().size());
+        assertEquals(new DeviceAddress(1, 3), found.get().get(0).getAddress());
+        assertEquals(1 + 30, farm.getRequestCount());
+        // 29 intervals of 1/300 s, not of 3 ms, before the window
+        assertTrue("took " + elapsed + " ms", elapsed >= 96 + 300);
+        assertEquals(0, connection.getSendPacingMillis());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testProbeRateIsValidated() {
+        new DeviceScanner(null).setProbesPerSecond(DeviceScanner.MAX_PROBES_PER_SECOND + 1);
+    }
+}
@@ -0,0 +1,110 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.facade.DeviceAddress;
+import ro.ciprianpascu.sbus.facade.DeviceStateMirror;
+import ro.ciprianpascu.sbus.facade.SbusAdapter;
+import ro.ciprianpascu.sbus.facade.TemperatureUnit;
+import ro.ciprianpascu.sbus.msg.ReadRgbwResponse;
+import ro.ciprianpascu.sbus.net.UDPMasterConnection;
+import ro.ciprianpascu.sbus.procimg.ByteRegister;
+import ro.ciprianpascu.sbus.procimg.InputRegister;
+import ro.ciprianpascu.sbus.sim.DeviceFarm;
+import ro.ciprianpascu.sbus.sim.VirtualNineInOneSensor;
+import ro.ciprianpascu.sbus.sim.VirtualRelay;
+import ro.ciprianpascu.sbus.sim.VirtualTemperaturePanel;
+
+public class DeviceStateMirrorTest {
+
+    @Rule
+    public DeviceFarmRule farmRule = new DeviceFarmRule();
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 3000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    public void testMirrorsPolledAndUnsolicitedState() throws Exception {
+        DeviceFarm farm = farmRule.getFarm();
+        farm.addDevice(new VirtualRelay(1, 5, 4)).setChannelLevel(2, 40);
+        VirtualTemperaturePanel panel = farm.addDevice(new VirtualTemperaturePanel(2, 1));
+        panel.setCelsius(0, 21);
+        panel.setCelsius(1, -3);
+        VirtualNineInOneSensor sensor = farm.addDevice(new VirtualNineInOneSensor(3, 1));
+        sensor.setMotion(true);
+        sensor.setLux(350);
+        sensor.setDryContactStatus(1, 1);
+
+        UDPMasterConnection connection = farmRule.createConnection();
+        SbusAdapter adapter = new SbusAdapter(connection);
+        connection.setTimeout(500);
+        DeviceStateMirror mirror = new DeviceStateMirror();
+        mirror.attach(connection);
+        try {
+            assertFalse(mirror.isKnown(1, 5));
+            long before = System.currentTimeMillis();
+            adapter.readChannelStatus(Arrays.asList(new DeviceAddress(1, 5)));
+            adapter.readTemperatures(Arrays.asList(new DeviceAddress(2, 1)), TemperatureUnit.CELSIUS);
+
+            await(() -> mirror.isKnown(1, 5) && mirror.isKnown(2, 1));
+            assertArrayEquals(new int[] { 0, 40, 0, 0 }, mirror.getChannelLevels(1, 5));
+            assertEquals(40, mirror.getChannelLevel(1, 5, 1));
+            assertEquals(DeviceStateMirror.UNKNOWN, mirror.getChannelLevel(1, 5, 4));
+            assertTrue(mirror.getUpdatedMillis(1, 5, DeviceStateMirror.Field.CHANNELS) >= before);
+            assertEquals(0, mirror.getUpdatedMillis(1, 5, DeviceStateMirror.Field.TEMPERATURES));
+            assertEquals(21, mirror.getTemperature(2, 1, 0));
+            assertEquals(-3, mirror.getTemperature(2, 1, 1));
+            assertEquals(TemperatureUnit.CELSIUS, mirror.getTemperatureUnit(2, 1));
+
+            // unsolicited status reports of the sensor
+            assertEquals(DeviceStateMirror.UNKNOWN, mirror.getMotion(3, 1));
+            farm.setReportAddress(InetAddress.getLoopbackAddress(), connection.getLocalPort());
+            farm.setMotionBursts(50, 1);
+            farm.stop();
+            farm.start();
+            await(() -> mirror.getMotion(3, 1) == 1);
+            assertEquals(350, mirror.getLux(3, 1));
+            assertEquals(2, mirror.getDryContactCount(3, 1));
+            assertEquals(0, mirror.getDryContact(3, 1, 0));
+            assertEquals(1, mirror.getDryContact(3, 1, 1));
+            assertEquals(Arrays.asList(new DeviceAddress(1, 5), new DeviceAddress(2, 1), new DeviceAddress(3, 1)),
+                    mirror.getKnownDevices());
+        } finally {
+            mirror.detach(connection);
+            adapter.close();
+        }
+    }
+
+    @Test
+    public void testRgbwLoops() {
+        DeviceStateMirror mirror = new DeviceStateMirror();
+        InputRegister[] colour = { new ByteRegister((byte) 0xFF), new ByteRegister((byte) 0x80),
+                new ByteRegister((byte) 0), new ByteRegister((byte) 10) };
+        ReadRgbwResponse response = new ReadRgbwResponse(3, true, colour);
+        response.setSourceSubnetID(4);
+        response.setSourceUnitID(7);
+        mirror.update(response);
+        assertArrayEquals(new int[] { 255, 128, 0, 10 }, mirror.getRgbw(4, 7, 3));
+        assertNull(mirror.getRgbw(4, 7, 1));
+        assertNull(mirror.getRgbw(4, 8, 3));
+        assertTrue(mirror.getUpdatedMillis(4, 7, DeviceStateMirror.Field.RGBW) > 0);
+        mirror.clear();
+        assertFalse(mirror.isKnown(4, 7));
+    }
+}
@@ -0,0 +1,106 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.io.BytesOutputStream;
+import ro.ciprianpascu.sbus.io.DuplicateFilter;
+import ro.ciprianpascu.sbus.io.SbusUDPTransport;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.net.LoopbackHub;
+import ro.ciprianpascu.sbus.net.LoopbackTerminal;
+import ro.ciprianpascu.sbus.util.SbusUtil;
+
+public class DuplicateFilterTest {
+
+    private static final long MILLIS = 1000000L;
+
+    /** A status report of 2.8, the gateways relaying it put their own address in front */
+    private static byte[] report() throws Exception {
+        ReadStatusChannelsResponse response = new ReadStatusChannelsResponse();
+        response.setSourceSubnetID(2);
+        response.setSourceUnitID(8);
+        BytesOutputStream out = new BytesOutputStream(256);
+        response.writeTo(out);
+        byte[] crc = SbusUtil.calculateCRC(out.getBuffer(), out.size());
+        out.writeByte(crc[0]);
+        out.writeByte(crc[1]);
+        return out.toByteArray();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    public void testWindow() {
+        DuplicateFilter filter = new DuplicateFilter(64);
+        assertEquals(64, filter.getCapacity());
+        byte[] frame = { 1, 2, 3, 4, 5 };
+        byte[] other = { 1, 2, 3, 4, 6 };
+        long start = 1000 * MILLIS;
+        assertEquals(DuplicateFilter.NOT_SEEN, filter.check(frame, start));
+        assertEquals(start, filter.check(frame, start + 10 * MILLIS));
+        assertEquals(DuplicateFilter.NOT_SEEN, filter.check(other, start + 10 * MILLIS));
+        // the window runs from the first copy
+        assertEquals(DuplicateFilter.NOT_SEEN, filter.check(frame, start + 60 * MILLIS));
+        filter.clear();
+        assertEquals(DuplicateFilter.NOT_SEEN, filter.check(frame, start + 61 * MILLIS));
+    }
+
+    @Test
+    public void testCopiesAreDroppedBeforeDecode() throws Exception {
+        LoopbackHub hub = new LoopbackHub();
+        LoopbackTerminal master = hub.createTerminal(InetAddress.getByName("127.0.0.6"), false);
+        LoopbackTerminal first = hub.createTerminal(InetAddress.getByName("192.168.1.10"), true);
+        LoopbackTerminal second = hub.createTerminal(InetAddress.getByName("192.168.1.11"), true);
+        master.activate();
+        first.activate();
+        second.activate();
+        try {
+            SbusUDPTransport transport = (SbusUDPTransport) master.getSbusTransport();
+            AtomicInteger delivered = new AtomicInteger();
+            transport.addMessageListener(response -> delivered.incrementAndGet());
+            // wide enough for the first, cold decode
+            transport.setDuplicateWindowMillis(2000);
+
+            // the same report through two gateways
+            first.sendMessage(report());
+            second.sendMessage(report());
+            await(() -> transport.getMetrics().getDuplicatesDropped() == 1);
+            assertEquals(1, transport.getMetrics().getFramesReceived());
+
+            // a copy answering a request written after the first one arrived is kept
+            String transactionID = "2_8_" + Sbus.READ_STATUS_CHANNELS_REQUEST;
+            transport.setResponseCacheMillis(0);
+            transport.expectResponse(transactionID);
+            first.sendMessage(report());
+            assertNotNull(transport.readResponse(transactionID, 500));
+            assertEquals(1, transport.getMetrics().getDuplicatesDropped());
+
+            transport.setDuplicateWindowMillis(0);
+            first.sendMessage(report());
+            second.sendMessage(report());
+            await(() -> transport.getMetrics().getFramesReceived() == 4);
+            assertEquals(1, transport.getMetrics().getDuplicatesDropped());
+
+            await(() -> delivered.get() == 3);
+        } finally {
+            master.deactivate();
+            first.deactivate();
+            second.deactivate();
+        }
+    }
+}
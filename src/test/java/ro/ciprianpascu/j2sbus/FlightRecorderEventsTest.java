@@ -0,0 +1,118 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import ro.ciprianpascu.sbus.io.BytesOutputStream;
+import ro.ciprianpascu.sbus.io.SbusUDPTransaction;
+import ro.ciprianpascu.sbus.io.SbusUDPTransport;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.net.UDPSlaveTerminal;
+import ro.ciprianpascu.sbus.sim.DeviceFarm;
+import ro.ciprianpascu.sbus.sim.VirtualRelay;
+import ro.ciprianpascu.sbus.util.SbusUtil;
+
+public class FlightRecorderEventsTest {
+
+    private static final byte[] PREFIX = { 127, 0, 0, 9, 'S', 'M', 'A', 'R', 'T', 'C', 'L', 'O', 'U', 'D',
+            (byte) 0xAA, (byte) 0xAA };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public DeviceFarmRule farmRule = new DeviceFarmRule();
+
+    private static byte[] report(int unit) throws Exception {
+        ReadStatusChannelsResponse response = new ReadStatusChannelsResponse();
+        response.setSourceSubnetID(2);
+        response.setSourceUnitID(unit);
+        BytesOutputStream out = new BytesOutputStream(256);
+        response.writeTo(out);
+        byte[] crc = SbusUtil.calculateCRC(out.getBuffer(), out.size());
+        out.writeByte(crc[0]);
+        out.writeByte(crc[1]);
+        byte[] body = out.toByteArray();
+        byte[] full = new byte[PREFIX.length + body.length];
+        System.arraycopy(PREFIX, 0, full, 0, PREFIX.length);
+        System.arraycopy(body, 0, full, PREFIX.length, body.length);
+        return full;
+    }
+
+    @Test
+    public void testEventsRecorded() throws Exception {
+        DeviceFarm farm = farmRule.getFarm();
+        farm.addDevice(new VirtualRelay(1, 10, 4));
+        UDPSlaveTerminal master = farmRule.createMaster("127.0.0.5");
+
+        File dump = folder.newFile("sbus.jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[] { "FrameSent", "FrameReceived", "CrcRejected", "Transaction",
+                    "ListenerDispatch" }) {
+                recording.enable("ro.ciprianpascu.sbus." + name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+
+            ReadStatusChannelsRequest status = new ReadStatusChannelsRequest();
+            status.setSubnetID(1);
+            status.setUnitID(10);
+            SbusUDPTransaction trans = new SbusUDPTransaction(master);
+            trans.setRequest(status);
+            trans.execute();
+            assertNotNull(trans.getResponse());
+
+            SbusUDPTransport transport = (SbusUDPTransport) master.getSbusTransport();
+            CountDownLatch delivered = new CountDownLatch(1);
+            transport.addMessageListener(response -> delivered.countDown());
+            byte[] corrupt = report(7);
+            corrupt[corrupt.length - 1] ^= 0x55;
+            master.getReceiveQueue().put(corrupt);
+            master.getReceiveQueue().put(report(8));
+            transport.onMessageArrived();
+            assertTrue(delivered.await(1, TimeUnit.SECONDS));
+            // the dispatch event is committed once the listener has returned
+            Thread.sleep(100);
+
+            recording.stop();
+            recording.dump(dump.toPath());
+        }
+
+        // the farm runs in this JVM too, keep the events about the relay
+        Map<String, RecordedEvent> events = new HashMap<>();
+        List<RecordedEvent> recorded = RecordingFile.readAllEvents(dump.toPath());
+        for (RecordedEvent event : recorded) {
+            String name = event.getEventType().getName();
+            if (!name.endsWith("FrameSent") || event.getInt("targetUnitID") == 10) {
+                events.putIfAbsent(name, event);
+            }
+        }
+        RecordedEvent transaction = events.get("ro.ciprianpascu.sbus.Transaction");
+        assertNotNull(transaction);
+        assertEquals("SUCCESS", transaction.getString("outcome"));
+        assertEquals(1, transaction.getInt("attempts"));
+        assertEquals(10, transaction.getInt("targetUnitID"));
+        RecordedEvent sent = events.get("ro.ciprianpascu.sbus.FrameSent");
+        assertNotNull(sent);
+        assertEquals(10, sent.getInt("targetUnitID"));
+        assertNotNull(events.get("ro.ciprianpascu.sbus.FrameReceived"));
+        assertEquals(7, events.get("ro.ciprianpascu.sbus.CrcRejected").getInt("sourceUnitID"));
+        assertEquals(8, events.get("ro.ciprianpascu.sbus.ListenerDispatch").getInt("sourceUnitID"));
+    }
+}
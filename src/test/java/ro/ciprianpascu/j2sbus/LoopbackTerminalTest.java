@@ -0,0 +1,111 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.io.SbusTransport;
+import ro.ciprianpascu.sbus.io.SbusUDPTransaction;
+import ro.ciprianpascu.sbus.io.SbusUDPTransport;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.msg.SbusRequest;
+import ro.ciprianpascu.sbus.net.LoopbackHub;
+import ro.ciprianpascu.sbus.net.LoopbackTerminal;
+import ro.ciprianpascu.sbus.sim.VirtualRelay;
+
+public class LoopbackTerminalTest {
+
+    /** Answers the requests arriving at the slave terminal for the relay */
+    private static Thread serve(LoopbackTerminal slave, VirtualRelay relay) {
+        Thread thread = new Thread(() -> {
+            SbusTransport transport = slave.getSbusTransport();
+            while (slave.isActive()) {
+                try {
+                    SbusRequest request = transport.readRequest();
+                    if (request != null && request.getSubnetID() == relay.getSubnetID()
+                            && request.getUnitID() == relay.getUnitID()) {
+                        transport.writeMessage(relay.createResponse(request));
+                    }
+                } catch (Exception ex) {
+                    // deactivated
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static ReadStatusChannelsRequest request() {
+        ReadStatusChannelsRequest request = new ReadStatusChannelsRequest();
+        request.setSubnetID(1);
+        request.setUnitID(10);
+        return request;
+    }
+
+    @Test
+    public void testTransactionsOverHub() throws Exception {
+        LoopbackHub hub = new LoopbackHub();
+        LoopbackTerminal master = hub.createTerminal(InetAddress.getByName("127.0.0.9"), false);
+        LoopbackTerminal slave = hub.createTerminal(InetAddress.getByName("127.0.0.10"), true);
+        // a terminal on another hub sees none of the traffic
+        LoopbackTerminal other = new LoopbackHub().createTerminal(InetAddress.getByName("127.0.0.11"), false);
+        VirtualRelay relay = new VirtualRelay(1, 10, 4);
+        relay.setChannelLevel(2, 40);
+        master.activate();
+        slave.activate();
+        other.activate();
+        Thread server = serve(slave, relay);
+        try {
+            ((SbusUDPTransport) master.getSbusTransport()).setResponseCacheMillis(0);
+            SbusUDPTransaction transaction = new SbusUDPTransaction(master);
+            transaction.setRequest(request());
+            for (int i = 0; i < 500; i++) {
+                transaction.execute();
+                assertNotNull(transaction.getResponse());
+                assertEquals(40, ((ReadStatusChannelsResponse) transaction.getResponse()).getRegisterValue(1));
+            }
+            assertEquals(500, master.getPacketsSent());
+            assertEquals(500, master.getPacketsReceived());
+            assertEquals(500, slave.getPacketsReceived());
+            assertEquals(0, other.getPacketsReceived());
+        } finally {
+            master.deactivate();
+            slave.deactivate();
+            other.deactivate();
+            server.interrupt();
+        }
+    }
+
+    @Test
+    public void testLatency() throws Exception {
+        LoopbackHub hub = new LoopbackHub();
+        hub.setLatencyMicros(20000);
+        LoopbackTerminal master = hub.createTerminal(InetAddress.getByName("127.0.0.9"), false);
+        LoopbackTerminal slave = hub.createTerminal(InetAddress.getByName("127.0.0.10"), true);
+        master.activate();
+        slave.activate();
+        Thread server = serve(slave, new VirtualRelay(1, 10, 4));
+        try {
+            ((SbusUDPTransport) master.getSbusTransport()).setResponseCacheMillis(0);
+            SbusUDPTransaction transaction = new SbusUDPTransaction(master);
+            transaction.setRequest(request());
+            long start = System.nanoTime();
+            transaction.execute();
+            long millis = (System.nanoTime() - start) / 1000000L;
+            assertNotNull(transaction.getResponse());
+            // request and response each cross the hub
+            assertTrue("round trip took " + millis + " ms", millis >= 40);
+        } finally {
+            hub.removeTerminal(master);
+            hub.removeTerminal(slave);
+            server.interrupt();
+        }
+        assertEquals(0, hub.getTerminalCount());
+    }
+}
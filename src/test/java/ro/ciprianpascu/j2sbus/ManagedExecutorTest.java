@@ -0,0 +1,70 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.util.ManagedExecutor;
+
+public class ManagedExecutorTest {
+
+    @Test
+    public void testSaturationAndGauges() throws Exception {
+        ManagedExecutor executor = new ManagedExecutor("test", 1, 2, ManagedExecutor.SaturationPolicy.ABORT);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        executor.execute(() -> {
+        });
+        executor.execute(() -> {
+            throw new IllegalStateException("expected");
+        });
+        assertEquals(1, executor.getActiveCount());
+        assertEquals(2, executor.getQueueDepth());
+        try {
+            executor.execute(() -> {
+            });
+            fail("saturated pool accepted a task");
+        } catch (RejectedExecutionException ex) {
+            assertEquals(1, executor.getRejectedCount());
+        }
+
+        release.countDown();
+        assertTrue(executor.shutdown(1000));
+        assertEquals(2, executor.getCompletedCount());
+        assertEquals(1, executor.getFailedCount());
+        assertTrue(executor.getMaxLatencyMicros() >= executor.getMeanLatencyMicros());
+    }
+
+    @Test
+    public void testShutdownDeadlineInterruptsWorkers() throws Exception {
+        ManagedExecutor executor = new ManagedExecutor("test", 1);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        assertFalse(executor.shutdown(50));
+        assertTrue(executor.isShutdown());
+    }
+}
@@ -0,0 +1,57 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ro.ciprianpascu.sbus.procimg.DigitalOut;
+import ro.ciprianpascu.sbus.procimg.MappedProcessImageFactory;
+import ro.ciprianpascu.sbus.procimg.Register;
+import ro.ciprianpascu.sbus.procimg.SimpleProcessImage;
+
+public class MappedProcessImageFactoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStateSurvivesRemap() throws Exception {
+        Path file = new File(folder.getRoot(), "image.bin").toPath();
+
+        try (MappedProcessImageFactory factory = new MappedProcessImageFactory(file, 16)) {
+            assertFalse(factory.isRestored());
+            Register register = factory.createRegister((byte) 0, (byte) 5);
+            DigitalOut out = factory.createDigitalOut();
+            factory.createInputRegister((byte) 1, (byte) 2);
+            register.setValue(1234);
+            out.set(true);
+        }
+
+        try (MappedProcessImageFactory factory = new MappedProcessImageFactory(file, 16);
+                MappedProcessImageFactory reader = new MappedProcessImageFactory(file, 16)) {
+            assertTrue(factory.isRestored());
+            assertEquals(3, factory.getSlotCount());
+
+            // same creation order keeps the stored values, not the initial ones
+            Register register = factory.createRegister((byte) 0, (byte) 5);
+            assertEquals(1234, register.getValue());
+            assertTrue(factory.createDigitalOut(false).isSet());
+
+            // a second mapping sees writes without copying
+            SimpleProcessImage image = reader.loadProcessImage();
+            assertEquals(1, image.getRegisterCount());
+            assertEquals(1, image.getDigitalOutCount());
+            assertEquals(1, image.getInputRegisterCount());
+            assertEquals(0x0102, image.getInputRegister(0).getValue());
+            register.setValue(42);
+            assertEquals(42, image.getRegister(0).getValue());
+        }
+    }
+}
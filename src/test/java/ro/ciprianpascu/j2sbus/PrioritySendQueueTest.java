@@ -0,0 +1,73 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.msg.SendPriority;
+import ro.ciprianpascu.sbus.msg.WriteSingleChannelRequest;
+import ro.ciprianpascu.sbus.net.OutboundFrame;
+import ro.ciprianpascu.sbus.net.PrioritySendQueue;
+import ro.ciprianpascu.sbus.procimg.ByteRegister;
+import ro.ciprianpascu.sbus.procimg.Register;
+import ro.ciprianpascu.sbus.procimg.WordRegister;
+
+public class PrioritySendQueueTest {
+
+    private static OutboundFrame frame(SendPriority priority) {
+        return new OutboundFrame(new byte[16 + 15], priority);
+    }
+
+    @Test
+    public void testHigherClassesGoFirst() throws Exception {
+        PrioritySendQueue queue = new PrioritySendQueue(16);
+        OutboundFrame poll1 = frame(SendPriority.BACKGROUND);
+        OutboundFrame read = frame(SendPriority.INTERACTIVE_READ);
+        OutboundFrame poll2 = frame(SendPriority.BACKGROUND);
+        OutboundFrame write = frame(SendPriority.INTERACTIVE_WRITE);
+        queue.put(poll1);
+        queue.put(read);
+        queue.put(poll2);
+        queue.put(write);
+        assertEquals(4, queue.size());
+        assertSame(write, queue.take());
+        assertSame(read, queue.take());
+        assertSame(poll1, queue.take());
+        assertSame(poll2, queue.take());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        assertEquals(4, queue.getHighWatermark());
+    }
+
+    @Test
+    public void testStarvationLimit() throws Exception {
+        PrioritySendQueue queue = new PrioritySendQueue(64);
+        queue.setStarvationLimit(3);
+        OutboundFrame poll = frame(SendPriority.BACKGROUND);
+        queue.put(poll);
+        for (int i = 0; i < 10; i++) {
+            queue.put(frame(SendPriority.INTERACTIVE_WRITE));
+        }
+        // passed over three times, the background frame goes fourth
+        for (int i = 0; i < 3; i++) {
+            assertEquals(SendPriority.INTERACTIVE_WRITE, queue.take().getPriority());
+        }
+        assertSame(poll, queue.take());
+        assertEquals(7, queue.size());
+    }
+
+    @Test
+    public void testRequestPriorities() {
+        Register[] registers = { new ByteRegister((byte) 50), new WordRegister((short) 0) };
+        WriteSingleChannelRequest write = new WriteSingleChannelRequest(1, registers);
+        assertEquals(SendPriority.INTERACTIVE_WRITE, write.getPriority());
+        ReadStatusChannelsRequest read = new ReadStatusChannelsRequest();
+        assertEquals(SendPriority.INTERACTIVE_READ, read.getPriority());
+        read.setPriority(SendPriority.BACKGROUND);
+        assertEquals(SendPriority.BACKGROUND, read.getPriority());
+    }
+}
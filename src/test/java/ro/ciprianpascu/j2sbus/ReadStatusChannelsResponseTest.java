@@ -0,0 +1,35 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.io.BytesInputStream;
+import ro.ciprianpascu.sbus.io.BytesOutputStream;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.procimg.ByteRegister;
+import ro.ciprianpascu.sbus.procimg.InputRegister;
+
+public class ReadStatusChannelsResponseTest {
+
+    @Test
+    public void testChannelCountRoundTrip() throws Exception {
+        InputRegister[] registers = new InputRegister[4];
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = new ByteRegister((byte) (10 * (i + 1)));
+        }
+        ReadStatusChannelsResponse written = new ReadStatusChannelsResponse(registers);
+        written.setSourceSubnetID(1);
+        written.setSourceUnitID(10);
+        BytesOutputStream out = new BytesOutputStream(256);
+        written.writeTo(out);
+
+        ReadStatusChannelsResponse read = new ReadStatusChannelsResponse();
+        read.readFrom(new BytesInputStream(out.toByteArray()));
+        // the count byte holds the number of channels, not one more
+        assertEquals(4, read.getByteCount());
+        for (int i = 0; i < registers.length; i++) {
+            assertEquals(10 * (i + 1), read.getRegisterValue(i));
+        }
+    }
+}
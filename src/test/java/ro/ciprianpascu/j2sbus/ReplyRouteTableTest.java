@@ -0,0 +1,101 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.InetSocketAddress;
+
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.net.ReplyRouteTable;
+
+public class ReplyRouteTableTest {
+
+    private static byte[] frame(int srcSubnet, int srcUnit, int fc, int subnet, int unit) {
+        byte[] frame = new byte[16 + 11];
+        frame[17] = (byte) srcSubnet;
+        frame[18] = (byte) srcUnit;
+        frame[21] = (byte) (fc >> 8);
+        frame[22] = (byte) fc;
+        frame[23] = (byte) subnet;
+        frame[24] = (byte) unit;
+        return frame;
+    }
+
+    @Test
+    public void testRoutesByRequesterAndTransaction() {
+        ReplyRouteTable table = new ReplyRouteTable();
+        InetSocketAddress a = new InetSocketAddress("127.0.0.1", 6001);
+        InetSocketAddress b = new InetSocketAddress("127.0.0.1", 6002);
+
+        table.put(frame(0xBB, 0xBB, Sbus.READ_TEMPERATURE_REQUEST, 1, 62), a);
+        table.put(frame(0xBB, 0xBC, Sbus.READ_TEMPERATURE_REQUEST, 1, 62), b);
+        assertEquals(2, table.size());
+
+        assertEquals(b, table.remove(frame(0xBB, 0xBC, Sbus.READ_TEMPERATURE_REQUEST + 1, 1, 62)));
+        assertEquals(a, table.remove(frame(0xBB, 0xBB, Sbus.READ_TEMPERATURE_REQUEST, 1, 62)));
+        assertNull(table.remove(frame(0xBB, 0xBB, Sbus.READ_TEMPERATURE_REQUEST, 1, 62)));
+        assertEquals(0, table.size());
+
+        // a reply addressed from the device back to the requester
+        table.put(frame(0xBB, 0xBC, Sbus.READ_TEMPERATURE_REQUEST, 1, 62), b);
+        assertEquals(b, table.remove(frame(1, 62, Sbus.READ_TEMPERATURE_REQUEST + 1, 0xBB, 0xBC)));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testRequestersSharingSourceAddress() {
+        ReplyRouteTable table = new ReplyRouteTable();
+        InetSocketAddress a = new InetSocketAddress("127.0.0.1", 6001);
+        InetSocketAddress b = new InetSocketAddress("127.0.0.2", 6001);
+
+        // two masters on the default source subnet and unit asking the same device
+        table.put(frame(0xBB, 0xBB, Sbus.READ_TEMPERATURE_REQUEST, 1, 62), a);
+        table.put(frame(0xBB, 0xBB, Sbus.READ_TEMPERATURE_REQUEST, 1, 62), b);
+        // a retry of the first master does not add a route
+        table.put(frame(0xBB, 0xBB, Sbus.READ_TEMPERATURE_REQUEST, 1, 62), a);
+        assertEquals(2, table.size());
+
+        assertEquals(b, table.remove(frame(1, 62, Sbus.READ_TEMPERATURE_REQUEST + 1, 0xBB, 0xBB)));
+        assertEquals(a, table.remove(frame(1, 62, Sbus.READ_TEMPERATURE_REQUEST + 1, 0xBB, 0xBB)));
+        assertNull(table.remove(frame(1, 62, Sbus.READ_TEMPERATURE_REQUEST + 1, 0xBB, 0xBB)));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testExpiredRouteDoesNotHideALiveOne() throws InterruptedException {
+        ReplyRouteTable table = new ReplyRouteTable(16, 50);
+        InetSocketAddress a = new InetSocketAddress("127.0.0.1", 6001);
+        InetSocketAddress b = new InetSocketAddress("127.0.0.2", 6001);
+
+        // a request of the first master that was never answered
+        table.put(frame(0xBB, 0xBB, Sbus.READ_TEMPERATURE_REQUEST, 1, 62), a);
+        Thread.sleep(100);
+        table.put(frame(0xBB, 0xBB, Sbus.READ_TEMPERATURE_REQUEST, 1, 62), b);
+
+        assertEquals(b, table.remove(frame(1, 62, Sbus.READ_TEMPERATURE_REQUEST + 1, 0xBB, 0xBB)));
+        assertEquals(1, table.getExpiredCount());
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testCapacityAndExpiry() throws InterruptedException {
+        ReplyRouteTable table = new ReplyRouteTable(4, 50);
+        InetSocketAddress a = new InetSocketAddress("127.0.0.1", 6001);
+        for (int unit = 0; unit < 10; unit++) {
+            table.put(frame(0xBB, 0xBB, Sbus.READ_STATUS_CHANNELS_REQUEST, 1, unit), a);
+        }
+        assertEquals(4, table.size());
+        assertEquals(6, table.getEvictedCount());
+        // the oldest routes were evicted
+        assertNull(table.remove(frame(0xBB, 0xBB, Sbus.READ_STATUS_CHANNELS_REQUEST, 1, 5)));
+        assertEquals(a, table.remove(frame(0xBB, 0xBB, Sbus.READ_STATUS_CHANNELS_REQUEST, 1, 6)));
+
+        Thread.sleep(100);
+        assertNull(table.remove(frame(0xBB, 0xBB, Sbus.READ_STATUS_CHANNELS_REQUEST, 1, 9)));
+        table.purge();
+        assertEquals(0, table.size());
+        assertEquals(3, table.getExpiredCount());
+    }
+}
@@ -0,0 +1,66 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.util.RingBuffer;
+
+public class RingBufferTest {
+
+    @Test
+    public void testOverflowPolicies() throws Exception {
+        RingBuffer<Integer> newest = new RingBuffer<>(3, RingBuffer.OverflowPolicy.DROP_NEWEST);
+        assertEquals(4, newest.getCapacity());
+        for (int i = 0; i < 6; i++) {
+            newest.put(i);
+        }
+        assertFalse(newest.put(6));
+        assertEquals(3, newest.getDroppedCount());
+        assertEquals(4, newest.getHighWatermark());
+        assertEquals(Integer.valueOf(0), newest.poll());
+
+        RingBuffer<Integer> oldest = new RingBuffer<>(4, RingBuffer.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(oldest.put(i));
+        }
+        assertEquals(2, oldest.getDroppedCount());
+        assertEquals(Integer.valueOf(2), oldest.poll());
+        oldest.clear();
+        assertTrue(oldest.isEmpty());
+        assertNull(oldest.poll(20));
+    }
+
+    @Test
+    public void testBlockingProducersAndConsumer() throws Exception {
+        final RingBuffer<Integer> buffer = new RingBuffer<>(8, RingBuffer.OverflowPolicy.BLOCK);
+        final int producers = 4;
+        final int perProducer = 10000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < perProducer; i++) {
+                        buffer.put(i);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[p].start();
+        }
+        long sum = 0;
+        for (int i = 0; i < producers * perProducer; i++) {
+            sum += buffer.take();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals((long) producers * perProducer * (perProducer - 1) / 2, sum);
+        assertEquals(0, buffer.getDroppedCount());
+        assertTrue(buffer.isEmpty());
+    }
+}
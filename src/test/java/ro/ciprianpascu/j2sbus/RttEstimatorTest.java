@@ -0,0 +1,130 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.io.CircuitBreaker;
+import ro.ciprianpascu.sbus.io.RttEstimator;
+import ro.ciprianpascu.sbus.io.SbusUDPTransaction;
+import ro.ciprianpascu.sbus.io.SbusUDPTransport;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.msg.WriteSingleChannelRequest;
+import ro.ciprianpascu.sbus.net.UDPMasterConnection;
+import ro.ciprianpascu.sbus.net.UDPSlaveTerminal;
+import ro.ciprianpascu.sbus.procimg.ByteRegister;
+import ro.ciprianpascu.sbus.procimg.Register;
+import ro.ciprianpascu.sbus.procimg.WordRegister;
+import ro.ciprianpascu.sbus.sim.DeviceFarm;
+import ro.ciprianpascu.sbus.sim.VirtualRelay;
+
+public class RttEstimatorTest {
+
+    private static final long MILLIS = 1000000L;
+
+    @Rule
+    public DeviceFarmRule farmRule = new DeviceFarmRule();
+
+    @Test
+    public void testTimeoutsFollowRoundTrips() {
+        RttEstimator estimator = new RttEstimator();
+        estimator.setTimeoutBounds(50, 3000);
+        assertEquals(1500, estimator.getTimeoutMillis(1, 1, 1, 1500));
+
+        // a fast device on a local gateway
+        for (int i = 0; i < 50; i++) {
+            estimator.sample(1, 1, (i % 2 == 0 ? 38 : 42) * MILLIS);
+        }
+        long srtt = estimator.getSmoothedRttMicros(1, 1);
+        assertTrue(srtt > 38000 && srtt < 42000);
+        int fast = estimator.getTimeoutMillis(1, 1, 1, 1500);
+        assertTrue(fast >= 50 && fast < 100);
+        assertEquals(Math.min(3000, fast * 2), estimator.getTimeoutMillis(1, 1, 2, 1500));
+
+        // a slow device behind a bridge, with jitter
+        for (int i = 0; i < 50; i++) {
+            estimator.sample(2, 1, (i % 2 == 0 ? 700 : 900) * MILLIS);
+        }
+        int slow = estimator.getTimeoutMillis(2, 1, 1, 500);
+        assertTrue(slow > 900 && slow < 3000);
+        assertEquals(3000, estimator.getTimeoutMillis(2, 1, 4, 500));
+
+        estimator.setEnabled(false);
+        assertEquals(500, estimator.getTimeoutMillis(2, 1, 1, 500));
+
+        // without bounds set, a retry backs off up to the terminal timeout
+        RttEstimator unbounded = new RttEstimator();
+        unbounded.sample(2, 1, 900 * MILLIS);
+        assertEquals(5000, unbounded.getTimeoutMillis(2, 1, 4, 5000));
+    }
+
+    @Test
+    public void testTransactionsSampleRoundTrips() throws Exception {
+        DeviceFarm farm = farmRule.getFarm();
+        farm.addDevice(new VirtualRelay(1, 10, 4));
+        UDPMasterConnection connection = farmRule.createConnection();
+        connection.connect();
+        SbusUDPTransport transport = (SbusUDPTransport) connection.getSbusTransport();
+        transport.setResponseCacheMillis(0);
+        RttEstimator estimator = transport.getRttEstimator();
+        assertEquals(-1, estimator.getSmoothedRttMicros(1, 10));
+
+        ReadStatusChannelsRequest request = new ReadStatusChannelsRequest();
+        request.setSubnetID(1);
+        request.setUnitID(10);
+        SbusUDPTransaction transaction = new SbusUDPTransaction(connection);
+        transaction.setRequest(request);
+        for (int i = 0; i < 30; i++) {
+            transaction.execute();
+            assertNotNull(transaction.getResponse());
+        }
+        assertTrue(estimator.getSmoothedRttMicros(1, 10) > 0);
+        // a device on loopback answers well within the lower bound
+        assertEquals(RttEstimator.DEFAULT_MIN_TIMEOUT_MILLIS,
+                estimator.getTimeoutMillis(1, 10, 1, connection.getTimeout()));
+    }
+
+    @Test
+    public void testQueuedReadIsTimedFromItsSend() throws Exception {
+        DeviceFarm farm = farmRule.getFarm();
+        for (int unit = 10; unit <= 16; unit++) {
+            farm.addDevice(new VirtualRelay(1, unit, 4));
+        }
+        UDPMasterConnection connection = farmRule.createConnection();
+        connection.connect();
+        SbusUDPTransport transport = (SbusUDPTransport) connection.getSbusTransport();
+        transport.setResponseCacheMillis(0);
+        ReadStatusChannelsRequest request = new ReadStatusChannelsRequest();
+        request.setSubnetID(1);
+        request.setUnitID(10);
+        SbusUDPTransaction transaction = new SbusUDPTransaction(connection);
+        transaction.setRequest(request);
+        // an idle link settles the timeout at its lower bound
+        for (int i = 0; i < 30; i++) {
+            transaction.execute();
+        }
+        assertEquals(RttEstimator.DEFAULT_MIN_TIMEOUT_MILLIS,
+                transport.getRttEstimator().getTimeoutMillis(1, 10, 1, connection.getTimeout()));
+
+        // six writes ahead of the read in the paced queue, over a second of waiting
+        connection.setSendPacingMillis(UDPSlaveTerminal.DEFAULT_SEND_PACING_MILLIS);
+        for (int unit = 11; unit <= 16; unit++) {
+            Register[] registers = { new ByteRegister((byte) 50), new WordRegister((short) 0) };
+            WriteSingleChannelRequest write = new WriteSingleChannelRequest(1, registers);
+            write.setSubnetID(1);
+            write.setUnitID(unit);
+            transport.writeMessage(write);
+        }
+        long timeouts = transport.getMetrics().getTimeouts();
+        transaction.execute();
+        assertNotNull(transaction.getResponse());
+        assertEquals(1, transaction.getAttempts());
+        assertEquals(timeouts, transport.getMetrics().getTimeouts());
+        assertEquals(CircuitBreaker.State.CLOSED, transport.getCircuitBreaker().getState(1, 10));
+        // the time in the queue is not part of the round trip
+        assertTrue(transport.getRttEstimator().getSmoothedRttMicros(1, 10) < 100000);
+    }
+}
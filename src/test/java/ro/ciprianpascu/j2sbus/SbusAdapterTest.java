@@ -0,0 +1,139 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.SbusIOException;
+import ro.ciprianpascu.sbus.facade.DeviceAddress;
+import ro.ciprianpascu.sbus.facade.ReadResult;
+import ro.ciprianpascu.sbus.facade.SbusAdapter;
+import ro.ciprianpascu.sbus.facade.TemperatureUnit;
+import ro.ciprianpascu.sbus.msg.ReadNineInOneStatusResponse;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.msg.ReadTemperatureResponse;
+import ro.ciprianpascu.sbus.net.UDPMasterConnection;
+import ro.ciprianpascu.sbus.sim.DeviceFarm;
+import ro.ciprianpascu.sbus.sim.VirtualNineInOneSensor;
+import ro.ciprianpascu.sbus.sim.VirtualRelay;
+import ro.ciprianpascu.sbus.sim.VirtualTemperaturePanel;
+
+public class SbusAdapterTest {
+
+    @Rule
+    public DeviceFarmRule farmRule = new DeviceFarmRule();
+
+    private DeviceFarm farm;
+    private SbusAdapter adapter;
+
+    @Before
+    public void setUp() throws Exception {
+        farm = farmRule.getFarm();
+        farm.setLatencyMillis(100);
+        for (int unit = 1; unit <= 10; unit++) {
+            farm.addDevice(new VirtualRelay(1, unit, 4)).setChannelLevel(1, unit);
+        }
+        farm.addDevice(new VirtualTemperaturePanel(2, 1)).setCelsius(0, 21);
+        farm.addDevice(new VirtualTemperaturePanel(2, 2)).setCelsius(0, 24);
+        farm.addDevice(new VirtualNineInOneSensor(3, 1)).setMotion(true);
+
+        UDPMasterConnection connection = farmRule.createConnection();
+        adapter = new SbusAdapter(connection);
+        connection.setTimeout(500);
+    }
+
+    @After
+    public void tearDown() {
+        adapter.close();
+    }
+
+    @Test
+    public void testReadChannelStatusFansOut() {
+        List<DeviceAddress> devices = new ArrayList<>();
+        for (int unit = 10; unit >= 1; unit--) {
+            devices.add(new DeviceAddress(1, unit));
+        }
+        long start = System.nanoTime();
+        Map<DeviceAddress, ReadResult<ReadStatusChannelsResponse>> results = adapter.readChannelStatus(devices);
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+
+        // ten reads with 100 ms latency each, in about one round trip
+        assertTrue("took " + elapsed + " ms", elapsed < 600);
+        assertEquals(devices, new ArrayList<>(results.keySet()));
+        for (DeviceAddress device : devices) {
+            ReadResult<ReadStatusChannelsResponse> result = results.get(device);
+            assertTrue(result.toString(), result.isSuccess());
+            assertEquals(1, result.getAttempts());
+            assertEquals(device.getUnitID(), result.getResponse().getRegisterValue(0));
+        }
+        assertEquals(10, farm.getRequestCount());
+    }
+
+    @Test
+    public void testRepeatedBatchIsAnsweredFromTheCache() {
+        List<DeviceAddress> devices = Arrays.asList(new DeviceAddress(1, 1), new DeviceAddress(1, 2));
+        for (int batch = 1; batch <= 2; batch++) {
+            long start = System.nanoTime();
+            Map<DeviceAddress, ReadResult<ReadStatusChannelsResponse>> results = adapter.readChannelStatus(devices);
+            long elapsed = (System.nanoTime() - start) / 1000000L;
+
+            assertTrue("took " + elapsed + " ms", elapsed < 600);
+            for (DeviceAddress device : devices) {
+                ReadResult<ReadStatusChannelsResponse> result = results.get(device);
+                assertTrue(result.toString(), result.isSuccess());
+                assertEquals(1, result.getAttempts());
+                assertEquals(device.getUnitID(), result.getResponse().getRegisterValue(0));
+            }
+        }
+        // the second batch did not reach the devices
+        assertEquals(2, farm.getRequestCount());
+    }
+
+    @Test
+    public void testReadsMoreDevicesThanTheResponseCacheHolds() {
+        List<DeviceAddress> devices = new ArrayList<>();
+        // a silent device first, all replies arrive while it is awaited
+        DeviceAddress missing = new DeviceAddress(5, 1);
+        devices.add(missing);
+        for (int unit = 1; unit <= 250; unit++) {
+            farm.addDevice(new VirtualRelay(4, unit, 4)).setChannelLevel(1, unit % 100);
+            devices.add(new DeviceAddress(4, unit));
+        }
+        Map<DeviceAddress, ReadResult<ReadStatusChannelsResponse>> results = adapter.readChannelStatus(devices);
+
+        assertFalse(results.get(missing).isSuccess());
+        for (DeviceAddress device : devices.subList(1, devices.size())) {
+            ReadResult<ReadStatusChannelsResponse> result = results.get(device);
+            assertTrue(result.toString(), result.isSuccess());
+            assertEquals(1, result.getAttempts());
+            assertEquals(device.getUnitID() % 100, result.getResponse().getRegisterValue(0));
+        }
+    }
+
+    @Test
+    public void testReportsEachDeviceStatus() {
+        DeviceAddress missing = new DeviceAddress(2, 9);
+        Map<DeviceAddress, ReadResult<ReadTemperatureResponse>> temperatures = adapter.readTemperatures(
+                Arrays.asList(new DeviceAddress(2, 1), missing, new DeviceAddress(2, 2)), TemperatureUnit.CELSIUS);
+        assertEquals(21, temperatures.get(new DeviceAddress(2, 1)).getResponse().getRegister(0).toBytes()[0]);
+        assertEquals(24, temperatures.get(new DeviceAddress(2, 2)).getResponse().getRegister(0).toBytes()[0]);
+        ReadResult<ReadTemperatureResponse> failed = temperatures.get(missing);
+        assertFalse(failed.isSuccess());
+        assertTrue(failed.getError() instanceof SbusIOException);
+        assertTrue(failed.getAttempts() > 1);
+
+        Map<DeviceAddress, ReadResult<ReadNineInOneStatusResponse>> sensors = adapter
+                .readNineInOne(Arrays.asList(new DeviceAddress(3, 1)));
+        assertEquals(1, sensors.get(new DeviceAddress(3, 1)).getResponse().getMotionStatus());
+    }
+}
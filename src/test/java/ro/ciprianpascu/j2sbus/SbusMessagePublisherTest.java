@@ -0,0 +1,196 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.io.BytesOutputStream;
+import ro.ciprianpascu.sbus.io.SbusUDPTransaction;
+import ro.ciprianpascu.sbus.io.SbusUDPTransport;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.net.SbusMessagePublisher;
+import ro.ciprianpascu.sbus.net.SubscriptionIndex;
+import ro.ciprianpascu.sbus.net.UDPSlaveTerminal;
+import ro.ciprianpascu.sbus.sim.DeviceFarm;
+import ro.ciprianpascu.sbus.sim.VirtualRelay;
+import ro.ciprianpascu.sbus.util.RingBuffer;
+import ro.ciprianpascu.sbus.util.SbusUtil;
+
+public class SbusMessagePublisherTest {
+
+    private static final byte[] PREFIX = { 127, 0, 0, 10, 'S', 'M', 'A', 'R', 'T', 'C', 'L', 'O', 'U', 'D',
+            (byte) 0xAA, (byte) 0xAA };
+
+    @Rule
+    public DeviceFarmRule farmRule = new DeviceFarmRule();
+
+    private static ReadStatusChannelsResponse status(int subnet, int unit) {
+        ReadStatusChannelsResponse response = new ReadStatusChannelsResponse();
+        response.setSourceSubnetID(subnet);
+        response.setSourceUnitID(unit);
+        return response;
+    }
+
+    private static byte[] report(int subnet, int unit) throws Exception {
+        BytesOutputStream out = new BytesOutputStream(256);
+        status(subnet, unit).writeTo(out);
+        byte[] crc = SbusUtil.calculateCRC(out.getBuffer(), out.size());
+        out.writeByte(crc[0]);
+        out.writeByte(crc[1]);
+        byte[] body = out.toByteArray();
+        byte[] full = new byte[PREFIX.length + body.length];
+        System.arraycopy(PREFIX, 0, full, 0, PREFIX.length);
+        System.arraycopy(body, 0, full, PREFIX.length, body.length);
+        return full;
+    }
+
+    /**
+     * Subscriber recording its signals, requesting nothing by itself.
+     */
+    private static class Recorder implements Flow.Subscriber<SbusResponse> {
+        final List<SbusResponse> m_Received = new CopyOnWriteArrayList<>();
+        final CountDownLatch m_Subscribed = new CountDownLatch(1);
+        final CountDownLatch m_Terminated = new CountDownLatch(1);
+        volatile Flow.Subscription m_Subscription;
+        volatile Throwable m_Error;
+        volatile boolean m_Completed;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            m_Subscription = subscription;
+            m_Subscribed.countDown();
+        }
+
+        @Override
+        public void onNext(SbusResponse item) {
+            m_Received.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            m_Error = throwable;
+            m_Terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            m_Completed = true;
+            m_Terminated.countDown();
+        }
+
+        void awaitReceived(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 2000;
+            while (m_Received.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    @Test
+    public void testDeliveryFollowsDemand() throws Exception {
+        SbusMessagePublisher publisher = new SbusMessagePublisher();
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        assertTrue(recorder.m_Subscribed.await(1, TimeUnit.SECONDS));
+        for (int unit = 1; unit <= 10; unit++) {
+            publisher.onMessageReceived(status(1, unit));
+        }
+        Thread.sleep(100);
+        assertEquals(0, recorder.m_Received.size());
+
+        recorder.m_Subscription.request(3);
+        recorder.awaitReceived(3);
+        Thread.sleep(100);
+        assertEquals(3, recorder.m_Received.size());
+
+        recorder.m_Subscription.request(Long.MAX_VALUE);
+        recorder.awaitReceived(10);
+        assertEquals(10, recorder.m_Received.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i + 1, recorder.m_Received.get(i).getSourceUnitID());
+        }
+
+        publisher.close();
+        assertTrue(recorder.m_Terminated.await(1, TimeUnit.SECONDS));
+        assertTrue(recorder.m_Completed);
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    @Test
+    public void testOverflowDropsOldest() throws Exception {
+        SbusMessagePublisher publisher = new SbusMessagePublisher(4, RingBuffer.OverflowPolicy.DROP_OLDEST, null);
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        assertTrue(recorder.m_Subscribed.await(1, TimeUnit.SECONDS));
+        for (int unit = 1; unit <= 10; unit++) {
+            publisher.onMessageReceived(status(1, unit));
+        }
+        assertEquals(6, publisher.getDroppedCount());
+        recorder.m_Subscription.request(10);
+        recorder.awaitReceived(4);
+        assertEquals(4, recorder.m_Received.size());
+        assertEquals(7, recorder.m_Received.get(0).getSourceUnitID());
+        assertEquals(10, recorder.m_Received.get(3).getSourceUnitID());
+        assertEquals(10, publisher.getPublishedCount());
+    }
+
+    @Test
+    public void testNonPositiveRequestSignalsError() throws Exception {
+        SbusMessagePublisher publisher = new SbusMessagePublisher();
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        assertTrue(recorder.m_Subscribed.await(1, TimeUnit.SECONDS));
+        recorder.m_Subscription.request(0);
+        assertTrue(recorder.m_Terminated.await(1, TimeUnit.SECONDS));
+        assertTrue(recorder.m_Error instanceof IllegalArgumentException);
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    @Test
+    public void testPublishesPolledAndUnsolicitedMessages() throws Exception {
+        DeviceFarm farm = farmRule.getFarm();
+        farm.addDevice(new VirtualRelay(1, 10, 4));
+        UDPSlaveTerminal master = farmRule.createMaster("127.0.0.6");
+        SbusUDPTransport transport = (SbusUDPTransport) master.getSbusTransport();
+        int fc = new ReadStatusChannelsResponse().getFunctionCode();
+        SbusMessagePublisher publisher = new SbusMessagePublisher();
+        transport.subscribe(SubscriptionIndex.ANY, SubscriptionIndex.ANY, fc, publisher);
+        transport.subscribeResponses(SubscriptionIndex.ANY, SubscriptionIndex.ANY, fc, publisher);
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        assertTrue(recorder.m_Subscribed.await(1, TimeUnit.SECONDS));
+        recorder.m_Subscription.request(Long.MAX_VALUE);
+
+        ReadStatusChannelsRequest request = new ReadStatusChannelsRequest();
+        request.setSubnetID(1);
+        request.setUnitID(10);
+        SbusUDPTransaction trans = new SbusUDPTransaction(master);
+        trans.setRequest(request);
+        trans.execute();
+        assertNotNull(trans.getResponse());
+        recorder.awaitReceived(1);
+        assertEquals(10, recorder.m_Received.get(0).getSourceUnitID());
+
+        master.getReceiveQueue().put(report(2, 8));
+        transport.onMessageArrived();
+        recorder.awaitReceived(2);
+        assertEquals(2, recorder.m_Received.size());
+        assertEquals(8, recorder.m_Received.get(1).getSourceUnitID());
+
+        transport.removeMessageListener(publisher);
+        publisher.close();
+        assertTrue(recorder.m_Terminated.await(1, TimeUnit.SECONDS));
+        assertTrue(recorder.m_Completed);
+    }
+}
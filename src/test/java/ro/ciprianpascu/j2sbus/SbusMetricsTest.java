@@ -0,0 +1,103 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.io.SbusUDPTransaction;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.net.UDPSlaveTerminal;
+import ro.ciprianpascu.sbus.sim.DeviceFarm;
+import ro.ciprianpascu.sbus.sim.VirtualRelay;
+import ro.ciprianpascu.sbus.util.LatencyHistogram;
+import ro.ciprianpascu.sbus.util.SbusMetrics;
+
+public class SbusMetricsTest {
+
+    @Rule
+    public DeviceFarmRule farmRule = new DeviceFarmRule();
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100000L); // 100 us
+        }
+        histogram.record(50000000L); // 50 ms
+        assertEquals(100, histogram.getCount());
+        assertEquals(128, histogram.getPercentileMicros(0.5));
+        assertEquals(128, histogram.getPercentileMicros(0.99));
+        assertEquals(50000, histogram.getPercentileMicros(1.0));
+        assertEquals(50000, histogram.getMaxMicros());
+        assertEquals((99 * 100 + 50000) / 100, histogram.getMeanMicros());
+        histogram.reset();
+        assertEquals(0, histogram.getPercentileMicros(0.99));
+    }
+
+    @Test
+    public void testTransportMetricsPublishedViaJmx() throws Exception {
+        DeviceFarm farm = farmRule.getFarm();
+        farm.addDevice(new VirtualRelay(1, 10, 4));
+        UDPSlaveTerminal master = farmRule.createMaster("127.0.0.4");
+        master.setTimeout(200);
+        ReadStatusChannelsRequest status = new ReadStatusChannelsRequest();
+        status.setSubnetID(1);
+        status.setUnitID(10);
+        for (int i = 0; i < 3; i++) {
+            SbusUDPTransaction trans = new SbusUDPTransaction(master);
+            trans.setRequest(status);
+            trans.execute();
+            assertNotNull(trans.getResponse());
+        }
+        ReadStatusChannelsRequest missing = new ReadStatusChannelsRequest();
+        missing.setSubnetID(1);
+        missing.setUnitID(99);
+        SbusUDPTransaction trans = new SbusUDPTransaction(master);
+        trans.setRequest(missing);
+        trans.setRetries(2);
+        trans.execute();
+
+        SbusMetrics metrics = master.getSbusTransport().getMetrics();
+        LatencyHistogram latency = metrics.getLatency(1, 10, status.getFunctionCode());
+        assertNotNull(latency);
+        assertTrue(latency.getCount() >= 1);
+        assertTrue(metrics.getResponses() >= 1);
+        assertTrue(metrics.getTimeouts(1, 99, missing.getFunctionCode()) >= 1);
+        assertTrue(metrics.getRetries() >= 1);
+
+        // repeated reads are answered from the response cache
+        assertTrue(metrics.getCacheHits() >= 2);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName transport = find(server, "Transport", master.getLocalPort());
+        ObjectName terminal = find(server, "Terminal", master.getLocalPort());
+        assertEquals(metrics.getTimeouts(), server.getAttribute(transport, "Timeouts"));
+        String[] lines = (String[]) server.getAttribute(transport, "DeviceLatencies");
+        assertTrue(lines.length >= 2);
+        assertTrue((Long) server.getAttribute(terminal, "PacketsSent") >= 2);
+        assertEquals(Boolean.FALSE, server.getAttribute(terminal, "ListenerMode"));
+        master.deactivate();
+        assertFalse(server.isRegistered(transport));
+        assertFalse(server.isRegistered(terminal));
+    }
+
+    private static ObjectName find(MBeanServer server, String type, int localPort) throws Exception {
+        String port = "master-" + localPort + "-";
+        for (ObjectName name : server.queryNames(new ObjectName(SbusMetrics.JMX_DOMAIN + ":type=" + type + ",*"),
+                null)) {
+            if (ObjectName.unquote(name.getKeyProperty("name")).startsWith(port)) {
+                return name;
+            }
+        }
+        throw new AssertionError("No " + type + " MBean for " + port);
+    }
+}
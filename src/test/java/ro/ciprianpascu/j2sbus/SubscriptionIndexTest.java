@@ -0,0 +1,81 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.msg.MotionSensorStatusReport;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.msg.SbusResponse;
+import ro.ciprianpascu.sbus.net.AsyncMessageListener;
+import ro.ciprianpascu.sbus.net.FilteredMessageListener;
+import ro.ciprianpascu.sbus.net.SbusMessageListener;
+import ro.ciprianpascu.sbus.net.SubscriptionIndex;
+import ro.ciprianpascu.sbus.util.RingBuffer;
+
+public class SubscriptionIndexTest {
+
+    private static AsyncMessageListener counting(AtomicInteger counter) {
+        return new AsyncMessageListener(response -> counter.incrementAndGet(), 1, 16,
+                RingBuffer.OverflowPolicy.DROP_OLDEST, Runnable::run);
+    }
+
+    private static SbusResponse from(SbusResponse response, int subnet, int unit) {
+        response.setSourceSubnetID(subnet);
+        response.setSourceUnitID(unit);
+        return response;
+    }
+
+    @Test
+    public void testFiltersAndWildcards() {
+        SubscriptionIndex index = new SubscriptionIndex();
+        AtomicInteger device = new AtomicInteger();
+        AtomicInteger reports = new AtomicInteger();
+        AtomicInteger subnet = new AtomicInteger();
+        AsyncMessageListener deviceListener = counting(device);
+        AsyncMessageListener subnetListener = counting(subnet);
+        index.subscribe(1, 30, SubscriptionIndex.ANY, deviceListener);
+        index.subscribe(SubscriptionIndex.ANY, SubscriptionIndex.ANY, Sbus.MOTION_SENSOR_STATUS_REPORT,
+                counting(reports));
+        index.subscribe(1, SubscriptionIndex.ANY, SubscriptionIndex.ANY, subnetListener);
+        // overlapping filter of the same listener must not deliver twice
+        index.subscribe(1, 30, SubscriptionIndex.ANY, subnetListener);
+        for (int unit = 0; unit < 200; unit++) {
+            index.subscribe(2, unit, SubscriptionIndex.ANY, counting(new AtomicInteger()));
+        }
+
+        index.dispatch(from(new MotionSensorStatusReport(), 1, 30));
+        index.dispatch(from(new ReadStatusChannelsResponse(), 1, 31));
+        index.dispatch(from(new MotionSensorStatusReport(), 3, 1));
+
+        assertEquals(1, device.get());
+        assertEquals(2, reports.get());
+        assertEquals(2, subnet.get());
+
+        assertTrue(index.unsubscribe(subnetListener));
+        index.dispatch(from(new ReadStatusChannelsResponse(), 1, 30));
+        assertEquals(2, subnet.get());
+        assertEquals(2, device.get());
+        assertEquals(202, index.size());
+    }
+
+    @Test
+    public void testFilteredListener() {
+        AtomicInteger counter = new AtomicInteger();
+        SbusMessageListener listener = response -> counter.incrementAndGet();
+        FilteredMessageListener filtered = new FilteredMessageListener(1, SubscriptionIndex.ANY,
+                Sbus.MOTION_SENSOR_STATUS_REPORT, listener);
+
+        filtered.onMessageReceived(from(new MotionSensorStatusReport(), 1, 30));
+        filtered.onMessageReceived(from(new MotionSensorStatusReport(), 2, 30));
+        filtered.onMessageReceived(from(new ReadStatusChannelsResponse(), 1, 30));
+        assertEquals(1, counter.get());
+
+        assertSame(listener, filtered.getListener());
+    }
+}
@@ -0,0 +1,117 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.Sbus;
+import ro.ciprianpascu.sbus.io.BytesOutputStream;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsResponse;
+import ro.ciprianpascu.sbus.msg.SbusMessage;
+import ro.ciprianpascu.sbus.msg.SbusRequest;
+import ro.ciprianpascu.sbus.net.UDPSlaveTerminal;
+import ro.ciprianpascu.sbus.util.SbusUtil;
+
+public class UDPSlaveTerminalTest {
+
+    private int lastSourcePort;
+
+    private static byte[] datagram(SbusMessage message) throws Exception {
+        BytesOutputStream out = new BytesOutputStream(256);
+        message.writeTo(out);
+        byte[] crc = SbusUtil.calculateCRC(out.getBuffer(), out.size());
+        out.writeByte(crc[0]);
+        out.writeByte(crc[1]);
+        byte[] body = out.toByteArray();
+        byte[] full = new byte[16 + body.length];
+        byte[] prefix = { 127, 0, 0, 1, 'S', 'M', 'A', 'R', 'T', 'C', 'L', 'O', 'U', 'D', (byte) 0xAA,
+                (byte) 0xAA };
+        System.arraycopy(prefix, 0, full, 0, prefix.length);
+        System.arraycopy(body, 0, full, prefix.length, body.length);
+        return full;
+    }
+
+    private static ReadStatusChannelsRequest request() {
+        ReadStatusChannelsRequest request = new ReadStatusChannelsRequest();
+        request.setSubnetID(1);
+        request.setUnitID(10);
+        return request;
+    }
+
+    /** Receives one datagram and returns its function code */
+    private int receiveFunctionCode(DatagramSocket peer) throws Exception {
+        DatagramPacket packet = new DatagramPacket(new byte[1024], 1024);
+        peer.receive(packet);
+        lastSourcePort = packet.getPort();
+        byte[] data = packet.getData();
+        // after the 16 byte prefix: length, source subnet and unit, device type, function code
+        return ((data[16 + 5] & 0xFF) << 8) | (data[16 + 6] & 0xFF);
+    }
+
+    @Test
+    public void testMasterSendsToRemotePort() throws Exception {
+        try (DatagramSocket peer = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            peer.setSoTimeout(3000);
+            UDPSlaveTerminal master = new UDPSlaveTerminal(InetAddress.getByName("127.0.0.12"), false);
+            // the master binds an ephemeral port, distinct from the port of its peer
+            master.setLocalPort(0);
+            master.setRemoteAddress(InetAddress.getLoopbackAddress());
+            master.setRemotePort(peer.getLocalPort());
+            master.activate();
+            try {
+                master.getSbusTransport().writeMessage(request());
+                assertEquals(Sbus.READ_STATUS_CHANNELS_REQUEST, receiveFunctionCode(peer));
+                assertTrue(master.getLocalPort() > 0);
+                assertEquals(master.getLocalPort(), lastSourcePort);
+            } finally {
+                master.deactivate();
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testListenerReadsRequests() throws Exception {
+        UDPSlaveTerminal listener = new UDPSlaveTerminal(InetAddress.getByName("127.0.0.12"), true);
+        listener.setLocalPort(0);
+        listener.activate();
+        try (DatagramSocket peer = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            byte[] frame = datagram(request());
+            peer.send(new DatagramPacket(frame, frame.length, InetAddress.getLoopbackAddress(),
+                    listener.getLocalPort()));
+            // the request stays queued for the listener instead of being taken for a response
+            SbusRequest request = listener.getSbusTransport().readRequest();
+            assertEquals(Sbus.READ_STATUS_CHANNELS_REQUEST, request.getFunctionCode());
+            assertEquals(10, request.getUnitID());
+        } finally {
+            listener.deactivate();
+        }
+    }
+
+    @Test
+    public void testListenerSendsUnsolicitedToRemoteAddress() throws Exception {
+        try (DatagramSocket peer = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            peer.setSoTimeout(3000);
+            UDPSlaveTerminal listener = new UDPSlaveTerminal(InetAddress.getByName("127.0.0.12"), true);
+            listener.setLocalPort(0);
+            listener.setRemoteAddress(InetAddress.getLoopbackAddress());
+            listener.setRemotePort(peer.getLocalPort());
+            listener.activate();
+            try {
+                // a status report answers no request, so it has no reply route
+                ReadStatusChannelsResponse report = new ReadStatusChannelsResponse();
+                report.setSourceSubnetID(1);
+                report.setSourceUnitID(10);
+                listener.getSbusTransport().writeMessage(report);
+                assertEquals(Sbus.READ_STATUS_CHANNELS_REQUEST + 1, receiveFunctionCode(peer));
+            } finally {
+                listener.deactivate();
+            }
+        }
+    }
+}
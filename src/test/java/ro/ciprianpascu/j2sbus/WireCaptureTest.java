@@ -0,0 +1,180 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ro.ciprianpascu.sbus.io.SbusUDPTransaction;
+import ro.ciprianpascu.sbus.io.SbusUDPTransport;
+import ro.ciprianpascu.sbus.msg.ReadStatusChannelsRequest;
+import ro.ciprianpascu.sbus.net.UDPSlaveTerminal;
+import ro.ciprianpascu.sbus.net.WireCapture;
+import ro.ciprianpascu.sbus.net.WireCaptureReader;
+import ro.ciprianpascu.sbus.net.WireReplay;
+import ro.ciprianpascu.sbus.sim.DeviceFarm;
+import ro.ciprianpascu.sbus.sim.VirtualRelay;
+
+public class WireCaptureTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public DeviceFarmRule farmRule = new DeviceFarmRule();
+
+    @Test
+    public void testSegmentsRoundTrip() throws Exception {
+        Path directory = folder.newFolder("segments").toPath();
+        try (WireCapture capture = new WireCapture(directory, 4096)) {
+            for (int i = 0; i < 500; i++) {
+                byte[] datagram = new byte[40];
+                datagram[0] = (byte) i;
+                datagram[39] = (byte) (i >> 8);
+                capture.append(i % 2 == 0 ? WireCapture.RECEIVED : WireCapture.SENT, datagram);
+            }
+            assertEquals(500, capture.getRecordCount());
+            assertTrue(capture.getSegmentCount() > 1);
+        }
+
+        try (WireCaptureReader reader = new WireCaptureReader(directory)) {
+            long last = -1;
+            for (int i = 0; i < 500; i++) {
+                WireCaptureReader.Record record = reader.next();
+                assertNotNull(record);
+                assertEquals(i % 2 == 0, record.isReceived());
+                assertEquals((byte) i, record.getDatagram()[0]);
+                assertEquals((byte) (i >> 8), record.getDatagram()[39]);
+                assertTrue(record.getNanos() >= last);
+                last = record.getNanos();
+            }
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testRefusesEarlierCapture() throws Exception {
+        Path directory = folder.newFolder("earlier").toPath();
+        try (WireCapture capture = new WireCapture(directory, 4096)) {
+            capture.append(WireCapture.SENT, new byte[40]);
+        }
+        try (WireCapture capture = new WireCapture(directory, 4096)) {
+            fail("Directory of an earlier capture accepted");
+        } catch (DirectoryNotEmptyException expected) {
+        }
+        try (WireCaptureReader reader = new WireCaptureReader(directory)) {
+            assertNotNull(reader.next());
+        }
+
+        try (WireCapture capture = new WireCapture(directory, 4096, true)) {
+            assertEquals(1, capture.getSegmentCount());
+        }
+        try (WireCaptureReader reader = new WireCaptureReader(directory)) {
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testCaptureAndReplay() throws Exception {
+        DeviceFarm farm = farmRule.getFarm();
+        farm.addDevice(new VirtualRelay(1, 10, 4)).setChannelLevel(1, 75);
+        UDPSlaveTerminal master = farmRule.createMaster("127.0.0.8");
+        Path directory = folder.newFolder("capture").toPath();
+        ((SbusUDPTransport) master.getSbusTransport()).setResponseCacheMillis(0);
+        master.startCapture(directory);
+        ReadStatusChannelsRequest request = new ReadStatusChannelsRequest();
+        request.setSubnetID(1);
+        request.setUnitID(10);
+        SbusUDPTransaction transaction = new SbusUDPTransaction(master);
+        transaction.setRequest(request);
+        for (int i = 0; i < 5; i++) {
+            transaction.execute();
+            assertNotNull(transaction.getResponse());
+        }
+        assertEquals(10, master.stopCapture().getRecordCount());
+        master.deactivate();
+
+        int sent = 0;
+        int received = 0;
+        try (WireCaptureReader reader = new WireCaptureReader(directory)) {
+            WireCaptureReader.Record record;
+            while ((record = reader.next()) != null) {
+                if (record.isReceived()) {
+                    received++;
+                } else {
+                    sent++;
+                }
+            }
+        }
+        assertEquals(5, sent);
+        assertEquals(5, received);
+
+        // the offline terminal sends nothing, the replay alone feeds the transport
+        UDPSlaveTerminal offline = new UDPSlaveTerminal(InetAddress.getByName("127.0.0.8"), false);
+        offline.setLocalPort(0);
+        offline.setRemoteAddress(InetAddress.getLoopbackAddress());
+        offline.activate();
+        try {
+            SbusUDPTransport transport = (SbusUDPTransport) offline.getSbusTransport();
+            transport.setDuplicateWindowMillis(0);
+            AtomicInteger delivered = new AtomicInteger();
+            transport.addMessageListener(response -> {
+                if (response.getSourceUnitID() == 10) {
+                    delivered.incrementAndGet();
+                }
+            });
+            WireReplay replay = new WireReplay(offline);
+            replay.setSpeed(WireReplay.AS_FAST_AS_POSSIBLE);
+            assertEquals(5, replay.replay(directory));
+            long deadline = System.currentTimeMillis() + 2000;
+            while (delivered.get() < 5 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(5, delivered.get());
+            assertEquals(5, transport.getMetrics().getFramesReceived());
+        } finally {
+            offline.deactivate();
+        }
+    }
+
+    @Test
+    public void testReplayKeepsSpacing() throws Exception {
+        Path directory = folder.newFolder("spacing").toPath();
+        byte[] datagram = { 127, 0, 0, 1, 'S', 'M', 'A', 'R', 'T', 'C', 'L', 'O', 'U', 'D', (byte) 0xAA,
+                (byte) 0xAA, 0 };
+        try (WireCapture capture = new WireCapture(directory, 4096)) {
+            capture.append(WireCapture.RECEIVED, datagram);
+            Thread.sleep(200);
+            capture.append(WireCapture.RECEIVED, datagram);
+        }
+        UDPSlaveTerminal offline = new UDPSlaveTerminal(InetAddress.getByName("127.0.0.8"), false);
+        offline.setLocalPort(0);
+        offline.setRemoteAddress(InetAddress.getLoopbackAddress());
+        offline.activate();
+        try {
+            WireReplay replay = new WireReplay(offline);
+            replay.setSpeed(WireReplay.ORIGINAL_SPEED);
+            long start = System.nanoTime();
+            assertEquals(2, replay.replay(directory));
+            assertTrue((System.nanoTime() - start) / 1000000L >= 190);
+            replay.setSpeed(4);
+            start = System.nanoTime();
+            replay.replay(directory);
+            long elapsed = (System.nanoTime() - start) / 1000000L;
+            assertTrue(elapsed >= 45 && elapsed < 190);
+            assertEquals(4, replay.getReplayedCount());
+        } finally {
+            offline.deactivate();
+        }
+    }
+}
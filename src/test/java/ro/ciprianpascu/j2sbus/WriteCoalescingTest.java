@@ -0,0 +1,108 @@
+package ro.ciprianpascu.j2sbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import ro.ciprianpascu.sbus.io.SbusUDPTransport;
+import ro.ciprianpascu.sbus.msg.SendPriority;
+import ro.ciprianpascu.sbus.msg.WriteSingleChannelRequest;
+import ro.ciprianpascu.sbus.net.OutboundFrame;
+import ro.ciprianpascu.sbus.net.UDPSlaveTerminal;
+import ro.ciprianpascu.sbus.procimg.ByteRegister;
+import ro.ciprianpascu.sbus.procimg.Register;
+import ro.ciprianpascu.sbus.procimg.WordRegister;
+import ro.ciprianpascu.sbus.sim.DeviceFarm;
+import ro.ciprianpascu.sbus.sim.VirtualRelay;
+
+public class WriteCoalescingTest {
+
+    @Rule
+    public DeviceFarmRule farmRule = new DeviceFarmRule();
+
+    private static WriteSingleChannelRequest write(int channel, int level) {
+        Register[] registers = { new ByteRegister((byte) level), new WordRegister((short) 0) };
+        WriteSingleChannelRequest request = new WriteSingleChannelRequest(channel, registers);
+        request.setSubnetID(1);
+        request.setUnitID(10);
+        return request;
+    }
+
+    @Test
+    public void testCoalescingKey() {
+        byte[] frame = new byte[16 + 15];
+        frame[21] = 0x00;
+        frame[22] = 0x31;
+        frame[23] = 1;
+        frame[24] = 10;
+        frame[25] = 3;
+        long key = OutboundFrame.coalescingKey(frame);
+        assertNotEquals(OutboundFrame.NO_KEY, key);
+        frame[25] = 4;
+        assertNotEquals(key, OutboundFrame.coalescingKey(frame));
+        // reads are never coalesced
+        frame[22] = 0x33;
+        assertEquals(OutboundFrame.NO_KEY, OutboundFrame.coalescingKey(frame));
+    }
+
+    @Test
+    public void testQueuedWritesAreReplaced() throws Exception {
+        DeviceFarm farm = farmRule.getFarm();
+        VirtualRelay relay = farm.addDevice(new VirtualRelay(1, 10, 4));
+        // paced before activation, the sender must not take the first write at once
+        UDPSlaveTerminal master = farmRule.createMaster("127.0.0.7", 100);
+        SbusUDPTransport transport = (SbusUDPTransport) master.getSbusTransport();
+        transport.setResponseCacheMillis(0);
+        // a slider dragged from 10 to 100 on channel 1, one write to channel 2
+        for (int level = 10; level <= 100; level += 10) {
+            transport.writeMessage(write(1, level));
+        }
+        transport.writeMessage(write(2, 55));
+
+        long deadline = System.currentTimeMillis() + 3000;
+        while (farm.getRequestCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(300);
+        assertEquals(2, farm.getRequestCount());
+        assertEquals(9, master.getWritesCoalesced());
+        assertEquals(100, relay.getChannelLevel(1));
+        assertEquals(55, relay.getChannelLevel(2));
+
+        master.setWriteCoalescing(false);
+        transport.writeMessage(write(1, 20));
+        transport.writeMessage(write(1, 30));
+        deadline = System.currentTimeMillis() + 3000;
+        while (farm.getRequestCount() < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(4, farm.getRequestCount());
+        assertEquals(9, master.getWritesCoalesced());
+    }
+
+    @Test
+    public void testHigherClassWriteCancelsTheQueuedOne() throws Exception {
+        DeviceFarm farm = farmRule.getFarm();
+        VirtualRelay relay = farm.addDevice(new VirtualRelay(1, 10, 4));
+        UDPSlaveTerminal master = farmRule.createMaster("127.0.0.7", 100);
+        SbusUDPTransport transport = (SbusUDPTransport) master.getSbusTransport();
+        transport.setResponseCacheMillis(0);
+        transport.writeMessage(write(2, 55), SendPriority.INTERACTIVE_WRITE);
+        // a scene restored in the background, then the user drags the slider twice
+        transport.writeMessage(write(1, 10), SendPriority.BACKGROUND);
+        transport.writeMessage(write(1, 20), SendPriority.INTERACTIVE_WRITE);
+        transport.writeMessage(write(1, 30), SendPriority.INTERACTIVE_WRITE);
+
+        long deadline = System.currentTimeMillis() + 3000;
+        while (farm.getRequestCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(400);
+        assertEquals(2, farm.getRequestCount());
+        assertEquals(2, master.getWritesCoalesced());
+        assertEquals(30, relay.getChannelLevel(1));
+        assertEquals(55, relay.getChannelLevel(2));
+    }
+}